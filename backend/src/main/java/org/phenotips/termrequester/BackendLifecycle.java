@@ -0,0 +1,159 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester;
+
+import org.phenotips.termrequester.github.GithubAPI;
+
+import java.nio.file.Path;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Owns the lifecycle of the phenotype manager, so there's one running backend for the whole
+ * application however many requests come and go.
+ * Whoever runs the application starts and stops it; everything else just borrows the manager for
+ * as long as it needs it and gives it back. Borrowing starts the backend if nobody has yet, and
+ * it's then left running until stopped. Stopping waits for everything borrowed to come back.
+ *
+ * @version $Id$
+ */
+@Singleton
+public class BackendLifecycle
+{
+    /**
+     * How long, in seconds, stop() waits for borrowers before shutting down regardless.
+     */
+    private static final long STOP_TIMEOUT = 30;
+
+    /**
+     * The phenotype manager.
+     */
+    private PhenotypeManager manager;
+
+    /**
+     * Whether the manager has been started.
+     */
+    private boolean started;
+
+    /**
+     * Whether we're stopping, and so not lending the manager out.
+     */
+    private boolean stopping;
+
+    /**
+     * How many borrowers have yet to give the manager back.
+     */
+    private int borrowed;
+
+    /**
+     * CTOR.
+     * @param manager the injected phenotype manager
+     */
+    @Inject
+    BackendLifecycle(PhenotypeManager manager)
+    {
+        this.manager = manager;
+    }
+
+    /**
+     * Start the backend, unless it's already running.
+     * @param repo the github repository
+     * @param home the home directory
+     * @return the phenotype manager
+     * @throws TermRequesterBackendException if it can't be started
+     */
+    public synchronized PhenotypeManager start(GithubAPI.Repository repo, Path home)
+        throws TermRequesterBackendException
+    {
+        if (!started) {
+            manager.init(repo, home);
+            started = true;
+            stopping = false;
+        }
+        return manager;
+    }
+
+    /**
+     * Borrow the phenotype manager, starting it if needed. Must be followed by giveBack().
+     * @param repo the github repository, in case the backend must be started
+     * @param home the home directory, in case the backend must be started
+     * @return the phenotype manager
+     * @throws TermRequesterBackendException if the backend can't be started, or is being stopped
+     */
+    public synchronized PhenotypeManager borrow(GithubAPI.Repository repo, Path home)
+        throws TermRequesterBackendException
+    {
+        if (stopping) {
+            throw new TermRequesterBackendException("The backend is shutting down");
+        }
+        start(repo, home);
+        borrowed++;
+        return manager;
+    }
+
+    /**
+     * Give back the phenotype manager, once done with it.
+     */
+    public synchronized void giveBack()
+    {
+        checkState(borrowed > 0, "Giving back a phenotype manager that was never borrowed");
+        borrowed--;
+        if (borrowed == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stop the backend, once everything borrowed has been given back or a timeout runs out.
+     * Nothing more is lent out from the moment this is called.
+     * @throws TermRequesterBackendException if the backend throws while shutting down
+     */
+    public synchronized void stop() throws TermRequesterBackendException
+    {
+        if (!started) {
+            return;
+        }
+        stopping = true;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(STOP_TIMEOUT);
+        long remaining = TimeUnit.SECONDS.toNanos(STOP_TIMEOUT);
+        try {
+            while (borrowed > 0 && remaining > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                remaining = deadline - System.nanoTime();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        manager.shutdown();
+        started = false;
+    }
+
+    /**
+     * Get how many borrowers have yet to give the manager back.
+     * @return the number of borrowers
+     */
+    public synchronized int getBorrowed()
+    {
+        return borrowed;
+    }
+}
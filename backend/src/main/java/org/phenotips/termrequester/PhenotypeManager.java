@@ -21,7 +21,13 @@
 
 import java.nio.file.Path;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ListenableFuture;
 
 /**
  * Manages the lifecycle of a requested (or existing) phenotype within the entire system.
@@ -45,6 +51,12 @@
      */
     void shutdown() throws TermRequesterBackendException;
 
+    /**
+     * Get whether this manager is up and can handle requests without waiting on its backend.
+     * @return whether it's ready
+     */
+    boolean isReady();
+
     /**
      * Request a new phenotype in the HPO.
      * @param phenotype the new phenotype we want added
@@ -53,6 +65,32 @@
      */
     PhenotypeCreation createRequest(Phenotype phenotype) throws TermRequesterBackendException;
 
+    /**
+     * Request many new phenotypes in the HPO at once.
+     * Phenotypes are checked against each other and against existing requests, and all of them are
+     * saved in one go. Github issues for the new ones are then opened in the background, at a pace
+     * github will tolerate, so these will come back UNSUBMITTED until their turn comes.
+     * @param phenotypes the new phenotypes we want added
+     * @return one creation per phenotype given, in the same order. Duplicates within the batch
+     *         all get the same phenotype, and only the first of them is marked as new.
+     * @throws TermRequesterBackendException if something goes wrong in the backend.
+     */
+    List<PhenotypeCreation> createRequests(List<Phenotype> phenotypes) throws TermRequesterBackendException;
+
+    /**
+     * Request many new phenotypes in the HPO at once, as createRequests does, but only answer once
+     * github has caught up with them.
+     * The phenotypes are checked and saved before this returns, same as with createRequests; the future
+     * is done once the background push of the new ones is over, by when those that made it to github
+     * carry their issue numbers. Any that didn't are left UNSUBMITTED for the next sync.
+     * @param phenotypes the new phenotypes we want added
+     * @return the creations, as createRequests would return them, once they've been pushed. The future
+     *         is cancelled if the manager shuts down before it gets there.
+     * @throws TermRequesterBackendException if something goes wrong in the backend.
+     */
+    ListenableFuture<List<PhenotypeCreation>> createRequestsAsync(List<Phenotype> phenotypes)
+        throws TermRequesterBackendException;
+
     /**
      * Get the phenotype with the id given. This might be an HPO or a termrequester id.
      * @param id the id of the phenotype.
@@ -61,6 +99,19 @@
      */
     Phenotype getPhenotypeById(String id) throws TermRequesterBackendException;
 
+    /**
+     * Get all the phenotypes with the ids given, each of which might be an HPO or a termrequester id.
+     * Phenotypes accepted as synonyms are resolved to the phenotype they were merged into, as with
+     * getPhenotypeById. Unlike getPhenotypeById, this will not read github, so statuses may lag behind
+     * until the next sync.
+     * @param ids the ids of the phenotypes
+     * @return the phenotypes found, keyed by the id they were asked for with, in the order given.
+     *         Ids with no phenotype are left out.
+     * @throws IllegalArgumentException if any of the ids is malformed
+     * @throws TermRequesterBackendException if something goes wrong in the backend.
+     */
+    Map<String, Phenotype> getPhenotypesById(Collection<String> ids) throws TermRequesterBackendException;
+
     /**
      * Fuzzily search for phenotypes matching the text given.
      * Will not read github, so the status may be inacurate - once a phenotype is selected, it should
@@ -72,7 +123,21 @@
     List<Phenotype> search(String text) throws TermRequesterBackendException;
 
     /**
-     * Sync all the phenotypes in the database so that they match the stuff in github.
+     * Walk through every phenotype we know of, handing each one to the visitor given.
+     * Like search, this will not read github, so statuses may lag behind until the next sync.
+     * @param status if present, only phenotypes with this status will be visited
+     * @param modifiedSince if present, only phenotypes modified at or after this time will be visited
+     * @param visitor the visitor
+     * @throws TermRequesterBackendException if something goes wrong in the backend, or the visitor throws
+     */
+    void exportPhenotypes(Optional<Phenotype.Status> status, Optional<Date> modifiedSince,
+            PhenotypeVisitor visitor) throws TermRequesterBackendException;
+
+    /**
+     * Sync the phenotypes in the database that are due it, so that they match the stuff in github,
+     * and push any that never made it there. Which phenotypes are due is up to the SyncSchedule.
+     * Each run's report, from the moment it starts, is kept in the SyncHistory. Phenotypes that
+     * can't be read from or pushed to github are counted as errors there and left for the next run.
      * @throws TermRequesterBackendException if something goes wrong
      */
     void syncPhenotypes() throws TermRequesterBackendException;
@@ -18,18 +18,60 @@
 package org.phenotips.termrequester;
 
 import org.phenotips.termrequester.db.DatabaseService;
+import org.phenotips.termrequester.github.AsyncGithubAPI;
+import org.phenotips.termrequester.github.AsyncGithubAPIAdapter;
 import org.phenotips.termrequester.github.GithubAPI;
 import org.phenotips.termrequester.github.GithubAPIFactory;
 import org.phenotips.termrequester.github.GithubException;
+import org.phenotips.termrequester.metrics.Metrics;
+import org.phenotips.termrequester.metrics.Timed;
+import org.phenotips.termrequester.ontology.Ontology;
+import org.phenotips.termrequester.ontology.OntologyService;
+import org.phenotips.termrequester.tracing.Span;
+import org.phenotips.termrequester.tracing.Tracer;
 import org.phenotips.termrequester.utils.IdUtils;
+import org.phenotips.termrequester.utils.TitleCaseSet;
 
 import java.io.IOException;
 
 import java.nio.file.Path;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
 import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
@@ -43,8 +85,30 @@
  * @version $Id$
  */
 @Singleton
+@Timed("manager")
 class PhenotypeManagerImpl implements PhenotypeManager
 {
+    /**
+     * How many issues we'll push to github per second when working through a batch.
+     * Github asks that requests creating content be spaced out by at least a second.
+     */
+    private static final double ISSUES_PER_SECOND = 1.0;
+
+    /**
+     * How long to wait, in seconds, for an in-flight github push to finish when shutting down.
+     */
+    private static final long SHUTDOWN_TIMEOUT = 30;
+
+    /**
+     * How many locks the names of phenotypes are spread over.
+     */
+    private static final int LOCK_STRIPES = 64;
+
+    /**
+     * How many github reads a sync keeps going at once.
+     */
+    private static final int SYNC_CONNECTIONS = 4;
+
     /**
      * The github api factory.
      */
@@ -55,26 +119,99 @@ class PhenotypeManagerImpl implements PhenotypeManager
      */
     private DatabaseService db;
 
+    /**
+     * The local copy of the HPO.
+     */
+    private OntologyService ontology;
+
     /**
      * The github connection.
      */
     private GithubAPI github;
 
+    /**
+     * The github connection, for reading many phenotypes at once when syncing.
+     */
+    private AsyncGithubAPI asyncGithub;
+
     /**
      * Whether this service is up.
      */
-    private boolean up;
+    private volatile boolean up;
+
+    /**
+     * Pushes batch-created phenotypes to github in the background.
+     */
+    private ListeningExecutorService submitter;
+
+    /**
+     * Runs asyncGithub's reads.
+     */
+    private ExecutorService syncPool;
+
+    /**
+     * Keeps batch pushes to github within github's limits.
+     */
+    private RateLimiter issueLimiter;
+
+    /**
+     * Guard changes to phenotypes, keyed by their title cased names and synonyms.
+     * Anything that changes a stored phenotype holds the stripes of all its names, and anything
+     * that could match a request to a stored phenotype holds the stripes of the request's names,
+     * so the two always share at least one. Reads don't take them.
+     */
+    private Striped<Lock> nameLocks;
+
+    /**
+     * The single requests being worked on right now, by requestKey, so that identical ones
+     * arriving meanwhile can wait for the same result instead of redoing the work.
+     */
+    private ConcurrentMap<List<Object>, SettableFuture<PhenotypeCreation>> inFlight;
+
+    /**
+     * Traces requests, lookups and syncs through their stages.
+     */
+    private Tracer tracer;
+
+    /**
+     * The metrics, to read the github rate limit from.
+     */
+    private Metrics metrics;
+
+    /**
+     * Where each sync's report goes.
+     */
+    private SyncHistory history;
+
+    /**
+     * Decides what each sync reads.
+     */
+    private SyncSchedule schedule;
 
     /**
      * CTOR.
      * @param factory the injected github api factory
      * @param db the database service
+     * @param ontology the ontology service
+     * @param tracer the tracer
+     * @param metrics the metrics
+     * @param history the history of syncs
+     * @param schedule the sync schedule
      */
     @Inject
-    PhenotypeManagerImpl(GithubAPIFactory factory, DatabaseService db)
+    PhenotypeManagerImpl(GithubAPIFactory factory, DatabaseService db, OntologyService ontology, Tracer tracer,
+            Metrics metrics, SyncHistory history, SyncSchedule schedule)
     {
         this.factory = factory;
         this.db = db;
+        this.ontology = ontology;
+        this.tracer = tracer;
+        this.metrics = metrics;
+        this.history = history;
+        this.schedule = schedule;
+        this.issueLimiter = RateLimiter.create(ISSUES_PER_SECOND);
+        this.nameLocks = Striped.lock(LOCK_STRIPES);
+        this.inFlight = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -84,9 +221,15 @@ public synchronized void init(GithubAPI.Repository repo, Path home) throws TermR
             github = factory.create(repo);
             try {
                 db.init(home);
+                ontology.init(home);
+                tracer.init(home);
+                schedule.init(home);
             } catch (IOException e) {
                 throw new TermRequesterBackendException(e);
             }
+            submitter = MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
+            syncPool = Executors.newFixedThreadPool(SYNC_CONNECTIONS);
+            asyncGithub = new AsyncGithubAPIAdapter(github, syncPool);
             up = true;
         }
     }
@@ -95,7 +238,23 @@ public synchronized void init(GithubAPI.Repository repo, Path home) throws TermR
     public synchronized void shutdown() throws TermRequesterBackendException
     {
         if (up) {
+            /* Anything still queued is left unsubmitted in the db, so the next sync will get to it.
+             * Whoever's waiting on it is told it won't happen. */
+            for (Runnable push : submitter.shutdownNow()) {
+                if (push instanceof Future) {
+                    ((Future<?>) push).cancel(false);
+                }
+            }
+            syncPool.shutdownNow();
+            ontology.shutdown();
             try {
+                submitter.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+                syncPool.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                tracer.shutdown();
                 db.shutdown();
             } catch (IOException e) {
                 throw new TermRequesterBackendException(e);
@@ -104,10 +263,91 @@ public synchronized void shutdown() throws TermRequesterBackendException
         }
     }
 
+    @Override
+    public boolean isReady()
+    {
+        return up && db.isReady();
+    }
+
     @Override
     public PhenotypeCreation createRequest(Phenotype pt) throws TermRequesterBackendException
     {
+        try (Span span = tracer.start("createRequest")) {
+            span.set("name", pt.getName());
+            /* Already in the HPO, so there's nothing to request */
+            Phenotype published = findPublished(pt);
+            if (!Phenotype.NULL.equals(published)) {
+                span.set("outcome", "published");
+                return new PhenotypeCreation(published, false);
+            }
+            List<Object> key = requestKey(pt);
+            SettableFuture<PhenotypeCreation> mine = SettableFuture.create();
+            SettableFuture<PhenotypeCreation> theirs = inFlight.putIfAbsent(key, mine);
+            if (theirs != null) {
+                /* Someone beat us to it, so whatever they made isn't new to us */
+                span.set("outcome", "coalesced");
+                return new PhenotypeCreation(awaitCreation(theirs).phenotype, false);
+            }
+            try {
+                PhenotypeCreation created = create(pt);
+                span.set("outcome", created.isNew ? "created" : "existing");
+                mine.set(created);
+                return created;
+            } catch (TermRequesterBackendException | RuntimeException e) {
+                span.fail(e);
+                mine.setException(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, mine);
+            }
+        }
+    }
+
+    /**
+     * The key a single request is coalesced under: identical requests have equal keys.
+     * @param pt the phenotype requested
+     * @return the key
+     */
+    private static List<Object> requestKey(Phenotype pt)
+    {
+        Set<String> synonyms = new TreeSet<>();
+        for (String synonym : pt.getSynonyms()) {
+            synonyms.add(TitleCaseSet.titleCase(synonym));
+        }
+        return Arrays.<Object>asList(TitleCaseSet.titleCase(pt.getName()), synonyms,
+                new TreeSet<>(pt.getParentIds()), pt.getDescription());
+    }
+
+    /**
+     * Wait for an identical request already in flight to finish, and take its result.
+     * @param creation the in-flight request's result
+     * @return its result
+     * @throws TermRequesterBackendException if it threw that
+     */
+    private PhenotypeCreation awaitCreation(SettableFuture<PhenotypeCreation> creation)
+        throws TermRequesterBackendException
+    {
+        try (Span span = tracer.stage("awaitCreation")) {
+            try {
+                return Uninterruptibles.getUninterruptibly(creation);
+            } catch (ExecutionException e) {
+                Throwables.propagateIfPossible(e.getCause(), TermRequesterBackendException.class);
+                throw new TermRequesterBackendException((Exception) e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Create a single request that's not already in the HPO, or merge it into the one it matches.
+     * @param pt the phenotype requested
+     * @return the phenotype requested, and whether it is new
+     * @throws TermRequesterBackendException on failure
+     */
+    private PhenotypeCreation create(Phenotype pt) throws TermRequesterBackendException
+    {
+        List<Lock> held = lockNames(Collections.singletonList(pt));
         try {
+            checkParents(Collections.singletonList(pt));
             /* TODO: Maybe set default parent if there's no parent? */
             Phenotype existing = checkInDb(pt);
             if (!Phenotype.NULL.equals(existing)) {
@@ -122,10 +362,316 @@ public PhenotypeCreation createRequest(Phenotype pt) throws TermRequesterBackend
             db.savePhenotype(pt);
         } catch (IOException | GithubException e) {
             throw new TermRequesterBackendException(e);
+        } finally {
+            unlock(held);
         }
         return new PhenotypeCreation(pt, true);
     }
 
+    @Override
+    public List<PhenotypeCreation> createRequests(List<Phenotype> phenotypes)
+        throws TermRequesterBackendException
+    {
+        List<PhenotypeCreation> results = new ArrayList<>(phenotypes.size());
+        create(phenotypes, results);
+        return results;
+    }
+
+    @Override
+    public ListenableFuture<List<PhenotypeCreation>> createRequestsAsync(List<Phenotype> phenotypes)
+        throws TermRequesterBackendException
+    {
+        final List<PhenotypeCreation> results = new ArrayList<>(phenotypes.size());
+        return Futures.transform(create(phenotypes, results), new Function<Object, List<PhenotypeCreation>>()
+        {
+            @Override
+            public List<PhenotypeCreation> apply(Object pushed)
+            {
+                return results;
+            }
+        });
+    }
+
+    /**
+     * Create a batch of requests, leaving the new ones to be pushed to github in the background.
+     * @param phenotypes the phenotypes requested
+     * @param results the list to add one creation per phenotype to, in the same order
+     * @return the background push, done once it's over
+     * @throws TermRequesterBackendException on failure
+     */
+    private ListenableFuture<?> create(List<Phenotype> phenotypes, List<PhenotypeCreation> results)
+        throws TermRequesterBackendException
+    {
+        /* Fold together any phenotypes in the batch that are the same as each other,
+         * remembering where each of them went */
+        List<Phenotype> unique = new ArrayList<>(phenotypes.size());
+        int[] folded = new int[phenotypes.size()];
+        for (int i = 0; i < phenotypes.size(); i++) {
+            Phenotype pt = phenotypes.get(i);
+            int j = unique.indexOf(pt);
+            if (j < 0) {
+                unique.add(pt);
+                j = unique.size() - 1;
+            } else {
+                unique.get(j).mergeWith(pt);
+            }
+            folded[i] = j;
+        }
+        /* Anything already in the HPO is settled without going to the db */
+        List<Phenotype> resolved = new ArrayList<>(unique.size());
+        List<Phenotype> requested = new ArrayList<>(unique.size());
+        for (Phenotype pt : unique) {
+            Phenotype published = findPublished(pt);
+            resolved.add(published);
+            if (Phenotype.NULL.equals(published)) {
+                requested.add(pt);
+            }
+        }
+        boolean[] isNew = new boolean[unique.size()];
+        final List<Phenotype> toPush = new ArrayList<>();
+        List<Lock> held = lockNames(requested);
+        try {
+            checkParents(requested);
+            List<Phenotype> existing = db.getPhenotypes(requested);
+            List<Phenotype> toSave = new ArrayList<>(requested.size());
+            int k = 0;
+            for (int j = 0; j < unique.size(); j++) {
+                if (!Phenotype.NULL.equals(resolved.get(j))) {
+                    continue;
+                }
+                Phenotype pt = existing.get(k++);
+                if (Phenotype.NULL.equals(pt)) {
+                    pt = unique.get(j);
+                    isNew[j] = true;
+                } else {
+                    pt.mergeWith(unique.get(j));
+                }
+                if (pt.submittable() || pt.isDirty()) {
+                    toPush.add(pt);
+                }
+                resolved.set(j, pt);
+                toSave.add(pt);
+            }
+            db.savePhenotypes(toSave);
+        } catch (IOException e) {
+            throw new TermRequesterBackendException(e);
+        } finally {
+            unlock(held);
+        }
+        ListenableFuture<?> pushed = Futures.immediateFuture(null);
+        if (!toPush.isEmpty()) {
+            pushed = submitter.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (Phenotype pt : toPush) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            return;
+                        }
+                        try {
+                            pushLocked(pt);
+                        } catch (IOException | GithubException e) {
+                            /* Leave it as it is in the db, the next sync will try again */
+                            continue;
+                        }
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < phenotypes.size(); i++) {
+            int j = folded[i];
+            /* Only the first of several duplicates in a batch counts as new */
+            boolean first = isNew[j];
+            isNew[j] = false;
+            results.add(new PhenotypeCreation(resolved.get(j), first));
+        }
+        return pushed;
+    }
+
+    /**
+     * Look the phenotype given up in the local copy of the HPO, by its name and synonyms, in case
+     * it's already there.
+     * @param pt the phenotype
+     * @return a stand-in published phenotype for the term it matches, or the null phenotype if none
+     */
+    private Phenotype findPublished(Phenotype pt)
+    {
+        try (Span span = tracer.stage("findPublished")) {
+            Ontology hpo = ontology.getOntology();
+            Optional<String> hpoId = hpo.findByName(pt.getName());
+            Iterator<String> synonyms = pt.getSynonyms().iterator();
+            while (!hpoId.isPresent() && synonyms.hasNext()) {
+                hpoId = hpo.findByName(synonyms.next());
+            }
+            if (!hpoId.isPresent()) {
+                return Phenotype.NULL;
+            }
+            return fromOntology(hpoId.get());
+        }
+    }
+
+    /**
+     * Make sure every parent of the phenotypes given is either one of our requests, a term in the
+     * HPO, or a term accepted into the HPO that hasn't been released yet.
+     * Does nothing until a release of the HPO has been loaded.
+     * @param phenotypes the phenotypes
+     * @throws IllegalArgumentException if a parent doesn't exist
+     * @throws IOException if the database throws
+     */
+    private void checkParents(Collection<Phenotype> phenotypes) throws IOException
+    {
+        try (Span span = tracer.stage("checkParents")) {
+            Ontology hpo = ontology.getOntology();
+            if (hpo.isEmpty()) {
+                return;
+            }
+            Set<String> unreleased = new HashSet<>();
+            for (Phenotype pt : phenotypes) {
+                for (String parent : pt.getParentIds()) {
+                    if (!IdUtils.isId(parent) && !hpo.contains(parent)) {
+                        checkArgument(IdUtils.isHpoId(parent), "Parent %s is not a valid id", parent);
+                        unreleased.add(parent);
+                    }
+                }
+            }
+            if (!unreleased.isEmpty()) {
+                unreleased.removeAll(db.getPhenotypesByHpoId(unreleased).keySet());
+                checkArgument(unreleased.isEmpty(), "Parents %s are not in the HPO", unreleased);
+            }
+        }
+    }
+
+    /**
+     * Lock the stripes for all the names and synonyms of the phenotypes given.
+     * Striped hands them back in a fixed order, so two callers can't deadlock as long as
+     * neither asks for more stripes while holding some.
+     * @param phenotypes the phenotypes
+     * @return the locks now held, to give to unlock
+     */
+    private List<Lock> lockNames(Collection<Phenotype> phenotypes)
+    {
+        return lockKeys(nameKeys(phenotypes));
+    }
+
+    /**
+     * Get the keys lockNames would lock for the phenotypes given, as they are now.
+     * @param phenotypes the phenotypes
+     * @return the keys
+     */
+    private Set<String> nameKeys(Collection<Phenotype> phenotypes)
+    {
+        Set<String> keys = new HashSet<>();
+        for (Phenotype pt : phenotypes) {
+            if (pt.getName() != null) {
+                keys.add(TitleCaseSet.titleCase(pt.getName()));
+            }
+            for (String synonym : pt.getSynonyms()) {
+                keys.add(TitleCaseSet.titleCase(synonym));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Lock the stripes for the keys given.
+     * @param keys the keys, from nameKeys
+     * @return the locks now held, to give to unlock
+     */
+    private List<Lock> lockKeys(Set<String> keys)
+    {
+        List<Lock> locks = ImmutableList.copyOf(nameLocks.bulkGet(keys));
+        try (Span span = tracer.stage("lock")) {
+            span.set("stripes", locks.size());
+            for (Lock lock : locks) {
+                lock.lock();
+            }
+        }
+        return locks;
+    }
+
+    /**
+     * Release locks taken by lockNames.
+     * @param locks the locks
+     */
+    private void unlock(List<Lock> locks)
+    {
+        for (Lock lock : Lists.reverse(locks)) {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Push the phenotype given to github, reading it again once its names are locked.
+     * @param pt the phenotype, as last read
+     * @throws IOException if the database throws
+     * @throws GithubException if github throws
+     */
+    private void pushLocked(Phenotype pt) throws IOException, GithubException
+    {
+        try (Span span = tracer.stage("push")) {
+            span.set("phenotype", pt.getId().or(""));
+            List<Lock> held = lockNames(Collections.singletonList(pt));
+            try {
+                pushToGithub(reload(pt, pt.getId()));
+            } finally {
+                unlock(held);
+            }
+        }
+    }
+
+    /**
+     * Read the phenotype given again from the db, so that nothing that happened to it while
+     * waiting on its locks gets overwritten.
+     * @param pt the phenotype, as last read
+     * @param id the id it was read by, if any
+     * @return the phenotype as it is now, or the one given if it can't be read again
+     * @throws IOException if the database throws
+     */
+    private Phenotype reload(Phenotype pt, Optional<String> id) throws IOException
+    {
+        if (!id.isPresent()) {
+            return pt;
+        }
+        Phenotype current;
+        if (IdUtils.isId(id.get())) {
+            current = db.getPhenotypeById(id.get());
+        } else {
+            current = db.getPhenotypeByHpoId(id.get());
+        }
+        return Phenotype.NULL.equals(current) ? pt : current;
+    }
+
+    /**
+     * Bring github up to date with the phenotype given, opening an issue for it if it's
+     * never been submitted, and save it.
+     * Blocks as long as needed to respect the github rate limit.
+     * @param pt the phenotype, as stored in the db
+     * @throws IOException if the database throws
+     * @throws GithubException if github throws
+     */
+    private void pushToGithub(Phenotype pt) throws IOException, GithubException
+    {
+        if (Phenotype.NULL.equals(pt)) {
+            return;
+        }
+        issueLimiter.acquire();
+        if (pt.submittable()) {
+            Optional<String> number = github.searchForIssue(pt);
+            if (number.isPresent()) {
+                /* Most likely an earlier push that died before it could save */
+                pt.setIssueNumber(number.get());
+                pt.setStatus(Phenotype.Status.SUBMITTED);
+                github.readPhenotype(pt);
+            } else {
+                github.openIssue(pt);
+            }
+        } else if (pt.getIssueNumber().isPresent()) {
+            github.patchIssue(pt);
+        }
+        db.savePhenotype(pt);
+    }
+
     /**
      * Check if the given phenotype exists in the db; if so merge it and return it.
      * If the phenotype is present in the db but not in github, will create it in github.
@@ -134,19 +680,20 @@ public PhenotypeCreation createRequest(Phenotype pt) throws TermRequesterBackend
      */
     private Phenotype checkInDb(Phenotype pt) throws IOException, GithubException
     {
-
-        Phenotype existing = db.getPhenotype(pt);
-        if (!Phenotype.NULL.equals(existing)) {
-            existing.mergeWith(pt);
-            if (existing.submittable() && !(github.searchForIssue(existing).isPresent())) {
-                /* We're out of sync, so submit this issue to github */
-                github.openIssue(existing);
-            } else {
-                github.readPhenotype(existing);
+        try (Span span = tracer.stage("checkInDb")) {
+            Phenotype existing = db.getPhenotype(pt);
+            if (!Phenotype.NULL.equals(existing)) {
+                existing.mergeWith(pt);
+                if (existing.submittable() && !(github.searchForIssue(existing).isPresent())) {
+                    /* We're out of sync, so submit this issue to github */
+                    github.openIssue(existing);
+                } else {
+                    github.readPhenotype(existing);
+                }
+                return existing;
             }
-            return existing;
+            return Phenotype.NULL;
         }
-        return Phenotype.NULL;
     }
 
     /**
@@ -161,20 +708,21 @@ private Phenotype checkInDb(Phenotype pt) throws IOException, GithubException
      */
     private Phenotype checkInGithub(Phenotype pt) throws IOException, GithubException
     {
-
-        Optional<String> number = github.searchForIssue(pt);
-        if (number.isPresent()) {
-            Phenotype existing = db.getPhenotypeByIssueNumber(number.get());
-            checkState(!Phenotype.NULL.equals(existing),
-                    "Phenotype with issue number %s is not in db", number.get());
-            if (Phenotype.NULL.equals(existing)) {
-                throw new IllegalStateException("Phenotype with issue number " + number.get()
-                        + " is in github but not database.");
+        try (Span span = tracer.stage("checkInGithub")) {
+            Optional<String> number = github.searchForIssue(pt);
+            if (number.isPresent()) {
+                Phenotype existing = db.getPhenotypeByIssueNumber(number.get());
+                checkState(!Phenotype.NULL.equals(existing),
+                        "Phenotype with issue number %s is not in db", number.get());
+                if (Phenotype.NULL.equals(existing)) {
+                    throw new IllegalStateException("Phenotype with issue number " + number.get()
+                            + " is in github but not database.");
+                }
+                existing.mergeWith(pt);
+                return existing;
             }
-            existing.mergeWith(pt);
-            return existing;
+            return Phenotype.NULL;
         }
-        return Phenotype.NULL;
     }
 
     /**
@@ -196,28 +744,181 @@ private Phenotype updatePhenotype(Phenotype pt) throws IOException, GithubExcept
     public Phenotype getPhenotypeById(String id) throws TermRequesterBackendException
     {
         Phenotype pt = Phenotype.NULL;
-        try {
+        try (Span span = tracer.start("getPhenotypeById")) {
+            span.set("id", id);
+            try {
+                if (IdUtils.isId(id)) {
+                    /* Synonyms are settled, so there's no need to even load them */
+                    Optional<String> redirect = db.getRedirect(id);
+                    if (redirect.isPresent()) {
+                        return resolveRedirect(id, redirect.get(), Phenotype.NULL);
+                    }
+                    pt = db.getPhenotypeById(id);
+                } else if (IdUtils.isHpoId(id)) {
+                    pt = db.getPhenotypeByHpoId(id);
+                    if (Phenotype.NULL.equals(pt)) {
+                        pt = fromOntology(id);
+                    }
+                } else {
+                    throw new IllegalArgumentException(String.format("Id %s is malformed", id));
+                }
+                if (pt.getIssueNumber().isPresent()) {
+                    pt = syncLocked(pt, Optional.of(id));
+                }
+                if (Phenotype.Status.SYNONYM.equals(pt.getStatus())) {
+                    pt = resolveRedirect(id, pt.getHpoId().get(), pt);
+                }
+                return pt;
+            } catch (IOException | GithubException e) {
+                span.fail(e);
+                throw new TermRequesterBackendException(e);
+            }
+        }
+    }
+
+    /**
+     * Follow a synonym's redirect to the phenotype it was merged into.
+     * Synonyms only ever point at an accepted phenotype or a published term, so this is a single
+     * lookup. A phenotype found in the database is synced once, as it would be if it was asked for
+     * itself; if that shows it's since been merged away too, its own redirect is followed without
+     * going back to github.
+     * @param id the id the synonym was asked for by
+     * @param hpoId the hpo id the synonym redirects to
+     * @param synonym the synonym, if it's at hand, or the null phenotype to have it loaded by id if needed
+     * @return the phenotype redirected to; if it isn't in the database, a stand-in published phenotype
+     * @throws IOException if the database throws
+     * @throws GithubException if github throws
+     */
+    private Phenotype resolveRedirect(String id, String hpoId, Phenotype synonym)
+        throws IOException, GithubException
+    {
+        try (Span span = tracer.stage("resolveRedirect")) {
+            Phenotype target = findTarget(id, hpoId, synonym);
+            if (!target.getId().isPresent() || !target.getIssueNumber().isPresent()) {
+                return target;
+            }
+            target = syncLocked(target, target.getId());
+            if (Phenotype.Status.SYNONYM.equals(target.getStatus())) {
+                target = findTarget(target.getId().get(), target.getHpoId().get(), target);
+            }
+            return target;
+        }
+    }
+
+    /**
+     * Find the phenotype a synonym redirects to, without going to github.
+     * @param id the id the synonym was asked for by
+     * @param hpoId the hpo id the synonym redirects to
+     * @param synonym the synonym, if it's at hand, or the null phenotype to have it loaded by id if needed
+     * @return the accepted phenotype with the hpo id; if there's none, a stand-in published phenotype
+     * @throws IOException if the database throws
+     */
+    private Phenotype findTarget(String id, String hpoId, Phenotype synonym) throws IOException
+    {
+        Phenotype target = db.getPhenotypeByHpoId(hpoId);
+        if (!Phenotype.NULL.equals(target)) {
+            return target;
+        }
+        /* Must've been published before we ever heard of it */
+        target = fromOntology(hpoId);
+        if (!Phenotype.NULL.equals(target)) {
+            return target;
+        }
+        if (Phenotype.NULL.equals(synonym)) {
+            synonym = db.getPhenotypeById(id);
+        }
+        return standIn(synonym, hpoId);
+    }
+
+    /**
+     * Make a stand-in published phenotype for an hpo id that's neither in the database nor in the
+     * local copy of the HPO, out of the synonym that was merged into it.
+     * @param synonym the synonym
+     * @param hpoId the hpo id it was merged into
+     * @return the stand-in
+     */
+    private Phenotype standIn(Phenotype synonym, String hpoId)
+    {
+        Phenotype published = new HPOPhenotype(synonym.getName(), synonym.getDescription());
+        published.setStatus(Phenotype.Status.PUBLISHED);
+        published.setHpoId(hpoId);
+        return published;
+    }
+
+    /**
+     * Look the hpo id given up in the local copy of the HPO, for terms that have never been
+     * requested through us.
+     * @param hpoId the hpo id
+     * @return a stand-in published phenotype for the term, or the null phenotype if there's no such term
+     */
+    private Phenotype fromOntology(String hpoId)
+    {
+        Ontology hpo = ontology.getOntology();
+        Optional<String> name = hpo.getName(hpoId);
+        if (!name.isPresent()) {
+            return Phenotype.NULL;
+        }
+        Phenotype published = new HPOPhenotype(name.get(), "");
+        published.setStatus(Phenotype.Status.PUBLISHED);
+        published.setHpoId(hpo.getPrimaryId(hpoId).get());
+        for (String parent : hpo.getParents(hpoId)) {
+            published.addParentId(parent);
+        }
+        return published;
+    }
+
+    @Override
+    public Map<String, Phenotype> getPhenotypesById(Collection<String> ids) throws TermRequesterBackendException
+    {
+        List<String> ourIds = new ArrayList<>();
+        List<String> hpoIds = new ArrayList<>();
+        for (String id : ids) {
             if (IdUtils.isId(id)) {
-                pt = db.getPhenotypeById(id);
+                ourIds.add(id);
             } else if (IdUtils.isHpoId(id)) {
-                pt = db.getPhenotypeByHpoId(id);
+                hpoIds.add(id);
             } else {
                 throw new IllegalArgumentException(String.format("Id %s is malformed", id));
             }
-            if (pt.getIssueNumber().isPresent()) {
-                syncPhenotype(pt);
+        }
+        try {
+            Map<String, Phenotype> found = new HashMap<>(db.getPhenotypesById(ourIds));
+            found.putAll(db.getPhenotypesByHpoId(hpoIds));
+            /* Look up everything the synonyms point to in one go, too */
+            Set<String> redirects = new HashSet<>();
+            for (Phenotype pt : found.values()) {
+                if (Phenotype.Status.SYNONYM.equals(pt.getStatus())) {
+                    redirects.add(pt.getHpoId().get());
+                }
             }
-            if (Phenotype.Status.SYNONYM.equals(pt.getStatus())) {
-                String hpoId = pt.getHpoId().get();
-                pt = getPhenotypeById(hpoId);
-                if (Phenotype.NULL.equals(pt)) {
-                    pt = new HPOPhenotype(pt.getName(), pt.getDescription());
-                    pt.setStatus(Phenotype.Status.PUBLISHED);
-                    pt.setHpoId(hpoId);
+            Map<String, Phenotype> targets = Collections.emptyMap();
+            if (!redirects.isEmpty()) {
+                targets = db.getPhenotypesByHpoId(redirects);
+            }
+            Map<String, Phenotype> results = new LinkedHashMap<>();
+            for (String id : ids) {
+                Phenotype pt = found.get(id);
+                if (pt == null && IdUtils.isHpoId(id)) {
+                    pt = fromOntology(id);
                 }
+                if (pt == null || Phenotype.NULL.equals(pt)) {
+                    continue;
+                }
+                if (Phenotype.Status.SYNONYM.equals(pt.getStatus())) {
+                    String hpoId = pt.getHpoId().get();
+                    Phenotype target = targets.get(hpoId);
+                    if (target == null) {
+                        target = fromOntology(hpoId);
+                    }
+                    if (Phenotype.NULL.equals(target)) {
+                        target = standIn(pt, hpoId);
+                    }
+                    pt = target;
+                }
+                results.put(id, pt);
             }
-            return pt;
-        } catch (IOException | GithubException e) {
+            return results;
+        } catch (IOException e) {
             throw new TermRequesterBackendException(e);
         }
     }
@@ -234,46 +935,243 @@ public List<Phenotype> search(String text) throws TermRequesterBackendException
     }
 
     @Override
-    public void syncPhenotypes() throws TermRequesterBackendException
+    public void exportPhenotypes(Optional<Phenotype.Status> status, Optional<Date> modifiedSince,
+            PhenotypeVisitor visitor) throws TermRequesterBackendException
     {
         try {
-            synchronized (db) {
-                boolean autocommit = db.getAutocommit();
-                db.setAutocommit(false);
-                /* TODO: Is this a good idea, or should we just get them all? */
-                List<Phenotype> phenotypes = db.getPhenotypesByStatus(Phenotype.Status.SUBMITTED);
-                for (Phenotype pt : phenotypes) {
-                    syncPhenotype(pt);
+            db.exportPhenotypes(status, modifiedSince, visitor);
+        } catch (IOException e) {
+            throw new TermRequesterBackendException(e);
+        }
+    }
+
+    @Override
+    public void syncPhenotypes() throws TermRequesterBackendException
+    {
+        SyncReport report = new SyncReport(new Date());
+        history.add(report);
+        Optional<Long> quotaBefore = metrics.getGauge(GithubAPI.RATE_LIMIT_GAUGE);
+        long start = System.nanoTime();
+        Optional<Exception> failure = Optional.absent();
+        try (Span span = tracer.start("syncPhenotypes")) {
+            try {
+                List<Phenotype> candidates = new ArrayList<>();
+                for (Phenotype.Status status : SyncSchedule.SYNCED) {
+                    candidates.addAll(db.getPhenotypesByStatus(status));
                 }
+                SyncSchedule.Due due = schedule.due(candidates, System.currentTimeMillis());
+                report.addDeferred(due.deferred);
+                span.set("candidates", candidates.size()).set("due", due.phenotypes.size());
+                syncAll(due.phenotypes, report);
+                pushUnsubmitted(report);
                 db.commit();
-                db.setAutocommit(autocommit);
+                schedule.save();
+            } catch (IOException | GithubException e) {
+                span.fail(e);
+                failure = Optional.<Exception>of(e);
+                throw new TermRequesterBackendException(e);
             }
-        } catch (IOException | GithubException e) {
-            throw new TermRequesterBackendException(e);
+        } finally {
+            long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            report.finish(duration, quotaUsed(quotaBefore), failure);
+        }
+    }
+
+    /**
+     * Push anything from a batch that didn't make it to github, paging through them rather than
+     * reading them all in at once, since a large batch can leave a lot of them behind.
+     * @param report the report to count them in
+     * @throws IOException if the database throws
+     */
+    private void pushUnsubmitted(final SyncReport report) throws IOException
+    {
+        PhenotypeVisitor push = new PhenotypeVisitor()
+        {
+            @Override
+            public void visit(Phenotype pt) throws IOException
+            {
+                try {
+                    pushLocked(pt);
+                    report.addPushed();
+                } catch (IOException | GithubException e) {
+                    /* Leave it as it is in the db, the next sync will try again */
+                    report.addError();
+                }
+            }
+        };
+        db.exportPhenotypes(Optional.of(Phenotype.Status.UNSUBMITTED), Optional.<Date>absent(), push);
+    }
+
+    /**
+     * Work out how much of the github rate limit went since it was at the value given.
+     * @param before the remaining rate limit, if known
+     * @return how much went, or absent if that can't be known, e.g. because the limit was reset
+     */
+    private Optional<Long> quotaUsed(Optional<Long> before)
+    {
+        Optional<Long> after = metrics.getGauge(GithubAPI.RATE_LIMIT_GAUGE);
+        if (!before.isPresent() || !after.isPresent() || after.get() > before.get()) {
+            return Optional.absent();
         }
+        return Optional.of(before.get() - after.get());
+    }
+
+    /**
+     * Sync the phenotypes given via github and save them to the db, rescheduling each one read.
+     * All of them are read from github at once, then each is saved holding the locks on its names.
+     * Any that changed in the db while github was being read are synced again from scratch,
+     * since what was read might be out of date. Any that can't be read are left for the next sync.
+     * @param phenotypes the phenotypes, as just read from the db
+     * @param report the report to count them in
+     * @throws IOException if the database throws
+     * @throws GithubException if github throws
+     */
+    private void syncAll(List<Phenotype> phenotypes, SyncReport report) throws IOException, GithubException
+    {
+        List<Set<String>> keys = new ArrayList<>(phenotypes.size());
+        List<Phenotype.Status> statuses = new ArrayList<>(phenotypes.size());
+        List<String> etags = new ArrayList<>(phenotypes.size());
+        List<ListenableFuture<Phenotype>> reads = new ArrayList<>(phenotypes.size());
+        for (Phenotype pt : phenotypes) {
+            keys.add(nameKeys(Collections.singletonList(pt)));
+            statuses.add(pt.getStatus());
+            etags.add(pt.getEtag());
+            reads.add(asyncGithub.readPhenotype(pt));
+        }
+        for (int i = 0; i < phenotypes.size(); i++) {
+            Phenotype pt = phenotypes.get(i);
+            try (Span span = tracer.stage("sync")) {
+                span.set("phenotype", pt.getId().or(""));
+                try {
+                    awaitRead(reads.get(i));
+                } catch (IOException | GithubException e) {
+                    span.fail(e);
+                    report.addError();
+                    continue;
+                }
+                /* Github only sends a new etag along with changes */
+                boolean modified = !Objects.equal(etags.get(i), pt.getEtag());
+                report.addChecked(modified, !statuses.get(i).equals(pt.getStatus()));
+                schedule.record(pt, modified, System.currentTimeMillis());
+                Phenotype current;
+                boolean merge;
+                List<Lock> held = lockKeys(keys.get(i));
+                try {
+                    current = reload(pt, pt.getId());
+                    if (current == pt || Objects.equal(current.getTimeModified(), pt.getTimeModified())) {
+                        if (current != pt) {
+                            current.replaceBy(pt);
+                            current.setEtag(pt.getEtag());
+                        }
+                        db.savePhenotype(current);
+                        merge = becameSynonym(statuses.get(i), current.getStatus());
+                    } else {
+                        /* Changed since it was read from github, so start over */
+                        merge = syncPhenotype(current);
+                    }
+                } finally {
+                    unlock(held);
+                }
+                if (merge) {
+                    mergeIntoTarget(current);
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait for a github read to finish.
+     * @param read the read
+     * @throws IOException if the read threw that
+     * @throws GithubException if the read threw that
+     */
+    private void awaitRead(ListenableFuture<Phenotype> read) throws IOException, GithubException
+    {
+        try (Span span = tracer.stage("awaitRead")) {
+            try {
+                Uninterruptibles.getUninterruptibly(read);
+            } catch (ExecutionException e) {
+                Throwables.propagateIfPossible(e.getCause(), IOException.class, GithubException.class);
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Sync the phenotype given via github and save it to the db, holding the locks on its names.
+     * If it's just become a synonym, it's merged into its new home once those are released.
+     * @param pt the phenotype, as last read
+     * @param id the id it was read by, to read it again with once it's locked
+     * @return the phenotype as synced
+     * @throws IOException if the database throws
+     * @throws GithubException if github throws
+     */
+    private Phenotype syncLocked(Phenotype pt, Optional<String> id) throws IOException, GithubException
+    {
+        Phenotype current;
+        boolean merge;
+        List<Lock> held = lockNames(Collections.singletonList(pt));
+        try {
+            current = reload(pt, id);
+            merge = syncPhenotype(current);
+        } finally {
+            unlock(held);
+        }
+        if (merge) {
+            mergeIntoTarget(current);
+        }
+        return current;
     }
 
     /**
      * Sync the phenotype given via github and save it to the db.
      * @param pt the phenotype
+     * @return whether it's just been accepted as a synonym, and needs merging
      * @throws IOException if the database throws
      * @throws GithubException if github throws
      */
-    private void syncPhenotype(Phenotype pt) throws IOException, GithubException
+    private boolean syncPhenotype(Phenotype pt) throws IOException, GithubException
     {
         Phenotype.Status oldStatus = pt.getStatus();
         github.readPhenotype(pt);
         Phenotype.Status newStatus = pt.getStatus();
-        if (newStatus.equals(Phenotype.Status.SYNONYM) && !newStatus.equals(oldStatus)) {
-            String hpoId = pt.getHpoId().get();
-            /* Check if it's been added as a synonym : because it's just been accepted, and we
-             * haven't synced yet, we can be sure this is ok.
+        db.savePhenotype(pt);
+        return becameSynonym(oldStatus, newStatus);
+    }
+
+    /**
+     * Whether a sync just turned a phenotype into a synonym.
+     * @param oldStatus the status before the sync
+     * @param newStatus the status after
+     * @return whether it needs merging into what it's a synonym of
+     */
+    private static boolean becameSynonym(Phenotype.Status oldStatus, Phenotype.Status newStatus)
+    {
+        return newStatus.equals(Phenotype.Status.SYNONYM) && !newStatus.equals(oldStatus);
+    }
+
+    /**
+     * Merge a phenotype that's just been accepted as a synonym into what it's a synonym of,
+     * holding the locks on the latter's names.
+     * @param synonym the synonym
+     * @throws IOException if the database throws
+     */
+    private void mergeIntoTarget(Phenotype synonym) throws IOException
+    {
+        try (Span span = tracer.stage("mergeIntoTarget")) {
+            String hpoId = synonym.getHpoId().get();
+            /* Because it's just been accepted, and we haven't synced yet, we can be sure this is ok.
              * Also note that because we use the null object pattern, it's perfectly okay to go
              * through with the merge and save here */
             Phenotype existing = db.getPhenotypeByHpoId(hpoId);
-            existing.mergeWith(pt);
-            db.savePhenotype(existing);
+            List<Lock> held = lockNames(Collections.singletonList(existing));
+            try {
+                existing = reload(existing, Optional.of(hpoId));
+                existing.mergeWith(synonym);
+                db.savePhenotype(existing);
+            } finally {
+                unlock(held);
+            }
         }
-        db.savePhenotype(pt);
     }
 }
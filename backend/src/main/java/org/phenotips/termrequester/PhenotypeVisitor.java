@@ -0,0 +1,36 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester;
+
+import java.io.IOException;
+
+/**
+ * Receives phenotypes one at a time as they are read out of the backend.
+ * Lets callers walk through large numbers of phenotypes without holding them all in memory.
+ *
+ * @version $Id$
+ */
+public interface PhenotypeVisitor
+{
+    /**
+     * Handle the phenotype given.
+     * @param phenotype the phenotype
+     * @throws IOException if the visitor fails to handle it; this will stop the walk.
+     */
+    void visit(Phenotype phenotype) throws IOException;
+}
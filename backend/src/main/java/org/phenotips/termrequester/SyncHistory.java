@@ -0,0 +1,63 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import com.google.common.collect.EvictingQueue;
+import com.google.common.collect.Lists;
+import com.google.inject.Singleton;
+
+/**
+ * Keeps the reports of the last CAPACITY syncs, including the one running now, if any.
+ *
+ * @version $Id$
+ */
+@Singleton
+public class SyncHistory
+{
+    /**
+     * How many reports are kept.
+     */
+    public static final int CAPACITY = 50;
+
+    /**
+     * The reports, oldest first.
+     */
+    private Queue<SyncReport> reports = EvictingQueue.create(CAPACITY);
+
+    /**
+     * Add the report of a sync that's just started, dropping the oldest one if there's no room.
+     * @param report the report
+     */
+    synchronized void add(SyncReport report)
+    {
+        reports.add(report);
+    }
+
+    /**
+     * Get the reports kept.
+     * @return the reports, newest first
+     */
+    public synchronized List<SyncReport> getReports()
+    {
+        return Lists.reverse(new ArrayList<>(reports));
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Optional;
+
+/**
+ * What happened during one run of PhenotypeManager.syncPhenotypes.
+ * Reports are filled in as the sync goes, so one that's still running shows its progress so far.
+ *
+ * @version $Id$
+ */
+public class SyncReport
+{
+    /**
+     * When the sync started.
+     */
+    private final Date start;
+
+    /**
+     * How long the sync took, in milliseconds, or -1 while it's running.
+     */
+    private volatile long durationMillis = -1;
+
+    /**
+     * How many phenotypes were read from github.
+     */
+    private final AtomicInteger checked = new AtomicInteger();
+
+    /**
+     * How many of those github said hadn't changed.
+     */
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    /**
+     * How many of those had changed.
+     */
+    private final AtomicInteger changed = new AtomicInteger();
+
+    /**
+     * How many of those changed status.
+     */
+    private final AtomicInteger transitions = new AtomicInteger();
+
+    /**
+     * How many phenotypes were due, but left for later because of the hourly limit on reads.
+     */
+    private final AtomicInteger deferred = new AtomicInteger();
+
+    /**
+     * How many unsubmitted phenotypes were pushed to github.
+     */
+    private final AtomicInteger pushed = new AtomicInteger();
+
+    /**
+     * How many phenotypes couldn't be read or pushed, and were left for the next sync.
+     */
+    private final AtomicInteger errors = new AtomicInteger();
+
+    /**
+     * How much of the github rate limit the sync used, or -1 if that isn't known.
+     */
+    private volatile long quotaUsed = -1;
+
+    /**
+     * What made the sync fail, if it did.
+     */
+    private volatile String failure;
+
+    /**
+     * CTOR.
+     * @param start when the sync started
+     */
+    SyncReport(Date start)
+    {
+        this.start = start;
+    }
+
+    /**
+     * Count a phenotype read from github.
+     * @param wasModified whether github said it had changed
+     * @param statusChanged whether its status changed
+     */
+    void addChecked(boolean wasModified, boolean statusChanged)
+    {
+        checked.incrementAndGet();
+        if (wasModified) {
+            changed.incrementAndGet();
+        } else {
+            notModified.incrementAndGet();
+        }
+        if (statusChanged) {
+            transitions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Count phenotypes that were due, but left for later.
+     * @param count how many
+     */
+    void addDeferred(int count)
+    {
+        deferred.addAndGet(count);
+    }
+
+    /**
+     * Count a phenotype pushed to github.
+     */
+    void addPushed()
+    {
+        pushed.incrementAndGet();
+    }
+
+    /**
+     * Count a phenotype that was left for the next sync after an error.
+     */
+    void addError()
+    {
+        errors.incrementAndGet();
+    }
+
+    /**
+     * Record that the sync is over.
+     * @param duration how long it took, in milliseconds
+     * @param quota how much of the rate limit it used, if known
+     * @param error what made it fail, if it did
+     */
+    void finish(long duration, Optional<Long> quota, Optional<Exception> error)
+    {
+        if (quota.isPresent()) {
+            quotaUsed = quota.get();
+        }
+        if (error.isPresent()) {
+            failure = error.get().toString();
+        }
+        durationMillis = duration;
+    }
+
+    /**
+     * Get when the sync started.
+     * @return the start
+     */
+    public Date getStart()
+    {
+        return start;
+    }
+
+    /**
+     * Get whether the sync is still running.
+     * @return whether it's running
+     */
+    public boolean isRunning()
+    {
+        return durationMillis < 0;
+    }
+
+    /**
+     * Get how long the sync took.
+     * @return the duration in milliseconds, or -1 while it's running
+     */
+    public long getDurationMillis()
+    {
+        return durationMillis;
+    }
+
+    /**
+     * Get how many phenotypes were read from github.
+     * @return the count
+     */
+    public int getChecked()
+    {
+        return checked.get();
+    }
+
+    /**
+     * Get how many phenotypes github said hadn't changed, which cost nothing against the rate limit.
+     * @return the count
+     */
+    public int getNotModified()
+    {
+        return notModified.get();
+    }
+
+    /**
+     * Get how many phenotypes had changed in github.
+     * @return the count
+     */
+    public int getChanged()
+    {
+        return changed.get();
+    }
+
+    /**
+     * Get how many phenotypes changed status.
+     * @return the count
+     */
+    public int getTransitions()
+    {
+        return transitions.get();
+    }
+
+    /**
+     * Get how many phenotypes were due a read, but were left for later because of the hourly limit.
+     * @return the count
+     */
+    public int getDeferred()
+    {
+        return deferred.get();
+    }
+
+    /**
+     * Get how many unsubmitted phenotypes were pushed to github.
+     * @return the count
+     */
+    public int getPushed()
+    {
+        return pushed.get();
+    }
+
+    /**
+     * Get how many phenotypes couldn't be read or pushed, and were left for the next sync.
+     * @return the count
+     */
+    public int getErrors()
+    {
+        return errors.get();
+    }
+
+    /**
+     * Get how much of the github rate limit the sync used, as github counts it. That's everything
+     * made with our token while the sync ran, not only the sync's own calls.
+     * @return the quota used, or -1 if it isn't known (e.g. the limit was reset in the meantime)
+     */
+    public long getQuotaUsed()
+    {
+        return quotaUsed;
+    }
+
+    /**
+     * Get what made the sync fail.
+     * @return the failure, or null if it didn't fail or is still running
+     */
+    public String getFailure()
+    {
+        return failure;
+    }
+}
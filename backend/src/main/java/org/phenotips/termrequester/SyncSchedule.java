@@ -0,0 +1,372 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester;
+
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Decides which phenotypes each sync reads from github.
+ * Each phenotype is due again some interval after it was last read. Phenotypes that just changed
+ * start at MIN_INTERVAL; every read that finds nothing new doubles that, up to MAX_INTERVAL, so
+ * long-stable ones are read less and less. Phenotypes we've never read are first due an interval
+ * from when we first see them, longer the longer they've gone without changing, unless we don't
+ * know when they last changed, in which case they're due right away. Rejected and published
+ * phenotypes are only read every TERMINAL_INTERVAL, in case they're reopened. Of the phenotypes
+ * due, those overdue the longest go first, and no more than MAX_READS_PER_HOUR are read in any
+ * hour.
+ * The schedule is kept in the home directory, so a restart doesn't start everything over.
+ *
+ * @version $Id$
+ */
+@Singleton
+public class SyncSchedule
+{
+    /**
+     * The statuses of the phenotypes that get synced.
+     */
+    public static final Set<Phenotype.Status> SYNCED = ImmutableSet.of(Phenotype.Status.SUBMITTED,
+            Phenotype.Status.ACCEPTED, Phenotype.Status.REJECTED, Phenotype.Status.PUBLISHED);
+
+    /**
+     * The least time between reads of a phenotype, in milliseconds.
+     */
+    public static final long MIN_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * The most time between reads of a phenotype that's still in review, in milliseconds.
+     */
+    public static final long MAX_INTERVAL = TimeUnit.DAYS.toMillis(7);
+
+    /**
+     * The time between reads of a rejected or published phenotype, in milliseconds.
+     */
+    public static final long TERMINAL_INTERVAL = TimeUnit.DAYS.toMillis(30);
+
+    /**
+     * The most phenotypes read in any hour.
+     */
+    public static final int MAX_READS_PER_HOUR = 1000;
+
+    /**
+     * The name of the file the schedule is kept in.
+     */
+    public static final String FILE_NAME = "sync-schedule.json";
+
+    /**
+     * An hour, in milliseconds.
+     */
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * The statuses that are read every TERMINAL_INTERVAL.
+     */
+    private static final Set<Phenotype.Status> TERMINAL = ImmutableSet.of(Phenotype.Status.REJECTED,
+            Phenotype.Status.PUBLISHED);
+
+    /**
+     * The object mapper to keep the schedule with.
+     */
+    private ObjectMapper mapper;
+
+    /**
+     * The file the schedule is kept in, once initialized.
+     */
+    private Path file;
+
+    /**
+     * The schedule.
+     */
+    private State state = new State();
+
+    /**
+     * CTOR.
+     * @param mapper the object mapper
+     */
+    @Inject
+    SyncSchedule(ObjectMapper mapper)
+    {
+        this.mapper = mapper;
+    }
+
+    /**
+     * Load the schedule kept in the home directory given, if any.
+     * A schedule that can't be made sense of is dropped, and everything starts over.
+     * @param home the home directory
+     * @throws IOException if it can't be read
+     */
+    public synchronized void init(Path home) throws IOException
+    {
+        file = home.resolve(FILE_NAME);
+        state = new State();
+        if (Files.isRegularFile(file)) {
+            try {
+                state = mapper.readValue(file.toFile(), State.class);
+            } catch (JsonProcessingException e) {
+                /* It's only a schedule, so everything will just be due */
+                return;
+            }
+        }
+    }
+
+    /**
+     * Save the schedule to the home directory.
+     * @throws IOException if it can't be written
+     */
+    public synchronized void save() throws IOException
+    {
+        if (file == null) {
+            return;
+        }
+        Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+        mapper.writeValue(tmp.toFile(), state);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Get the phenotypes that are due a read, most overdue first, and no more than are left of
+     * this hour's reads. Those are taken as read, whether or not they actually are.
+     * Anything that's not among the phenotypes given is forgotten, and anything that wasn't known
+     * yet is scheduled its first interval from now, or due right away if it's never been modified
+     * that we know of. Phenotypes without an id can't be told apart, so they're always due.
+     * @param phenotypes every phenotype that could be synced
+     * @param now the time now, in milliseconds since the epoch
+     * @return the phenotypes to read, and how many were left out because of the hourly limit
+     */
+    synchronized Due due(Collection<Phenotype> phenotypes, long now)
+    {
+        Set<String> seen = new HashSet<>();
+        final Map<Phenotype, Entry> due = new IdentityHashMap<>();
+        for (Phenotype pt : phenotypes) {
+            if (!pt.getId().isPresent()) {
+                due.put(pt, new Entry(0, MIN_INTERVAL));
+                continue;
+            }
+            String id = pt.getId().get();
+            seen.add(id);
+            Entry entry = state.entries.get(id);
+            if (entry == null) {
+                long interval = firstInterval(pt, now);
+                entry = new Entry(pt.getTimeModified().isPresent() ? now + interval : now, interval);
+                state.entries.put(id, entry);
+            }
+            if (entry.due <= now) {
+                due.put(pt, entry);
+            }
+        }
+        state.entries.keySet().retainAll(seen);
+        PriorityQueue<Phenotype> queue = new PriorityQueue<>(Math.max(due.size(), 1), new Comparator<Phenotype>()
+        {
+            @Override
+            public int compare(Phenotype a, Phenotype b)
+            {
+                Entry x = due.get(a);
+                Entry y = due.get(b);
+                /* The most active go first among those due at once */
+                int cmp = Long.compare(x.due, y.due);
+                return cmp != 0 ? cmp : Long.compare(x.interval, y.interval);
+            }
+        });
+        queue.addAll(due.keySet());
+        int budget = MAX_READS_PER_HOUR - readsSince(now - HOUR);
+        List<Phenotype> read = new ArrayList<>(Math.max(Math.min(budget, queue.size()), 0));
+        while (read.size() < budget && !queue.isEmpty()) {
+            read.add(queue.poll());
+        }
+        if (!read.isEmpty()) {
+            state.reads.add(new long[] { now, read.size() });
+        }
+        return new Due(read, queue.size());
+    }
+
+    /**
+     * Reschedule a phenotype that's just been read.
+     * @param pt the phenotype, as read
+     * @param changed whether anything changed
+     * @param now the time now, in milliseconds since the epoch
+     */
+    synchronized void record(Phenotype pt, boolean changed, long now)
+    {
+        if (!pt.getId().isPresent()) {
+            return;
+        }
+        Entry entry = state.entries.get(pt.getId().get());
+        if (entry == null) {
+            entry = new Entry(now, MIN_INTERVAL);
+            state.entries.put(pt.getId().get(), entry);
+        }
+        if (TERMINAL.contains(pt.getStatus())) {
+            entry.interval = TERMINAL_INTERVAL;
+        } else if (changed) {
+            entry.interval = MIN_INTERVAL;
+        } else {
+            entry.interval = Math.min(Math.max(entry.interval * 2, MIN_INTERVAL), MAX_INTERVAL);
+        }
+        entry.due = now + entry.interval;
+    }
+
+    /**
+     * Get when a phenotype is next due.
+     * @param id the phenotype's id
+     * @return the time it's due, in milliseconds since the epoch, or -1 if it's not known
+     */
+    synchronized long getDue(String id)
+    {
+        Entry entry = state.entries.get(id);
+        return entry == null ? -1 : entry.due;
+    }
+
+    /**
+     * Work out the interval for a phenotype that's never been read. The longer it's gone without
+     * changing, the longer it's likely to keep going.
+     * @param pt the phenotype
+     * @param now the time now
+     * @return the interval
+     */
+    private static long firstInterval(Phenotype pt, long now)
+    {
+        if (TERMINAL.contains(pt.getStatus())) {
+            return TERMINAL_INTERVAL;
+        }
+        if (!pt.getTimeModified().isPresent()) {
+            return MIN_INTERVAL;
+        }
+        long stable = now - pt.getTimeModified().get().getTime();
+        return Math.min(Math.max(stable / 2, MIN_INTERVAL), MAX_INTERVAL);
+    }
+
+    /**
+     * Count the reads after the time given, forgetting any from before it.
+     * @param since the time
+     * @return how many
+     */
+    private int readsSince(long since)
+    {
+        int count = 0;
+        Iterator<long[]> it = state.reads.iterator();
+        while (it.hasNext()) {
+            long[] reads = it.next();
+            if (reads[0] <= since) {
+                it.remove();
+            } else {
+                count += reads[1];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * What's due for a sync.
+     */
+    static final class Due
+    {
+        /**
+         * The phenotypes to read, in order.
+         */
+        final List<Phenotype> phenotypes;
+
+        /**
+         * How many more were due, but are left for later because of the hourly limit.
+         */
+        final int deferred;
+
+        /**
+         * CTOR.
+         * @param phenotypes the phenotypes to read
+         * @param deferred how many more were due
+         */
+        Due(List<Phenotype> phenotypes, int deferred)
+        {
+            this.phenotypes = phenotypes;
+            this.deferred = deferred;
+        }
+    }
+
+    /**
+     * When a phenotype is next due, and how long since its last read that is.
+     */
+    static final class Entry
+    {
+        /**
+         * When it's due, in milliseconds since the epoch.
+         */
+        public long due;
+
+        /**
+         * The interval, in milliseconds.
+         */
+        public long interval;
+
+        /**
+         * CTOR, for deserialization.
+         */
+        Entry()
+        {
+        }
+
+        /**
+         * CTOR.
+         * @param due when it's due
+         * @param interval the interval
+         */
+        Entry(long due, long interval)
+        {
+            this.due = due;
+            this.interval = interval;
+        }
+    }
+
+    /**
+     * The whole schedule, as it's kept.
+     */
+    static final class State
+    {
+        /**
+         * The phenotypes, by id.
+         */
+        public Map<String, Entry> entries = new HashMap<>();
+
+        /**
+         * The reads of the last hour, as pairs of when and how many.
+         */
+        public List<long[]> reads = new ArrayList<>();
+    }
+}
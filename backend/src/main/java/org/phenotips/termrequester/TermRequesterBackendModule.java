@@ -19,11 +19,15 @@
 
 import org.phenotips.termrequester.db.solr.SolrModule;
 import org.phenotips.termrequester.github.GithubModule;
+import org.phenotips.termrequester.metrics.MetricsModule;
+import org.phenotips.termrequester.ontology.OntologyModule;
+import org.phenotips.termrequester.tracing.TracingModule;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.Module;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
 
@@ -35,11 +39,36 @@
  */
 public class TermRequesterBackendModule extends AbstractModule
 {
+    /**
+     * The module binding the database service to use.
+     */
+    private Module databaseModule;
+
+    /**
+     * CTOR. Keeps phenotypes in solr.
+     */
+    public TermRequesterBackendModule()
+    {
+        this(new SolrModule());
+    }
+
+    /**
+     * CTOR.
+     * @param databaseModule the module binding the DatabaseService to use, e.g. a SolrModule or an MVStoreModule
+     */
+    public TermRequesterBackendModule(Module databaseModule)
+    {
+        this.databaseModule = databaseModule;
+    }
+
     @Override
     public void configure()
     {
         install(new GithubModule());
-        install(new SolrModule());
+        install(databaseModule);
+        install(new OntologyModule());
+        install(new MetricsModule());
+        install(new TracingModule());
         bind(PhenotypeManager.class).to(PhenotypeManagerImpl.class);
     }
 
@@ -18,12 +18,18 @@
 package org.phenotips.termrequester.db;
 
 import org.phenotips.termrequester.Phenotype;
+import org.phenotips.termrequester.PhenotypeVisitor;
 
 import java.io.IOException;
 
 import java.nio.file.Path;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Optional;
 
 /**
  * Connects to a database of some kind, keeps track of phenotypes, etc.
@@ -48,6 +54,14 @@
      */
     void shutdown() throws IOException;
 
+    /**
+     * Get whether this service has finished starting up. Initialization may carry on in the
+     * background after init() returns; until it's done, every other method will block.
+     *
+     * @return whether the service is ready to take requests without waiting
+     */
+    boolean isReady();
+
     /**
      * Write any changes made since the last commit. Will block while doing so.
      *
@@ -65,6 +79,16 @@
      */
     Phenotype savePhenotype(Phenotype phenotype) throws IOException;
 
+    /**
+     * Save all the phenotypes given, as savePhenotype would, but as a single write.
+     * New phenotypes are given consecutive ids in list order.
+     *
+     * @param phenotypes the phenotypes
+     * @return the saved phenotypes
+     * @throws IOException on solr failure
+     */
+    List<Phenotype> savePhenotypes(List<Phenotype> phenotypes) throws IOException;
+
     /**
      * Delete a phenotype from the db.
      *
@@ -83,6 +107,25 @@
      */
     Phenotype getPhenotypeById(String id) throws IOException;
 
+    /**
+     * Get all the phenotypes matching the ids given, in one go.
+     *
+     * @param ids the ids
+     * @return the phenotypes found, keyed by id. Ids that match nothing are left out.
+     * @throws IOException on solr failure
+     */
+    Map<String, Phenotype> getPhenotypesById(Collection<String> ids) throws IOException;
+
+    /**
+     * If the phenotype with the id given was accepted as a synonym, get the hpo id of the phenotype
+     * it was merged into. This is kept in memory, so it's much cheaper than fetching the phenotype.
+     *
+     * @param id the id
+     * @return the hpo id it redirects to, if it is a synonym
+     * @throws IOException on solr failure
+     */
+    Optional<String> getRedirect(String id) throws IOException;
+
     /**
      * Get a phenotype that's equivalent to the one given (this may include ids, names or synonyms).
      *
@@ -92,6 +135,16 @@
      */
     Phenotype getPhenotype(Phenotype phenotype) throws IOException;
 
+    /**
+     * Get, for each of the phenotypes given, an equivalent one as getPhenotype would.
+     * Looks them up in as few queries as possible, rather than one per phenotype.
+     *
+     * @param phenotypes the phenotypes to look for
+     * @return a list parallel to the one given, holding the existing phenotypes or the null phenotype
+     * @throws IOException on solr failure
+     */
+    List<Phenotype> getPhenotypes(List<Phenotype> phenotypes) throws IOException;
+
     /**
      * Get a phenotype by issue number.
      *
@@ -122,6 +175,16 @@
      */
     Phenotype getPhenotypeByHpoId(String hpoId) throws IOException;
 
+    /**
+     * Get all the phenotypes with the hpo ids given, in one go.
+     * As with getPhenotypeByHpoId, phenotypes marked as synonyms will not be returned.
+     *
+     * @param hpoIds the hpo ids
+     * @return the phenotypes found, keyed by hpo id. Hpo ids that match nothing are left out.
+     * @throws IOException on solr failure
+     */
+    Map<String, Phenotype> getPhenotypesByHpoId(Collection<String> hpoIds) throws IOException;
+
     /**
      * Search the database for the text given.
      * Will not return any phenotypes marked as synonyms.
@@ -132,6 +195,20 @@
      */
     List<Phenotype> searchPhenotypes(String text) throws IOException;
 
+    /**
+     * Walk through every phenotype in the database (synonyms included), in id order, and hand
+     * each of them to the visitor given.
+     * Phenotypes are read a page at a time, so this can go over the whole database without
+     * holding it in memory.
+     *
+     * @param status if present, only phenotypes with this status will be visited
+     * @param modifiedSince if present, only phenotypes modified at or after this time will be visited
+     * @param visitor the visitor
+     * @throws IOException on solr failure, or if the visitor throws
+     */
+    void exportPhenotypes(Optional<Phenotype.Status> status, Optional<Date> modifiedSince,
+            PhenotypeVisitor visitor) throws IOException;
+
     /**
      * Set whether the service ought to commit at the end of every write.
      *
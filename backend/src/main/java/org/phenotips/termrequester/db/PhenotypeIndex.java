@@ -0,0 +1,170 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.db;
+
+import org.phenotips.termrequester.Phenotype;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Optional;
+
+/**
+ * An in-memory index over the phenotypes in a database, kept up to date as phenotypes are
+ * saved and deleted, so that database services can answer the lookups it covers without
+ * searching the database at all.
+ * Holds nothing but ids, so it's cheap enough to keep for the whole database, and can always
+ * be rebuilt from the database itself.
+ * Lookups don't lock, so they never wait behind saves; changes are made one at a time, and never
+ * take an entry away before its replacement is in place.
+ *
+ * @version $Id$
+ */
+public class PhenotypeIndex
+{
+    /**
+     * The hpo id each phenotype accepted as a synonym redirects to, by the synonym's id.
+     */
+    private ConcurrentMap<String, String> redirects = new ConcurrentHashMap<>();
+
+    /**
+     * The id of the accepted phenotype with each hpo id.
+     */
+    private ConcurrentMap<String, String> byHpoId = new ConcurrentHashMap<>();
+
+    /**
+     * The id of the phenotype with each issue number.
+     */
+    private ConcurrentMap<String, String> byIssueNumber = new ConcurrentHashMap<>();
+
+    /**
+     * The hpo id and issue number each phenotype is indexed under, by id, so that
+     * stale entries can be found when it changes or goes away. Only touched while changing the index.
+     */
+    private Map<String, String[]> keys = new HashMap<>();
+
+    /**
+     * Bring the index up to date with the phenotype given, which has just been saved.
+     *
+     * @param pt the phenotype
+     */
+    public synchronized void update(Phenotype pt)
+    {
+        String id = pt.getId().get();
+        String hpoId = null;
+        String issueNumber = pt.getIssueNumber().orNull();
+        if (Phenotype.Status.SYNONYM.equals(pt.getStatus()) && pt.getHpoId().isPresent()) {
+            redirects.put(id, pt.getHpoId().get());
+        } else {
+            redirects.remove(id);
+            if (Phenotype.Status.ACCEPTED.equals(pt.getStatus()) && pt.getHpoId().isPresent()) {
+                hpoId = pt.getHpoId().get();
+                byHpoId.put(hpoId, id);
+            }
+        }
+        if (issueNumber != null) {
+            byIssueNumber.put(issueNumber, id);
+        }
+        /* Only now that the new entries are in, drop whatever the old ones were */
+        String[] old = keys.remove(id);
+        if (old != null) {
+            removeIfChanged(byHpoId, old[0], hpoId, id);
+            removeIfChanged(byIssueNumber, old[1], issueNumber, id);
+        }
+        if (hpoId != null || issueNumber != null) {
+            keys.put(id, new String[] {hpoId, issueNumber});
+        }
+    }
+
+    /**
+     * Remove the phenotype with the id given from the index.
+     *
+     * @param id the id of the deleted phenotype
+     */
+    public synchronized void remove(String id)
+    {
+        redirects.remove(id);
+        String[] old = keys.remove(id);
+        if (old != null) {
+            removeIfChanged(byHpoId, old[0], null, id);
+            removeIfChanged(byIssueNumber, old[1], null, id);
+        }
+    }
+
+    /**
+     * Empty the index out.
+     */
+    public synchronized void clear()
+    {
+        redirects.clear();
+        byHpoId.clear();
+        byIssueNumber.clear();
+        keys.clear();
+    }
+
+    /**
+     * Get the hpo id the phenotype with the id given redirects to, if it was accepted as a synonym.
+     *
+     * @param id the id of the phenotype
+     * @return the hpo id, if the phenotype is a synonym
+     */
+    public Optional<String> getRedirect(String id)
+    {
+        return Optional.fromNullable(redirects.get(id));
+    }
+
+    /**
+     * Get the id of the accepted phenotype with the hpo id given.
+     *
+     * @param hpoId the hpo id
+     * @return the id, if there's such a phenotype
+     */
+    public Optional<String> getIdByHpoId(String hpoId)
+    {
+        return Optional.fromNullable(byHpoId.get(hpoId));
+    }
+
+    /**
+     * Get the id of the phenotype with the issue number given.
+     *
+     * @param issueNumber the issue number
+     * @return the id, if there's such a phenotype
+     */
+    public Optional<String> getIdByIssueNumber(String issueNumber)
+    {
+        return Optional.fromNullable(byIssueNumber.get(issueNumber));
+    }
+
+    /**
+     * Remove the old key given from the map given, unless it's still the phenotype's key, or it
+     * doesn't point at the id given anymore because some other phenotype has taken it over since.
+     *
+     * @param map the map
+     * @param oldKey the key the phenotype was indexed under, may be null
+     * @param newKey the key it's indexed under now, may be null
+     * @param id the id
+     */
+    private void removeIfChanged(ConcurrentMap<String, String> map, String oldKey, String newKey, String id)
+    {
+        if (oldKey != null && !oldKey.equals(newKey)) {
+            map.remove(oldKey, id);
+        }
+    }
+}
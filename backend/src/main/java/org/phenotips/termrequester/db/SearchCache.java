@@ -0,0 +1,221 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.db;
+
+import org.phenotips.termrequester.Phenotype;
+import org.phenotips.termrequester.metrics.Metrics;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Caches the ids of the results of searches, by the text searched for.
+ * Entries are tied to a generation of the database; bumping the generation, which the database
+ * does whenever the results could change, makes every entry before it stale.
+ *
+ * @version $Id$
+ */
+@Singleton
+public class SearchCache
+{
+    /**
+     * The most searches to keep results for.
+     */
+    public static final int MAX_ENTRIES = 1000;
+
+    /**
+     * The cached results, by normalized search text.
+     */
+    private Cache<String, Entry> cache = CacheBuilder.newBuilder().maximumSize(MAX_ENTRIES).build();
+
+    /**
+     * The current generation.
+     */
+    private AtomicLong generation = new AtomicLong();
+
+    /**
+     * How many lookups found a current entry.
+     */
+    private AtomicLong hits = new AtomicLong();
+
+    /**
+     * How many lookups didn't.
+     */
+    private AtomicLong misses = new AtomicLong();
+
+    /**
+     * Get the current generation. Read it before running a search, and store the results under it.
+     *
+     * @return the generation
+     */
+    public long getGeneration()
+    {
+        return generation.get();
+    }
+
+    /**
+     * Make every entry so far stale.
+     */
+    public void invalidate()
+    {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Get the ids of the results for the text given, if they're cached and current.
+     *
+     * @param text the search text
+     * @return the ids, in order
+     */
+    public Optional<List<String>> get(String text)
+    {
+        String key = normalize(text);
+        Entry entry = cache.getIfPresent(key);
+        if (entry == null || entry.generation != generation.get()) {
+            misses.incrementAndGet();
+            return Optional.absent();
+        }
+        hits.incrementAndGet();
+        return Optional.<List<String>>of(entry.ids);
+    }
+
+    /**
+     * Store the results for the text given.
+     *
+     * @param text the search text
+     * @param searchGeneration the generation read before searching
+     * @param results the results
+     */
+    public void put(String text, long searchGeneration, List<Phenotype> results)
+    {
+        if (searchGeneration != generation.get()) {
+            /* Stale before it even got here */
+            return;
+        }
+        ImmutableList.Builder<String> ids = ImmutableList.builder();
+        for (Phenotype pt : results) {
+            ids.add(pt.getId().get());
+        }
+        cache.put(normalize(text), new Entry(searchGeneration, ids.build()));
+    }
+
+    /**
+     * Show the hit and miss counts among the metrics given.
+     *
+     * @param metrics the metrics
+     */
+    @Inject
+    public void reportTo(Metrics metrics)
+    {
+        metrics.gauge("db.searchCache.hits", new Supplier<Long>()
+        {
+            @Override
+            public Long get()
+            {
+                return getHitCount();
+            }
+        });
+        metrics.gauge("db.searchCache.misses", new Supplier<Long>()
+        {
+            @Override
+            public Long get()
+            {
+                return getMissCount();
+            }
+        });
+    }
+
+    /**
+     * Get how many lookups found a current entry.
+     *
+     * @return the hit count
+     */
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    /**
+     * Get how many lookups didn't find a current entry.
+     *
+     * @return the miss count
+     */
+    public long getMissCount()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Get the fraction of lookups that found a current entry, or 1 if there have been none.
+     *
+     * @return the hit rate
+     */
+    public double getHitRate()
+    {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 1.0 : (double) hitCount / total;
+    }
+
+    /**
+     * Normalize search text, so that searches that only differ in case and spacing share an entry.
+     *
+     * @param text the text
+     * @return the normalized text
+     */
+    static String normalize(String text)
+    {
+        return text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * A cached result.
+     */
+    private static final class Entry
+    {
+        /**
+         * The generation it was found in.
+         */
+        private final long generation;
+
+        /**
+         * The ids of the results, in order.
+         */
+        private final List<String> ids;
+
+        /**
+         * CTOR.
+         * @param generation the generation it was found in
+         * @param ids the ids of the results
+         */
+        Entry(long generation, List<String> ids)
+        {
+            this.generation = generation;
+            this.ids = ids;
+        }
+    }
+}
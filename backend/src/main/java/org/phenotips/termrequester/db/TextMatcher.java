@@ -0,0 +1,174 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.db;
+
+import org.phenotips.termrequester.Phenotype;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A very simple text matcher, for database services that don't have a full text engine of their own.
+ * Splits text into lowercase words and scores phenotypes by which of the query's words they contain,
+ * names counting for more than synonyms and synonyms for more than descriptions. The last word of the
+ * query also matches as a prefix, since it's most likely still being typed.
+ *
+ * @version $Id$
+ */
+public class TextMatcher
+{
+    /**
+     * Matches whatever separates words.
+     */
+    private static final Pattern SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * How much a word in the name is worth.
+     */
+    private static final int NAME_WEIGHT = 10;
+
+    /**
+     * How much a word in a synonym is worth.
+     */
+    private static final int SYNONYM_WEIGHT = 5;
+
+    /**
+     * How much a word in the description is worth.
+     */
+    private static final int DESCRIPTION_WEIGHT = 1;
+
+    /**
+     * The words in the query.
+     */
+    private List<String> words;
+
+    /**
+     * CTOR.
+     *
+     * @param text the text to match
+     */
+    public TextMatcher(String text)
+    {
+        words = new ArrayList<>(tokenize(text));
+    }
+
+    /**
+     * Score the phenotype given against the text.
+     *
+     * @param pt the phenotype
+     * @return the score, 0 if it doesn't match at all
+     */
+    public int score(Phenotype pt)
+    {
+        Set<String> name = new HashSet<>(tokenize(pt.getName()));
+        Set<String> synonyms = new HashSet<>();
+        for (String synonym : pt.getSynonyms()) {
+            synonyms.addAll(tokenize(synonym));
+        }
+        Set<String> description = new HashSet<>(tokenize(pt.getDescription()));
+        int score = 0;
+        for (int i = 0; i < words.size(); i++) {
+            String word = words.get(i);
+            boolean prefix = i == words.size() - 1;
+            score += NAME_WEIGHT * matches(name, word, prefix);
+            score += SYNONYM_WEIGHT * matches(synonyms, word, prefix);
+            score += DESCRIPTION_WEIGHT * matches(description, word, prefix);
+        }
+        return score;
+    }
+
+    /**
+     * Get the best matches among the phenotypes given, best first.
+     *
+     * @param candidates the phenotypes to look through
+     * @param rows the most results to return
+     * @return the phenotypes that match at all, up to rows of them
+     */
+    public List<Phenotype> top(Iterable<Phenotype> candidates, int rows)
+    {
+        final Map<Phenotype, Integer> scores = new IdentityHashMap<>();
+        List<Phenotype> results = new ArrayList<>();
+        for (Phenotype pt : candidates) {
+            int score = score(pt);
+            if (score > 0) {
+                scores.put(pt, score);
+                results.add(pt);
+            }
+        }
+        Collections.sort(results, new Comparator<Phenotype>()
+        {
+            @Override
+            public int compare(Phenotype a, Phenotype b)
+            {
+                return scores.get(b).compareTo(scores.get(a));
+            }
+        });
+        return results.subList(0, Math.min(rows, results.size()));
+    }
+
+    /**
+     * Split the text given into lowercase words.
+     *
+     * @param text the text
+     * @return the words, in order
+     */
+    public static List<String> tokenize(String text)
+    {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        for (String token : SEPARATOR.split(text.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Check whether the word given is among the tokens given.
+     *
+     * @param tokens the tokens
+     * @param word the word
+     * @param prefix whether the word may just be the start of a token
+     * @return 1 if it's there, 0 if it isn't
+     */
+    private int matches(Set<String> tokens, String word, boolean prefix)
+    {
+        if (tokens.contains(word)) {
+            return 1;
+        }
+        if (prefix) {
+            for (String token : tokens) {
+                if (token.startsWith(word)) {
+                    return 1;
+                }
+            }
+        }
+        return 0;
+    }
+}
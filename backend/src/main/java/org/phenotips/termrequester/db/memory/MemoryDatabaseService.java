@@ -0,0 +1,439 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.db.memory;
+
+import org.phenotips.termrequester.HPOPhenotype;
+import org.phenotips.termrequester.Phenotype;
+import org.phenotips.termrequester.PhenotypeVisitor;
+import org.phenotips.termrequester.db.DatabaseService;
+import org.phenotips.termrequester.db.PhenotypeIndex;
+import org.phenotips.termrequester.db.TextMatcher;
+import org.phenotips.termrequester.metrics.Timed;
+import org.phenotips.termrequester.utils.IdUtils;
+import org.phenotips.termrequester.utils.TitleCaseSet;
+
+import java.io.IOException;
+
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.google.common.base.Optional;
+import com.google.inject.Singleton;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Keeps phenotypes in memory, and nowhere else.
+ * Everything is lost with the JVM, so this is only good for tests and for deployments that don't
+ * need to remember anything; in exchange it starts instantly.
+ * Reads don't lock, writes are serialized.
+ *
+ * @version $Id$
+ */
+@Singleton
+@Timed("memory")
+class MemoryDatabaseService implements DatabaseService
+{
+    /**
+     * How many results to return from a search, same as solr's default.
+     */
+    private static final int SEARCH_ROWS = 10;
+
+    /**
+     * The statuses stored as HPOPhenotype instances.
+     */
+    private static final Set<Phenotype.Status> HPO_STATUSES = EnumSet.of(Phenotype.Status.ACCEPTED,
+            Phenotype.Status.SYNONYM, Phenotype.Status.PUBLISHED);
+
+    /**
+     * The phenotypes, by id. Ids are zero-padded, so this is in id order.
+     * Nothing in here is ever handed out or modified, callers only get copies.
+     */
+    private ConcurrentNavigableMap<String, Phenotype> phenotypes = new ConcurrentSkipListMap<>();
+
+    /**
+     * The id of the phenotype with each (title cased) name or synonym.
+     */
+    private ConcurrentMap<String, String> names = new ConcurrentHashMap<>();
+
+    /**
+     * The ids of the phenotypes with each status.
+     */
+    private ConcurrentMap<Phenotype.Status, Set<String>> byStatus = new ConcurrentHashMap<>();
+
+    /**
+     * The index for hpo id, issue number and synonym lookups.
+     */
+    private PhenotypeIndex index = new PhenotypeIndex();
+
+    /**
+     * Whether we've been initialized.
+     */
+    private volatile boolean up;
+
+    /**
+     * Whether we should commit at the end of every write. Makes no difference here.
+     */
+    private boolean autocommit;
+
+    /**
+     * Create a new, empty, MemoryDatabaseService.
+     */
+    MemoryDatabaseService()
+    {
+        for (Phenotype.Status status : Phenotype.Status.values()) {
+            byStatus.put(status, Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()));
+        }
+    }
+
+    @Override
+    public void init(Path path) throws IOException
+    {
+        /* Whatever we had before a shutdown is still here */
+        up = true;
+    }
+
+    @Override
+    public void shutdown() throws IOException
+    {
+        up = false;
+    }
+
+    @Override
+    public boolean isReady()
+    {
+        return up;
+    }
+
+    @Override
+    public void commit() throws IOException
+    {
+        /* Writes are visible as soon as they're made */
+        checkUp();
+    }
+
+    @Override
+    public synchronized Phenotype savePhenotype(Phenotype pt) throws IOException
+    {
+        checkUp();
+        if (!pt.isDirty()) {
+            return pt;
+        }
+        write(pt);
+        pt.setClean();
+        return pt;
+    }
+
+    @Override
+    public synchronized List<Phenotype> savePhenotypes(List<Phenotype> pts) throws IOException
+    {
+        checkUp();
+        for (Phenotype pt : pts) {
+            if (pt.isDirty()) {
+                write(pt);
+                pt.setClean();
+            }
+        }
+        return pts;
+    }
+
+    @Override
+    public synchronized boolean deletePhenotype(Phenotype pt) throws IOException
+    {
+        checkUp();
+        checkArgument(pt.getId().isPresent(), "Phenotype %s cannot be deleted without an id", pt);
+        String id = pt.getId().get();
+        Phenotype old = phenotypes.remove(id);
+        if (old == null) {
+            return false;
+        }
+        unindex(old);
+        index.remove(id);
+        return true;
+    }
+
+    @Override
+    public Phenotype getPhenotypeById(String id) throws IOException
+    {
+        checkUp();
+        return copy(phenotypes.get(id));
+    }
+
+    @Override
+    public Map<String, Phenotype> getPhenotypesById(Collection<String> ids) throws IOException
+    {
+        checkUp();
+        Map<String, Phenotype> results = new HashMap<>();
+        for (String id : ids) {
+            Phenotype pt = phenotypes.get(id);
+            if (pt != null) {
+                results.put(id, copy(pt));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public Optional<String> getRedirect(String id)
+    {
+        checkUp();
+        return index.getRedirect(id);
+    }
+
+    @Override
+    public Phenotype getPhenotype(Phenotype other) throws IOException
+    {
+        checkUp();
+        if (other.getId().isPresent() && phenotypes.containsKey(other.getId().get())) {
+            return getPhenotypeById(other.getId().get());
+        }
+        if (other.getIssueNumber().isPresent()) {
+            Phenotype pt = getPhenotypeByIssueNumber(other.getIssueNumber().get());
+            if (!Phenotype.NULL.equals(pt)) {
+                return pt;
+            }
+        }
+        for (String name : namesOf(other)) {
+            String id = names.get(name);
+            if (id != null) {
+                return getPhenotypeById(id);
+            }
+        }
+        return Phenotype.NULL;
+    }
+
+    @Override
+    public List<Phenotype> getPhenotypes(List<Phenotype> others) throws IOException
+    {
+        List<Phenotype> results = new ArrayList<>(others.size());
+        for (Phenotype other : others) {
+            results.add(getPhenotype(other));
+        }
+        return results;
+    }
+
+    @Override
+    public Phenotype getPhenotypeByIssueNumber(String number) throws IOException
+    {
+        checkUp();
+        Optional<String> id = index.getIdByIssueNumber(number);
+        if (!id.isPresent()) {
+            return Phenotype.NULL;
+        }
+        return getPhenotypeById(id.get());
+    }
+
+    @Override
+    public List<Phenotype> getPhenotypesByStatus(Phenotype.Status status) throws IOException
+    {
+        checkUp();
+        List<Phenotype> results = new ArrayList<>();
+        for (String id : byStatus.get(status)) {
+            Phenotype pt = phenotypes.get(id);
+            if (pt != null && status.equals(pt.getStatus())) {
+                results.add(copy(pt));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public Phenotype getPhenotypeByHpoId(String hpoId) throws IOException
+    {
+        checkUp();
+        Optional<String> id = index.getIdByHpoId(hpoId);
+        if (!id.isPresent()) {
+            return Phenotype.NULL;
+        }
+        return getPhenotypeById(id.get());
+    }
+
+    @Override
+    public Map<String, Phenotype> getPhenotypesByHpoId(Collection<String> hpoIds) throws IOException
+    {
+        checkUp();
+        Map<String, Phenotype> results = new HashMap<>();
+        for (String hpoId : hpoIds) {
+            Phenotype pt = getPhenotypeByHpoId(hpoId);
+            if (!Phenotype.NULL.equals(pt)) {
+                results.put(hpoId, pt);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public List<Phenotype> searchPhenotypes(String text) throws IOException
+    {
+        checkUp();
+        List<Phenotype> candidates = new ArrayList<>();
+        for (Phenotype pt : phenotypes.values()) {
+            if (!Phenotype.Status.SYNONYM.equals(pt.getStatus())) {
+                candidates.add(pt);
+            }
+        }
+        List<Phenotype> results = new ArrayList<>();
+        for (Phenotype pt : new TextMatcher(text).top(candidates, SEARCH_ROWS)) {
+            results.add(copy(pt));
+        }
+        return results;
+    }
+
+    @Override
+    public void exportPhenotypes(Optional<Phenotype.Status> status, Optional<Date> modifiedSince,
+            PhenotypeVisitor visitor) throws IOException
+    {
+        checkUp();
+        for (Phenotype pt : phenotypes.values()) {
+            if (status.isPresent() && !status.get().equals(pt.getStatus())) {
+                continue;
+            }
+            if (modifiedSince.isPresent() && pt.getTimeModified().get().before(modifiedSince.get())) {
+                continue;
+            }
+            visitor.visit(copy(pt));
+        }
+    }
+
+    @Override
+    public boolean getAutocommit()
+    {
+        return autocommit;
+    }
+
+    @Override
+    public void setAutocommit(boolean autocommit)
+    {
+        this.autocommit = autocommit;
+    }
+
+    /**
+     * Store a copy of the phenotype given, giving it an id if it doesn't have one yet and stamping
+     * its times, and bring the indexes up to date.
+     *
+     * @param pt the phenotype
+     */
+    private void write(Phenotype pt)
+    {
+        if (pt.getId().isPresent()) {
+            String id = pt.getId().get();
+            Phenotype old = phenotypes.get(id);
+            checkState(old != null, "ID %s does not exist when expected to", id);
+            unindex(old);
+        } else {
+            String last = phenotypes.isEmpty() ? null : phenotypes.lastKey();
+            pt.setId(last == null ? IdUtils.INITIAL_ID : IdUtils.incrementId(last));
+        }
+        Date now = new Date();
+        if (!pt.getTimeCreated().isPresent()) {
+            pt.setTimeCreated(now);
+        }
+        pt.setTimeModified(now);
+        String id = pt.getId().get();
+        Phenotype stored = copy(pt);
+        phenotypes.put(id, stored);
+        for (String name : namesOf(stored)) {
+            names.put(name, id);
+        }
+        byStatus.get(stored.getStatus()).add(id);
+        index.update(stored);
+    }
+
+    /**
+     * Remove the phenotype given from the names and status indexes, as long as the entries still
+     * belong to it.
+     *
+     * @param pt the phenotype, as it was stored
+     */
+    private void unindex(Phenotype pt)
+    {
+        String id = pt.getId().get();
+        for (String name : namesOf(pt)) {
+            names.remove(name, id);
+        }
+        byStatus.get(pt.getStatus()).remove(id);
+    }
+
+    /**
+     * Get the name and synonyms of the phenotype given, title cased as they're stored.
+     *
+     * @param pt the phenotype
+     * @return the names
+     */
+    private Set<String> namesOf(Phenotype pt)
+    {
+        Set<String> result = new TitleCaseSet(pt.getSynonyms());
+        result.add(pt.getName());
+        return result;
+    }
+
+    /**
+     * Copy the phenotype given, so that what we store and what we hand out can't change under
+     * each other.
+     *
+     * @param pt the phenotype, may be null
+     * @return a clean copy, or Phenotype.NULL if pt is null
+     */
+    private Phenotype copy(Phenotype pt)
+    {
+        if (pt == null) {
+            return Phenotype.NULL;
+        }
+        Phenotype result;
+        if (HPO_STATUSES.contains(pt.getStatus())) {
+            result = new HPOPhenotype(pt.getName(), pt.getDescription());
+            result.setHpoId(pt.getHpoId().orNull());
+        } else {
+            result = new Phenotype(pt.getName(), pt.getDescription());
+        }
+        result.setStatus(pt.getStatus());
+        result.setId(pt.getId().get());
+        result.addAllSynonyms(pt.getSynonyms());
+        result.addAllParentIds(pt.getParentIds());
+        result.setIssueNumber(pt.getIssueNumber().orNull());
+        result.setTimeCreated(pt.getTimeCreated().orNull());
+        result.setTimeModified(pt.getTimeModified().orNull());
+        result.setEtag(pt.getEtag());
+        result.setClean();
+        return result;
+    }
+
+    /**
+     * Check that we're up and throw if we aren't.
+     *
+     * @throws IllegalStateException if we're down.
+     */
+    private void checkUp()
+    {
+        checkState(up, "Memory database service is down");
+    }
+}
@@ -0,0 +1,449 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.db.mvstore;
+
+import org.phenotips.termrequester.Phenotype;
+import org.phenotips.termrequester.PhenotypeVisitor;
+import org.phenotips.termrequester.db.DatabaseService;
+import org.phenotips.termrequester.db.PhenotypeIndex;
+import org.phenotips.termrequester.db.TextMatcher;
+import org.phenotips.termrequester.metrics.Timed;
+import org.phenotips.termrequester.utils.IdUtils;
+import org.phenotips.termrequester.utils.TitleCaseSet;
+
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+
+import com.google.common.base.Optional;
+import com.google.inject.Singleton;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Keeps phenotypes in an embedded MVStore key-value store.
+ * Starts in a fraction of the time and memory solr needs, at the cost of full text search, which
+ * is done by a plain scan. Meant for small installations, where most traffic is lookups by id.
+ *
+ * @version $Id$
+ */
+@Singleton
+@Timed("mvstore")
+class MVStoreDatabaseService implements DatabaseService
+{
+    /**
+     * The name of the directory, under the home, where the store lives.
+     */
+    public static final String DIRECTORY = "mvstore";
+
+    /**
+     * The name of the store file.
+     */
+    public static final String FILE_NAME = "termrequester.mv.db";
+
+    /**
+     * The map holding phenotype records, by id.
+     */
+    private static final String PHENOTYPES_MAP = "phenotypes";
+
+    /**
+     * The map holding the id of the phenotype with each name or synonym.
+     */
+    private static final String NAMES_MAP = "names";
+
+    /**
+     * How many results to return from a search, same as solr's default.
+     */
+    private static final int SEARCH_ROWS = 10;
+
+    /**
+     * The store.
+     */
+    private MVStore store;
+
+    /**
+     * Phenotype records, by id. Ids are zero-padded, so this is in id order.
+     */
+    private MVMap<String, String> phenotypes;
+
+    /**
+     * The id of the phenotype with each (title cased) name or synonym.
+     */
+    private MVMap<String, String> names;
+
+    /**
+     * Whether we've been initialized.
+     */
+    private volatile boolean up;
+
+    /**
+     * Whether we should commit at the end of every write.
+     */
+    private boolean autocommit;
+
+    /**
+     * The mapper to turn phenotypes into records and back.
+     */
+    private MVStoreMapper mapper = new MVStoreMapper();
+
+    /**
+     * The in-memory index over the store.
+     */
+    private PhenotypeIndex index = new PhenotypeIndex();
+
+    @Override
+    public synchronized void init(Path path) throws IOException
+    {
+        if (!up) {
+            Path directory = path.resolve(DIRECTORY);
+            Files.createDirectories(directory);
+            try {
+                store = new MVStore.Builder().
+                    fileName(directory.resolve(FILE_NAME).toString()).
+                    autoCommitDisabled().
+                    open();
+            } catch (IllegalStateException e) {
+                throw new IOException(e);
+            }
+            phenotypes = store.openMap(PHENOTYPES_MAP);
+            names = store.openMap(NAMES_MAP);
+            index.clear();
+            for (String record : phenotypes.values()) {
+                index.update(mapper.fromRecord(record));
+            }
+            up = true;
+        }
+    }
+
+    @Override
+    public synchronized void shutdown() throws IOException
+    {
+        if (up) {
+            store.commit();
+            store.close();
+            up = false;
+        }
+    }
+
+    @Override
+    public boolean isReady()
+    {
+        return up;
+    }
+
+    @Override
+    public void commit() throws IOException
+    {
+        checkUp();
+        store.commit();
+    }
+
+    @Override
+    public synchronized Phenotype savePhenotype(Phenotype pt) throws IOException
+    {
+        checkUp();
+        if (!pt.isDirty()) {
+            return pt;
+        }
+        write(pt);
+        if (autocommit) {
+            commit();
+        }
+        pt.setClean();
+        return pt;
+    }
+
+    @Override
+    public synchronized List<Phenotype> savePhenotypes(List<Phenotype> pts) throws IOException
+    {
+        checkUp();
+        for (Phenotype pt : pts) {
+            if (pt.isDirty()) {
+                write(pt);
+            }
+        }
+        if (autocommit) {
+            commit();
+        }
+        for (Phenotype pt : pts) {
+            pt.setClean();
+        }
+        return pts;
+    }
+
+    @Override
+    public synchronized boolean deletePhenotype(Phenotype pt) throws IOException
+    {
+        checkUp();
+        checkArgument(pt.getId().isPresent(), "Phenotype %s cannot be deleted without an id", pt);
+        String id = pt.getId().get();
+        String old = phenotypes.remove(id);
+        if (old == null) {
+            return false;
+        }
+        removeNames(mapper.fromRecord(old));
+        index.remove(id);
+        if (autocommit) {
+            commit();
+        }
+        return true;
+    }
+
+    @Override
+    public Phenotype getPhenotypeById(String id) throws IOException
+    {
+        checkUp();
+        String record = phenotypes.get(id);
+        if (record == null) {
+            return Phenotype.NULL;
+        }
+        return mapper.fromRecord(record);
+    }
+
+    @Override
+    public Map<String, Phenotype> getPhenotypesById(Collection<String> ids) throws IOException
+    {
+        checkUp();
+        Map<String, Phenotype> results = new HashMap<>();
+        for (String id : ids) {
+            String record = phenotypes.get(id);
+            if (record != null) {
+                results.put(id, mapper.fromRecord(record));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public Optional<String> getRedirect(String id)
+    {
+        checkUp();
+        return index.getRedirect(id);
+    }
+
+    @Override
+    public Phenotype getPhenotype(Phenotype other) throws IOException
+    {
+        checkUp();
+        if (other.getId().isPresent() && phenotypes.containsKey(other.getId().get())) {
+            return getPhenotypeById(other.getId().get());
+        }
+        if (other.getIssueNumber().isPresent()) {
+            Phenotype pt = getPhenotypeByIssueNumber(other.getIssueNumber().get());
+            if (!Phenotype.NULL.equals(pt)) {
+                return pt;
+            }
+        }
+        for (String name : namesOf(other)) {
+            String id = names.get(name);
+            if (id != null) {
+                return getPhenotypeById(id);
+            }
+        }
+        return Phenotype.NULL;
+    }
+
+    @Override
+    public List<Phenotype> getPhenotypes(List<Phenotype> others) throws IOException
+    {
+        /* Every lookup is local, so there's nothing to gain by batching */
+        List<Phenotype> results = new ArrayList<>(others.size());
+        for (Phenotype other : others) {
+            results.add(getPhenotype(other));
+        }
+        return results;
+    }
+
+    @Override
+    public Phenotype getPhenotypeByIssueNumber(String number) throws IOException
+    {
+        checkUp();
+        Optional<String> id = index.getIdByIssueNumber(number);
+        if (!id.isPresent()) {
+            return Phenotype.NULL;
+        }
+        return getPhenotypeById(id.get());
+    }
+
+    @Override
+    public List<Phenotype> getPhenotypesByStatus(Phenotype.Status status) throws IOException
+    {
+        checkUp();
+        List<Phenotype> results = new ArrayList<>();
+        for (String record : phenotypes.values()) {
+            Phenotype pt = mapper.fromRecord(record);
+            if (status.equals(pt.getStatus())) {
+                results.add(pt);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public Phenotype getPhenotypeByHpoId(String hpoId) throws IOException
+    {
+        checkUp();
+        Optional<String> id = index.getIdByHpoId(hpoId);
+        if (!id.isPresent()) {
+            return Phenotype.NULL;
+        }
+        return getPhenotypeById(id.get());
+    }
+
+    @Override
+    public Map<String, Phenotype> getPhenotypesByHpoId(Collection<String> hpoIds) throws IOException
+    {
+        checkUp();
+        Map<String, Phenotype> results = new HashMap<>();
+        for (String hpoId : hpoIds) {
+            Phenotype pt = getPhenotypeByHpoId(hpoId);
+            if (!Phenotype.NULL.equals(pt)) {
+                results.put(hpoId, pt);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public List<Phenotype> searchPhenotypes(String text) throws IOException
+    {
+        checkUp();
+        List<Phenotype> candidates = new ArrayList<>();
+        for (String record : phenotypes.values()) {
+            Phenotype pt = mapper.fromRecord(record);
+            if (!Phenotype.Status.SYNONYM.equals(pt.getStatus())) {
+                candidates.add(pt);
+            }
+        }
+        return new TextMatcher(text).top(candidates, SEARCH_ROWS);
+    }
+
+    @Override
+    public void exportPhenotypes(Optional<Phenotype.Status> status, Optional<Date> modifiedSince,
+            PhenotypeVisitor visitor) throws IOException
+    {
+        checkUp();
+        Iterator<String> it = phenotypes.keyIterator(null);
+        while (it.hasNext()) {
+            String record = phenotypes.get(it.next());
+            if (record == null) {
+                /* Deleted from under us */
+                continue;
+            }
+            Phenotype pt = mapper.fromRecord(record);
+            if (status.isPresent() && !status.get().equals(pt.getStatus())) {
+                continue;
+            }
+            if (modifiedSince.isPresent() && pt.getTimeModified().get().before(modifiedSince.get())) {
+                continue;
+            }
+            visitor.visit(pt);
+        }
+    }
+
+    @Override
+    public boolean getAutocommit()
+    {
+        return autocommit;
+    }
+
+    @Override
+    public void setAutocommit(boolean autocommit)
+    {
+        this.autocommit = autocommit;
+    }
+
+    /**
+     * Write the phenotype given to the store, giving it an id if it doesn't have one yet,
+     * and bring the names map and the index up to date. Does not commit.
+     *
+     * @param pt the phenotype
+     * @throws IOException if it can't be written
+     */
+    private void write(Phenotype pt) throws IOException
+    {
+        if (pt.getId().isPresent()) {
+            String id = pt.getId().get();
+            String old = phenotypes.get(id);
+            checkState(old != null, "ID %s does not exist when expected to", id);
+            removeNames(mapper.fromRecord(old));
+        } else {
+            String last = phenotypes.lastKey();
+            pt.setId(last == null ? IdUtils.INITIAL_ID : IdUtils.incrementId(last));
+        }
+        String id = pt.getId().get();
+        phenotypes.put(id, mapper.toRecord(pt));
+        for (String name : namesOf(pt)) {
+            names.put(name, id);
+        }
+        index.update(pt);
+    }
+
+    /**
+     * Remove the names of the phenotype given from the names map, as long as they still
+     * belong to it.
+     *
+     * @param pt the phenotype, as it was stored
+     */
+    private void removeNames(Phenotype pt)
+    {
+        String id = pt.getId().get();
+        for (String name : namesOf(pt)) {
+            if (id.equals(names.get(name))) {
+                names.remove(name);
+            }
+        }
+    }
+
+    /**
+     * Get the name and synonyms of the phenotype given, title cased as they're stored.
+     *
+     * @param pt the phenotype
+     * @return the names
+     */
+    private Set<String> namesOf(Phenotype pt)
+    {
+        Set<String> result = new TitleCaseSet(pt.getSynonyms());
+        result.add(pt.getName());
+        return result;
+    }
+
+    /**
+     * Check that the store is up and throw if it isn't.
+     *
+     * @throws IllegalStateException if it's down.
+     */
+    private void checkUp()
+    {
+        checkState(up, "MVStore service is down");
+    }
+}
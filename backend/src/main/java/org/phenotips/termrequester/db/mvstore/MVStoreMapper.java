@@ -0,0 +1,189 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.db.mvstore;
+
+import org.phenotips.termrequester.HPOPhenotype;
+import org.phenotips.termrequester.Phenotype;
+
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Maps a Phenotype object to the record we keep in the store (and back).
+ * Records are small json objects, so the store stays readable and doesn't depend on
+ * java serialization of our classes.
+ *
+ * @version $Id$
+ */
+class MVStoreMapper
+{
+    /**
+     * The id field.
+     */
+    static final String ID = "id";
+
+    /**
+     * The name field.
+     */
+    static final String NAME = "name";
+
+    /**
+     * The description field.
+     */
+    static final String DEFINITION = "def";
+
+    /**
+     * The status field.
+     */
+    static final String STATUS = "status";
+
+    /**
+     * The issue number field.
+     */
+    static final String ISSUE_NUMBER = "issueNumber";
+
+    /**
+     * The hpo id field.
+     */
+    static final String HPO_ID = "hpoId";
+
+    /**
+     * The synonyms field.
+     */
+    static final String SYNONYM = "synonym";
+
+    /**
+     * The parents field.
+     */
+    static final String PARENT = "is_a";
+
+    /**
+     * The etag field.
+     */
+    static final String ETAG = "etag";
+
+    /**
+     * The time created field, in milliseconds since the epoch.
+     */
+    static final String TIME_CREATED = "time_created";
+
+    /**
+     * The time modified field, in milliseconds since the epoch.
+     */
+    static final String TIME_MODIFIED = "time_modified";
+
+    /**
+     * The type of a record once read back from json.
+     */
+    private static final TypeReference<Map<String, Object>> RECORD_TYPE =
+        new TypeReference<Map<String, Object>>() { };
+
+    /**
+     * The object mapper to write records with.
+     */
+    private ObjectMapper json = new ObjectMapper();
+
+    /**
+     * Convert the Phenotype given to a record, stamping its modification time (and creation time,
+     * if it's new) on it.
+     * @param pt the phenotype
+     * @return the record
+     * @throws IOException if it can't be written out
+     */
+    public String toRecord(Phenotype pt) throws IOException
+    {
+        checkArgument(pt.getId().isPresent(), "Missing id for " + pt);
+        Date now = new Date();
+        if (!pt.getTimeCreated().isPresent()) {
+            pt.setTimeCreated(now);
+        }
+        pt.setTimeModified(now);
+        Map<String, Object> record = new HashMap<>();
+        record.put(ID, pt.getId().get());
+        record.put(NAME, pt.getName());
+        record.put(DEFINITION, pt.getDescription());
+        record.put(STATUS, pt.getStatus().name());
+        record.put(ISSUE_NUMBER, pt.getIssueNumber().orNull());
+        record.put(HPO_ID, pt.getHpoId().orNull());
+        record.put(SYNONYM, new ArrayList<>(pt.getSynonyms()));
+        record.put(PARENT, new ArrayList<>(pt.getParentIds()));
+        record.put(ETAG, pt.getEtag());
+        record.put(TIME_CREATED, pt.getTimeCreated().get().getTime());
+        record.put(TIME_MODIFIED, now.getTime());
+        return json.writeValueAsString(record);
+    }
+
+    /**
+     * Turn the record given into a Phenotype instance.
+     * @param recordString the record
+     * @return the instance
+     * @throws IOException if the record is malformed
+     */
+    public Phenotype fromRecord(String recordString) throws IOException
+    {
+        Map<String, Object> record = json.readValue(recordString, RECORD_TYPE);
+        String name = (String) record.get(NAME);
+        String description = (String) record.get(DEFINITION);
+        Phenotype.Status status = Phenotype.Status.valueOf((String) record.get(STATUS));
+        Phenotype pt;
+        if (EnumSet.of(Phenotype.Status.ACCEPTED, Phenotype.Status.SYNONYM,
+                       Phenotype.Status.PUBLISHED).contains(status)) {
+            pt = new HPOPhenotype(name, description);
+            pt.setHpoId((String) record.get(HPO_ID));
+        } else {
+            pt = new Phenotype(name, description);
+        }
+        pt.setStatus(status);
+        pt.setId((String) record.get(ID));
+        pt.addAllSynonyms(getStrings(record, SYNONYM));
+        pt.addAllParentIds(getStrings(record, PARENT));
+        pt.setIssueNumber((String) record.get(ISSUE_NUMBER));
+        pt.setTimeCreated(new Date(((Number) record.get(TIME_CREATED)).longValue()));
+        pt.setTimeModified(new Date(((Number) record.get(TIME_MODIFIED)).longValue()));
+        pt.setEtag((String) record.get(ETAG));
+        pt.setClean();
+        return pt;
+    }
+
+    /**
+     * Get a list of strings out of the record given.
+     * @param record the record
+     * @param field the field holding the list
+     * @return the strings
+     */
+    @SuppressWarnings("unchecked")
+    private List<String> getStrings(Map<String, Object> record, String field)
+    {
+        Object value = record.get(field);
+        if (value == null) {
+            return new ArrayList<>();
+        }
+        return (List<String>) value;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.db.solr;
+
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the most recent distinct search queries, so that they can be replayed to warm up a
+ * fresh searcher, and across restarts.
+ *
+ * @version $Id$
+ */
+class QuerySample
+{
+    /**
+     * How many queries to keep.
+     */
+    private final int capacity;
+
+    /**
+     * The queries, least recent first.
+     */
+    private Set<String> queries = new LinkedHashSet<>();
+
+    /**
+     * CTOR.
+     * @param capacity how many queries to keep
+     */
+    QuerySample(int capacity)
+    {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Record a query, making it the most recent one and dropping the least recent if we're full.
+     * @param text the query
+     */
+    public synchronized void record(String text)
+    {
+        String query = text.replaceAll("\\s+", " ").trim();
+        if (query.isEmpty()) {
+            return;
+        }
+        queries.remove(query);
+        queries.add(query);
+        if (queries.size() > capacity) {
+            Iterator<String> it = queries.iterator();
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * Get the queries, least recent first.
+     * @return the queries
+     */
+    public synchronized List<String> getQueries()
+    {
+        return new ArrayList<>(queries);
+    }
+
+    /**
+     * Add the queries saved in the file given, if it exists.
+     * @param file the file
+     * @throws IOException if it can't be read
+     */
+    public void load(Path file) throws IOException
+    {
+        if (Files.isRegularFile(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                record(line);
+            }
+        }
+    }
+
+    /**
+     * Save the queries to the file given, one per line.
+     * @param file the file
+     * @throws IOException if it can't be written
+     */
+    public void save(Path file) throws IOException
+    {
+        Files.write(file, getQueries(), StandardCharsets.UTF_8);
+    }
+}
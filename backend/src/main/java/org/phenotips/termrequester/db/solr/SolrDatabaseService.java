@@ -18,21 +18,31 @@
 package org.phenotips.termrequester.db.solr;
 
 import org.phenotips.termrequester.Phenotype;
+import org.phenotips.termrequester.PhenotypeVisitor;
 import org.phenotips.termrequester.db.DatabaseService;
+import org.phenotips.termrequester.db.PhenotypeIndex;
+import org.phenotips.termrequester.db.SearchCache;
+import org.phenotips.termrequester.metrics.Timed;
 import org.phenotips.termrequester.utils.IdUtils;
-import org.phenotips.variantstore.db.DatabaseException;
-import org.phenotips.variantstore.shared.ResourceManager;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.commons.lang3.time.DateFormatUtils;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
@@ -41,12 +51,16 @@
 import org.apache.solr.client.solrj.util.ClientUtils;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrInputDocument;
-import org.apache.solr.common.params.CommonParams;
-import org.apache.solr.common.params.DisMaxParams;
+import org.apache.solr.common.params.CursorMarkParams;
 import org.apache.solr.common.params.SpellingParams;
 import org.apache.solr.core.CoreContainer;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -58,6 +72,7 @@
  * @version $Id : $
  */
 @Singleton
+@Timed("solr")
 class SolrDatabaseService implements DatabaseService
 {
     /* Lots of this came from org.phenotips.variantstore.db.solr.SolrController */
@@ -72,6 +87,11 @@ class SolrDatabaseService implements DatabaseService
      */
     public static final String CORE_NAME = "termrequester";
 
+    /**
+     * The request handler, defined in solrconfig.xml, that runs phenotype searches.
+     */
+    public static final String SEARCH_HANDLER = "/search";
+
 
     /**
      * A joiner to join different parts of a Solr query with an OR.
@@ -83,6 +103,37 @@ class SolrDatabaseService implements DatabaseService
      */
     private static final String FIELD_IS = "%s:\"%s\"";
 
+    /**
+     * A query string format to check that a field is at least some value.
+     */
+    private static final String FIELD_AT_LEAST = "%s:[%s TO *]";
+
+    /**
+     * The format solr expects dates in, always in UTC.
+     */
+    private static final String SOLR_DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
+
+    /**
+     * How many documents to read at a time when exporting.
+     */
+    static final int EXPORT_PAGE_SIZE = 500;
+
+    /**
+     * The most clauses we'll put in a single query. Solr will refuse anything over its
+     * maxBooleanClauses (1024 in our solrconfig.xml), so stay a bit under that.
+     */
+    static final int MAX_QUERY_CLAUSES = 1000;
+
+    /**
+     * The file, in the solr home, holding the queries to warm up with.
+     */
+    static final String WARMUP_FILE = "warmup-queries.txt";
+
+    /**
+     * How many recent queries to warm up with.
+     */
+    static final int WARMUP_QUERIES = 100;
+
     /**
      * The path where the database is.
      */
@@ -101,7 +152,12 @@ class SolrDatabaseService implements DatabaseService
     /**
      * Whether we've been initialized.
      */
-    private boolean up;
+    private volatile boolean up;
+
+    /**
+     * The loading of the solr core, which happens in the background after init.
+     */
+    private volatile Future<Void> loading;
 
     /**
      * Whether we should commit at the end of every write.
@@ -113,27 +169,67 @@ class SolrDatabaseService implements DatabaseService
      */
     private SolrMapper mapper;
 
+    /**
+     * The in-memory index over what's stored in solr.
+     */
+    private PhenotypeIndex index = new PhenotypeIndex();
+
+    /**
+     * Recent searches, to warm up with next time we start.
+     */
+    private QuerySample sample;
+
+    /**
+     * The ids of recent search results.
+     */
+    private SearchCache searchCache;
+
+    /**
+     * The next id to hand out. Guarded by idLock.
+     */
+    private String nextId;
+
+    /**
+     * The lock to hand out ids under.
+     */
+    private final Object idLock = new Object();
+
+    /**
+     * CTOR.
+     * @param searchCache the cache to keep search results in
+     */
+    @Inject
+    SolrDatabaseService(SearchCache searchCache)
+    {
+        this.searchCache = searchCache;
+    }
+
     @Override
     public synchronized void init(Path path) throws IOException
     {
         /* Make sure initialization is idempotent */
         if (!up) {
-            up = true;
-            File resources;
             this.path = path.resolve("solr");
-            try {
-                ResourceManager.copyResourcesToPath(Paths.get("solr/"), this.path, SolrDatabaseService.class);
-            } catch (DatabaseException e) {
-                throw new IOException(e);
-            }
-            cores = new CoreContainer(this.path.toString());
-            cores.load();
-            server = new EmbeddedSolrServer(cores, CORE_NAME);
-            if (server == null) {
-                up = false;
-                throw new IOException("Solr returned null server");
-            }
+            SolrResources.materialize(this.path);
             mapper = new SolrMapper();
+            sample = new QuerySample(WARMUP_QUERIES);
+            /* Loading the core is most of our start up time, so let the caller get on with theirs.
+             * Everything but isReady() waits for it to finish. */
+            ExecutorService loader = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().
+                    setNameFormat("termrequester-solr-loader").
+                    setDaemon(true).
+                    build());
+            loading = loader.submit(new Callable<Void>()
+            {
+                @Override
+                public Void call() throws IOException
+                {
+                    load();
+                    return null;
+                }
+            });
+            loader.shutdown();
+            up = true;
         }
     }
 
@@ -141,19 +237,34 @@ public synchronized void init(Path path) throws IOException
     public synchronized void shutdown() throws IOException
     {
         if (up) {
-            commit();
-            server.close();
-            cores.shutdown();
-            up = false;
+            try {
+                awaitLoaded();
+                commit();
+                server.close();
+                sample.save(this.path.resolve(WARMUP_FILE));
+            } finally {
+                if (cores != null) {
+                    cores.shutdown();
+                    cores = null;
+                }
+                up = false;
+            }
         }
     }
 
+    @Override
+    public boolean isReady()
+    {
+        return up && loading.isDone();
+    }
+
     @Override
     public void commit() throws IOException
     {
         checkUp();
         try {
             server.commit();
+            searchCache.invalidate();
         } catch (SolrServerException e) {
             throw new IOException(e);
         }
@@ -176,8 +287,7 @@ public Phenotype savePhenotype(Phenotype pt) throws IOException
                 throw new IOException(e);
             }
         } else {
-            String nextId = getNextId();
-            pt.setId(nextId);
+            pt.setId(allocateId());
         }
         SolrInputDocument doc = mapper.toDoc(pt);
         pt.setTimeCreated((Date) doc.getFieldValue(Schema.TIME_CREATED));
@@ -187,6 +297,7 @@ public Phenotype savePhenotype(Phenotype pt) throws IOException
         } catch (SolrServerException e) {
             throw new IOException(e);
         }
+        index.update(pt);
         if (autocommit) {
             commit();
         }
@@ -194,6 +305,46 @@ public Phenotype savePhenotype(Phenotype pt) throws IOException
         return pt;
     }
 
+    @Override
+    public List<Phenotype> savePhenotypes(List<Phenotype> phenotypes) throws IOException
+    {
+        checkUp();
+        List<SolrInputDocument> docs = new ArrayList<>(phenotypes.size());
+        for (Phenotype pt : phenotypes) {
+            if (!pt.isDirty()) {
+                continue;
+            }
+            if (!pt.getId().isPresent()) {
+                pt.setId(allocateId());
+            }
+            /* Adding a document with an existing id replaces it, so there's no need to delete */
+            SolrInputDocument doc = mapper.toDoc(pt);
+            pt.setTimeCreated((Date) doc.getFieldValue(Schema.TIME_CREATED));
+            pt.setTimeModified((Date) doc.getFieldValue(Schema.TIME_MODIFIED));
+            docs.add(doc);
+        }
+        if (docs.isEmpty()) {
+            return phenotypes;
+        }
+        try {
+            server.add(docs);
+        } catch (SolrServerException e) {
+            throw new IOException(e);
+        }
+        for (Phenotype pt : phenotypes) {
+            if (pt.isDirty()) {
+                index.update(pt);
+            }
+        }
+        if (autocommit) {
+            commit();
+        }
+        for (Phenotype pt : phenotypes) {
+            pt.setClean();
+        }
+        return phenotypes;
+    }
+
     @Override
     public boolean deletePhenotype(Phenotype pt) throws IOException
     {
@@ -205,6 +356,7 @@ public boolean deletePhenotype(Phenotype pt) throws IOException
                 return false;
             }
             server.deleteById(pt.getId().get());
+            index.remove(pt.getId().get());
             if (autocommit) {
                 commit();
             }
@@ -230,91 +382,148 @@ public Phenotype getPhenotypeById(String id) throws IOException
         }
     }
 
+    @Override
+    public Map<String, Phenotype> getPhenotypesById(Collection<String> ids) throws IOException
+    {
+        checkUp();
+        Map<String, Phenotype> results = new HashMap<>();
+        if (ids.isEmpty()) {
+            return results;
+        }
+        try {
+            for (SolrDocument doc : server.getById(ids)) {
+                Phenotype pt = mapper.fromDoc(doc);
+                results.put(pt.getId().get(), pt);
+            }
+        } catch (SolrServerException e) {
+            throw new IOException(e);
+        }
+        return results;
+    }
+
+    @Override
+    public Optional<String> getRedirect(String id) throws IOException
+    {
+        checkUp();
+        return index.getRedirect(id);
+    }
+
     @Override
     public Phenotype getPhenotypeByIssueNumber(String issueNumber) throws IOException
     {
         checkUp();
-        return getPhenotypeByField(Schema.ISSUE_NUMBER, issueNumber);
+        Optional<String> id = index.getIdByIssueNumber(issueNumber);
+        if (!id.isPresent()) {
+            return Phenotype.NULL;
+        }
+        return getPhenotypeById(id.get());
     }
 
     @Override
     public Phenotype getPhenotypeByHpoId(String hpoId) throws IOException
     {
         checkUp();
-        String queryString = String.format("(%s) AND (%s)",
-                String.format(FIELD_IS, Schema.STATUS, Phenotype.Status.ACCEPTED.toString()),
-                String.format(FIELD_IS, Schema.HPO_ID, hpoId));
-        SolrQuery q = new SolrQuery().setQuery(queryString).setRows(1);
-        return runQuery(q);
+        Optional<String> id = index.getIdByHpoId(hpoId);
+        if (!id.isPresent()) {
+            return Phenotype.NULL;
+        }
+        return getPhenotypeById(id.get());
     }
 
     @Override
-    public Phenotype getPhenotype(Phenotype other) throws IOException
+    public Map<String, Phenotype> getPhenotypesByHpoId(Collection<String> hpoIds) throws IOException
     {
         checkUp();
-        Set<String> names = other.getSynonyms();
-        names.add(other.getName());
-        List<String> queryPieces = new ArrayList<>(names.size() * 2 + 2);
-        if (other.getId().isPresent()) {
-            queryPieces.add(String.format(FIELD_IS, Schema.ID,
-                        ClientUtils.escapeQueryChars(other.getId().get())));
-        }
-        if (other.getIssueNumber().isPresent()) {
-            queryPieces.add(String.format(FIELD_IS, Schema.ISSUE_NUMBER,
-                        ClientUtils.escapeQueryChars(other.getIssueNumber().get())));
+        Map<String, String> hpoIdsById = new HashMap<>();
+        for (String hpoId : hpoIds) {
+            Optional<String> id = index.getIdByHpoId(hpoId);
+            if (id.isPresent()) {
+                hpoIdsById.put(id.get(), hpoId);
+            }
         }
-        for (String name : names) {
-            queryPieces.add(String.format(FIELD_IS, Schema.NAME_EXACT,
-                        ClientUtils.escapeQueryChars(name)));
-            queryPieces.add(String.format(FIELD_IS, Schema.SYNONYM_EXACT,
-                        ClientUtils.escapeQueryChars(name)));
+        Map<String, Phenotype> results = new HashMap<>();
+        for (Map.Entry<String, Phenotype> entry : getPhenotypesById(hpoIdsById.keySet()).entrySet()) {
+            results.put(hpoIdsById.get(entry.getKey()), entry.getValue());
         }
-        String queryString = OR_QUERY_JOINER.join(queryPieces);
+        return results;
+    }
+
+    @Override
+    public Phenotype getPhenotype(Phenotype other) throws IOException
+    {
+        checkUp();
+        String queryString = OR_QUERY_JOINER.join(getQueryPieces(other));
         SolrQuery q = new SolrQuery().setQuery(queryString).setRows(1);
         return runQuery(q);
     }
 
+    @Override
+    public List<Phenotype> getPhenotypes(List<Phenotype> others) throws IOException
+    {
+        checkUp();
+        List<Phenotype> results = new ArrayList<>(others.size());
+        List<String> queryPieces = new ArrayList<>();
+        int chunkStart = 0;
+        for (int i = 0; i < others.size(); i++) {
+            List<String> pieces = getQueryPieces(others.get(i));
+            if (i > chunkStart && queryPieces.size() + pieces.size() > MAX_QUERY_CLAUSES) {
+                results.addAll(matchAll(others.subList(chunkStart, i), queryPieces));
+                queryPieces.clear();
+                chunkStart = i;
+            }
+            queryPieces.addAll(pieces);
+        }
+        if (chunkStart < others.size()) {
+            results.addAll(matchAll(others.subList(chunkStart, others.size()), queryPieces));
+        }
+        return results;
+    }
+
     @Override
     public List<Phenotype> searchPhenotypes(String text) throws IOException
     {
         checkUp();
-        try {
-            SolrQuery q = new SolrQuery();
-            String escaped = ClientUtils.escapeQueryChars(text);
-            q.add(CommonParams.Q, escaped);
-            q.add(SpellingParams.SPELLCHECK_Q, text);
-            q.add(DisMaxParams.PF, String.format("%s^20 %s^36 %s^100 %s^30 %s^15 %s^25 %s^70 %s^20 %s^3 %s^5",
-                        Schema.NAME, Schema.NAME_SPELL, Schema.NAME_EXACT, Schema.NAME_PREFIX,
-                        Schema.SYNONYM, Schema.SYNONYM_SPELL, Schema.SYNONYM_EXACT, Schema.SYNONYM_PREFIX,
-                        Schema.TEXT, Schema.TEXT_SPELL));
-            String qstring = String.format("%s^10 %s^18 %s^5 %s^6 %s^10 %s^3 %s^1 %s^2 %s^0.5",
-                    Schema.NAME, Schema.NAME_SPELL, Schema.NAME_STUB, Schema.SYNONYM, Schema.SYNONYM_SPELL,
-                    Schema.SYNONYM_STUB, Schema.TEXT, Schema.TEXT, Schema.TEXT_SPELL, Schema.TEXT_STUB);
-            qstring = addStatusFilter(qstring, Phenotype.Status.SYNONYM);
-            q.add(DisMaxParams.QF, qstring);
-            q.add("spellcheck", Boolean.toString(true));
-            q.add(SpellingParams.SPELLCHECK_COLLATE, Boolean.toString(true));
-            q.add(SpellingParams.SPELLCHECK_COUNT, "100");
-            q.add(SpellingParams.SPELLCHECK_MAX_COLLATION_TRIES, "3");
-            q.add("lowercaseOperators", Boolean.toString(false));
-            q.add("defType", "edismax");
-            QueryResponse resp = server.query(q);
-            List<SolrDocument> results = resp.getResults();
-            List<Phenotype> retval = new ArrayList<>(results.size());
-            for (SolrDocument doc : results) {
-                retval.add(mapper.fromDoc(doc));
+        sample.record(text);
+        Optional<List<String>> cached = searchCache.get(text);
+        if (cached.isPresent()) {
+            Map<String, Phenotype> found = getPhenotypesById(cached.get());
+            List<Phenotype> results = new ArrayList<>(found.size());
+            for (String id : cached.get()) {
+                if (found.containsKey(id)) {
+                    results.add(found.get(id));
+                }
             }
-            return retval;
-        } catch (SolrServerException e) {
-            throw new IOException(e);
+            return withoutSynonyms(results);
         }
+        long generation = searchCache.getGeneration();
+        List<Phenotype> results = search(text);
+        searchCache.put(text, generation, results);
+        return withoutSynonyms(results);
+    }
+
+    @Override
+    public void exportPhenotypes(Optional<Phenotype.Status> status, Optional<Date> modifiedSince,
+            PhenotypeVisitor visitor) throws IOException
+    {
+        checkUp();
+        export(status, modifiedSince, visitor);
     }
 
     @Override
     public List<Phenotype> getPhenotypesByStatus(Phenotype.Status status) throws IOException
     {
         checkUp();
-        return getPhenotypesByField(Schema.STATUS, status.toString(), false);
+        /* A plain query would stop at solr's default page of rows, so page through them all */
+        final List<Phenotype> results = new ArrayList<>();
+        export(Optional.of(status), Optional.<Date>absent(), new PhenotypeVisitor()
+        {
+            @Override
+            public void visit(Phenotype pt)
+            {
+                results.add(pt);
+            }
+        });
+        return results;
     }
 
     @Override
@@ -330,63 +539,232 @@ public void setAutocommit(boolean autocommit)
     }
 
     /**
-     * Add a filter preventing the query given from returning phenotypes with the given status.
+     * Start up the solr core, fill the index from it and warm it up.
+     *
+     * @throws IOException if solr fails to start
+     */
+    private void load() throws IOException
+    {
+        cores = new CoreContainer(this.path.toString());
+        cores.load();
+        server = new EmbeddedSolrServer(cores, CORE_NAME);
+        /* Whatever was cached before a restart is of no use now */
+        searchCache.invalidate();
+        rebuildIndex();
+        nextId = findNextId();
+        warmUp();
+    }
+
+    /**
+     * Replay the searches recorded before the last shutdown, so the first real ones don't
+     * hit cold caches.
+     */
+    private void warmUp()
+    {
+        try {
+            sample.load(this.path.resolve(WARMUP_FILE));
+        } catch (IOException e) {
+            /* Nothing to warm up with, which is no reason not to start */
+            return;
+        }
+        for (String query : sample.getQueries()) {
+            try {
+                search(query);
+            } catch (IOException | RuntimeException e) {
+                /* Warming is best effort */
+            }
+        }
+    }
+
+    /**
+     * Run a search, without waiting for the core to be loaded.
      *
-     * @param qstring the query
-     * @param status the status
-     * @return the updated query
+     * @param text the text to search for
+     * @return the matching phenotypes
+     * @throws IOException if solr throws
      */
-    private String addStatusFilter(String qstring, Phenotype.Status status)
+    private List<Phenotype> search(String text) throws IOException
     {
-        return String.format("( %s ) AND -( %s )", qstring,
-                String.format(FIELD_IS, Schema.STATUS, status.toString()));
+        try {
+            /* Everything but the text comes from the handler's defaults */
+            SolrQuery q = new SolrQuery(ClientUtils.escapeQueryChars(text)).
+                setRequestHandler(SEARCH_HANDLER);
+            q.set(SpellingParams.SPELLCHECK_Q, text);
+            QueryResponse resp = server.query(q);
+            List<SolrDocument> results = resp.getResults();
+            List<Phenotype> retval = new ArrayList<>(results.size());
+            for (SolrDocument doc : results) {
+                retval.add(mapper.fromDoc(doc));
+            }
+            return retval;
+        } catch (SolrServerException e) {
+            throw new IOException(e);
+        }
     }
 
     /**
-     * Get one single phenotype where the field given has the value given.
+     * Drop the synonyms from the search results given. Solr only sees what's been committed, so
+     * anything saved as a synonym since then is caught by the index, which is up to date.
      *
-     * @param field the field
-     * @param value the value
-     * @return the phenotype
+     * @param results the results
+     * @return the ones that aren't synonyms
      */
-    private Phenotype getPhenotypeByField(String field, String value)
-        throws IOException
+    private List<Phenotype> withoutSynonyms(List<Phenotype> results)
     {
-        List<Phenotype> phenotypes = getPhenotypesByField(field, value, true);
-        if (phenotypes.size() == 0) {
-            return Phenotype.NULL;
+        List<Phenotype> retval = new ArrayList<>(results.size());
+        for (Phenotype pt : results) {
+            if (!Phenotype.Status.SYNONYM.equals(pt.getStatus()) && !index.getRedirect(pt.getId().get()).isPresent()) {
+                retval.add(pt);
+            }
         }
-        return phenotypes.get(0);
+        return retval;
     }
 
     /**
-     * Get all the phenotypes where the field given has the value given.
-     * @param field the field
-     * @param value the value
-     * @param limitOne whether to make sure only one result comes back
-     * @return the results
+     * Export phenotypes, without waiting for the core to be loaded.
+     *
+     * @param status only export phenotypes in this status, if present
+     * @param modifiedSince only export phenotypes modified at or after this date, if present
+     * @param visitor the visitor to hand every phenotype to
+     * @throws IOException if solr throws
      */
-    private List<Phenotype> getPhenotypesByField(String field, String value, boolean limitOne)
-        throws IOException
+    private void export(Optional<Phenotype.Status> status, Optional<Date> modifiedSince,
+            PhenotypeVisitor visitor) throws IOException
     {
+        /* Deep paging with a cursor mark needs a sort on the unique key, but in exchange
+         * every page costs the same no matter how far in we are */
+        SolrQuery q = new SolrQuery().
+            setQuery(WILDCARD_QSTRING).
+            setRows(EXPORT_PAGE_SIZE).
+            setSort(Schema.ID, SolrQuery.ORDER.asc);
+        if (status.isPresent()) {
+            q.addFilterQuery(String.format(FIELD_IS, Schema.STATUS, status.get().name()));
+        }
+        if (modifiedSince.isPresent()) {
+            q.addFilterQuery(String.format(FIELD_AT_LEAST, Schema.TIME_MODIFIED,
+                        DateFormatUtils.formatUTC(modifiedSince.get(), SOLR_DATE_FORMAT)));
+        }
+        String cursor = CursorMarkParams.CURSOR_MARK_START;
         try {
-            String queryString = String.format(FIELD_IS, field, value);
-            SolrQuery q = new SolrQuery().
-                setQuery(queryString);
-            if (limitOne)
+            while (true) {
+                q.set(CursorMarkParams.CURSOR_MARK_PARAM, cursor);
+                QueryResponse resp = server.query(q);
+                for (SolrDocument doc : resp.getResults()) {
+                    visitor.visit(mapper.fromDoc(doc));
+                }
+                String next = resp.getNextCursorMark();
+                if (cursor.equals(next)) {
+                    break;
+                }
+                cursor = next;
+            }
+        } catch (SolrServerException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Fill the index up again from scratch, from what's in solr.
+     *
+     * @throws IOException if solr throws
+     */
+    private void rebuildIndex() throws IOException
+    {
+        index.clear();
+        export(Optional.<Phenotype.Status>absent(), Optional.<Date>absent(), new PhenotypeVisitor()
+        {
+            @Override
+            public void visit(Phenotype pt)
             {
-                q = q.setRows(1);
+                index.update(pt);
             }
-            QueryResponse resp = server.query(q);
-            List<SolrDocument> documents = resp.getResults();
-            List<Phenotype> results = new ArrayList<>(documents.size());
-            for (SolrDocument doc : documents) {
-                results.add(mapper.fromDoc(doc));
+        });
+    }
+
+    /**
+     * Get the pieces of a query that will match any phenotype equivalent to the one given.
+     * These should be joined with an OR.
+     *
+     * @param other the phenotype
+     * @return the query pieces
+     */
+    private List<String> getQueryPieces(Phenotype other)
+    {
+        Set<String> names = other.getSynonyms();
+        names.add(other.getName());
+        List<String> queryPieces = new ArrayList<>(names.size() * 2 + 2);
+        if (other.getId().isPresent()) {
+            queryPieces.add(String.format(FIELD_IS, Schema.ID,
+                        ClientUtils.escapeQueryChars(other.getId().get())));
+        }
+        if (other.getIssueNumber().isPresent()) {
+            queryPieces.add(String.format(FIELD_IS, Schema.ISSUE_NUMBER,
+                        ClientUtils.escapeQueryChars(other.getIssueNumber().get())));
+        }
+        for (String name : names) {
+            queryPieces.add(String.format(FIELD_IS, Schema.NAME_EXACT,
+                        ClientUtils.escapeQueryChars(name)));
+            queryPieces.add(String.format(FIELD_IS, Schema.SYNONYM_EXACT,
+                        ClientUtils.escapeQueryChars(name)));
+        }
+        return queryPieces;
+    }
+
+    /**
+     * Run the query pieces given as one big OR, and find the best match for each of the
+     * phenotypes given among the results.
+     *
+     * @param others the phenotypes to match
+     * @param queryPieces the query pieces for all of them
+     * @return a list parallel to others, with the match or the null phenotype for each
+     * @throws IOException if solr throws
+     */
+    private List<Phenotype> matchAll(List<Phenotype> others, List<String> queryPieces) throws IOException
+    {
+        SolrQuery q = new SolrQuery().
+            setQuery(OR_QUERY_JOINER.join(queryPieces)).
+            setRows(queryPieces.size());
+        List<Phenotype> candidates = new ArrayList<>();
+        try {
+            for (SolrDocument doc : server.query(q).getResults()) {
+                candidates.add(mapper.fromDoc(doc));
             }
-            return results;
         } catch (SolrServerException e) {
             throw new IOException(e);
         }
+        List<Phenotype> results = new ArrayList<>(others.size());
+        for (Phenotype other : others) {
+            Phenotype match = Phenotype.NULL;
+            for (Phenotype candidate : candidates) {
+                if (isEquivalent(candidate, other)) {
+                    match = candidate;
+                    break;
+                }
+            }
+            results.add(match);
+        }
+        return results;
+    }
+
+    /**
+     * Check whether the stored phenotype given would've been matched by a query built from
+     * getQueryPieces(other).
+     *
+     * @param stored the phenotype from the database
+     * @param other the phenotype we were looking for
+     * @return whether they're the same
+     */
+    private boolean isEquivalent(Phenotype stored, Phenotype other)
+    {
+        if (other.getId().isPresent() && other.getId().equals(stored.getId())) {
+            return true;
+        }
+        if (other.getIssueNumber().isPresent() && other.getIssueNumber().equals(stored.getIssueNumber())) {
+            return true;
+        }
+        Set<String> names = stored.getSynonyms();
+        names.add(stored.getName());
+        return names.contains(other.getName()) || !Collections.disjoint(names, other.getSynonyms());
     }
 
     /**
@@ -410,15 +788,33 @@ private Phenotype runQuery(SolrQuery q) throws IOException
     }
 
     /**
-     * Get the next available id.
+     * Hand out the next id.
+     * Solr only sees what's been committed, so asking it for the greatest id on every save would
+     * give the same one to everything saved between two commits. Instead it's asked once, when
+     * loading, and ids are handed out from here after that.
+     * @return the id
+     */
+    private String allocateId()
+    {
+        synchronized (idLock) {
+            String id = nextId;
+            nextId = IdUtils.incrementId(id);
+            return id;
+        }
+    }
+
+    /**
+     * Find the next available id in what's stored.
+     * Ids are zero-padded, so the greatest one sorts last. We can't rely on creation times,
+     * since a batch save gives the same time to many phenotypes.
      * @return the next id
      */
-    private String getNextId() throws IOException
+    private String findNextId() throws IOException
     {
         SolrQuery q = new SolrQuery().
             setQuery(WILDCARD_QSTRING).
             setRows(1).
-            setSort(Schema.TIME_CREATED, SolrQuery.ORDER.desc);
+            setSort(Schema.ID, SolrQuery.ORDER.desc);
         QueryResponse resp;
         try {
             resp = server.query(q);
@@ -434,12 +830,29 @@ private String getNextId() throws IOException
     }
 
     /**
-     * Check that the solr is up and throw if it isn't.
+     * Check that the solr is up and throw if it isn't, waiting for it to finish loading if need be.
      *
      * @throws IllegalStateException if it's down.
+     * @throws IOException if it failed to load
      */
-    private void checkUp()
+    private void checkUp() throws IOException
     {
         checkState(up, "Solr service is down");
+        awaitLoaded();
+    }
+
+    /**
+     * Wait for the solr core to finish loading.
+     *
+     * @throws IOException if it failed to load
+     */
+    private void awaitLoaded() throws IOException
+    {
+        try {
+            Uninterruptibles.getUninterruptibly(loading);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+            throw new IOException(e.getCause());
+        }
     }
 }
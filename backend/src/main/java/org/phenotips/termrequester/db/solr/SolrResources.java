@@ -0,0 +1,145 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.db.solr;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.URL;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Resources;
+
+/**
+ * Puts the solr home (configuration, schema, word lists) that ships in our jar on disk.
+ * The files are only written when what's on disk was written from different contents, which
+ * is checked with a checksum kept next to them, so restarts of the same build don't pay for it.
+ *
+ * @version $Id$
+ */
+final class SolrResources
+{
+    /**
+     * The directory on the classpath holding the solr home.
+     */
+    static final String ROOT = "solr/";
+
+    /**
+     * Every file in the solr home, relative to ROOT.
+     */
+    static final String[] FILES = {
+        "solr.xml",
+        "termrequester/core.properties",
+        "termrequester/protwords.txt",
+        "termrequester/synonyms.txt",
+        "termrequester/conf/schema.xml",
+        "termrequester/conf/solrconfig.xml",
+    };
+
+    /**
+     * The file, in the solr home, holding the checksum of what was last written.
+     */
+    static final String MARKER = ".resources.sha256";
+
+    /**
+     * The version of the marker format. Bump it to force a rewrite everywhere regardless of contents.
+     */
+    private static final int MARKER_VERSION = 1;
+
+    /**
+     * CTOR.
+     */
+    private SolrResources()
+    {
+        throw new AssertionError();
+    }
+
+    /**
+     * Write the solr home out to the directory given, unless it's already there.
+     *
+     * @param dest the directory to use as solr home
+     * @return whether anything was written
+     * @throws IOException on failure to read the resources or write them out
+     */
+    static boolean materialize(Path dest) throws IOException
+    {
+        String checksum = checksum();
+        Path marker = dest.resolve(MARKER);
+        if (isCurrent(dest, marker, checksum)) {
+            return false;
+        }
+        for (String file : FILES) {
+            Path target = dest.resolve(file);
+            Files.createDirectories(target.getParent());
+            try (InputStream in = Resources.getResource(SolrResources.class, "/" + ROOT + file).openStream()) {
+                Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        /* Written last, so that a crash half way through is retried next time */
+        Files.write(marker, checksum.getBytes(StandardCharsets.UTF_8));
+        return true;
+    }
+
+    /**
+     * Compute the checksum of the resources in the jar.
+     *
+     * @return the checksum, prefixed by the marker version
+     * @throws IOException if a resource can't be read
+     */
+    static String checksum() throws IOException
+    {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (String file : FILES) {
+            URL url = Resources.getResource(SolrResources.class, "/" + ROOT + file);
+            hasher.putString(file, StandardCharsets.UTF_8);
+            hasher.putBytes(Resources.toByteArray(url));
+        }
+        return MARKER_VERSION + ":" + hasher.hash().toString();
+    }
+
+    /**
+     * Check whether the solr home on disk was written from the resources we have.
+     *
+     * @param dest the solr home
+     * @param marker the marker file
+     * @param checksum the checksum of the resources
+     * @return whether it's up to date
+     * @throws IOException if the marker can't be read
+     */
+    private static boolean isCurrent(Path dest, Path marker, String checksum) throws IOException
+    {
+        if (!Files.isRegularFile(marker)) {
+            return false;
+        }
+        if (!checksum.equals(new String(Files.readAllBytes(marker), StandardCharsets.UTF_8).trim())) {
+            return false;
+        }
+        for (String file : FILES) {
+            if (!Files.isRegularFile(dest.resolve(file))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.github;
+
+import org.phenotips.termrequester.Phenotype;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ListenableFuture;
+
+
+/**
+ * Connects to github without blocking the caller: each call returns straight away, with a future
+ * for its result. The futures fail with the IOException or GithubException the corresponding
+ * GithubAPI call would have thrown.
+ *
+ * @version $Id$
+ */
+public interface AsyncGithubAPI
+{
+    /**
+     * Update the phenotype given with any changes to its github issue.
+     * The phenotype is changed whenever the read happens, so it should not be touched until the
+     * future is done.
+     * @param phenotype the phenotype
+     * @return the same phenotype, once read
+     * @see GithubAPI#readPhenotype
+     */
+    ListenableFuture<Phenotype> readPhenotype(Phenotype phenotype);
+
+    /**
+     * Open a new issue for the phenotype given.
+     * @param phenotype the phenotype to create the issue for
+     * @return a future done once the issue is open
+     * @see GithubAPI#openIssue
+     */
+    ListenableFuture<Void> openIssue(Phenotype phenotype);
+
+    /**
+     * Patch the issue for the given phenotype.
+     * @param phenotype the phenotype to patch the issue for
+     * @return a future done once the issue is patched
+     * @see GithubAPI#patchIssue
+     */
+    ListenableFuture<Void> patchIssue(Phenotype phenotype);
+
+    /**
+     * Search for an issue for the phenotype given.
+     * @param phenotype the phenotype to search for
+     * @return the issue number, if there is one
+     * @see GithubAPI#searchForIssue
+     */
+    ListenableFuture<Optional<String>> searchForIssue(Phenotype phenotype);
+
+    /**
+     * Get the repository this is bound to.
+     * @return the repository
+     */
+    GithubAPI.Repository getRepository();
+}
@@ -0,0 +1,121 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.github;
+
+import org.phenotips.termrequester.Phenotype;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+
+/**
+ * Runs the calls of a blocking GithubAPI on an executor of the caller's choosing, so that a few
+ * threads can keep several github requests going at once.
+ * How many run at once is up to the executor; it also owns the threads, so shutting it down is
+ * up to whoever made it.
+ *
+ * @version $Id$
+ */
+public class AsyncGithubAPIAdapter implements AsyncGithubAPI
+{
+    /**
+     * The blocking github api.
+     */
+    private GithubAPI github;
+
+    /**
+     * Where the blocking calls run.
+     */
+    private ListeningExecutorService executor;
+
+    /**
+     * CTOR.
+     * @param github the blocking github api to run
+     * @param executor where to run it
+     */
+    public AsyncGithubAPIAdapter(GithubAPI github, ExecutorService executor)
+    {
+        this.github = github;
+        this.executor = MoreExecutors.listeningDecorator(executor);
+    }
+
+    @Override
+    public ListenableFuture<Phenotype> readPhenotype(final Phenotype phenotype)
+    {
+        return executor.submit(new Callable<Phenotype>()
+        {
+            @Override
+            public Phenotype call() throws Exception
+            {
+                return github.readPhenotype(phenotype);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Void> openIssue(final Phenotype phenotype)
+    {
+        return executor.submit(new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                github.openIssue(phenotype);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Void> patchIssue(final Phenotype phenotype)
+    {
+        return executor.submit(new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                github.patchIssue(phenotype);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Optional<String>> searchForIssue(final Phenotype phenotype)
+    {
+        return executor.submit(new Callable<Optional<String>>()
+        {
+            @Override
+            public Optional<String> call() throws Exception
+            {
+                return github.searchForIssue(phenotype);
+            }
+        });
+    }
+
+    @Override
+    public GithubAPI.Repository getRepository()
+    {
+        return github.getRepository();
+    }
+}
@@ -31,6 +31,11 @@
  */
 public interface GithubAPI
 {
+    /**
+     * The gauge in Metrics that shows how much of the hourly rate limit github last said was left.
+     */
+    String RATE_LIMIT_GAUGE = "github.rateLimit.remaining";
+
     /**
      * Update the phenotype given with any changes to its github issue.
      * @param phenotype the phenotype
@@ -17,6 +17,9 @@
  */
 package org.phenotips.termrequester.github;
 
+import org.phenotips.termrequester.metrics.Metrics;
+import org.phenotips.termrequester.tracing.Tracer;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import com.google.inject.Inject;
@@ -31,20 +34,28 @@ class GithubAPIFactoryImpl implements GithubAPIFactory
 {
     private ObjectMapper mapper;
 
+    private Metrics metrics;
+
+    private Tracer tracer;
+
     /**
      * CTOR.
      * @param mapper the object mapper
+     * @param metrics the metrics for github calls to report to
+     * @param tracer the tracer github calls are traced with
      */
     @Inject
-    GithubAPIFactoryImpl(ObjectMapper mapper)
+    GithubAPIFactoryImpl(ObjectMapper mapper, Metrics metrics, Tracer tracer)
     {
         this.mapper = mapper;
+        this.metrics = metrics;
+        this.tracer = tracer;
     }
 
     @Override
     public GithubAPI create(GithubAPI.Repository repo)
     {
-        return new GithubAPIImpl(mapper, repo);
+        return new GithubAPIImpl(mapper, metrics, tracer, repo);
     }
 
     @Override
@@ -18,6 +18,9 @@
 package org.phenotips.termrequester.github;
 
 import org.phenotips.termrequester.Phenotype;
+import org.phenotips.termrequester.metrics.Metrics;
+import org.phenotips.termrequester.tracing.Span;
+import org.phenotips.termrequester.tracing.Tracer;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -40,6 +43,7 @@
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.Sets;
 
 /* To get the nice HTTP status code constants */
@@ -68,6 +72,28 @@ class GithubAPIImpl implements GithubAPI
      */
     private static final String IF_NONE_MATCH = "If-None-Match";
 
+    /**
+     * How long to wait for a connection to github, in milliseconds.
+     */
+    private static final int CONNECT_TIMEOUT = 10000;
+
+    /**
+     * How long to wait on a github connection that's gone quiet, in milliseconds.
+     * Whoever's calling, be it a request thread or the sync job, is parked for as long as this,
+     * so a stalled github must not hold them forever.
+     */
+    private static final int SOCKET_TIMEOUT = 30000;
+
+    /**
+     * The header github tells us how many more requests we can make this hour in.
+     */
+    private static final String RATE_LIMIT_REMAINING = "X-RateLimit-Remaining";
+
+    /**
+     * How many nanoseconds to a microsecond.
+     */
+    private static final long NANOS_PER_MICRO = 1000;
+
     /**
      * The repository to bind to.
      */
@@ -78,6 +104,16 @@ class GithubAPIImpl implements GithubAPI
      */
     private ObjectMapper mapper;
 
+    /**
+     * Where our timings go.
+     */
+    private Metrics metrics;
+
+    /**
+     * Traces our calls.
+     */
+    private Tracer tracer;
+
     static {
         try {
             GITHUB_URL = new URL(GITHUB);
@@ -89,12 +125,16 @@ class GithubAPIImpl implements GithubAPI
     /**
      * CTOR.
      * @param mapper the object mapper in use
+     * @param metrics the metrics to report to
+     * @param tracer the tracer to trace calls with
      * @param repository the repo to use
      */
-    GithubAPIImpl(ObjectMapper mapper, Repository repository)
+    GithubAPIImpl(ObjectMapper mapper, Metrics metrics, Tracer tracer, Repository repository)
     {
         this.repository = repository;
         this.mapper = mapper;
+        this.metrics = metrics;
+        this.tracer = tracer;
     }
 
     @Override
@@ -108,7 +148,7 @@ public void openIssue(Phenotype phenotype) throws IOException, GithubException
         }
         String method = getRepoMethod("issues");
         byte[] body = buildRequest(phenotype);
-        HttpResponse response = execute(Request.
+        HttpResponse response = execute("openIssue", Request.
                 Post(getURI(method)).
                 bodyByteArray(body, ContentType.APPLICATION_JSON));
         checkCode(response, Status.SUCCESS_CREATED);
@@ -126,7 +166,7 @@ public void patchIssue(Phenotype pt) throws IOException, GithubException
         byte[] body = buildRequest(pt);
 
         String method = getIssueEndpoint(pt.getIssueNumber().get());
-        HttpResponse response = execute(Request.
+        HttpResponse response = execute("patchIssue", Request.
                 Patch(getURI(method)).
                 bodyByteArray(body, ContentType.APPLICATION_JSON)
                 );
@@ -140,7 +180,7 @@ public Phenotype readPhenotype(Phenotype pt) throws IOException, GithubException
         checkArgument(pt.getIssueNumber().isPresent(), "Phenotype %s has no issue number", pt);
         String method = getIssueEndpoint(pt.getIssueNumber().get());
         Request request = Request.Get(getURI(method)).addHeader(IF_NONE_MATCH, pt.getEtag());
-        HttpResponse response = execute(request);
+        HttpResponse response = execute("readPhenotype", request);
         if (response.getStatusLine().getStatusCode() == Status.REDIRECTION_NOT_MODIFIED.getCode()) {
             return pt;
         }
@@ -168,7 +208,7 @@ public Optional<String> searchForIssue(Phenotype candidate) throws IOException,
         builder.addParameter("q", q);
         InputStream is;
         try {
-            is = getStream(execute(Request.Get(builder.build())));
+            is = getStream(execute("searchForIssue", Request.Get(builder.build())));
         } catch (URISyntaxException e) {
             throw new RuntimeException(e);
         }
@@ -203,14 +243,41 @@ private String buildSearch(Phenotype pt)
 
     /**
      * Execute an authenticated request and return the response.
+     * Reports how long it took to the metrics under github.endpoint, counts the response under
+     * github.endpoint.status (so for readPhenotype, the 304s are the etag hits), and keeps track
+     * of how much of our rate limit is left. If there's a trace open, the call is a stage within it.
+     * @param endpoint the name of the endpoint, for the metrics
      * @param request the request
      * @return the response.
+     * @throws IOException if the request fails or times out
      */
-    private HttpResponse execute(Request request) throws IOException
+    private HttpResponse execute(String endpoint, Request request) throws IOException
     {
-        request.addHeader("Authorization", "token " + repository.getToken());
-        Response response = request.execute();
-        return response.returnResponse();
+        String name = "github." + endpoint;
+        request.addHeader("Authorization", "token " + repository.getToken()).
+            connectTimeout(CONNECT_TIMEOUT).
+            socketTimeout(SOCKET_TIMEOUT);
+        long start = System.nanoTime();
+        HttpResponse response;
+        try (Span span = tracer.stage(name)) {
+            try {
+                Response result = request.execute();
+                response = result.returnResponse();
+            } catch (IOException e) {
+                metrics.increment(name + ".errors");
+                span.fail(e);
+                throw e;
+            }
+            span.set("http.status", response.getStatusLine().getStatusCode());
+        } finally {
+            metrics.histogram(name).record((System.nanoTime() - start) / NANOS_PER_MICRO);
+        }
+        metrics.increment(name + "." + response.getStatusLine().getStatusCode());
+        if (response.getFirstHeader(RATE_LIMIT_REMAINING) != null) {
+            long remaining = Long.parseLong(response.getFirstHeader(RATE_LIMIT_REMAINING).getValue());
+            metrics.gauge(RATE_LIMIT_GAUGE, Suppliers.ofInstance(remaining));
+        }
+        return response;
     }
 
     /**
@@ -0,0 +1,143 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies, in microseconds, in the manner of HdrHistogram: values are counted in
+ * buckets that double in width every SUB_BUCKETS buckets, so any value is off by at most one part
+ * in SUB_BUCKETS while the whole range of a long fits in under a thousand buckets.
+ * Recording is lock-free. Reads are not atomic with respect to recording, so a percentile taken
+ * while values are being recorded may be off by those values.
+ *
+ * @version $Id$
+ */
+public class LatencyHistogram
+{
+    /**
+     * How many bits of each value are kept.
+     */
+    private static final int SUB_BUCKET_BITS = 4;
+
+    /**
+     * How many buckets there are for each power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The counts in each bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray((Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+
+    /**
+     * How many values have been recorded.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * The largest value recorded.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a latency.
+     * @param micros the latency, in microseconds; anything negative counts as 0
+     */
+    public void record(long micros)
+    {
+        long value = Math.max(micros, 0);
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Get how many latencies have been recorded.
+     * @return the count
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * Get the largest latency recorded.
+     * @return the largest latency, in microseconds, or 0 if there are none
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    /**
+     * Get the latency the percentage given of all latencies recorded are at or below.
+     * @param percentile the percentage, between 0 and 100
+     * @return the latency, in microseconds, rounded up to the top of its bucket; 0 if there are none
+     */
+    public long getPercentile(double percentile)
+    {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        long target = Math.max((long) Math.ceil(total * percentile / 100), 1);
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestIn(i), max.get());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Get the bucket the value given goes in.
+     * @param value the value, which can't be negative
+     * @return the bucket's index
+     */
+    static int bucketOf(long value)
+    {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - 1 - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Get the largest value that goes in the bucket given.
+     * @param bucket the bucket's index
+     * @return the largest value
+     */
+    static long highestIn(int bucket)
+    {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.metrics;
+
+import java.io.IOException;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.inject.Singleton;
+
+/**
+ * Keeps the application's metrics: latency histograms, counters and gauges, each by name.
+ * Names are dot-separated, starting with the layer they come from, e.g. rest.phenotypes.create,
+ * manager.createRequest, github.readPhenotype or solr.commit.
+ * Everything can be read as a flat map of names to values, which is what goes out over JMX and
+ * as text; a histogram shows up there as its count and its p50, p90, p99 and max latencies in
+ * microseconds, e.g. solr.commit.count and solr.commit.p99_us.
+ *
+ * @version $Id$
+ */
+@Singleton
+public class Metrics implements MetricsMXBean
+{
+    /**
+     * The name the metrics are registered under in JMX.
+     */
+    public static final String OBJECT_NAME = "org.phenotips.termrequester:type=Metrics";
+
+    /**
+     * The percentiles shown for every histogram.
+     */
+    private static final int[] PERCENTILES = { 50, 90, 99 };
+
+    /**
+     * The histograms.
+     */
+    private ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * The counters.
+     */
+    private ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    /**
+     * The gauges.
+     */
+    private ConcurrentMap<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * Get the histogram with the name given, creating it if need be.
+     * @param name the name
+     * @return the histogram
+     */
+    public LatencyHistogram histogram(String name)
+    {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histograms.putIfAbsent(name, new LatencyHistogram());
+            histogram = histograms.get(name);
+        }
+        return histogram;
+    }
+
+    /**
+     * Add one to the counter with the name given.
+     * @param name the name
+     */
+    public void increment(String name)
+    {
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            counters.putIfAbsent(name, new AtomicLong());
+            counter = counters.get(name);
+        }
+        counter.incrementAndGet();
+    }
+
+    /**
+     * Show the value supplied under the name given, replacing anything already there.
+     * @param name the name
+     * @param value supplies the value, whenever the metrics are read
+     */
+    public void gauge(String name, Supplier<? extends Number> value)
+    {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Get the current value of the gauge with the name given.
+     * @param name the name
+     * @return the value, if there's such a gauge
+     */
+    public Optional<Long> getGauge(String name)
+    {
+        Supplier<? extends Number> gauge = gauges.get(name);
+        if (gauge == null) {
+            return Optional.absent();
+        }
+        return Optional.of(gauge.get().longValue());
+    }
+
+    @Override
+    public Map<String, Long> getValues()
+    {
+        SortedMap<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> counter : counters.entrySet()) {
+            values.put(counter.getKey(), counter.getValue().get());
+        }
+        for (Map.Entry<String, Supplier<? extends Number>> gauge : gauges.entrySet()) {
+            values.put(gauge.getKey(), gauge.getValue().get().longValue());
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            String name = entry.getKey();
+            LatencyHistogram histogram = entry.getValue();
+            values.put(name + ".count", histogram.getCount());
+            for (int percentile : PERCENTILES) {
+                values.put(name + ".p" + percentile + "_us", histogram.getPercentile(percentile));
+            }
+            values.put(name + ".max_us", histogram.getMax());
+        }
+        return values;
+    }
+
+    /**
+     * Write every metric out as text, one "name value" line each, sorted by name.
+     * @param out where to write them
+     * @throws IOException if writing throws
+     */
+    public void writeText(Appendable out) throws IOException
+    {
+        for (Map.Entry<String, Long> value : getValues().entrySet()) {
+            out.append(value.getKey()).append(' ').append(Long.toString(value.getValue())).append('\n');
+        }
+    }
+
+    /**
+     * Register the metrics with the platform's JMX server, under OBJECT_NAME.
+     * This is best effort: metrics are never worth failing over, so if that name's taken, or
+     * JMX won't have us, it's left at that.
+     */
+    public void register()
+    {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            /* Best effort, as above */
+            return;
+        }
+    }
+
+    /**
+     * Take the metrics back out of the platform's JMX server, if they're there.
+     */
+    public void unregister()
+    {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            /* Never made it in */
+            return;
+        }
+    }
+}
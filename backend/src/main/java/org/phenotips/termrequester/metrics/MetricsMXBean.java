@@ -15,18 +15,20 @@
  * You should have received a copy of the GNU Affero General Public License
  * along with this program.  If not, see http://www.gnu.org/licenses/
  */
-package org.phenotips.termrequester.rest.resources.annotations;
+package org.phenotips.termrequester.metrics;
 
-import java.lang.annotation.Retention;
-import java.lang.annotation.RetentionPolicy;
-
-import com.google.inject.BindingAnnotation;
+import java.util.Map;
 
 /**
- * The OAuth token to use for github access.
+ * Exposes the metrics over JMX.
  *
  * @version $Id$
  */
-@Retention(RetentionPolicy.RUNTIME)
-@BindingAnnotation
-public @interface OwnResources { }
+public interface MetricsMXBean
+{
+    /**
+     * Get the current value of every metric, by name, as in Metrics#writeText.
+     * @return the values
+     */
+    Map<String, Long> getValues();
+}
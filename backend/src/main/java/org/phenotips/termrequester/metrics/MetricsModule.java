@@ -0,0 +1,55 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.metrics;
+
+import org.phenotips.termrequester.tracing.Tracer;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.matcher.AbstractMatcher;
+import com.google.inject.matcher.Matchers;
+
+/**
+ * Times, and traces, every Timed class guice constructs.
+ *
+ * @version $Id$
+ */
+public class MetricsModule extends AbstractModule
+{
+    @Override
+    public void configure()
+    {
+        bindInterceptor(Matchers.annotatedWith(Timed.class), new OwnPublicMethods(),
+                new TimingInterceptor(getProvider(Metrics.class), getProvider(Tracer.class)));
+    }
+
+    /**
+     * Matches the public methods a Timed class declares itself.
+     */
+    private static final class OwnPublicMethods extends AbstractMatcher<Method>
+    {
+        @Override
+        public boolean matches(Method method)
+        {
+            return Modifier.isPublic(method.getModifiers()) && !method.isSynthetic()
+                && method.getDeclaringClass().isAnnotationPresent(Timed.class);
+        }
+    }
+}
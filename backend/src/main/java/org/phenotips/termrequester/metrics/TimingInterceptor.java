@@ -0,0 +1,83 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.metrics;
+
+import org.phenotips.termrequester.tracing.Span;
+import org.phenotips.termrequester.tracing.Tracer;
+
+import java.lang.reflect.Method;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import com.google.inject.Provider;
+
+/**
+ * Times calls to the methods of Timed classes, and traces them as a stage of whatever trace is
+ * open on the calling thread.
+ *
+ * @version $Id$
+ */
+class TimingInterceptor implements MethodInterceptor
+{
+    /**
+     * How many nanoseconds to a microsecond.
+     */
+    private static final long NANOS_PER_MICRO = 1000;
+
+    /**
+     * Where the timings go.
+     */
+    private Provider<Metrics> metrics;
+
+    /**
+     * The tracer.
+     */
+    private Provider<Tracer> tracer;
+
+    /**
+     * CTOR.
+     * @param metrics the metrics, which aren't around yet when interceptors are bound
+     * @param tracer the tracer, likewise
+     */
+    TimingInterceptor(Provider<Metrics> metrics, Provider<Tracer> tracer)
+    {
+        this.metrics = metrics;
+        this.tracer = tracer;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable
+    {
+        Method method = invocation.getMethod();
+        String name = method.getDeclaringClass().getAnnotation(Timed.class).value() + "." + method.getName();
+        long start = System.nanoTime();
+        /* Only calls made within a trace are traced, so that the db doesn't start traces of its own */
+        try (Span span = tracer.get().stage(name)) {
+            try {
+                return invocation.proceed();
+            } catch (Throwable e) {
+                metrics.get().increment(name + ".errors");
+                span.fail(e);
+                throw e;
+            }
+        } finally {
+            metrics.get().histogram(name).record((System.nanoTime() - start) / NANOS_PER_MICRO);
+        }
+    }
+}
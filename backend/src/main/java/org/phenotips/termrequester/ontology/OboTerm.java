@@ -0,0 +1,222 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.ontology;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A term out of an OBO release, as it was read.
+ *
+ * @version $Id$
+ */
+public final class OboTerm
+{
+    /**
+     * The scope of synonyms that mean exactly the same as the term's name.
+     */
+    private static final String EXACT_SCOPE = "EXACT";
+
+    /**
+     * The number of the term.
+     */
+    int number = -1;
+
+    /**
+     * Its name.
+     */
+    String name;
+
+    /**
+     * Its definition.
+     */
+    String definition = "";
+
+    /**
+     * The numbers of its parents.
+     */
+    List<Integer> parents = new ArrayList<>();
+
+    /**
+     * All its synonyms.
+     */
+    List<String> synonyms = new ArrayList<>();
+
+    /**
+     * Its exact synonyms.
+     */
+    List<String> exactSynonyms = new ArrayList<>();
+
+    /**
+     * Its alternative numbers.
+     */
+    List<Integer> alts = new ArrayList<>();
+
+    /**
+     * Whether it's obsolete.
+     */
+    boolean obsolete;
+
+    /**
+     * CTOR.
+     */
+    OboTerm()
+    {
+    }
+
+    /**
+     * Get the hpo id of the term.
+     * @return the id, as in HP_0000118
+     */
+    public String getHpoId()
+    {
+        return Ontology.toId(number);
+    }
+
+    /**
+     * Get the name of the term.
+     * @return the name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Get the definition of the term.
+     * @return the definition, or the empty string if it has none
+     */
+    public String getDefinition()
+    {
+        return definition;
+    }
+
+    /**
+     * Get the synonyms of the term, whatever their scope.
+     * @return the synonyms
+     */
+    public List<String> getSynonyms()
+    {
+        return Collections.unmodifiableList(synonyms);
+    }
+
+    /**
+     * Get the hpo ids of the term's parents.
+     * @return the ids
+     */
+    public List<String> getParentIds()
+    {
+        List<String> ids = new ArrayList<>(parents.size());
+        for (int parent : parents) {
+            ids.add(Ontology.toId(parent));
+        }
+        return ids;
+    }
+
+    /**
+     * Take in a tag of the term's stanza.
+     * @param tag the tag
+     * @param value its value
+     */
+    void read(String tag, String value)
+    {
+        switch (tag) {
+            case "id":
+                number = Ontology.parseId(value);
+                break;
+            case "name":
+                name = value;
+                break;
+            case "def":
+                definition = unquote(value);
+                break;
+            case "is_a":
+                addId(parents, value);
+                break;
+            case "synonym":
+                addSynonym(value);
+                break;
+            case "alt_id":
+                addId(alts, value);
+                break;
+            case "is_obsolete":
+                obsolete = Boolean.parseBoolean(value);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Keep the synonym in an OBO value.
+     * @param value the value, as in "Small head" EXACT []
+     */
+    private void addSynonym(String value)
+    {
+        int end = value.indexOf('"', 1);
+        if (!value.startsWith("\"") || end < 0) {
+            return;
+        }
+        String synonym = value.substring(1, end);
+        synonyms.add(synonym);
+        if (value.substring(end + 1).trim().startsWith(EXACT_SCOPE)) {
+            exactSynonyms.add(synonym);
+        }
+    }
+
+    /**
+     * Get the quoted string at the start of an OBO value.
+     * @param value the value, as in "A definition." [HPO:probinson]
+     * @return the string, without quotes
+     */
+    private static String unquote(String value)
+    {
+        int end = value.indexOf('"', 1);
+        if (!value.startsWith("\"") || end < 0) {
+            return value;
+        }
+        return value.substring(1, end);
+    }
+
+    /**
+     * Add the id at the start of an OBO value to a list, if it's an HPO id.
+     * @param ids the list
+     * @param value the value, as in HP:0000118 ! Phenotypic abnormality
+     */
+    private static void addId(List<Integer> ids, String value)
+    {
+        int end = value.indexOf(' ');
+        int number = Ontology.parseId(end < 0 ? value : value.substring(0, end));
+        if (number >= 0) {
+            ids.add(number);
+        }
+    }
+
+    /**
+     * Takes the terms of an OBO release as they're read.
+     */
+    public interface Visitor
+    {
+        /**
+         * Take a term.
+         * @param term the term
+         */
+        void visit(OboTerm term);
+    }
+}
@@ -0,0 +1,501 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.ontology;
+
+import org.phenotips.termrequester.utils.TitleCaseSet;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.common.base.Optional;
+
+/**
+ * A release of the HPO, held as a compact graph.
+ * Every term gets an int index in order of its HPO number; names are kept in an array by index
+ * and each term's parents are a slice of a single array of indexes, so lookups are a binary
+ * search and ancestor queries never leave primitive arrays. Names and exact synonyms are kept
+ * sorted alongside the index of their term, so a term can be found by name without a map.
+ * Instances are immutable, so a reference to one is a consistent snapshot of a release.
+ *
+ * @version $Id$
+ */
+public final class Ontology
+{
+    /**
+     * An ontology without any terms, used until a release is loaded.
+     */
+    public static final Ontology EMPTY = new Builder().build();
+
+    /**
+     * The format of an hpo id.
+     */
+    private static final String ID_FORMAT = "HP_%07d";
+
+    /**
+     * The length of an hpo id.
+     */
+    private static final int ID_LENGTH = 10;
+
+    /**
+     * The HPO number of every term, sorted.
+     */
+    private final int[] numbers;
+
+    /**
+     * The name of every term.
+     */
+    private final String[] names;
+
+    /**
+     * Where each term's parents start in the parents array; the last element is its length.
+     */
+    private final int[] parentOffsets;
+
+    /**
+     * The parents of every term, one slice per term.
+     */
+    private final int[] parents;
+
+    /**
+     * The numbers of alternative ids, sorted.
+     */
+    private final int[] altNumbers;
+
+    /**
+     * The index of the term every alternative id stands for.
+     */
+    private final int[] altTargets;
+
+    /**
+     * Every name and exact synonym, title cased as phenotype names are, sorted.
+     */
+    private final String[] nameKeys;
+
+    /**
+     * The index of the term each name or synonym belongs to.
+     */
+    private final int[] nameTargets;
+
+    /**
+     * The version of the release, if it said.
+     */
+    private final Optional<String> version;
+
+    /**
+     * CTOR.
+     * @param builder the builder holding the terms
+     */
+    private Ontology(Builder builder)
+    {
+        int size = builder.names.size();
+        numbers = new int[size];
+        names = new String[size];
+        int i = 0;
+        for (Map.Entry<Integer, String> term : builder.names.entrySet()) {
+            numbers[i] = term.getKey();
+            names[i] = term.getValue();
+            i++;
+        }
+        /* Lay the edges out so each term's parents sit together, dropping any to unknown terms */
+        int[] children = new int[builder.edges.size()];
+        int[] edgeParents = new int[builder.edges.size()];
+        int edges = 0;
+        parentOffsets = new int[size + 1];
+        for (int[] edge : builder.edges) {
+            int child = Arrays.binarySearch(numbers, edge[0]);
+            int parent = Arrays.binarySearch(numbers, edge[1]);
+            if (child >= 0 && parent >= 0) {
+                children[edges] = child;
+                edgeParents[edges] = parent;
+                parentOffsets[child + 1]++;
+                edges++;
+            }
+        }
+        for (i = 0; i < size; i++) {
+            parentOffsets[i + 1] += parentOffsets[i];
+        }
+        parents = new int[edges];
+        int[] filled = Arrays.copyOf(parentOffsets, size);
+        for (i = 0; i < edges; i++) {
+            parents[filled[children[i]]++] = edgeParents[i];
+        }
+        List<int[]> alts = new ArrayList<>(builder.alts.size());
+        for (Map.Entry<Integer, Integer> alt : builder.alts.entrySet()) {
+            int target = Arrays.binarySearch(numbers, alt.getValue());
+            if (target >= 0 && Arrays.binarySearch(numbers, alt.getKey()) < 0) {
+                alts.add(new int[] { alt.getKey(), target });
+            }
+        }
+        altNumbers = new int[alts.size()];
+        altTargets = new int[alts.size()];
+        for (i = 0; i < alts.size(); i++) {
+            altNumbers[i] = alts.get(i)[0];
+            altTargets[i] = alts.get(i)[1];
+        }
+        /* Names win over synonyms; a synonym shared by several terms doesn't point to any of them */
+        Map<String, Integer> byName = new TreeMap<>();
+        for (i = 0; i < size; i++) {
+            byName.put(TitleCaseSet.titleCase(names[i]), i);
+        }
+        Map<String, Integer> bySynonym = new TreeMap<>();
+        for (Map.Entry<String, Integer> synonym : builder.synonyms) {
+            String key = TitleCaseSet.titleCase(synonym.getKey());
+            int target = Arrays.binarySearch(numbers, synonym.getValue());
+            Integer previous = bySynonym.get(key);
+            if (target >= 0 && !byName.containsKey(key)) {
+                bySynonym.put(key, previous == null || previous == target ? target : -1);
+            }
+        }
+        for (Map.Entry<String, Integer> synonym : bySynonym.entrySet()) {
+            if (synonym.getValue() >= 0) {
+                byName.put(synonym.getKey(), synonym.getValue());
+            }
+        }
+        nameKeys = byName.keySet().toArray(new String[byName.size()]);
+        nameTargets = new int[nameKeys.length];
+        i = 0;
+        for (int target : byName.values()) {
+            nameTargets[i++] = target;
+        }
+        version = Optional.fromNullable(builder.version);
+    }
+
+    /**
+     * Get how many terms there are.
+     * @return the number of terms
+     */
+    public int size()
+    {
+        return numbers.length;
+    }
+
+    /**
+     * Get whether there are no terms at all, as when no release has been loaded.
+     * @return whether it's empty
+     */
+    public boolean isEmpty()
+    {
+        return numbers.length == 0;
+    }
+
+    /**
+     * Get the version of the release, if it gave one.
+     * @return the version
+     */
+    public Optional<String> getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Get whether the id given is a term in this release, either as its id or as an alternative id.
+     * @param hpoId the id, as in HP_0000118 or HP:0000118
+     * @return whether it's there
+     */
+    public boolean contains(String hpoId)
+    {
+        return indexOf(hpoId) >= 0;
+    }
+
+    /**
+     * Get the id the term with the id given goes by, which differs from the id given if that's an
+     * alternative id.
+     * @param hpoId the id, as in HP_0000118 or HP:0000118
+     * @return the id, as in HP_0000118, or absent if there's no such term
+     */
+    public Optional<String> getPrimaryId(String hpoId)
+    {
+        int index = indexOf(hpoId);
+        if (index < 0) {
+            return Optional.absent();
+        }
+        return Optional.of(toId(numbers[index]));
+    }
+
+    /**
+     * Get the name of the term with the id given.
+     * @param hpoId the id, as in HP_0000118 or HP:0000118
+     * @return the name, or absent if there's no such term
+     */
+    public Optional<String> getName(String hpoId)
+    {
+        int index = indexOf(hpoId);
+        if (index < 0) {
+            return Optional.absent();
+        }
+        return Optional.of(names[index]);
+    }
+
+    /**
+     * Find the term going by the name given, either as its name or as an exact synonym.
+     * Case doesn't matter, since names are compared title cased, as phenotype names are.
+     * @param name the name
+     * @return the id of the term, as in HP_0000118, or absent if there's no such term
+     */
+    public Optional<String> findByName(String name)
+    {
+        if (name == null) {
+            return Optional.absent();
+        }
+        int index = Arrays.binarySearch(nameKeys, TitleCaseSet.titleCase(name));
+        if (index < 0) {
+            return Optional.absent();
+        }
+        return Optional.of(toId(numbers[nameTargets[index]]));
+    }
+
+    /**
+     * Get the ids of the term's parents.
+     * @param hpoId the id, as in HP_0000118 or HP:0000118
+     * @return the parents, empty if there's no such term
+     */
+    public List<String> getParents(String hpoId)
+    {
+        int index = indexOf(hpoId);
+        if (index < 0) {
+            return new ArrayList<>();
+        }
+        List<String> results = new ArrayList<>(parentOffsets[index + 1] - parentOffsets[index]);
+        for (int i = parentOffsets[index]; i < parentOffsets[index + 1]; i++) {
+            results.add(toId(numbers[parents[i]]));
+        }
+        return results;
+    }
+
+    /**
+     * Get the ids of every ancestor of a term, nearest first. The term itself isn't included.
+     * @param hpoId the id, as in HP_0000118 or HP:0000118
+     * @return the ancestors, empty if there's no such term
+     */
+    public List<String> getAncestors(String hpoId)
+    {
+        List<String> results = new ArrayList<>();
+        int index = indexOf(hpoId);
+        if (index < 0) {
+            return results;
+        }
+        int[] queue = new int[numbers.length];
+        int head = 0;
+        int tail = 0;
+        BitSet seen = new BitSet(numbers.length);
+        seen.set(index);
+        queue[tail++] = index;
+        while (head < tail) {
+            int current = queue[head++];
+            for (int i = parentOffsets[current]; i < parentOffsets[current + 1]; i++) {
+                int parent = parents[i];
+                if (!seen.get(parent)) {
+                    seen.set(parent);
+                    queue[tail++] = parent;
+                    results.add(toId(numbers[parent]));
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Get whether a term is an ancestor of another.
+     * @param ancestorId the id of the would-be ancestor
+     * @param hpoId the id of the term
+     * @return whether it's an ancestor; false if either term doesn't exist or they're the same
+     */
+    public boolean isAncestor(String ancestorId, String hpoId)
+    {
+        int ancestor = indexOf(ancestorId);
+        int index = indexOf(hpoId);
+        if (ancestor < 0 || index < 0) {
+            return false;
+        }
+        int[] stack = new int[numbers.length];
+        int top = 0;
+        BitSet seen = new BitSet(numbers.length);
+        seen.set(index);
+        stack[top++] = index;
+        while (top > 0) {
+            int current = stack[--top];
+            for (int i = parentOffsets[current]; i < parentOffsets[current + 1]; i++) {
+                int parent = parents[i];
+                if (parent == ancestor) {
+                    return true;
+                }
+                if (!seen.get(parent)) {
+                    seen.set(parent);
+                    stack[top++] = parent;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the index of the term with the id given.
+     * @param hpoId the id
+     * @return the index, or -1 if there's no such term
+     */
+    private int indexOf(String hpoId)
+    {
+        int number = parseId(hpoId);
+        if (number < 0) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(numbers, number);
+        if (index >= 0) {
+            return index;
+        }
+        index = Arrays.binarySearch(altNumbers, number);
+        return index >= 0 ? altTargets[index] : -1;
+    }
+
+    /**
+     * Get the number out of an hpo id.
+     * Accepts both our own HP_0000118 and the HP:0000118 releases use.
+     * @param hpoId the id
+     * @return the number, or -1 if it isn't an hpo id
+     */
+    static int parseId(String hpoId)
+    {
+        if (hpoId == null || hpoId.length() != ID_LENGTH || !hpoId.startsWith("HP")
+                || (hpoId.charAt(2) != '_' && hpoId.charAt(2) != ':')) {
+            return -1;
+        }
+        int number = 0;
+        for (int i = 3; i < ID_LENGTH; i++) {
+            char c = hpoId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    /**
+     * Get the hpo id for a number.
+     * @param number the number
+     * @return the id, as in HP_0000118
+     */
+    static String toId(int number)
+    {
+        return String.format(ID_FORMAT, number);
+    }
+
+    /**
+     * Collects the terms of a release as they're read.
+     */
+    static class Builder
+    {
+        /**
+         * The name of every term, by number.
+         */
+        private Map<Integer, String> names = new TreeMap<>();
+
+        /**
+         * Every is_a edge, as child number and parent number.
+         */
+        private List<int[]> edges = new ArrayList<>();
+
+        /**
+         * The number every alternative id stands for, by alternative id.
+         */
+        private Map<Integer, Integer> alts = new TreeMap<>();
+
+        /**
+         * Every exact synonym, with the number of its term.
+         */
+        private List<Map.Entry<String, Integer>> synonyms = new ArrayList<>();
+
+        /**
+         * The version of the release.
+         */
+        private String version;
+
+        /**
+         * Add a term.
+         * @param number the number of the term
+         * @param name its name
+         * @return this builder
+         */
+        Builder addTerm(int number, String name)
+        {
+            names.put(number, name);
+            return this;
+        }
+
+        /**
+         * Add a parent to a term. Edges to terms that are never added are dropped.
+         * @param child the number of the term
+         * @param parent the number of its parent
+         * @return this builder
+         */
+        Builder addParent(int child, int parent)
+        {
+            edges.add(new int[] { child, parent });
+            return this;
+        }
+
+        /**
+         * Add an exact synonym for a term.
+         * @param number the number of the term
+         * @param synonym the synonym
+         * @return this builder
+         */
+        Builder addSynonym(int number, String synonym)
+        {
+            synonyms.add(new AbstractMap.SimpleImmutableEntry<>(synonym, number));
+            return this;
+        }
+
+        /**
+         * Add an alternative id for a term.
+         * @param alt the alternative number
+         * @param number the number of the term
+         * @return this builder
+         */
+        Builder addAlternative(int alt, int number)
+        {
+            alts.put(alt, number);
+            return this;
+        }
+
+        /**
+         * Set the version of the release.
+         * @param version the version
+         * @return this builder
+         */
+        Builder setVersion(String version)
+        {
+            this.version = version;
+            return this;
+        }
+
+        /**
+         * Build the ontology.
+         * @return the ontology
+         */
+        Ontology build()
+        {
+            return new Ontology(this);
+        }
+    }
+}
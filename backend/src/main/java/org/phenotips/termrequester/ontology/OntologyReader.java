@@ -0,0 +1,291 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.ontology;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.google.common.base.Optional;
+import com.google.inject.Inject;
+
+/**
+ * Reads HPO releases, either in OBO format (hp.obo) or as an obographs json file (hp.json).
+ * Only terms from the HPO itself are kept, and obsolete terms are skipped. Of the synonyms, only
+ * exact ones are kept, since the others don't mean quite the same thing as the term.
+ *
+ * @version $Id$
+ */
+public class OntologyReader
+{
+    /**
+     * The extension of json releases.
+     */
+    public static final String JSON_EXTENSION = ".json";
+
+    /**
+     * The prefix of HPO term uris in obographs.
+     */
+    private static final String PURL_PREFIX = "http://purl.obolibrary.org/obo/";
+
+    /**
+     * The predicate for alternative ids in obographs.
+     */
+    private static final String ALT_ID_PREDICATE = "http://www.geneontology.org/formats/oboInOwl#hasAlternativeId";
+
+    /**
+     * The predicate for exact synonyms in obographs.
+     */
+    private static final String EXACT_PREDICATE = "hasExactSynonym";
+
+    /**
+     * The object mapper.
+     */
+    private ObjectMapper mapper;
+
+    /**
+     * CTOR.
+     * @param mapper the injected object mapper
+     */
+    @Inject
+    OntologyReader(ObjectMapper mapper)
+    {
+        this.mapper = mapper;
+    }
+
+    /**
+     * Read the release in the file given, going by its extension to tell the format.
+     * @param file the file
+     * @return the ontology
+     * @throws IOException if it can't be read
+     */
+    public Ontology read(Path file) throws IOException
+    {
+        try (InputStream in = Files.newInputStream(file)) {
+            if (file.getFileName().toString().endsWith(JSON_EXTENSION)) {
+                return readJson(in);
+            }
+            return readObo(in);
+        }
+    }
+
+    /**
+     * Read an OBO release.
+     * @param in the stream to read from
+     * @return the ontology
+     * @throws IOException if it can't be read
+     */
+    public Ontology readObo(InputStream in) throws IOException
+    {
+        final Ontology.Builder builder = new Ontology.Builder();
+        Optional<String> version = readOboTerms(in, new OboTerm.Visitor()
+        {
+            @Override
+            public void visit(OboTerm term)
+            {
+                addTerm(builder, term);
+            }
+        });
+        builder.setVersion(version.orNull());
+        return builder.build();
+    }
+
+    /**
+     * Read the terms of an OBO release one at a time, leaving out obsolete ones and any that
+     * aren't from the HPO itself.
+     * @param in the stream to read from
+     * @param visitor takes every term, as soon as it's been read
+     * @return the data-version the release gave, if it gave one
+     * @throws IOException if it can't be read
+     */
+    public static Optional<String> readOboTerms(InputStream in, OboTerm.Visitor visitor) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String version = null;
+        OboTerm term = null;
+        boolean header = true;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.startsWith("[")) {
+                visit(visitor, term);
+                header = false;
+                term = "[Term]".equals(line) ? new OboTerm() : null;
+                continue;
+            }
+            int colon = line.indexOf(": ");
+            if (colon < 0) {
+                continue;
+            }
+            String tag = line.substring(0, colon);
+            String value = line.substring(colon + 2);
+            if (header && "data-version".equals(tag)) {
+                version = value;
+            } else if (term != null) {
+                term.read(tag, value);
+            }
+        }
+        visit(visitor, term);
+        return Optional.fromNullable(version);
+    }
+
+    /**
+     * Read an obographs json release.
+     * Streams through the graphs, so only one node or edge is ever held as a tree at a time.
+     * @param in the stream to read from
+     * @return the ontology
+     * @throws IOException if it can't be read
+     */
+    public Ontology readJson(InputStream in) throws IOException
+    {
+        Ontology.Builder builder = new Ontology.Builder();
+        try (JsonParser parser = mapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Not an obographs file");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.START_ARRAY && "graphs".equals(field)) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readGraph(parser, builder);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Read a graph out of an obographs file.
+     * @param parser the parser, at the start of the graph
+     * @param builder the builder to add terms to
+     * @throws IOException if it can't be read
+     */
+    private void readGraph(JsonParser parser, Ontology.Builder builder) throws IOException
+    {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY && "nodes".equals(field)) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    readNode(mapper.<JsonNode>readTree(parser), builder);
+                }
+            } else if (token == JsonToken.START_ARRAY && "edges".equals(field)) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    JsonNode edge = mapper.readTree(parser);
+                    int child = parseUri(edge.path("sub").asText());
+                    int parent = parseUri(edge.path("obj").asText());
+                    if ("is_a".equals(edge.path("pred").asText()) && child >= 0 && parent >= 0) {
+                        builder.addParent(child, parent);
+                    }
+                }
+            } else if (token == JsonToken.START_OBJECT && "meta".equals(field)) {
+                JsonNode version = mapper.<JsonNode>readTree(parser).path("version");
+                if (version.isTextual()) {
+                    builder.setVersion(version.asText());
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Add the term for a node out of an obographs file, unless it's obsolete or not a term at all.
+     * @param node the node
+     * @param builder the builder to add it to
+     */
+    private void readNode(JsonNode node, Ontology.Builder builder)
+    {
+        int number = parseUri(node.path("id").asText());
+        JsonNode meta = node.path("meta");
+        if (number < 0 || !"CLASS".equals(node.path("type").asText()) || !node.path("lbl").isTextual()
+                || meta.path("deprecated").asBoolean(false)) {
+            return;
+        }
+        builder.addTerm(number, node.path("lbl").asText());
+        for (JsonNode synonym : meta.path("synonyms")) {
+            if (EXACT_PREDICATE.equals(synonym.path("pred").asText()) && synonym.path("val").isTextual()) {
+                builder.addSynonym(number, synonym.path("val").asText());
+            }
+        }
+        for (JsonNode property : meta.path("basicPropertyValues")) {
+            int alt = Ontology.parseId(property.path("val").asText());
+            if (ALT_ID_PREDICATE.equals(property.path("pred").asText()) && alt >= 0) {
+                builder.addAlternative(alt, number);
+            }
+        }
+    }
+
+    /**
+     * Get the number out of an HPO term's uri.
+     * @param uri the uri, as in http://purl.obolibrary.org/obo/HP_0000118
+     * @return the number, or -1 if it isn't an HPO term
+     */
+    private static int parseUri(String uri)
+    {
+        if (!uri.startsWith(PURL_PREFIX)) {
+            return -1;
+        }
+        return Ontology.parseId(uri.substring(PURL_PREFIX.length()));
+    }
+
+    /**
+     * Hand an OBO term to the visitor, unless there's none, it's obsolete or it isn't an HPO term.
+     * @param visitor the visitor
+     * @param term the term, may be null
+     */
+    private static void visit(OboTerm.Visitor visitor, OboTerm term)
+    {
+        if (term == null || term.obsolete || term.number < 0 || term.name == null) {
+            return;
+        }
+        visitor.visit(term);
+    }
+
+    /**
+     * Add an OBO term to the builder.
+     * @param builder the builder
+     * @param term the term
+     */
+    private static void addTerm(Ontology.Builder builder, OboTerm term)
+    {
+        builder.addTerm(term.number, term.name);
+        for (int parent : term.parents) {
+            builder.addParent(term.number, parent);
+        }
+        for (int alt : term.alts) {
+            builder.addAlternative(alt, term.number);
+        }
+        for (String synonym : term.exactSynonyms) {
+            builder.addSynonym(term.number, synonym);
+        }
+    }
+}
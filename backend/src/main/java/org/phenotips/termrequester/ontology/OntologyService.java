@@ -0,0 +1,64 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.ontology;
+
+import java.io.IOException;
+
+import java.nio.file.Path;
+
+/**
+ * Keeps the latest local release of the HPO at hand, so ids, names and ancestry can be
+ * looked up without going to github.
+ * Releases are read from the hpo directory under the home directory, as hp.obo or hp.json, and
+ * picked up again whenever a new file is dropped in.
+ *
+ * @version $Id$
+ */
+public interface OntologyService
+{
+    /**
+     * Start this service. The release is loaded in the background; until it is, the ontology
+     * is empty.
+     *
+     * @param home the home directory
+     * @throws IOException if the hpo directory can't be created
+     */
+    void init(Path home) throws IOException;
+
+    /**
+     * Shut the service down.
+     */
+    void shutdown();
+
+    /**
+     * Get the release currently loaded.
+     *
+     * @return the ontology, empty if none has been loaded
+     */
+    Ontology getOntology();
+
+    /**
+     * Load the release in the hpo directory, unless it's the one already loaded.
+     * This is done periodically in the background, but can be done by hand to pick up a new
+     * release straight away.
+     *
+     * @return whether a new release was loaded
+     * @throws IOException if the release can't be read
+     */
+    boolean reload() throws IOException;
+}
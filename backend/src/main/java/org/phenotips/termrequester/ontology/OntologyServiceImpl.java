@@ -0,0 +1,227 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.ontology;
+
+import org.phenotips.termrequester.metrics.Metrics;
+
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Loads HPO releases from disk, and watches for new ones.
+ * A release that fails to load leaves the last one in place, so the failures are counted under
+ * ontology.reload.errors, next to the size and modification time of the release in use.
+ *
+ * @version $Id$
+ */
+@Singleton
+class OntologyServiceImpl implements OntologyService
+{
+    /**
+     * The directory under home the releases live in.
+     */
+    public static final String DIRECTORY = "hpo";
+
+    /**
+     * The names a release may go by, in order of preference when they're equally recent.
+     */
+    public static final String[] RELEASE_FILES = { "hp.obo", "hp.json" };
+
+    /**
+     * How often, in seconds, to check for a new release.
+     */
+    private static final long RELOAD_INTERVAL = 60;
+
+    /**
+     * The counter for releases that failed to load.
+     */
+    private static final String ERRORS_COUNTER = "ontology.reload.errors";
+
+    /**
+     * The release reader.
+     */
+    private OntologyReader reader;
+
+    /**
+     * The release currently loaded.
+     */
+    private volatile Ontology ontology = Ontology.EMPTY;
+
+    /**
+     * The directory releases are read from.
+     */
+    private Path directory;
+
+    /**
+     * The file the current release came from.
+     */
+    private Path loadedFile;
+
+    /**
+     * The modification time of the file the current release came from, when it was loaded.
+     */
+    private volatile FileTime loadedTime;
+
+    /**
+     * The size of the file the current release came from, when it was loaded.
+     */
+    private long loadedSize;
+
+    /**
+     * The metrics to report to.
+     */
+    private Metrics metrics;
+
+    /**
+     * Checks for new releases in the background.
+     */
+    private ScheduledExecutorService watcher;
+
+    /**
+     * CTOR.
+     * @param reader the injected release reader
+     * @param metrics the injected metrics
+     */
+    @Inject
+    OntologyServiceImpl(OntologyReader reader, Metrics metrics)
+    {
+        this.reader = reader;
+        this.metrics = metrics;
+        metrics.gauge("ontology.terms", new Supplier<Integer>()
+        {
+            @Override
+            public Integer get()
+            {
+                return ontology.size();
+            }
+        });
+        metrics.gauge("ontology.release.modified", new Supplier<Long>()
+        {
+            @Override
+            public Long get()
+            {
+                return getLoadedMillis();
+            }
+        });
+    }
+
+    @Override
+    public synchronized void init(Path home) throws IOException
+    {
+        if (watcher == null) {
+            directory = home.resolve(DIRECTORY);
+            Files.createDirectories(directory);
+            watcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().
+                    setNameFormat("termrequester-ontology-watcher").
+                    setDaemon(true).
+                    build());
+            watcher.scheduleWithFixedDelay(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try {
+                        reload();
+                    } catch (IOException | RuntimeException e) {
+                        /* Keep serving the release we have, and try again next time round, by
+                         * when whoever's writing the new one has hopefully finished */
+                        return;
+                    }
+                }
+            }, 0, RELOAD_INTERVAL, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public synchronized void shutdown()
+    {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+            directory = null;
+            ontology = Ontology.EMPTY;
+            loadedFile = null;
+            loadedTime = null;
+        }
+    }
+
+    @Override
+    public Ontology getOntology()
+    {
+        return ontology;
+    }
+
+    @Override
+    public synchronized boolean reload() throws IOException
+    {
+        if (directory == null) {
+            return false;
+        }
+        Path newest = null;
+        BasicFileAttributes newestAttributes = null;
+        for (String name : RELEASE_FILES) {
+            Path file = directory.resolve(name);
+            if (Files.isRegularFile(file)) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (newest == null
+                        || attributes.lastModifiedTime().compareTo(newestAttributes.lastModifiedTime()) > 0) {
+                    newest = file;
+                    newestAttributes = attributes;
+                }
+            }
+        }
+        if (newest == null || (newest.equals(loadedFile)
+                    && newestAttributes.lastModifiedTime().equals(loadedTime)
+                    && newestAttributes.size() == loadedSize)) {
+            return false;
+        }
+        try {
+            ontology = reader.read(newest);
+        } catch (IOException | RuntimeException e) {
+            metrics.increment(ERRORS_COUNTER);
+            throw e;
+        }
+        loadedFile = newest;
+        loadedTime = newestAttributes.lastModifiedTime();
+        loadedSize = newestAttributes.size();
+        return true;
+    }
+
+    /**
+     * Get when the file the current release came from was last modified, as of loading it.
+     * @return the modification time in milliseconds since the epoch, or 0 if nothing's loaded
+     */
+    private long getLoadedMillis()
+    {
+        FileTime time = loadedTime;
+        return (time == null) ? 0 : time.toMillis();
+    }
+}
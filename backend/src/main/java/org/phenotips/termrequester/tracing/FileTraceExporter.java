@@ -0,0 +1,204 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.tracing;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Appends traces to traces.jsonl in the home directory, one per line.
+ * Each line is an OTLP/JSON trace export request, the same body an OpenTelemetry collector accepts
+ * at /v1/traces, so the file can be replayed into one or read as is. Once the file passes MAX_BYTES
+ * it's moved to traces.jsonl.1, replacing whatever was there.
+ *
+ * @version $Id$
+ */
+@Singleton
+public class FileTraceExporter implements TraceExporter
+{
+    /**
+     * The name of the file.
+     */
+    public static final String FILE_NAME = "traces.jsonl";
+
+    /**
+     * How big the file gets before it's rotated.
+     */
+    public static final long MAX_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * The service name traces are reported under.
+     */
+    private static final String SERVICE_NAME = "termrequester";
+
+    /**
+     * The OTLP status code for an error.
+     */
+    private static final int STATUS_ERROR = 2;
+
+    /**
+     * The OTLP kind for a span internal to the service.
+     */
+    private static final int KIND_INTERNAL = 1;
+
+    /**
+     * The object mapper.
+     */
+    private ObjectMapper mapper;
+
+    /**
+     * The file.
+     */
+    private Path file;
+
+    /**
+     * Writes to the file.
+     */
+    private Writer writer;
+
+    /**
+     * CTOR.
+     * @param mapper the object mapper
+     */
+    @Inject
+    public FileTraceExporter(ObjectMapper mapper)
+    {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public synchronized void init(Path home) throws IOException
+    {
+        file = home.resolve(FILE_NAME);
+        open();
+    }
+
+    @Override
+    public synchronized void export(Span root) throws IOException
+    {
+        if (writer == null) {
+            return;
+        }
+        writer.write(mapper.writeValueAsString(toOtlp(root)));
+        writer.write('\n');
+        writer.flush();
+        if (Files.size(file) > MAX_BYTES) {
+            writer.close();
+            Files.move(file, file.resolveSibling(FILE_NAME + ".1"), StandardCopyOption.REPLACE_EXISTING);
+            open();
+        }
+    }
+
+    @Override
+    public synchronized void shutdown() throws IOException
+    {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    /**
+     * Open the file for appending.
+     * @throws IOException on failure
+     */
+    private void open() throws IOException
+    {
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Build the OTLP export request for a trace.
+     * @param root the outermost span
+     * @return the request
+     */
+    private ObjectNode toOtlp(Span root)
+    {
+        ObjectNode request = mapper.createObjectNode();
+        ObjectNode resourceSpans = request.putArray("resourceSpans").addObject();
+        addAttribute(resourceSpans.putObject("resource").putArray("attributes"), "service.name", SERVICE_NAME);
+        ObjectNode scopeSpans = resourceSpans.putArray("scopeSpans").addObject();
+        scopeSpans.putObject("scope").put("name", Tracer.class.getName());
+        addSpans(scopeSpans.putArray("spans"), root);
+        return request;
+    }
+
+    /**
+     * Add a span and everything within it to a list of OTLP spans.
+     * @param spans the list
+     * @param span the span
+     */
+    private void addSpans(ArrayNode spans, Span span)
+    {
+        ObjectNode node = spans.addObject();
+        node.put("traceId", span.getTraceId());
+        node.put("spanId", span.getSpanId());
+        if (span.getParent().isPresent()) {
+            node.put("parentSpanId", span.getParent().get().getSpanId());
+        }
+        node.put("name", span.getName());
+        node.put("kind", KIND_INTERNAL);
+        long start = TimeUnit.MILLISECONDS.toNanos(span.getStartMillis());
+        /* OTLP/JSON carries 64 bit integers as strings */
+        node.put("startTimeUnixNano", Long.toString(start));
+        node.put("endTimeUnixNano", Long.toString(start + Math.max(span.getDurationNanos(), 0)));
+        ArrayNode attributes = node.putArray("attributes");
+        for (Map.Entry<String, String> attribute : span.getAttributes().entrySet()) {
+            addAttribute(attributes, attribute.getKey(), attribute.getValue());
+        }
+        if (span.getDropped() > 0) {
+            addAttribute(attributes, "droppedChildren", Integer.toString(span.getDropped()));
+        }
+        if (span.getAttributes().containsKey("error")) {
+            node.putObject("status").put("code", STATUS_ERROR).put("message", span.getAttributes().get("error"));
+        }
+        for (Span child : span.getChildren()) {
+            addSpans(spans, child);
+        }
+    }
+
+    /**
+     * Add a string attribute to a list of OTLP attributes.
+     * @param attributes the list
+     * @param key the key
+     * @param value the value
+     */
+    private static void addAttribute(ArrayNode attributes, String key, String value)
+    {
+        ObjectNode attribute = attributes.addObject();
+        attribute.put("key", key);
+        attribute.putObject("value").put("stringValue", value);
+    }
+}
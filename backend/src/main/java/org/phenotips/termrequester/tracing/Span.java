@@ -0,0 +1,266 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.tracing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Optional;
+
+/**
+ * One timed stage of a trace, with whatever attributes it was given and the stages within it.
+ * Spans come from Tracer#start and Tracer#stage, and must be closed on the thread that started them,
+ * in the order they were started; try-with-resources is the way to go about it.
+ * A span isn't thread-safe: only the thread that started it should touch it until it's closed.
+ *
+ * @version $Id$
+ */
+public class Span implements AutoCloseable
+{
+    /**
+     * The most children a span keeps; any more are only counted, so a long sync can't blow up.
+     */
+    static final int MAX_CHILDREN = 1000;
+
+    /**
+     * The tracer this came from.
+     */
+    private final Tracer tracer;
+
+    /**
+     * Whether this is part of a trace, as opposed to a stage started outside of any.
+     */
+    private final boolean recorded;
+
+    /**
+     * The span this is in, if any.
+     */
+    private final Optional<Span> parent;
+
+    /**
+     * The id of the trace.
+     */
+    private final String traceId;
+
+    /**
+     * The id of this span.
+     */
+    private final String spanId;
+
+    /**
+     * The name of the stage.
+     */
+    private final String name;
+
+    /**
+     * When this started, in milliseconds since the epoch.
+     */
+    private final long startMillis;
+
+    /**
+     * When this started, according to System.nanoTime().
+     */
+    private final long startNanos;
+
+    /**
+     * How long this took, in nanoseconds, once closed.
+     */
+    private long durationNanos = -1;
+
+    /**
+     * The attributes.
+     */
+    private final Map<String, String> attributes = new LinkedHashMap<>();
+
+    /**
+     * The spans within this one.
+     */
+    private final List<Span> children = new ArrayList<>();
+
+    /**
+     * How many spans within this one weren't kept.
+     */
+    private int dropped;
+
+    /**
+     * CTOR.
+     * @param tracer the tracer starting it
+     * @param recorded whether it's part of a trace
+     * @param parent the span it's in, if any
+     * @param traceId the id of the trace
+     * @param spanId the id of the span
+     * @param name the name of the stage
+     */
+    Span(Tracer tracer, boolean recorded, Optional<Span> parent, String traceId, String spanId, String name)
+    {
+        this.tracer = tracer;
+        this.recorded = recorded;
+        this.parent = parent;
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.name = name;
+        this.startMillis = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+        if (parent.isPresent()) {
+            parent.get().addChild(this);
+        }
+    }
+
+    /**
+     * Set an attribute.
+     * @param key the attribute
+     * @param value its value, stored as a string
+     * @return this span
+     */
+    public Span set(String key, Object value)
+    {
+        attributes.put(key, String.valueOf(value));
+        return this;
+    }
+
+    /**
+     * Mark this span as failed with the error given.
+     * @param error the error
+     * @return this span
+     */
+    public Span fail(Throwable error)
+    {
+        return set("error", error.getClass().getName());
+    }
+
+    /**
+     * End the span. Ending the outermost span of a trace hands the trace to the tracer to export,
+     * if it's sampled.
+     */
+    @Override
+    public void close()
+    {
+        if (durationNanos < 0) {
+            durationNanos = System.nanoTime() - startNanos;
+            if (recorded) {
+                tracer.end(this);
+            }
+        }
+    }
+
+    /**
+     * Get whether this is part of a trace. Stages started outside of any trace aren't, and go nowhere.
+     * @return whether it's recorded
+     */
+    public boolean isRecorded()
+    {
+        return recorded;
+    }
+
+    /**
+     * Get the span this is in.
+     * @return the parent, if any
+     */
+    public Optional<Span> getParent()
+    {
+        return parent;
+    }
+
+    /**
+     * Get the id of the trace this is part of.
+     * @return the trace id, 32 hex digits
+     */
+    public String getTraceId()
+    {
+        return traceId;
+    }
+
+    /**
+     * Get the id of this span.
+     * @return the span id, 16 hex digits
+     */
+    public String getSpanId()
+    {
+        return spanId;
+    }
+
+    /**
+     * Get the name of the stage.
+     * @return the name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Get when this started.
+     * @return the start, in milliseconds since the epoch
+     */
+    public long getStartMillis()
+    {
+        return startMillis;
+    }
+
+    /**
+     * Get how long this took.
+     * @return the duration in nanoseconds, or -1 if it's still open
+     */
+    public long getDurationNanos()
+    {
+        return durationNanos;
+    }
+
+    /**
+     * Get the attributes.
+     * @return the attributes, in the order they were first set
+     */
+    public Map<String, String> getAttributes()
+    {
+        return Collections.unmodifiableMap(attributes);
+    }
+
+    /**
+     * Get the spans within this one.
+     * @return the children, in the order they started
+     */
+    public List<Span> getChildren()
+    {
+        return Collections.unmodifiableList(children);
+    }
+
+    /**
+     * Get how many spans within this one were started after it had MAX_CHILDREN, and so weren't kept.
+     * @return the count
+     */
+    public int getDropped()
+    {
+        return dropped;
+    }
+
+    /**
+     * Add a span within this one.
+     * @param child the child
+     */
+    private void addChild(Span child)
+    {
+        if (children.size() < MAX_CHILDREN) {
+            children.add(child);
+        } else {
+            dropped++;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.tracing;
+
+import java.io.IOException;
+
+import java.nio.file.Path;
+
+/**
+ * Somewhere sampled traces go.
+ *
+ * @version $Id$
+ */
+public interface TraceExporter
+{
+    /**
+     * Get ready to export.
+     * @param home the app's home directory
+     * @throws IOException on failure
+     */
+    void init(Path home) throws IOException;
+
+    /**
+     * Export a finished trace.
+     * @param root the outermost span of the trace
+     * @throws IOException on failure
+     */
+    void export(Span root) throws IOException;
+
+    /**
+     * Stop exporting, releasing whatever was held.
+     * @throws IOException on failure
+     */
+    void shutdown() throws IOException;
+}
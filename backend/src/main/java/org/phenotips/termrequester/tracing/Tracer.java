@@ -0,0 +1,198 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.tracing;
+
+import java.io.IOException;
+
+import java.nio.file.Path;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Optional;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Traces work through the app, one thread at a time.
+ * Starting a span while another one is open on the same thread makes it a stage within that one;
+ * otherwise it starts a new trace. Starting a stage is the same, except that outside of a trace it
+ * does nothing, so code that's only worth tracing as part of something bigger can always call it.
+ * When the outermost span of a trace is closed, the trace is handed to the exporter if it's
+ * sampled: slow traces always are, and the rest one time in SAMPLE_ONE_IN.
+ * Work handed off to other threads isn't part of the trace that handed it off.
+ *
+ * @version $Id$
+ */
+@Singleton
+public class Tracer
+{
+    /**
+     * How long a trace must take, in milliseconds, to always be exported.
+     */
+    public static final long SLOW_MILLIS = 1000;
+
+    /**
+     * One in how many traces that aren't slow get exported.
+     */
+    public static final int SAMPLE_ONE_IN = 100;
+
+    /**
+     * The span open on each thread.
+     */
+    private final ThreadLocal<Span> current = new ThreadLocal<>();
+
+    /**
+     * Where sampled traces go.
+     */
+    private TraceExporter exporter;
+
+    /**
+     * How long a trace must take, in nanoseconds, to always be exported.
+     */
+    private long slowNanos;
+
+    /**
+     * One in how many traces that aren't slow get exported.
+     */
+    private int sampleOneIn;
+
+    /**
+     * CTOR.
+     * @param exporter where sampled traces go
+     */
+    @Inject
+    public Tracer(TraceExporter exporter)
+    {
+        this(exporter, SLOW_MILLIS, SAMPLE_ONE_IN);
+    }
+
+    /**
+     * CTOR.
+     * @param exporter where sampled traces go
+     * @param slowMillis how long a trace must take, in milliseconds, to always be exported
+     * @param sampleOneIn one in how many other traces get exported
+     */
+    Tracer(TraceExporter exporter, long slowMillis, int sampleOneIn)
+    {
+        this.exporter = exporter;
+        this.slowNanos = TimeUnit.MILLISECONDS.toNanos(slowMillis);
+        this.sampleOneIn = sampleOneIn;
+    }
+
+    /**
+     * Get ready to trace.
+     * @param home the app's home directory
+     * @throws IOException on failure
+     */
+    public void init(Path home) throws IOException
+    {
+        exporter.init(home);
+    }
+
+    /**
+     * Stop exporting traces.
+     * @throws IOException on failure
+     */
+    public void shutdown() throws IOException
+    {
+        exporter.shutdown();
+    }
+
+    /**
+     * Start a span, within the one open on this thread if there is one or as a new trace otherwise.
+     * @param name the name of the stage
+     * @return the span, to be closed once the stage is done
+     */
+    public Span start(String name)
+    {
+        Optional<Span> parent = current();
+        String traceId = parent.isPresent() ? parent.get().getTraceId() : randomHex(2);
+        Span span = new Span(this, true, parent, traceId, randomHex(1), name);
+        current.set(span);
+        return span;
+    }
+
+    /**
+     * Start a span within the one open on this thread. If there isn't one, the span returned
+     * isn't recorded anywhere.
+     * @param name the name of the stage
+     * @return the span, to be closed once the stage is done
+     */
+    public Span stage(String name)
+    {
+        if (current.get() == null) {
+            return new Span(this, false, Optional.<Span>absent(), "", "", name);
+        }
+        return start(name);
+    }
+
+    /**
+     * Get the span open on this thread.
+     * @return the span, if any
+     */
+    public Optional<Span> current()
+    {
+        return Optional.fromNullable(current.get());
+    }
+
+    /**
+     * Note that a span has ended, exporting its trace if it was the outermost one and it's sampled.
+     * @param span the span
+     */
+    void end(Span span)
+    {
+        if (span.getParent().isPresent()) {
+            current.set(span.getParent().get());
+            return;
+        }
+        current.remove();
+        if (sampled(span)) {
+            try {
+                exporter.export(span);
+            } catch (IOException e) {
+                /* Traces are best effort */
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get whether a finished trace should be exported.
+     * @param root the outermost span of the trace
+     * @return whether to export it
+     */
+    private boolean sampled(Span root)
+    {
+        return root.getDurationNanos() >= slowNanos || ThreadLocalRandom.current().nextInt(sampleOneIn) == 0;
+    }
+
+    /**
+     * Build a random id.
+     * @param longs how many random longs make up the id
+     * @return the id, in hex
+     */
+    private static String randomHex(int longs)
+    {
+        StringBuilder id = new StringBuilder();
+        for (int i = 0; i < longs; i++) {
+            id.append(String.format("%016x", ThreadLocalRandom.current().nextLong()));
+        }
+        return id.toString();
+    }
+}
@@ -83,7 +83,7 @@ protected Set<String> delegate()
     @Override
     public boolean add(String e)
     {
-        String title = WordUtils.capitalizeFully(e);
+        String title = titleCase(e);
         return super.add(title);
     }
 
@@ -100,7 +100,7 @@ public boolean contains(Object o)
             return false;
         }
         String s = (String) o;
-        return super.contains(WordUtils.capitalizeFully(s));
+        return super.contains(titleCase(s));
     }
 
     @Override
@@ -116,7 +116,7 @@ public boolean remove(Object o)
             return false;
         }
         String s = (String) o;
-        return super.remove(WordUtils.capitalizeFully(s));
+        return super.remove(titleCase(s));
     }
 
     @Override
@@ -131,6 +131,17 @@ public boolean retainAll(Collection<?> c)
         return standardRetainAll(titleCaseColletion(c));
     }
 
+    /**
+     * Title case the string given, the way every element of the set is.
+     *
+     * @param s the string
+     * @return the string title cased
+     */
+    public static String titleCase(String s)
+    {
+        return WordUtils.capitalizeFully(s);
+    }
+
     /**
      * Title case the collection of objects given.
      *
@@ -142,7 +153,7 @@ private Collection<String> titleCaseColletion(Collection<?> c)
         List<String> retval = new ArrayList<>(c.size());
         for (Object o : c) {
             if (o instanceof String) {
-                retval.add(WordUtils.capitalizeFully((String) o));
+                retval.add(titleCase((String) o));
             }
         }
         return retval;
@@ -0,0 +1,158 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.phenotips.termrequester.github.GithubAPI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests the BackendLifecycle class.
+ *
+ * @version $Id$
+ */
+public class BackendLifecycleTest
+{
+    /**
+     * The repository.
+     */
+    private static final GithubAPI.Repository REPO = new GithubAPI.Repository("", "", "");
+
+    /**
+     * The home directory.
+     */
+    private static final Path HOME = Paths.get("home");
+
+    /**
+     * The mocked phenotype manager.
+     */
+    private PhenotypeManager manager;
+
+    /**
+     * The lifecycle under test.
+     */
+    private BackendLifecycle lifecycle;
+
+    /**
+     * Set up the test case.
+     */
+    @Before
+    public void setUp()
+    {
+        manager = mock(PhenotypeManager.class);
+        lifecycle = new BackendLifecycle(manager);
+    }
+
+    /**
+     * Test that borrowing the manager over and over only ever starts it once, and never stops it.
+     */
+    @Test
+    public void testBorrow() throws Exception
+    {
+        lifecycle.start(REPO, HOME);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(manager == lifecycle.borrow(REPO, HOME));
+            lifecycle.giveBack();
+        }
+        assertEquals(0, lifecycle.getBorrowed());
+        verify(manager, times(1)).init(REPO, HOME);
+        verify(manager, never()).shutdown();
+        lifecycle.stop();
+        verify(manager).shutdown();
+    }
+
+    /**
+     * Test that borrowing starts the manager if nobody has.
+     */
+    @Test
+    public void testBorrowStarts() throws Exception
+    {
+        lifecycle.borrow(REPO, HOME);
+        lifecycle.giveBack();
+        lifecycle.borrow(REPO, HOME);
+        lifecycle.giveBack();
+        verify(manager, times(1)).init(REPO, HOME);
+        verify(manager, never()).shutdown();
+    }
+
+    /**
+     * Test that stopping waits for the manager to be given back, and lends nothing out meanwhile.
+     */
+    @Test
+    public void testStopWaits() throws Exception
+    {
+        lifecycle.start(REPO, HOME);
+        lifecycle.borrow(REPO, HOME);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        Thread stopper = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try {
+                    lifecycle.stop();
+                    stopped.countDown();
+                } catch (TermRequesterBackendException e) {
+                    return;
+                }
+            }
+        });
+        stopper.start();
+        assertFalse(stopped.await(200, TimeUnit.MILLISECONDS));
+        verify(manager, never()).shutdown();
+        try {
+            lifecycle.borrow(REPO, HOME);
+            fail();
+        } catch (TermRequesterBackendException e) {
+            /* Expected */
+        }
+        lifecycle.giveBack();
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        verify(manager).shutdown();
+        /* It can be started again afterwards */
+        lifecycle.start(REPO, HOME);
+        verify(manager, times(2)).init(any(GithubAPI.Repository.class), any(Path.class));
+    }
+
+    /**
+     * Test that giving back something never borrowed is caught.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testGiveBackUnborrowed()
+    {
+        lifecycle.giveBack();
+    }
+}
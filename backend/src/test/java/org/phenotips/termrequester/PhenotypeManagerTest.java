@@ -18,11 +18,27 @@
 package org.phenotips.termrequester;
 
 import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.After;
 import org.junit.Before;
@@ -37,6 +53,8 @@
 import org.phenotips.termrequester.db.DatabaseService;
 import org.phenotips.termrequester.github.GithubAPI;
 import org.phenotips.termrequester.github.GithubAPIFactory;
+import org.phenotips.termrequester.github.GithubException;
+import org.phenotips.termrequester.ontology.OntologyService;
 import org.phenotips.termrequester.testutils.TestModule;
 import org.phenotips.termrequester.utils.IdUtils;
 
@@ -49,9 +67,12 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.refEq;
 import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.doAnswer;
@@ -59,6 +80,7 @@
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -155,6 +177,7 @@ public void setUp() throws Exception
         client.init(new GithubAPI.Repository(OWNER, REPOSITORY, TOKEN), folder.getRoot().toPath());
         pt = new Phenotype(PT_NAME, PT_DESC);
         when(databaseService.getPhenotypeById(any(String.class))).thenReturn(Phenotype.NULL);
+        when(databaseService.getRedirect(any(String.class))).thenReturn(Optional.<String>absent());
         when(databaseService.getPhenotype(any(Phenotype.class))).thenReturn(Phenotype.NULL);
         when(githubApi.searchForIssue(any(Phenotype.class))).thenReturn(Optional.<String>absent());
     }
@@ -165,6 +188,20 @@ public void tearDown() throws Exception
         client.shutdown();
     }
 
+    /**
+     * Test that the manager is only ready once its database is.
+     */
+    @Test
+    public void testIsReady() throws Exception
+    {
+        when(databaseService.isReady()).thenReturn(false);
+        assertFalse(client.isReady());
+        when(databaseService.isReady()).thenReturn(true);
+        assertTrue(client.isReady());
+        client.shutdown();
+        assertFalse(client.isReady());
+    }
+
     /**
      * Test that a new phenotype can be created.
      * TODO So very many cases are missing. Need more test cases.
@@ -235,6 +272,279 @@ public Void answer(InvocationOnMock invocation) {
         verify(githubApi).openIssue(refEq(pt2));
     }
 
+    /**
+     * Test that concurrent requests for the same phenotype end up as one issue, with only one of
+     * them counted as new.
+     */
+    @Test
+    public void testConcurrentCreation() throws Exception
+    {
+        final Map<String, Phenotype> saved = Collections.synchronizedMap(new HashMap<String, Phenotype>());
+        when(databaseService.getPhenotype(any(Phenotype.class))).thenAnswer(new Answer<Phenotype>() {
+            public Phenotype answer(InvocationOnMock invocation) {
+                Phenotype arg = (Phenotype) invocation.getArguments()[0];
+                Phenotype found = saved.get(arg.getName());
+                return found == null ? Phenotype.NULL : found;
+            }
+        });
+        when(databaseService.savePhenotype(any(Phenotype.class))).thenAnswer(new Answer<Phenotype>() {
+            public Phenotype answer(InvocationOnMock invocation) {
+                Phenotype arg = (Phenotype) invocation.getArguments()[0];
+                arg.setId(PT_ID);
+                saved.put(arg.getName(), arg);
+                return arg;
+            }
+        });
+        doAnswer(new Answer<Void>() {
+            public Void answer(InvocationOnMock invocation) throws InterruptedException {
+                /* Give the other request plenty of time to get in the way */
+                Thread.sleep(200);
+                Phenotype arg = (Phenotype) invocation.getArguments()[0];
+                arg.setIssueNumber(PT_NUM);
+                arg.setStatus(Phenotype.Status.SUBMITTED);
+                return null;
+            }
+        }).when(githubApi).openIssue(any(Phenotype.class));
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<PhenotypeManager.PhenotypeCreation>> futures = new ArrayList<>();
+            for (final String name : Arrays.asList(PT_NAME, PT_NAME.toUpperCase())) {
+                futures.add(pool.submit(new Callable<PhenotypeManager.PhenotypeCreation>() {
+                    public PhenotypeManager.PhenotypeCreation call() throws Exception {
+                        return client.createRequest(new Phenotype(name, PT_DESC));
+                    }
+                }));
+            }
+            PhenotypeManager.PhenotypeCreation first = futures.get(0).get();
+            PhenotypeManager.PhenotypeCreation second = futures.get(1).get();
+            assertTrue(first.phenotype == second.phenotype);
+            assertTrue(first.isNew ^ second.isNew);
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        } finally {
+            pool.shutdownNow();
+        }
+        verify(githubApi).openIssue(any(Phenotype.class));
+    }
+
+    /**
+     * Test that an identical request arriving while another is in flight waits for it, rather
+     * than going to the db and github again.
+     */
+    @Test
+    public void testCoalescedCreation() throws Exception
+    {
+        final CountDownLatch opening = new CountDownLatch(1);
+        final CountDownLatch opened = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            public Void answer(InvocationOnMock invocation) throws InterruptedException {
+                opening.countDown();
+                opened.await();
+                return null;
+            }
+        }).when(githubApi).openIssue(any(Phenotype.class));
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Callable<PhenotypeManager.PhenotypeCreation> request =
+                new Callable<PhenotypeManager.PhenotypeCreation>() {
+                    public PhenotypeManager.PhenotypeCreation call() throws Exception {
+                        return client.createRequest(new Phenotype(PT_NAME, PT_DESC));
+                    }
+                };
+            Future<PhenotypeManager.PhenotypeCreation> leader = pool.submit(request);
+            opening.await();
+            Future<PhenotypeManager.PhenotypeCreation> follower = pool.submit(request);
+            /* Give the follower time to find the leader in flight */
+            Thread.sleep(200);
+            opened.countDown();
+            assertTrue(leader.get().isNew);
+            assertFalse(follower.get().isNew);
+            assertTrue(leader.get().phenotype == follower.get().phenotype);
+        } finally {
+            pool.shutdownNow();
+        }
+        verify(databaseService).getPhenotype(any(Phenotype.class));
+        verify(githubApi).searchForIssue(any(Phenotype.class));
+        verify(githubApi).openIssue(any(Phenotype.class));
+    }
+
+    /**
+     * Test creating many phenotypes in one batch.
+     */
+    @Test
+    public void testBatchCreation() throws Exception
+    {
+        Phenotype pt2 = new Phenotype("Another", "another");
+        Phenotype duplicate = new Phenotype(PT_NAME, "duplicate");
+        Phenotype pt3 = new Phenotype("Existing", "again");
+        Phenotype existing = new Phenotype("Existing", "existing");
+        existing.setId(PT_ID);
+        existing.setIssueNumber(PT_NUM);
+        existing.setStatus(Phenotype.Status.SUBMITTED);
+        existing.setClean();
+        /* The duplicate gets folded into pt, so the db only sees three */
+        when(databaseService.getPhenotypes(any(List.class))).
+            thenReturn(Arrays.asList(Phenotype.NULL, Phenotype.NULL, existing));
+        final Map<String, Phenotype> saved = new HashMap<>();
+        doAnswer(new Answer<List<Phenotype>>() {
+            public List<Phenotype> answer(InvocationOnMock invocation) {
+                @SuppressWarnings("unchecked")
+                List<Phenotype> arg = (List<Phenotype>) invocation.getArguments()[0];
+                int next = 100;
+                for (Phenotype p : arg) {
+                    if (!p.getId().isPresent()) {
+                        p.setId(String.format(IdUtils.ID_FORMAT, next++));
+                    }
+                    saved.put(p.getId().get(), p);
+                }
+                return arg;
+            }
+        }).when(databaseService).savePhenotypes(any(List.class));
+        when(databaseService.getPhenotypeById(any(String.class))).thenAnswer(new Answer<Phenotype>() {
+            public Phenotype answer(InvocationOnMock invocation) {
+                return saved.get((String) invocation.getArguments()[0]);
+            }
+        });
+        List<PhenotypeManager.PhenotypeCreation> created =
+            client.createRequests(Arrays.asList(pt, pt2, duplicate, pt3));
+        assertEquals(4, created.size());
+        assertTrue(created.get(0).phenotype == pt);
+        assertTrue(created.get(0).isNew);
+        assertTrue(created.get(1).phenotype == pt2);
+        assertTrue(created.get(1).isNew);
+        assertTrue(created.get(2).phenotype == pt);
+        assertFalse(created.get(2).isNew);
+        assertTrue(created.get(3).phenotype == existing);
+        assertFalse(created.get(3).isNew);
+        assertTrue(pt.getSynonyms().isEmpty());
+        assertTrue(existing.getSynonyms().isEmpty());
+        verify(databaseService).savePhenotypes(any(List.class));
+        /* Github gets the new ones opened, and the merged one patched, in the background */
+        verify(githubApi, timeout(5000)).openIssue(same(pt));
+        verify(githubApi, timeout(5000)).openIssue(same(pt2));
+        verify(githubApi, timeout(5000)).patchIssue(same(existing));
+    }
+
+    /**
+     * Test that the async batch only answers once the new requests have been pushed to github.
+     */
+    @Test
+    public void testCreateRequestsAsync() throws Exception
+    {
+        Phenotype pt2 = new Phenotype("Second", "second");
+        final AtomicInteger issues = new AtomicInteger();
+        doAnswer(new Answer<Void>() {
+            public Void answer(InvocationOnMock invocation) {
+                Phenotype opened = (Phenotype) invocation.getArguments()[0];
+                opened.setIssueNumber(Integer.toString(issues.incrementAndGet()));
+                opened.setStatus(Phenotype.Status.SUBMITTED);
+                return null;
+            }
+        }).when(githubApi).openIssue(any(Phenotype.class));
+        when(databaseService.getPhenotypes(any(List.class))).
+            thenReturn(Arrays.asList(Phenotype.NULL, Phenotype.NULL));
+        List<PhenotypeManager.PhenotypeCreation> created =
+            client.createRequestsAsync(Arrays.asList(pt, pt2)).get(5, TimeUnit.SECONDS);
+        assertEquals(2, created.size());
+        assertTrue(created.get(0).phenotype == pt);
+        assertTrue(created.get(0).isNew);
+        assertTrue(created.get(1).phenotype == pt2);
+        assertTrue(pt.getIssueNumber().isPresent());
+        assertTrue(pt2.getIssueNumber().isPresent());
+        assertEquals(2, issues.get());
+    }
+
+    /**
+     * Test that requests naming parents that exist nowhere are refused, before anything is saved.
+     */
+    @Test
+    public void testUnknownParent() throws Exception
+    {
+        loadOntology();
+        Phenotype accepted = new HPOPhenotype("Accepted", "accepted");
+        accepted.setStatus(Phenotype.Status.ACCEPTED);
+        accepted.setHpoId(PT_HPO_ID);
+        when(databaseService.getPhenotypesByHpoId(any(Collection.class))).
+            thenReturn(Collections.singletonMap(PT_HPO_ID, accepted));
+        pt.addParentId("HP_0001250");
+        pt.addParentId(PT_ID);
+        pt.addParentId(PT_HPO_ID);
+        when(databaseService.savePhenotype(refEq(pt))).thenReturn(pt);
+        assertTrue(client.createRequest(pt).isNew);
+        Phenotype orphan = new Phenotype("Orphan", "orphan");
+        orphan.addParentId("HP_0001251");
+        try {
+            client.createRequests(Arrays.asList(orphan));
+            fail();
+        } catch (IllegalArgumentException e) {
+            verify(databaseService, never()).savePhenotypes(any(List.class));
+        }
+        orphan = new Phenotype("Orphan", "orphan");
+        orphan.addParentId("Seizure");
+        try {
+            client.createRequest(orphan);
+            fail();
+        } catch (IllegalArgumentException e) {
+            verify(githubApi, never()).openIssue(same(orphan));
+        }
+    }
+
+    /**
+     * Test that requests for terms already in the HPO are answered with the term, without going
+     * to github or saving anything.
+     */
+    @Test
+    public void testAlreadyInHpo() throws Exception
+    {
+        loadOntology();
+        Phenotype request = new Phenotype("small head", "my head is small");
+        PhenotypeManager.PhenotypeCreation created = client.createRequest(request);
+        assertFalse(created.isNew);
+        assertEquals(Phenotype.Status.PUBLISHED, created.phenotype.getStatus());
+        assertEquals("HP_0000252", created.phenotype.getHpoId().get());
+        Phenotype bySynonym = new Phenotype("Fits", "fits");
+        bySynonym.addSynonym("seizures");
+        pt.addSynonym("Another synonym");
+        when(databaseService.getPhenotypes(any(List.class))).thenReturn(Arrays.asList(Phenotype.NULL));
+        List<PhenotypeManager.PhenotypeCreation> batch = client.createRequests(Arrays.asList(bySynonym, pt));
+        assertEquals("HP_0001250", batch.get(0).phenotype.getHpoId().get());
+        assertFalse(batch.get(0).isNew);
+        assertTrue(batch.get(1).phenotype == pt);
+        assertTrue(batch.get(1).isNew);
+        verify(databaseService).getPhenotypes(Arrays.asList(pt));
+        verify(databaseService).savePhenotypes(Arrays.asList(pt));
+        verify(databaseService, never()).getPhenotype(any(Phenotype.class));
+        /* pt itself is pushed in the background; wait for that, then make sure it was the only one */
+        verify(githubApi, timeout(5000)).openIssue(same(pt));
+        verify(githubApi).searchForIssue(same(pt));
+        verify(githubApi, never()).searchForIssue(same(request));
+        verify(githubApi, never()).searchForIssue(same(bySynonym));
+        verify(githubApi, never()).openIssue(same(request));
+        verify(githubApi, never()).openIssue(same(bySynonym));
+    }
+
+    /**
+     * Test that hpo ids never requested through us are found in the local HPO.
+     */
+    @Test
+    public void testGetByHpoIdFromOntology() throws Exception
+    {
+        loadOntology();
+        when(databaseService.getPhenotypeByHpoId(any(String.class))).thenReturn(Phenotype.NULL);
+        Phenotype published = client.getPhenotypeById("HP_0002279");
+        assertEquals(Phenotype.Status.PUBLISHED, published.getStatus());
+        assertEquals("HP_0001250", published.getHpoId().get());
+        assertEquals("Seizure", published.getName());
+        assertEquals(Phenotype.NULL, client.getPhenotypeById("HP_0001251"));
+        Map<String, Phenotype> none = new HashMap<>();
+        when(databaseService.getPhenotypesById(any(Collection.class))).thenReturn(none);
+        when(databaseService.getPhenotypesByHpoId(any(Collection.class))).thenReturn(none);
+        Map<String, Phenotype> results = client.getPhenotypesById(Arrays.asList("HP_0000252", "HP_0001251"));
+        assertEquals(1, results.size());
+        assertEquals("Microcephaly", results.get("HP_0000252").getName());
+        verify(githubApi, never()).readPhenotype(any(Phenotype.class));
+    }
+
     /**
      * Test the getPhenotypeById method.
      */
@@ -248,7 +558,8 @@ public void testGetById() throws Exception
         Phenotype pt2 = client.getPhenotypeById(PT_ID);
         assertEquals(pt, pt2);
         verify(githubApi).readPhenotype(same(pt));
-        verify(databaseService).getPhenotypeById(PT_ID);
+        /* Once to find it, and once more after locking it to sync */
+        verify(databaseService, times(2)).getPhenotypeById(PT_ID);
         verify(databaseService).savePhenotype(same(pt));
     }
 
@@ -268,10 +579,143 @@ public void testGetByHpoId() throws Exception
         assertEquals(pt, pt2);
         verify(githubApi).readPhenotype(same(pt));
         verify(databaseService, never()).getPhenotypeById(PT_ID);
-        verify(databaseService).getPhenotypeByHpoId(PT_HPO_ID);
+        verify(databaseService, times(2)).getPhenotypeByHpoId(PT_HPO_ID);
         verify(databaseService).savePhenotype(same(pt));
     }
 
+    /**
+     * Test that a phenotype already known to be a synonym is resolved straight from the redirect,
+     * without loading or syncing it.
+     */
+    @Test
+    public void testKnownSynonym() throws Exception
+    {
+        Phenotype existing = new HPOPhenotype("Already there", "yes");
+        existing.setStatus(Phenotype.Status.ACCEPTED);
+        existing.setHpoId(PT_HPO_ID);
+        when(databaseService.getRedirect(PT_ID)).thenReturn(Optional.of(PT_HPO_ID));
+        when(databaseService.getPhenotypeByHpoId(PT_HPO_ID)).thenReturn(existing);
+        Phenotype result = client.getPhenotypeById(PT_ID);
+        assertTrue(result == existing);
+        verify(databaseService, never()).getPhenotypeById(any(String.class));
+        verify(databaseService).getPhenotypeByHpoId(PT_HPO_ID);
+        verify(githubApi, never()).readPhenotype(any(Phenotype.class));
+    }
+
+    /**
+     * Test that a known synonym merged into a term we've never stored comes back as that term,
+     * from the local HPO if it's there and from the synonym itself if it isn't.
+     */
+    @Test
+    public void testKnownSynonymToUnknownTerm() throws Exception
+    {
+        String unknownHpoId = "HP_0001251";
+        Phenotype synonym = new HPOPhenotype(PT_NAME, PT_DESC);
+        synonym.setId(PT_ID);
+        synonym.setStatus(Phenotype.Status.SYNONYM);
+        synonym.setHpoId(unknownHpoId);
+        when(databaseService.getRedirect(PT_ID)).thenReturn(Optional.of(unknownHpoId));
+        when(databaseService.getPhenotypeById(PT_ID)).thenReturn(synonym);
+        when(databaseService.getPhenotypeByHpoId(any(String.class))).thenReturn(Phenotype.NULL);
+        Phenotype result = client.getPhenotypeById(PT_ID);
+        assertEquals(Phenotype.Status.PUBLISHED, result.getStatus());
+        assertEquals(unknownHpoId, result.getHpoId().get());
+        assertEquals(PT_NAME, result.getName());
+        assertEquals(PT_DESC, result.getDescription());
+        loadOntology();
+        when(databaseService.getRedirect(PT_ID)).thenReturn(Optional.of("HP_0000252"));
+        result = client.getPhenotypeById(PT_ID);
+        assertEquals(Phenotype.Status.PUBLISHED, result.getStatus());
+        assertEquals("HP_0000252", result.getHpoId().get());
+        assertEquals("Microcephaly", result.getName());
+        verify(githubApi, never()).readPhenotype(any(Phenotype.class));
+    }
+
+    /**
+     * Test that the accepted phenotype a known synonym redirects to is synced on the way out, so
+     * it isn't served stale once it's been published.
+     */
+    @Test
+    public void testKnownSynonymSyncsTarget() throws Exception
+    {
+        String targetId = String.format(IdUtils.ID_FORMAT, 50);
+        Phenotype target = new Phenotype("Target", "target");
+        target.setId(targetId);
+        target.setStatus(Phenotype.Status.ACCEPTED);
+        target.setIssueNumber(PT_NUM);
+        target.setHpoId(PT_HPO_ID);
+        when(databaseService.getRedirect(PT_ID)).thenReturn(Optional.of(PT_HPO_ID));
+        when(databaseService.getPhenotypeByHpoId(PT_HPO_ID)).thenReturn(target);
+        when(databaseService.getPhenotypeById(targetId)).thenReturn(target);
+        doAnswer(new Answer<Phenotype>() {
+            public Phenotype answer(InvocationOnMock invocation) {
+                Phenotype arg = (Phenotype) invocation.getArguments()[0];
+                arg.setStatus(Phenotype.Status.PUBLISHED);
+                return arg;
+            }
+        }).when(githubApi).readPhenotype(any(Phenotype.class));
+        Phenotype result = client.getPhenotypeById(PT_ID);
+        assertTrue(result == target);
+        assertEquals(Phenotype.Status.PUBLISHED, result.getStatus());
+        verify(githubApi).readPhenotype(same(target));
+        verify(databaseService).savePhenotype(same(target));
+        verify(databaseService, never()).getPhenotypeById(PT_ID);
+    }
+
+    /**
+     * Test looking up many phenotypes at once, some of them synonyms.
+     */
+    @Test
+    public void testGetByIds() throws Exception
+    {
+        String synonymId = String.format(IdUtils.ID_FORMAT, 46);
+        String orphanId = String.format(IdUtils.ID_FORMAT, 47);
+        String missingId = String.format(IdUtils.ID_FORMAT, 48);
+        String orphanHpoId = "HP_0004321";
+        pt.setId(PT_ID);
+        Phenotype synonym = new HPOPhenotype("Synonym", "synonym");
+        synonym.setId(synonymId);
+        synonym.setStatus(Phenotype.Status.SYNONYM);
+        synonym.setHpoId(PT_HPO_ID);
+        Phenotype orphan = new HPOPhenotype("Orphan", "orphan");
+        orphan.setId(orphanId);
+        orphan.setStatus(Phenotype.Status.SYNONYM);
+        orphan.setHpoId(orphanHpoId);
+        Phenotype accepted = new HPOPhenotype("Accepted", "accepted");
+        accepted.setStatus(Phenotype.Status.ACCEPTED);
+        accepted.setHpoId(PT_HPO_ID);
+        Map<String, Phenotype> byId = new HashMap<>();
+        byId.put(PT_ID, pt);
+        byId.put(synonymId, synonym);
+        byId.put(orphanId, orphan);
+        Map<String, Phenotype> byHpoId = new HashMap<>();
+        byHpoId.put(PT_HPO_ID, accepted);
+        when(databaseService.getPhenotypesById(any(Collection.class))).thenReturn(byId);
+        when(databaseService.getPhenotypesByHpoId(any(Collection.class))).thenReturn(byHpoId);
+        Map<String, Phenotype> results = client.getPhenotypesById(
+                Arrays.asList(PT_ID, synonymId, orphanId, missingId, PT_HPO_ID));
+        assertEquals(4, results.size());
+        assertTrue(results.get(PT_ID) == pt);
+        assertTrue(results.get(synonymId) == accepted);
+        assertTrue(results.get(PT_HPO_ID) == accepted);
+        assertEquals(Phenotype.Status.PUBLISHED, results.get(orphanId).getStatus());
+        assertEquals(orphanHpoId, results.get(orphanId).getHpoId().get());
+        assertFalse(results.containsKey(missingId));
+        /* One lookup for the hpo ids asked for, one for every synonym at once */
+        verify(databaseService).getPhenotypesById(any(Collection.class));
+        verify(databaseService, times(2)).getPhenotypesByHpoId(any(Collection.class));
+        verify(githubApi, never()).readPhenotype(any(Phenotype.class));
+    }
+
+    /**
+     * Test that looking up many phenotypes at once refuses malformed ids.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetByIdsMalformed() throws Exception
+    {
+        client.getPhenotypesById(Arrays.asList(PT_ID, "Liszt"));
+    }
+
     /**
      * Test that things work properly when the phenotype is accepted as a
      * synonym.
@@ -297,7 +741,8 @@ public Void answer(InvocationOnMock invocation) {
         }).when(githubApi).readPhenotype(same(pt));
         Phenotype pt2 = client.getPhenotypeById(PT_ID);
         assertTrue("Wrong value returned", pt2 == existing);
-        verify(databaseService, times(2)).getPhenotypeByHpoId(PT_HPO_ID);
+        /* Once to merge into, again after locking it, and once to follow the redirect */
+        verify(databaseService, times(3)).getPhenotypeByHpoId(PT_HPO_ID);
         verify(existing).mergeWith(same(pt));
         verify(databaseService).savePhenotype(same(existing));
     }
@@ -323,7 +768,8 @@ public Void answer(InvocationOnMock invocation) {
             }
         }).when(githubApi).readPhenotype(same(pt));
         Phenotype pt2 = client.getPhenotypeById(PT_ID);
-        verify(databaseService, times(2)).getPhenotypeByHpoId(PT_HPO_ID);
+        /* Once to merge into, again after locking it, and once to follow the redirect */
+        verify(databaseService, times(3)).getPhenotypeByHpoId(PT_HPO_ID);
         assertEquals(Phenotype.Status.PUBLISHED, pt2.getStatus());
         assertEquals(PT_HPO_ID, pt2.getHpoId().get());
     }
@@ -342,6 +788,20 @@ public void testSearch() throws Exception
         assertEquals(phenotypes, results);
     }
 
+    /**
+     * Test the exportPhenotypes method.
+     */
+    @Test
+    public void testExport() throws Exception
+    {
+        PhenotypeVisitor visitor = mock(PhenotypeVisitor.class);
+        Optional<Phenotype.Status> status = Optional.of(Phenotype.Status.SUBMITTED);
+        Optional<Date> since = Optional.of(new Date());
+        client.exportPhenotypes(status, since, visitor);
+        verify(databaseService).exportPhenotypes(status, since, visitor);
+        verify(githubApi, never()).readPhenotype(any(Phenotype.class));
+    }
+
     /**
      * Test the sync method.
      */
@@ -374,4 +834,133 @@ public void testSync() throws Exception
         verify(databaseService).savePhenotype(same(pt4));
         verify(databaseService).commit();
     }
+
+    /**
+     * Test that a sync saves what github says over what's in the db, unless the db changed while
+     * github was being read, in which case it reads github again.
+     */
+    @Test
+    public void testSyncChangedWhileReading() throws Exception
+    {
+        String otherId = String.format(IdUtils.ID_FORMAT, 50);
+        Phenotype unchanged = new Phenotype("Unchanged", "unchanged");
+        Phenotype changed = new Phenotype("Changed", "changed");
+        Phenotype storedUnchanged = new Phenotype("Unchanged", "unchanged");
+        Phenotype storedChanged = new Phenotype("Changed", "changed");
+        unchanged.setId(PT_ID);
+        storedUnchanged.setId(PT_ID);
+        changed.setId(otherId);
+        storedChanged.setId(otherId);
+        for (Phenotype p : Arrays.asList(unchanged, changed, storedUnchanged, storedChanged)) {
+            p.setStatus(Phenotype.Status.SUBMITTED);
+            p.setIssueNumber(PT_NUM);
+        }
+        /* Never modified that the schedule knows of, so they're due right away */
+        storedChanged.setTimeModified(new Date(2000));
+        when(databaseService.getPhenotypesByStatus(Phenotype.Status.SUBMITTED)).
+            thenReturn(Arrays.asList(unchanged, changed));
+        when(databaseService.getPhenotypeById(PT_ID)).thenReturn(storedUnchanged);
+        when(databaseService.getPhenotypeById(otherId)).thenReturn(storedChanged);
+        doAnswer(new Answer<Phenotype>() {
+            public Phenotype answer(InvocationOnMock invocation) {
+                Phenotype arg = (Phenotype) invocation.getArguments()[0];
+                arg.setStatus(Phenotype.Status.ACCEPTED);
+                return arg;
+            }
+        }).when(githubApi).readPhenotype(any(Phenotype.class));
+        client.syncPhenotypes();
+        verify(githubApi).readPhenotype(same(unchanged));
+        verify(githubApi, never()).readPhenotype(same(storedUnchanged));
+        verify(githubApi).readPhenotype(same(changed));
+        verify(githubApi).readPhenotype(same(storedChanged));
+        assertEquals(Phenotype.Status.ACCEPTED, storedUnchanged.getStatus());
+        verify(databaseService).savePhenotype(same(storedUnchanged));
+        verify(databaseService).savePhenotype(same(storedChanged));
+        verify(databaseService, never()).savePhenotype(same(unchanged));
+        verify(databaseService, never()).savePhenotype(same(changed));
+    }
+
+    /**
+     * Test that a sync reports what it did, carrying on past phenotypes github won't give it.
+     */
+    @Test
+    public void testSyncReport() throws Exception
+    {
+        Phenotype broken = new Phenotype("Broken", "broken");
+        final Phenotype unsubmitted = new Phenotype("Unsubmitted", "unsubmitted");
+        pt.setStatus(Phenotype.Status.SUBMITTED);
+        pt.setEtag("old");
+        broken.setStatus(Phenotype.Status.SUBMITTED);
+        when(databaseService.getPhenotypesByStatus(Phenotype.Status.SUBMITTED)).
+            thenReturn(Arrays.asList(pt, broken));
+        doAnswer(new Answer<Void>() {
+            public Void answer(InvocationOnMock invocation) throws IOException {
+                ((PhenotypeVisitor) invocation.getArguments()[2]).visit(unsubmitted);
+                return null;
+            }
+        }).when(databaseService).exportPhenotypes(eq(Optional.of(Phenotype.Status.UNSUBMITTED)),
+                any(Optional.class), any(PhenotypeVisitor.class));
+        doAnswer(new Answer<Phenotype>() {
+            public Phenotype answer(InvocationOnMock invocation) {
+                Phenotype arg = (Phenotype) invocation.getArguments()[0];
+                arg.setStatus(Phenotype.Status.ACCEPTED);
+                arg.setEtag("new");
+                return arg;
+            }
+        }).when(githubApi).readPhenotype(same(pt));
+        when(githubApi.readPhenotype(same(broken))).thenThrow(new GithubException("Oops"));
+        client.syncPhenotypes();
+        List<SyncReport> reports = injector.getInstance(SyncHistory.class).getReports();
+        assertEquals(1, reports.size());
+        SyncReport report = reports.get(0);
+        assertFalse(report.isRunning());
+        assertTrue(report.getDurationMillis() >= 0);
+        assertEquals(1, report.getChecked());
+        assertEquals(1, report.getChanged());
+        assertEquals(0, report.getNotModified());
+        assertEquals(1, report.getTransitions());
+        assertEquals(1, report.getPushed());
+        assertEquals(1, report.getErrors());
+        assertNull(report.getFailure());
+        verify(githubApi).openIssue(same(unsubmitted));
+        verify(databaseService).savePhenotype(same(pt));
+        verify(databaseService, never()).savePhenotype(same(broken));
+        verify(databaseService).commit();
+    }
+
+    /**
+     * Test that a sync reads every status still worth reading, and leaves alone what it's just read.
+     */
+    @Test
+    public void testSyncSchedule() throws Exception
+    {
+        Phenotype accepted = new Phenotype("Accepted", "accepted");
+        Phenotype published = new Phenotype("Published", "published");
+        accepted.setId(PT_ID);
+        accepted.setStatus(Phenotype.Status.ACCEPTED);
+        published.setId(String.format(IdUtils.ID_FORMAT, 50));
+        published.setStatus(Phenotype.Status.PUBLISHED);
+        when(databaseService.getPhenotypesByStatus(Phenotype.Status.ACCEPTED)).
+            thenReturn(Arrays.asList(accepted));
+        when(databaseService.getPhenotypesByStatus(Phenotype.Status.PUBLISHED)).
+            thenReturn(Arrays.asList(published));
+        client.syncPhenotypes();
+        client.syncPhenotypes();
+        verify(githubApi).readPhenotype(same(accepted));
+        verify(githubApi).readPhenotype(same(published));
+        verify(databaseService, never()).getPhenotypesByStatus(Phenotype.Status.SYNONYM);
+        assertTrue(Files.exists(folder.getRoot().toPath().resolve(SyncSchedule.FILE_NAME)));
+    }
+
+    /**
+     * Drop the sample HPO release into the home directory and load it.
+     */
+    private void loadOntology() throws IOException
+    {
+        Path hpo = folder.getRoot().toPath().resolve("hpo").resolve("hp.obo");
+        try (InputStream in = getClass().getResourceAsStream("/org/phenotips/termrequester/ontology/hp.obo")) {
+            Files.copy(in, hpo);
+        }
+        injector.getInstance(OntologyService.class).reload();
+    }
 }
@@ -0,0 +1,52 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester;
+
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test the SyncHistory.
+ *
+ * @version $Id$
+ */
+public class SyncHistoryTest
+{
+    /**
+     * Test that only the newest reports are kept, newest first.
+     */
+    @Test
+    public void testCapacity()
+    {
+        SyncHistory history = new SyncHistory();
+        SyncReport last = null;
+        for (int i = 0; i <= SyncHistory.CAPACITY; i++) {
+            last = new SyncReport(new Date(i));
+            history.add(last);
+        }
+        List<SyncReport> reports = history.getReports();
+        assertEquals(SyncHistory.CAPACITY, reports.size());
+        assertSame(last, reports.get(0));
+        assertEquals(new Date(1), reports.get(SyncHistory.CAPACITY - 1).getStart());
+    }
+}
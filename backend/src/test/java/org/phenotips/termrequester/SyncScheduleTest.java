@@ -0,0 +1,205 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.phenotips.termrequester.utils.IdUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the SyncSchedule.
+ *
+ * @version $Id$
+ */
+public class SyncScheduleTest
+{
+    /**
+     * An hour, in milliseconds.
+     */
+    private static final long HOUR = 3600 * 1000;
+
+    /**
+     * A temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The schedule under test.
+     */
+    private SyncSchedule schedule;
+
+    /**
+     * Set up the test.
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        schedule = new SyncSchedule(new ObjectMapper());
+        schedule.init(folder.getRoot().toPath());
+    }
+
+    /**
+     * Test that a phenotype read without changes backs off, and one that changed comes right back.
+     */
+    @Test
+    public void testBackoff()
+    {
+        Phenotype pt = phenotype(1, Phenotype.Status.SUBMITTED);
+        List<Phenotype> all = Collections.singletonList(pt);
+        long now = 0;
+        assertEquals(all, schedule.due(all, now).phenotypes);
+        schedule.record(pt, false, now);
+        assertEquals(now + 2 * SyncSchedule.MIN_INTERVAL, schedule.getDue(pt.getId().get()));
+        assertTrue(schedule.due(all, now + SyncSchedule.MIN_INTERVAL).phenotypes.isEmpty());
+        now += 2 * SyncSchedule.MIN_INTERVAL;
+        assertEquals(all, schedule.due(all, now).phenotypes);
+        schedule.record(pt, false, now);
+        assertEquals(now + 4 * SyncSchedule.MIN_INTERVAL, schedule.getDue(pt.getId().get()));
+        schedule.record(pt, true, now);
+        assertEquals(now + SyncSchedule.MIN_INTERVAL, schedule.getDue(pt.getId().get()));
+        for (int i = 0; i < 20; i++) {
+            schedule.record(pt, false, now);
+        }
+        assertEquals(now + SyncSchedule.MAX_INTERVAL, schedule.getDue(pt.getId().get()));
+        pt.setStatus(Phenotype.Status.PUBLISHED);
+        schedule.record(pt, true, now);
+        assertEquals(now + SyncSchedule.TERMINAL_INTERVAL, schedule.getDue(pt.getId().get()));
+    }
+
+    /**
+     * Test that the most overdue go first, and phenotypes that are gone are forgotten.
+     */
+    @Test
+    public void testOrder()
+    {
+        Phenotype first = phenotype(1, Phenotype.Status.SUBMITTED);
+        Phenotype second = phenotype(2, Phenotype.Status.ACCEPTED);
+        List<Phenotype> all = Arrays.asList(second, first);
+        schedule.due(all, 0);
+        schedule.record(first, true, 0);
+        schedule.record(second, true, HOUR);
+        List<Phenotype> due = schedule.due(all, 10 * HOUR).phenotypes;
+        assertSame(first, due.get(0));
+        assertSame(second, due.get(1));
+        schedule.due(Collections.singletonList(first), 10 * HOUR);
+        assertEquals(-1, schedule.getDue(second.getId().get()));
+    }
+
+    /**
+     * Test that no more than MAX_READS_PER_HOUR are read in an hour.
+     */
+    @Test
+    public void testHourlyLimit()
+    {
+        List<Phenotype> all = new ArrayList<>();
+        for (int i = 0; i < SyncSchedule.MAX_READS_PER_HOUR + 10; i++) {
+            all.add(phenotype(i, Phenotype.Status.SUBMITTED));
+        }
+        SyncSchedule.Due due = schedule.due(all, 0);
+        assertEquals(SyncSchedule.MAX_READS_PER_HOUR, due.phenotypes.size());
+        assertEquals(10, due.deferred);
+        for (Phenotype pt : due.phenotypes) {
+            schedule.record(pt, false, 0);
+        }
+        due = schedule.due(all, HOUR / 2);
+        assertEquals(0, due.phenotypes.size());
+        due = schedule.due(all, HOUR);
+        assertEquals(10, due.phenotypes.size());
+    }
+
+    /**
+     * Test that the schedule outlives a restart.
+     */
+    @Test
+    public void testPersistence() throws Exception
+    {
+        Phenotype pt = phenotype(1, Phenotype.Status.SUBMITTED);
+        schedule.due(Collections.singletonList(pt), 0);
+        schedule.record(pt, false, 0);
+        schedule.save();
+        SyncSchedule reloaded = new SyncSchedule(new ObjectMapper());
+        reloaded.init(folder.getRoot().toPath());
+        assertEquals(schedule.getDue(pt.getId().get()), reloaded.getDue(pt.getId().get()));
+        assertTrue(reloaded.due(Collections.singletonList(pt), 0).phenotypes.isEmpty());
+    }
+
+    /**
+     * Test that a phenotype never read before starts further out the longer it's been stable.
+     */
+    @Test
+    public void testFirstInterval()
+    {
+        Phenotype recent = phenotype(1, Phenotype.Status.SUBMITTED);
+        Phenotype stable = phenotype(2, Phenotype.Status.SUBMITTED);
+        long now = 100 * HOUR;
+        recent.setTimeModified(new Date(now));
+        stable.setTimeModified(new Date(now - 16 * HOUR));
+        schedule.due(Arrays.asList(recent, stable), now);
+        schedule.record(recent, false, now);
+        schedule.record(stable, false, now);
+        assertEquals(now + 2 * SyncSchedule.MIN_INTERVAL, schedule.getDue(recent.getId().get()));
+        assertEquals(now + 16 * HOUR, schedule.getDue(stable.getId().get()));
+    }
+
+    /**
+     * Test that a stable phenotype we've never read isn't due the moment we first see it, but
+     * only once its first interval is up.
+     */
+    @Test
+    public void testStableNeverRead()
+    {
+        Phenotype stable = phenotype(1, Phenotype.Status.ACCEPTED);
+        List<Phenotype> all = Collections.singletonList(stable);
+        long now = 100 * HOUR;
+        stable.setTimeModified(new Date(now - 16 * HOUR));
+        assertTrue(schedule.due(all, now).phenotypes.isEmpty());
+        assertEquals(now + 8 * HOUR, schedule.getDue(stable.getId().get()));
+        assertTrue(schedule.due(all, now + 7 * HOUR).phenotypes.isEmpty());
+        assertEquals(all, schedule.due(all, now + 8 * HOUR).phenotypes);
+    }
+
+    /**
+     * Build a stored phenotype.
+     * @param id the number in its id
+     * @param status its status
+     * @return the phenotype
+     */
+    private static Phenotype phenotype(int id, Phenotype.Status status)
+    {
+        Phenotype pt = new Phenotype("Phenotype " + id, "");
+        pt.setId(String.format(IdUtils.ID_FORMAT, id));
+        pt.setStatus(status);
+        return pt;
+    }
+}
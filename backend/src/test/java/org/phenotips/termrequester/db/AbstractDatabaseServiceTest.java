@@ -0,0 +1,619 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.db;
+
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.phenotips.termrequester.Phenotype;
+import org.phenotips.termrequester.PhenotypeVisitor;
+import org.phenotips.termrequester.utils.IdUtils;
+
+import com.google.common.base.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The contract every DatabaseService implementation must live up to.
+ * To use, override createClient() to return the implementation under test.
+ *
+ * @version $Id$
+ */
+public abstract class AbstractDatabaseServiceTest
+{
+    /**
+     * The name of the test phenotype.
+     */
+    protected static final String PT_NAME = "Test phenotype";
+
+    /**
+     * The description of the test phenotype.
+     */
+    protected static final String PT_DESC = "Descriptions are cool";
+
+    /**
+     * The test hpo id.
+     */
+    protected static final String PT_HPO_ID = "HP_0000101";
+
+    /**
+     * The issue number of the test phenotype.
+     */
+    protected static final String PT_NUM = "1";
+
+    /**
+     * The object under test.
+     */
+    protected DatabaseService client;
+
+    /**
+     * A temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Create a new, uninitialized instance of the service under test.
+     *
+     * @return the service
+     */
+    protected abstract DatabaseService createClient() throws Exception;
+
+    /**
+     * Set up an individual test.
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        client = createClient();
+        client.init(folder.getRoot().toPath());
+        client.setAutocommit(true);
+    }
+
+    /**
+     * Tear down an individual test.
+     */
+    @After
+    public void tearDown() throws Exception
+    {
+        client.shutdown();
+    }
+
+    /**
+     * Test that the service is ready once it can answer, and not once it's shut down.
+     */
+    @Test
+    public void testReady() throws IOException
+    {
+        assertEquals(Phenotype.NULL, client.getPhenotypeById(IdUtils.INITIAL_ID));
+        assertTrue(client.isReady());
+        client.shutdown();
+        assertFalse(client.isReady());
+        client.init(folder.getRoot().toPath());
+    }
+
+    /**
+     * Test that a saved phenotype comes back, and a deleted one doesn't.
+     */
+    @Test
+    public void testSaveAndDelete() throws IOException
+    {
+        Phenotype pt = new Phenotype(PT_NAME, PT_DESC);
+        Phenotype other = new Phenotype(PT_NAME + " yes yes", PT_DESC);
+        assertTrue(pt == client.savePhenotype(pt));
+        client.savePhenotype(other);
+        assertTrue(pt.getId().isPresent());
+        assertTrue(pt.getTimeCreated().isPresent());
+        assertEquals(pt.getTimeCreated(), pt.getTimeModified());
+        assertFalse(pt.isDirty());
+        assertEquals(IdUtils.incrementId(pt.getId().get()), other.getId().get());
+        pt.setDescription("Changed");
+        client.savePhenotype(pt);
+        assertEquals("Changed", client.getPhenotypeById(pt.getId().get()).getDescription());
+        assertTrue(client.deletePhenotype(pt));
+        assertFalse(client.deletePhenotype(pt));
+        assertEquals(Phenotype.NULL, client.getPhenotypeById(pt.getId().get()));
+        assertEquals(Phenotype.NULL, client.getPhenotype(new Phenotype(PT_NAME, PT_DESC)));
+        assertEquals(other, client.getPhenotypeById(other.getId().get()));
+    }
+
+    /**
+     * Test the get by id method.
+     */
+    @Test
+    public void testGetById() throws IOException
+    {
+        Phenotype pt = new Phenotype(PT_NAME, PT_DESC);
+        pt.addSynonym("synone");
+        pt.addSynonym("syntwo");
+        client.savePhenotype(pt);
+        Phenotype result = client.getPhenotypeById(pt.getId().get());
+        assertEquals(pt.getId().get(), result.getId().get());
+        assertEquals(pt.getName(), result.getName());
+        assertEquals(pt.getDescription(), result.getDescription());
+        assertEquals(pt.getTimeCreated(), result.getTimeCreated());
+        assertEquals(pt.getTimeModified(), result.getTimeModified());
+        assertEquals(pt.getSynonyms(), result.getSynonyms());
+        result = client.getPhenotypeById("imaginary");
+        assertEquals(Phenotype.NULL, result);
+    }
+
+    /**
+     * Test the getPhenotypeByIssueNumber method.
+     */
+    @Test
+    public void testGetByIssueNumber() throws IOException
+    {
+        Phenotype pt1 = new Phenotype(PT_NAME, PT_DESC);
+        pt1.setIssueNumber(PT_NUM);
+        pt1.setStatus(Phenotype.Status.SUBMITTED);
+        Phenotype pt2 = new Phenotype(PT_NAME + " other", PT_DESC);
+        /* Wanna be extra sure substrings won't match */
+        pt2.setIssueNumber(PT_NUM + "0");
+        pt2.setStatus(Phenotype.Status.SUBMITTED);
+        client.savePhenotype(pt1);
+        client.savePhenotype(pt2);
+        Phenotype result = client.getPhenotypeByIssueNumber(pt1.getIssueNumber().get());
+        assertEquals(pt1.getId().get(), result.getId().get());
+        assertEquals(pt1.getName(), result.getName());
+        assertEquals(pt1.getIssueNumber().get(), result.getIssueNumber().get());
+        result = client.getPhenotypeByIssueNumber(pt2.getIssueNumber().get());
+        assertEquals(pt2.getId().get(), result.getId().get());
+        assertEquals(pt2.getName(), result.getName());
+        assertEquals(pt2.getIssueNumber().get(), result.getIssueNumber().get());
+        result = client.getPhenotypeByIssueNumber(PT_NUM + "2");
+        assertEquals(Phenotype.NULL, result);
+    }
+
+    /**
+     * Test that getPhenotypesByStatus gives back every phenotype in the status, not just a page.
+     */
+    @Test
+    public void testGetByStatus() throws IOException
+    {
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 25; i++) {
+            Phenotype pt = new Phenotype(PT_NAME + " " + i, PT_DESC);
+            pt.setStatus(Phenotype.Status.SUBMITTED);
+            pt.setIssueNumber(Integer.toString(100 + i));
+            client.savePhenotype(pt);
+            expected.add(pt.getId().get());
+        }
+        client.savePhenotype(new Phenotype(PT_NAME, PT_DESC));
+        Set<String> ids = new HashSet<>();
+        for (Phenotype pt : client.getPhenotypesByStatus(Phenotype.Status.SUBMITTED)) {
+            assertEquals(Phenotype.Status.SUBMITTED, pt.getStatus());
+            ids.add(pt.getId().get());
+        }
+        assertEquals(expected, ids);
+        assertEquals(1, client.getPhenotypesByStatus(Phenotype.Status.UNSUBMITTED).size());
+    }
+
+    /**
+     * Test the getPhenotype method.
+     */
+    @Test
+    public void testGetPhenotype() throws IOException
+    {
+        /* All four of these should be the same one:
+         *  pt2 has pt1 as synonym
+         *  pt1 has pt3 as synonym
+         *  pt1 and pt4 have the same name
+         *  pt1 and pt5 have the same id
+         *  pt1 and pt6 have the same issueNumber
+         */
+        Phenotype pt1 = new Phenotype(PT_NAME, PT_DESC);
+        pt1.setStatus(Phenotype.Status.SUBMITTED);
+        pt1.setIssueNumber(PT_NUM);
+        Phenotype pt2 = new Phenotype("Mahler", PT_DESC);
+        Phenotype pt3 = new Phenotype("Stravinsky", PT_DESC);
+        Phenotype pt4 = new Phenotype(PT_NAME, PT_DESC);
+        Phenotype pt5 = new Phenotype("Schoenberg", PT_DESC);
+        Phenotype pt6 = new Phenotype("Rachmaninoff", PT_DESC);
+        pt2.addSynonym(pt1.getName());
+        pt1.addSynonym(pt3.getName());
+        client.savePhenotype(pt1);
+        pt5.setId(pt1.getId().get());
+        pt6.setIssueNumber(pt1.getIssueNumber().get());
+        pt6.setStatus(pt1.getStatus());
+        Phenotype result = client.getPhenotype(pt1);
+        assertEquals(pt1, result);
+        result = client.getPhenotype(pt2);
+        assertEquals(pt1, result);
+        result = client.getPhenotype(pt3);
+        assertEquals(pt1, result);
+        result = client.getPhenotype(pt4);
+        assertEquals(pt1, result);
+        result = client.getPhenotype(pt5);
+        assertEquals(pt1, result);
+        result = client.getPhenotype(pt6);
+        assertEquals(pt1, result);
+        /* This one isn't equal to the others */
+        Phenotype pt7 = new Phenotype("Ravel", PT_DESC);
+        result = client.getPhenotype(pt7);
+        assertEquals(Phenotype.NULL, result);
+    }
+
+    /**
+     * Test the getPhenotypes function, looking for many phenotypes at once.
+     */
+    @Test
+    public void testGetPhenotypes() throws IOException
+    {
+        Phenotype pt1 = new Phenotype(PT_NAME, PT_DESC);
+        pt1.addSynonym("Stravinsky");
+        Phenotype pt2 = new Phenotype("Mahler", PT_DESC);
+        pt2.setStatus(Phenotype.Status.SUBMITTED);
+        pt2.setIssueNumber(PT_NUM);
+        client.savePhenotype(pt1);
+        client.savePhenotype(pt2);
+        Phenotype bySynonym = new Phenotype("Stravinsky", PT_DESC);
+        Phenotype byName = new Phenotype("Mahler", PT_DESC);
+        Phenotype missing = new Phenotype("Ravel", PT_DESC);
+        Phenotype byIssue = new Phenotype("Rachmaninoff", PT_DESC);
+        byIssue.setIssueNumber(PT_NUM);
+        byIssue.setStatus(Phenotype.Status.SUBMITTED);
+        List<Phenotype> results = client.getPhenotypes(Arrays.asList(bySynonym, byName, missing, byIssue));
+        assertEquals(4, results.size());
+        assertEquals(pt1.getId(), results.get(0).getId());
+        assertEquals(pt2.getId(), results.get(1).getId());
+        assertEquals(Phenotype.NULL, results.get(2));
+        assertEquals(pt2.getId(), results.get(3).getId());
+    }
+
+    /**
+     * Test saving many phenotypes in one go.
+     */
+    @Test
+    public void testSavePhenotypes() throws IOException
+    {
+        Phenotype existing = new Phenotype(PT_NAME, PT_DESC);
+        client.savePhenotype(existing);
+        existing.setDescription("Changed");
+        Phenotype pt1 = new Phenotype("Bach", PT_DESC);
+        Phenotype pt2 = new Phenotype("Handel", PT_DESC);
+        client.savePhenotypes(Arrays.asList(pt1, existing, pt2));
+        assertFalse(pt1.isDirty());
+        assertFalse(pt2.isDirty());
+        assertFalse(existing.isDirty());
+        assertEquals(IdUtils.incrementId(existing.getId().get()), pt1.getId().get());
+        assertEquals(IdUtils.incrementId(pt1.getId().get()), pt2.getId().get());
+        assertEquals("Changed", client.getPhenotypeById(existing.getId().get()).getDescription());
+        assertEquals(pt1, client.getPhenotypeById(pt1.getId().get()));
+        assertEquals(pt2, client.getPhenotypeById(pt2.getId().get()));
+        /* Ids must keep going up even though the batch was all created at once */
+        Phenotype pt3 = new Phenotype("Telemann", PT_DESC);
+        client.savePhenotype(pt3);
+        assertEquals(IdUtils.incrementId(pt2.getId().get()), pt3.getId().get());
+    }
+
+    /**
+     * Test that saves between two commits never hand out the same id twice.
+     */
+    @Test
+    public void testIdsBetweenCommits() throws IOException
+    {
+        client.setAutocommit(false);
+        List<Phenotype> first = Arrays.asList(new Phenotype("Bach", PT_DESC), new Phenotype("Handel", PT_DESC));
+        client.savePhenotypes(first);
+        Phenotype single = client.savePhenotype(new Phenotype("Telemann", PT_DESC));
+        List<Phenotype> second = Arrays.asList(new Phenotype("Vivaldi", PT_DESC));
+        client.savePhenotypes(second);
+        client.commit();
+        List<Phenotype> all = new ArrayList<>(first);
+        all.add(single);
+        all.addAll(second);
+        Set<String> ids = new HashSet<>();
+        for (Phenotype pt : all) {
+            assertTrue(ids.add(pt.getId().get()));
+            assertEquals(pt, client.getPhenotypeById(pt.getId().get()));
+        }
+    }
+
+    /**
+     * Test that different phenotypes saved at the same time, between two commits, all get ids of
+     * their own; the manager no longer serializes creating phenotypes with different names.
+     */
+    @Test
+    public void testConcurrentSaves() throws Exception
+    {
+        client.setAutocommit(false);
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Phenotype>> saves = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads * 10; i++) {
+                final Phenotype pt = new Phenotype("Concurrent " + i, PT_DESC);
+                saves.add(pool.submit(new Callable<Phenotype>()
+                {
+                    @Override
+                    public Phenotype call() throws Exception
+                    {
+                        start.await();
+                        return client.savePhenotype(pt);
+                    }
+                }));
+            }
+            start.countDown();
+            Set<String> ids = new HashSet<>();
+            for (Future<Phenotype> save : saves) {
+                assertTrue(ids.add(save.get().getId().get()));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        client.commit();
+        for (Future<Phenotype> save : saves) {
+            Phenotype pt = save.get();
+            assertEquals(pt.getName(), client.getPhenotypeById(pt.getId().get()).getName());
+        }
+    }
+
+    /**
+     * Test that phenotypes accepted as synonyms are left out of searches.
+     */
+    @Test
+    public void testSearchSkipsSynonyms() throws IOException
+    {
+        Phenotype pt1 = new Phenotype("Bach", PT_DESC);
+        Phenotype pt2 = new Phenotype("Johann Christian Bach", PT_DESC);
+        pt2.setStatus(Phenotype.Status.SYNONYM);
+        pt2.setIssueNumber(PT_NUM);
+        pt2.setHpoId(PT_HPO_ID);
+        client.savePhenotype(pt1);
+        client.savePhenotype(pt2);
+        assertSetEquals(client.searchPhenotypes("bach"), pt1);
+    }
+
+    /**
+     * Test that a phenotype made a synonym since a search was last run stays out of it, even
+     * before the change is committed.
+     */
+    @Test
+    public void testSearchSkipsNewSynonyms() throws IOException
+    {
+        Phenotype pt1 = new Phenotype("Bach", PT_DESC);
+        Phenotype pt2 = new Phenotype("Johann Christian Bach", PT_DESC);
+        client.savePhenotype(pt1);
+        client.savePhenotype(pt2);
+        assertSetEquals(client.searchPhenotypes("bach"), pt1, pt2);
+        client.setAutocommit(false);
+        pt2.setStatus(Phenotype.Status.SYNONYM);
+        pt2.setIssueNumber(PT_NUM);
+        pt2.setHpoId(PT_HPO_ID);
+        client.savePhenotype(pt2);
+        assertSetEquals(client.searchPhenotypes("bach"), pt1);
+    }
+
+    /**
+     * Test the searchPhenotypes function.
+     */
+    @Test
+    public void testSearch() throws IOException
+    {
+        String s1 = "hooray",
+               s2 = "string",
+               s3 = "bam",
+               s4 = "commas",
+               s5 = "more variables";
+        Phenotype pt1 = new Phenotype(PT_NAME, PT_DESC),
+                  pt2 = new Phenotype(PT_NAME + PT_NAME, PT_DESC),
+                  pt3 = new Phenotype(PT_NAME, s1),
+                  pt4 = new Phenotype(s1, s1),
+                  pt5 = new Phenotype(s1, s2),
+                  pt6 = new Phenotype(s2, s2),
+                  pt7 = new Phenotype(s3, s3),
+                  pt8 = new Phenotype(s4, s4);
+        client.savePhenotype(pt1);
+        client.savePhenotype(pt2);
+        client.savePhenotype(pt3);
+        client.savePhenotype(pt4);
+        client.savePhenotype(pt5);
+        client.savePhenotype(pt6);
+        client.savePhenotype(pt7);
+        client.savePhenotype(pt8);
+        List<Phenotype> results = client.searchPhenotypes(PT_NAME);
+        assertSetEquals(results, pt1, pt2, pt3);
+        results = client.searchPhenotypes(PT_DESC);
+        assertSetEquals(results, pt1, pt2);
+        results = client.searchPhenotypes(s2);
+        assertSetEquals(results, pt6, pt5);
+        results = client.searchPhenotypes(s3);
+        assertSetEquals(results, pt7);
+        results = client.searchPhenotypes(s5);
+        assertSetEquals(results);
+    }
+
+    /**
+     * Test the getByHpoId method.
+     */
+    @Test
+    public void testGetByHpoId() throws IOException
+    {
+        Phenotype pt1 = new Phenotype("one", "two");
+        pt1.setStatus(Phenotype.Status.ACCEPTED);
+        pt1.setHpoId(PT_HPO_ID);
+        pt1.setIssueNumber(PT_NUM);
+        client.savePhenotype(pt1);
+        Phenotype result = client.getPhenotypeByHpoId(PT_HPO_ID);
+        assertEquals(pt1, result);
+        assertEquals(Phenotype.Status.ACCEPTED, result.getStatus());
+        assertEquals(PT_HPO_ID, result.getHpoId().get());
+    }
+
+    /**
+     * Test looking up many phenotypes by id and by hpo id.
+     */
+    @Test
+    public void testGetByIds() throws IOException
+    {
+        Phenotype pt1 = new Phenotype("Bach", PT_DESC);
+        Phenotype pt2 = new Phenotype("Handel", PT_DESC);
+        pt2.setStatus(Phenotype.Status.ACCEPTED);
+        pt2.setIssueNumber(PT_NUM);
+        pt2.setHpoId(PT_HPO_ID);
+        Phenotype pt3 = new Phenotype("Telemann", PT_DESC);
+        pt3.setStatus(Phenotype.Status.SYNONYM);
+        pt3.setIssueNumber(PT_NUM + "1");
+        pt3.setHpoId(PT_HPO_ID);
+        client.savePhenotype(pt1);
+        client.savePhenotype(pt2);
+        client.savePhenotype(pt3);
+        String missing = IdUtils.incrementId(pt3.getId().get());
+        Map<String, Phenotype> results = client.getPhenotypesById(
+                Arrays.asList(pt1.getId().get(), pt3.getId().get(), missing));
+        assertEquals(2, results.size());
+        assertEquals(pt1, results.get(pt1.getId().get()));
+        assertEquals(pt3, results.get(pt3.getId().get()));
+        assertFalse(results.containsKey(missing));
+        /* Synonyms never come back by hpo id */
+        results = client.getPhenotypesByHpoId(Arrays.asList(PT_HPO_ID, "HP_0000102"));
+        assertEquals(1, results.size());
+        assertEquals(pt2.getId(), results.get(PT_HPO_ID).getId());
+        assertTrue(client.getPhenotypesById(new ArrayList<String>()).isEmpty());
+    }
+
+    /**
+     * Test that synonym redirects are kept up to date, and survive a restart.
+     */
+    @Test
+    public void testRedirects() throws IOException
+    {
+        Phenotype pt1 = new Phenotype("Bach", PT_DESC);
+        Phenotype pt2 = new Phenotype("Handel", PT_DESC);
+        client.savePhenotype(pt1);
+        client.savePhenotype(pt2);
+        String id1 = pt1.getId().get();
+        String id2 = pt2.getId().get();
+        assertFalse(client.getRedirect(id1).isPresent());
+        pt1.setStatus(Phenotype.Status.SYNONYM);
+        pt1.setIssueNumber(PT_NUM);
+        pt1.setHpoId(PT_HPO_ID);
+        pt2.setStatus(Phenotype.Status.SYNONYM);
+        pt2.setIssueNumber(PT_NUM + "1");
+        pt2.setHpoId(PT_HPO_ID);
+        client.savePhenotypes(Arrays.asList(pt1, pt2));
+        assertEquals(PT_HPO_ID, client.getRedirect(id1).get());
+        assertEquals(PT_HPO_ID, client.getRedirect(id2).get());
+        client.deletePhenotype(pt2);
+        assertFalse(client.getRedirect(id2).isPresent());
+        client.shutdown();
+        client.init(folder.getRoot().toPath());
+        assertEquals(PT_HPO_ID, client.getRedirect(id1).get());
+        assertFalse(client.getRedirect(id2).isPresent());
+        assertEquals(id1, client.getPhenotypeByIssueNumber(PT_NUM).getId().get());
+        assertEquals(Phenotype.NULL, client.getPhenotypeByIssueNumber(PT_NUM + "1"));
+        /* Now it's the accepted one */
+        pt1.setStatus(Phenotype.Status.ACCEPTED);
+        client.savePhenotype(pt1);
+        assertFalse(client.getRedirect(id1).isPresent());
+        assertEquals(id1, client.getPhenotypeByHpoId(PT_HPO_ID).getId().get());
+    }
+
+    /**
+     * Test the exportPhenotypes method.
+     */
+    @Test
+    public void testExport() throws IOException
+    {
+        Phenotype pt1 = new Phenotype("Bach", PT_DESC);
+        Phenotype pt2 = new Phenotype("Handel", PT_DESC);
+        pt2.setStatus(Phenotype.Status.SUBMITTED);
+        pt2.setIssueNumber(PT_NUM);
+        Phenotype pt3 = new Phenotype("Telemann", PT_DESC);
+        pt3.setStatus(Phenotype.Status.SYNONYM);
+        pt3.setIssueNumber(PT_NUM + "1");
+        pt3.setHpoId(PT_HPO_ID);
+        client.savePhenotype(pt1);
+        /* Make sure the modification times differ */
+        sleep();
+        client.savePhenotype(pt2);
+        client.savePhenotype(pt3);
+        List<Phenotype> results = export(Optional.<Phenotype.Status>absent(), Optional.<Date>absent());
+        assertEquals(3, results.size());
+        /* Export goes in id order */
+        assertEquals(pt1.getId().get(), results.get(0).getId().get());
+        assertEquals(pt2.getId().get(), results.get(1).getId().get());
+        assertEquals(pt3.getId().get(), results.get(2).getId().get());
+        results = export(Optional.of(Phenotype.Status.SUBMITTED), Optional.<Date>absent());
+        assertSetEquals(results, pt2);
+        results = export(Optional.<Phenotype.Status>absent(), Optional.of(pt2.getTimeModified().get()));
+        assertSetEquals(results, pt2, pt3);
+        results = export(Optional.<Phenotype.Status>absent(), Optional.of(new Date(pt3.getTimeModified().get().getTime() + 1000)));
+        assertSetEquals(results);
+    }
+
+    /**
+     * Export phenotypes from the client into a list.
+     */
+    protected List<Phenotype> export(Optional<Phenotype.Status> status, Optional<Date> since) throws IOException
+    {
+        final List<Phenotype> results = new ArrayList<>();
+        client.exportPhenotypes(status, since, new PhenotypeVisitor() {
+            @Override
+            public void visit(Phenotype pt) {
+                results.add(pt);
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Assert that the results given hold exactly the phenotypes expected, in any order.
+     */
+    protected void assertSetEquals(Collection<Phenotype> results, Phenotype... expected)
+    {
+        Set<Phenotype> resultSet = new HashSet<>(results);
+        Set<Phenotype> expectedSet = new HashSet<>(Arrays.asList(expected));
+        assertEquals(expectedSet, resultSet);
+    }
+
+    /**
+     * Wait long enough that the clock moves on, so that timestamps taken before and after differ.
+     */
+    protected void sleep()
+    {
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.db;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.phenotips.termrequester.HPOPhenotype;
+import org.phenotips.termrequester.Phenotype;
+import org.phenotips.termrequester.utils.IdUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the PhenotypeIndex class.
+ *
+ * @version $Id$
+ */
+public class PhenotypeIndexTest
+{
+    /**
+     * A test id.
+     */
+    private static final String ID = String.format(IdUtils.ID_FORMAT, 12);
+
+    /**
+     * A test hpo id.
+     */
+    private static final String HPO_ID = "HP_0000004";
+
+    /**
+     * A test issue number.
+     */
+    private static final String ISSUE = "34";
+
+    /**
+     * The object under test.
+     */
+    private PhenotypeIndex index;
+
+    /**
+     * A test phenotype.
+     */
+    private Phenotype pt;
+
+    /**
+     * Set up an individual test.
+     */
+    @Before
+    public void setUp()
+    {
+        index = new PhenotypeIndex();
+        pt = new HPOPhenotype("Name", "Description");
+        pt.setId(ID);
+        pt.setIssueNumber(ISSUE);
+        pt.setHpoId(HPO_ID);
+    }
+
+    /**
+     * Test that the index follows a phenotype through its statuses.
+     */
+    @Test
+    public void testUpdate()
+    {
+        pt.setStatus(Phenotype.Status.SUBMITTED);
+        index.update(pt);
+        assertEquals(ID, index.getIdByIssueNumber(ISSUE).get());
+        assertFalse(index.getIdByHpoId(HPO_ID).isPresent());
+        assertFalse(index.getRedirect(ID).isPresent());
+        pt.setStatus(Phenotype.Status.ACCEPTED);
+        index.update(pt);
+        assertEquals(ID, index.getIdByHpoId(HPO_ID).get());
+        assertFalse(index.getRedirect(ID).isPresent());
+        pt.setStatus(Phenotype.Status.SYNONYM);
+        index.update(pt);
+        assertFalse(index.getIdByHpoId(HPO_ID).isPresent());
+        assertEquals(HPO_ID, index.getRedirect(ID).get());
+        assertEquals(ID, index.getIdByIssueNumber(ISSUE).get());
+    }
+
+    /**
+     * Test removing phenotypes from the index.
+     */
+    @Test
+    public void testRemove()
+    {
+        pt.setStatus(Phenotype.Status.ACCEPTED);
+        index.update(pt);
+        index.remove(ID);
+        assertFalse(index.getIdByHpoId(HPO_ID).isPresent());
+        assertFalse(index.getIdByIssueNumber(ISSUE).isPresent());
+    }
+
+    /**
+     * Test that removing a phenotype leaves alone keys that another one has taken over.
+     */
+    @Test
+    public void testRemoveTakenOver()
+    {
+        String otherId = IdUtils.incrementId(ID);
+        pt.setStatus(Phenotype.Status.ACCEPTED);
+        index.update(pt);
+        Phenotype other = new HPOPhenotype("Other", "Description");
+        other.setId(otherId);
+        other.setIssueNumber(ISSUE);
+        other.setHpoId(HPO_ID);
+        other.setStatus(Phenotype.Status.ACCEPTED);
+        index.update(other);
+        index.remove(ID);
+        assertEquals(otherId, index.getIdByHpoId(HPO_ID).get());
+        assertEquals(otherId, index.getIdByIssueNumber(ISSUE).get());
+    }
+
+    /**
+     * Test that a phenotype's old keys go once it's saved with new ones.
+     */
+    @Test
+    public void testChangeKeys()
+    {
+        String otherIssue = ISSUE + "5";
+        pt.setStatus(Phenotype.Status.ACCEPTED);
+        index.update(pt);
+        pt.setIssueNumber(otherIssue);
+        index.update(pt);
+        assertFalse(index.getIdByIssueNumber(ISSUE).isPresent());
+        assertEquals(ID, index.getIdByIssueNumber(otherIssue).get());
+        assertEquals(ID, index.getIdByHpoId(HPO_ID).get());
+    }
+
+    /**
+     * Test that lookups never miss a phenotype while it's being saved again with the same keys.
+     */
+    @Test
+    public void testReadsDuringUpdates() throws Exception
+    {
+        pt.setStatus(Phenotype.Status.ACCEPTED);
+        index.update(pt);
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (int i = 0; i < 100000; i++) {
+                    index.update(pt);
+                }
+                done.set(true);
+            }
+        });
+        writer.start();
+        try {
+            while (!done.get()) {
+                assertTrue(index.getIdByHpoId(HPO_ID).isPresent());
+                assertTrue(index.getIdByIssueNumber(ISSUE).isPresent());
+            }
+        } finally {
+            writer.join();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.db;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.phenotips.termrequester.Phenotype;
+
+import com.google.common.base.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Test the SearchCache class.
+ *
+ * @version $Id$
+ */
+public class SearchCacheTest
+{
+    /**
+     * The cache under test.
+     */
+    private SearchCache cache;
+
+    /**
+     * Some search results.
+     */
+    private List<Phenotype> results;
+
+    /**
+     * Set up the test.
+     */
+    @Before
+    public void setUp()
+    {
+        cache = new SearchCache();
+        Phenotype pt1 = new Phenotype("Bach", "");
+        pt1.setId("TEMPHPO_0000001");
+        Phenotype pt2 = new Phenotype("Handel", "");
+        pt2.setId("TEMPHPO_0000002");
+        results = Arrays.asList(pt2, pt1);
+    }
+
+    /**
+     * Test that results are found again, regardless of case and spacing.
+     */
+    @Test
+    public void testGet()
+    {
+        assertFalse(cache.get("baroque").isPresent());
+        cache.put("baroque  Composers", cache.getGeneration(), results);
+        assertEquals(Optional.of(Arrays.asList("TEMPHPO_0000002", "TEMPHPO_0000001")),
+                cache.get(" Baroque composers"));
+        assertFalse(cache.get("baroque").isPresent());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1.0 / 3, cache.getHitRate(), 0.0001);
+    }
+
+    /**
+     * Test that invalidating makes everything before it stale, including searches in flight.
+     */
+    @Test
+    public void testInvalidate()
+    {
+        long generation = cache.getGeneration();
+        cache.put("baroque", generation, results);
+        cache.invalidate();
+        assertFalse(cache.get("baroque").isPresent());
+        cache.put("baroque", generation, results);
+        assertFalse(cache.get("baroque").isPresent());
+        cache.put("baroque", cache.getGeneration(), results);
+        assertEquals(2, cache.get("baroque").get().size());
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.db.memory;
+
+import org.junit.Test;
+
+import org.phenotips.termrequester.Phenotype;
+import org.phenotips.termrequester.TermRequesterBackendModule;
+import org.phenotips.termrequester.db.AbstractDatabaseServiceTest;
+import org.phenotips.termrequester.db.DatabaseService;
+
+import com.google.inject.Guice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the MemoryDatabaseService class.
+ *
+ * @version $Id$
+ */
+public class MemoryDatabaseServiceTest extends AbstractDatabaseServiceTest
+{
+    @Override
+    protected DatabaseService createClient()
+    {
+        return Guice.createInjector(new TermRequesterBackendModule(new MemoryModule())).
+            getInstance(DatabaseService.class);
+    }
+
+    /**
+     * Test that changing a phenotype we were handed doesn't change what's stored until it's saved.
+     */
+    @Test
+    public void testIsolation() throws Exception
+    {
+        Phenotype pt = new Phenotype(PT_NAME, PT_DESC);
+        client.savePhenotype(pt);
+        String name = pt.getName();
+        pt.setName("Something Else");
+        Phenotype read = client.getPhenotypeById(pt.getId().get());
+        assertEquals(name, read.getName());
+        read.setName("Another Thing");
+        assertEquals(name, client.getPhenotypeById(pt.getId().get()).getName());
+        client.savePhenotype(read);
+        assertEquals("Another Thing", client.getPhenotypeById(pt.getId().get()).getName());
+        assertEquals(Phenotype.NULL, client.getPhenotype(new Phenotype(PT_NAME, "")));
+    }
+
+    /**
+     * Test that status lookups follow a phenotype's status changes.
+     */
+    @Test
+    public void testStatusChange() throws Exception
+    {
+        Phenotype pt = new Phenotype(PT_NAME, PT_DESC);
+        client.savePhenotype(pt);
+        assertEquals(1, client.getPhenotypesByStatus(Phenotype.Status.UNSUBMITTED).size());
+        pt.setStatus(Phenotype.Status.SUBMITTED);
+        pt.setIssueNumber(PT_NUM);
+        client.savePhenotype(pt);
+        assertTrue(client.getPhenotypesByStatus(Phenotype.Status.UNSUBMITTED).isEmpty());
+        assertEquals(pt, client.getPhenotypesByStatus(Phenotype.Status.SUBMITTED).get(0));
+        client.deletePhenotype(pt);
+        assertTrue(client.getPhenotypesByStatus(Phenotype.Status.SUBMITTED).isEmpty());
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.db.mvstore;
+
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import org.phenotips.termrequester.Phenotype;
+import org.phenotips.termrequester.TermRequesterBackendModule;
+import org.phenotips.termrequester.db.AbstractDatabaseServiceTest;
+import org.phenotips.termrequester.db.DatabaseService;
+
+import com.google.inject.Guice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the MVStoreDatabaseService class.
+ *
+ * @version $Id$
+ */
+public class MVStoreDatabaseServiceTest extends AbstractDatabaseServiceTest
+{
+    @Override
+    protected DatabaseService createClient()
+    {
+        return Guice.createInjector(new TermRequesterBackendModule(new MVStoreModule())).
+            getInstance(DatabaseService.class);
+    }
+
+    /**
+     * Test that phenotypes are kept on disk across restarts, and only committed ones at that.
+     */
+    @Test
+    public void testPersistence() throws Exception
+    {
+        Phenotype pt1 = new Phenotype("Bach", PT_DESC);
+        client.savePhenotype(pt1);
+        assertTrue(Files.exists(folder.getRoot().toPath().
+                    resolve(MVStoreDatabaseService.DIRECTORY).resolve(MVStoreDatabaseService.FILE_NAME)));
+        client.setAutocommit(false);
+        Phenotype pt2 = new Phenotype("Handel", PT_DESC);
+        client.savePhenotype(pt2);
+        /* Uncommitted writes are still visible to reads */
+        assertEquals(pt2, client.getPhenotypeById(pt2.getId().get()));
+        client.shutdown();
+        client = createClient();
+        client.init(folder.getRoot().toPath());
+        assertEquals(pt1, client.getPhenotypeById(pt1.getId().get()));
+        assertEquals(pt1, client.getPhenotype(new Phenotype("Bach", "")));
+        /* Shutting down commits */
+        assertEquals(pt2, client.getPhenotypeById(pt2.getId().get()));
+    }
+}
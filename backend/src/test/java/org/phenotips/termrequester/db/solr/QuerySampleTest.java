@@ -0,0 +1,77 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.db.solr;
+
+import java.nio.file.Path;
+
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the QuerySample class.
+ *
+ * @version $Id$
+ */
+public class QuerySampleTest
+{
+    /**
+     * A temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that only the most recent distinct queries are kept.
+     */
+    @Test
+    public void testRecord()
+    {
+        QuerySample sample = new QuerySample(3);
+        sample.record("bach");
+        sample.record("handel");
+        sample.record("  ");
+        sample.record("bach");
+        sample.record("telemann\nvivaldi");
+        sample.record("purcell");
+        assertEquals(Arrays.asList("bach", "telemann vivaldi", "purcell"), sample.getQueries());
+    }
+
+    /**
+     * Test that the queries survive a trip to disk.
+     */
+    @Test
+    public void testSaveAndLoad() throws Exception
+    {
+        Path file = folder.getRoot().toPath().resolve("queries.txt");
+        QuerySample sample = new QuerySample(3);
+        sample.load(file);
+        assertTrue(sample.getQueries().isEmpty());
+        sample.record("bach");
+        sample.record("handel");
+        sample.save(file);
+        QuerySample other = new QuerySample(3);
+        other.load(file);
+        assertEquals(sample.getQueries(), other.getQueries());
+    }
+}
@@ -19,14 +19,14 @@
 
 import java.io.IOException;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
@@ -37,15 +37,14 @@
 import org.apache.solr.core.CoreContainer;
 
 import org.junit.After;
-import org.junit.Before;
 import org.junit.BeforeClass;
-import org.junit.Rule;
 import org.junit.Test;
-import org.junit.rules.TemporaryFolder;
 
 import org.phenotips.termrequester.Phenotype;
 import org.phenotips.termrequester.TermRequesterBackendModule;
+import org.phenotips.termrequester.db.AbstractDatabaseServiceTest;
 import org.phenotips.termrequester.db.DatabaseService;
+import org.phenotips.termrequester.db.SearchCache;
 
 import com.google.inject.Guice;
 import com.google.inject.Injector;
@@ -53,46 +52,22 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
-import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 /**
  * Test the SolrDatabaseService class.
+ * The bulk of the tests come from AbstractDatabaseServiceTest; the ones here check what actually
+ * ends up in solr.
  *
  * @version $Id$
  */
-public class SolrDatabaseServiceTest
+public class SolrDatabaseServiceTest extends AbstractDatabaseServiceTest
 {
-    /**
-     * The name of the test phenotype.
-     */
-    private static final String PT_NAME = "Test phenotype";
-
-    /**
-     * The description of the test phenotype.
-     */
-    private static final String PT_DESC = "Descriptions are cool";
-
-    /**
-     * The test hpo id.
-     */
-    private static final String PT_HPO_ID = "HP_0000101";
-
-    /**
-     * The issue number of the test phenotype.
-     */
-    private static final String PT_NUM = "1";
-
     /**
      * A dependency injector.
      */
     private static Injector injector;
 
-    /**
-     * The object under test.
-     */
-    private DatabaseService client;
-
     /**
      * The solr core container we're gonna be using.
      */
@@ -103,12 +78,6 @@
      */
     private SolrClient solr;
 
-    /**
-     * A temporary folder.
-     */
-    @Rule
-    public TemporaryFolder folder = new TemporaryFolder();
-
     /**
      * Set up the suite.
      */
@@ -118,22 +87,20 @@ public static void beforeClass()
         injector = Guice.createInjector(new TermRequesterBackendModule());
     }
 
-    /**
-     * Set up an individual test.
-     */
-    @Before
-    public void setUp() throws IOException
+    @Override
+    protected DatabaseService createClient()
     {
-        client = injector.getInstance(SolrDatabaseService.class);
-        client.init(folder.getRoot().toPath());
-        client.setAutocommit(true);
+        return injector.getInstance(SolrDatabaseService.class);
     }
 
+    /**
+     * Shut down our own solr, if we started it.
+     */
     @After
-    public void tearDown() throws IOException, InterruptedException
+    public void shutdownSolr() throws IOException
     {
-        client.shutdown();
         if (cores != null) {
+            client.shutdown();
             cores.shutdown();
             cores = null;
         }
@@ -223,27 +190,6 @@ public void testSaveExisting() throws IOException, SolrServerException
 
     }
 
-    /**
-     * Test the get by id method.
-     */
-    @Test
-    public void testGetById() throws IOException
-    {
-        Phenotype pt = new Phenotype(PT_NAME, PT_DESC);
-        pt.addSynonym("synone");
-        pt.addSynonym("syntwo");
-        client.savePhenotype(pt);
-        Phenotype result = client.getPhenotypeById(pt.getId().get());
-        assertEquals(pt.getId().get(), result.getId().get());
-        assertEquals(pt.getName(), result.getName());
-        assertEquals(pt.getDescription(), result.getDescription());
-        assertEquals(pt.getTimeCreated(), result.getTimeCreated());
-        assertEquals(pt.getTimeModified(), result.getTimeModified());
-        assertEquals(pt.getSynonyms(), result.getSynonyms());
-        result = client.getPhenotypeById("imaginary");
-        assertEquals(Phenotype.NULL, result);
-    }
-
     /**
      * Test the deletePhenotype method.
      */
@@ -266,138 +212,58 @@ public void testDelete() throws IOException, SolrServerException
     }
 
     /**
-     * Test the getPhenotypeByIssueNumber method.
-     */
-    @Test
-    public void testGetByIssueNumber() throws IOException
-    {
-        Phenotype pt1 = new Phenotype(PT_NAME, PT_DESC);
-        pt1.setIssueNumber(PT_NUM);
-        pt1.setStatus(Phenotype.Status.SUBMITTED);
-        Phenotype pt2 = new Phenotype(PT_NAME + " other", PT_DESC);
-        /* Wanna be extra sure substrings won't match */
-        pt2.setIssueNumber(PT_NUM + "0");
-        pt2.setStatus(Phenotype.Status.SUBMITTED);
-        client.savePhenotype(pt1);
-        client.savePhenotype(pt2);
-        Phenotype result = client.getPhenotypeByIssueNumber(pt1.getIssueNumber().get());
-        assertEquals(pt1.getId().get(), result.getId().get());
-        assertEquals(pt1.getName(), result.getName());
-        assertEquals(pt1.getIssueNumber().get(), result.getIssueNumber().get());
-        result = client.getPhenotypeByIssueNumber(pt2.getIssueNumber().get());
-        assertEquals(pt2.getId().get(), result.getId().get());
-        assertEquals(pt2.getName(), result.getName());
-        assertEquals(pt2.getIssueNumber().get(), result.getIssueNumber().get());
-        result = client.getPhenotypeByIssueNumber(PT_NUM + "2");
-        assertEquals(Phenotype.NULL, result);
-    }
-
-    /**
-     * Test the getPhenotype method.
+     * Test that getPhenotypes splits up batches too big for a single query.
      */
     @Test
-    public void testGetPhenotype() throws IOException
+    public void testGetPhenotypesLargeBatch() throws IOException
     {
-        /* All four of these should be the same one:
-         *  pt2 has pt1 as synonym
-         *  pt1 has pt3 as synonym
-         *  pt1 and pt4 have the same name
-         *  pt1 and pt5 have the same id
-         *  pt1 and pt6 have the same issueNumber
-         */
-        Phenotype pt1 = new Phenotype(PT_NAME, PT_DESC);
-        pt1.setStatus(Phenotype.Status.SUBMITTED);
-        pt1.setIssueNumber(PT_NUM);
-        Phenotype pt2 = new Phenotype("Mahler", PT_DESC);
-        Phenotype pt3 = new Phenotype("Stravinsky", PT_DESC);
-        Phenotype pt4 = new Phenotype(PT_NAME, PT_DESC);
-        Phenotype pt5 = new Phenotype("Schoenberg", PT_DESC);
-        Phenotype pt6 = new Phenotype("Rachmaninoff", PT_DESC);
-        pt2.addSynonym(pt1.getName());
-        pt1.addSynonym(pt3.getName());
-        client.savePhenotype(pt1);
-        pt5.setId(pt1.getId().get());
-        pt6.setIssueNumber(pt1.getIssueNumber().get());
-        pt6.setStatus(pt1.getStatus());
-        Phenotype result = client.getPhenotype(pt1);
-        assertEquals(pt1, result);
-        result = client.getPhenotype(pt2);
-        assertEquals(pt1, result);
-        result = client.getPhenotype(pt3);
-        assertEquals(pt1, result);
-        result = client.getPhenotype(pt4);
-        assertEquals(pt1, result);
-        result = client.getPhenotype(pt5);
-        assertEquals(pt1, result);
-        result = client.getPhenotype(pt6);
-        assertEquals(pt1, result);
-        /* This one isn't equal to the others */
-        Phenotype pt7 = new Phenotype("Ravel", PT_DESC);
-        result = client.getPhenotype(pt7);
-        assertEquals(Phenotype.NULL, result);
+        Phenotype stored = new Phenotype("Stored", PT_DESC);
+        client.savePhenotype(stored);
+        List<Phenotype> batch = new ArrayList<>();
+        for (int i = 0; i < SolrDatabaseService.MAX_QUERY_CLAUSES; i++) {
+            batch.add(new Phenotype("Phenotype " + i, PT_DESC));
+        }
+        batch.add(new Phenotype("Stored", PT_DESC));
+        List<Phenotype> results = client.getPhenotypes(batch);
+        assertEquals(batch.size(), results.size());
+        assertEquals(Phenotype.NULL, results.get(0));
+        assertEquals(stored.getId(), results.get(batch.size() - 1).getId());
     }
 
     /**
-     * Test the searchPhenotypes function.
+     * Test that repeated searches come from the cache, until a commit could change their results.
      */
     @Test
-    public void testSearch() throws IOException
+    public void testSearchCache() throws IOException
     {
-        String s1 = "hooray",
-               s2 = "string",
-               s3 = "bam",
-               s4 = "commas",
-               s5 = "more variables";
-        Phenotype pt1 = new Phenotype(PT_NAME, PT_DESC),
-                  pt2 = new Phenotype(PT_NAME + PT_NAME, PT_DESC),
-                  pt3 = new Phenotype(PT_NAME, s1),
-                  pt4 = new Phenotype(s1, s1),
-                  pt5 = new Phenotype(s1, s2),
-                  pt6 = new Phenotype(s2, s2),
-                  pt7 = new Phenotype(s3, s3),
-                  pt8 = new Phenotype(s4, s4);
+        SearchCache cache = injector.getInstance(SearchCache.class);
+        Phenotype pt1 = new Phenotype("Bach", PT_DESC);
         client.savePhenotype(pt1);
+        assertEquals(Arrays.asList(pt1), client.searchPhenotypes("bach"));
+        long hits = cache.getHitCount();
+        assertEquals(Arrays.asList(pt1), client.searchPhenotypes(" Bach"));
+        assertEquals(hits + 1, cache.getHitCount());
+        Phenotype pt2 = new Phenotype("Johann Christian Bach", PT_DESC);
         client.savePhenotype(pt2);
-        client.savePhenotype(pt3);
-        client.savePhenotype(pt4);
-        client.savePhenotype(pt5);
-        client.savePhenotype(pt6);
-        client.savePhenotype(pt7);
-        client.savePhenotype(pt8);
-        List<Phenotype> results = client.searchPhenotypes(PT_NAME);
-        assertSetEquals(results, pt1, pt2, pt3);
-        results = client.searchPhenotypes(PT_DESC);
-        assertSetEquals(results, pt1, pt2);
-        results = client.searchPhenotypes(s2);
-        assertSetEquals(results, pt6, pt5);
-        results = client.searchPhenotypes(s3);
-        assertSetEquals(results, pt7);
-        results = client.searchPhenotypes(s5);
-        assertSetEquals(results);
+        assertEquals(2, client.searchPhenotypes("bach").size());
+        assertEquals(hits + 1, cache.getHitCount());
     }
 
     /**
-     * Test the getByHpoId method.
+     * Test that searches are kept across restarts to warm up with.
      */
     @Test
-    public void testGetByHpoId() throws IOException
+    public void testWarmUp() throws IOException
     {
-        Phenotype pt1 = new Phenotype("one", "two");
-        pt1.setStatus(Phenotype.Status.ACCEPTED);
-        pt1.setHpoId(PT_HPO_ID);
-        pt1.setIssueNumber(PT_NUM);
-        client.savePhenotype(pt1);
-        Phenotype result = client.getPhenotypeByHpoId(PT_HPO_ID);
-        assertEquals(pt1, result);
-        assertEquals(Phenotype.Status.ACCEPTED, result.getStatus());
-        assertEquals(PT_HPO_ID, result.getHpoId().get());
-    }
-
-    private void assertSetEquals(Collection<Phenotype> results, Phenotype... expected)
-    {
-        Set<Phenotype> resultSet = new HashSet<>(results);
-        Set<Phenotype> expectedSet = new HashSet<>(Arrays.asList(expected));
-        assertEquals(expectedSet, resultSet);
+        Phenotype pt = new Phenotype("Bach", PT_DESC);
+        client.savePhenotype(pt);
+        client.searchPhenotypes("bach");
+        client.shutdown();
+        Path warmup = folder.getRoot().toPath().resolve("solr").resolve(SolrDatabaseService.WARMUP_FILE);
+        assertEquals(Arrays.asList("bach"), Files.readAllLines(warmup, StandardCharsets.UTF_8));
+        client.init(folder.getRoot().toPath());
+        assertEquals(Arrays.asList(pt), client.searchPhenotypes("bach"));
+        assertTrue(client.isReady());
     }
 
     /**
@@ -0,0 +1,114 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.db.solr;
+
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.Resources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the SolrResources class.
+ *
+ * @version $Id$
+ */
+public class SolrResourcesTest
+{
+    /**
+     * A temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The solr home we write to.
+     */
+    private Path home;
+
+    /**
+     * Set up the test.
+     */
+    @Before
+    public void setUp()
+    {
+        home = folder.getRoot().toPath().resolve("solr");
+    }
+
+    /**
+     * Test that the resources are only written out when what's on disk isn't theirs.
+     */
+    @Test
+    public void testMaterialize() throws IOException
+    {
+        assertTrue(SolrResources.materialize(home));
+        for (String file : SolrResources.FILES) {
+            assertTrue(Files.isRegularFile(home.resolve(file)));
+        }
+        assertFalse(SolrResources.materialize(home));
+        /* A leftover from a different build gets replaced */
+        Path marker = home.resolve(SolrResources.MARKER);
+        Files.write(marker, "0:stale".getBytes(StandardCharsets.UTF_8));
+        assertTrue(SolrResources.materialize(home));
+        assertEquals(SolrResources.checksum(), new String(Files.readAllBytes(marker), StandardCharsets.UTF_8));
+        /* And so does a missing file */
+        Path schema = home.resolve("termrequester/conf/schema.xml");
+        Files.delete(schema);
+        assertTrue(SolrResources.materialize(home));
+        assertTrue(Files.isRegularFile(schema));
+    }
+
+    /**
+     * Test that every file in the solr home is listed, so none is left behind.
+     */
+    @Test
+    public void testAllFilesListed() throws Exception
+    {
+        final Path root = Paths.get(Resources.getResource(SolrResources.ROOT).toURI());
+        final Set<String> found = new HashSet<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+            {
+                found.add(root.relativize(file).toString().replace('\\', '/'));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        assertEquals(found, new HashSet<>(Arrays.asList(SolrResources.FILES)));
+    }
+}
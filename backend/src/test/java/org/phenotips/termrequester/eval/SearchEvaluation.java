@@ -0,0 +1,622 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.eval;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import java.lang.management.ManagementFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.phenotips.termrequester.Phenotype;
+import org.phenotips.termrequester.TermRequesterBackendModule;
+import org.phenotips.termrequester.db.DatabaseService;
+import org.phenotips.termrequester.db.SearchCache;
+import org.phenotips.termrequester.ontology.OboTerm;
+import org.phenotips.termrequester.ontology.OntologyReader;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+
+/**
+ * Measures how good and how fast phenotype search is.
+ * Loads a corpus of terms from an OBO file into a database service, runs a set of queries labeled
+ * with the terms they should find, and reports nDCG and MRR along with latency percentiles and
+ * allocation per query. Several configurations (backend modules plus system properties, such as
+ * the termrequester.search.* boosts) can be run over the same corpus and compared side by side.
+ *
+ * @version $Id$
+ */
+public class SearchEvaluation
+{
+    /**
+     * How many results are considered.
+     */
+    public static final int DEPTH = 10;
+
+    /**
+     * The classpath resource holding the corpus.
+     */
+    private String corpus;
+
+    /**
+     * The labeled queries.
+     */
+    private List<LabeledQuery> queries;
+
+    /**
+     * How many times to run every query when measuring latency.
+     */
+    private int repetitions;
+
+    /**
+     * CTOR.
+     * @param corpus the classpath resource holding the corpus, in OBO format
+     * @param queries the classpath resource holding the labeled queries
+     * @param repetitions how many times to run every query when measuring latency
+     * @throws IOException if the queries can't be read
+     */
+    public SearchEvaluation(String corpus, String queries, int repetitions) throws IOException
+    {
+        this.corpus = corpus;
+        this.queries = readQueries(queries);
+        this.repetitions = repetitions;
+    }
+
+    /**
+     * Get the labeled queries.
+     * @return the queries
+     */
+    public List<LabeledQuery> getQueries()
+    {
+        return queries;
+    }
+
+    /**
+     * Evaluate the configuration given.
+     * @param config the configuration
+     * @param home an empty directory for the database to live in
+     * @return the result
+     * @throws IOException on failure to load the corpus or run the queries
+     */
+    public Result evaluate(Configuration config, Path home) throws IOException
+    {
+        Map<String, String> previous = new HashMap<>();
+        for (Map.Entry<String, String> property : config.properties.entrySet()) {
+            previous.put(property.getKey(), System.setProperty(property.getKey(), property.getValue()));
+        }
+        Injector injector = Guice.createInjector(new TermRequesterBackendModule(config.module));
+        DatabaseService db = injector.getInstance(DatabaseService.class);
+        try {
+            db.init(home);
+            db.setAutocommit(false);
+            try (InputStream in = getResource(corpus)) {
+                db.savePhenotypes(readCorpus(in));
+            }
+            db.commit();
+            return measure(config.name, db, injector.getInstance(SearchCache.class));
+        } finally {
+            db.shutdown();
+            for (Map.Entry<String, String> property : previous.entrySet()) {
+                if (property.getValue() == null) {
+                    System.clearProperty(property.getKey());
+                } else {
+                    System.setProperty(property.getKey(), property.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Lay out the results given side by side: the summary first, then nDCG query by query.
+     * @param results the results
+     * @return the report
+     */
+    public String report(List<Result> results)
+    {
+        StringBuilder sb = new StringBuilder();
+        String rowFormat = "%-32s" + repeat("%14s", results.size()) + "%n";
+        List<Object> header = new ArrayList<>();
+        header.add("");
+        for (Result result : results) {
+            header.add(result.name);
+        }
+        sb.append(String.format(rowFormat, header.toArray()));
+        appendRow(sb, rowFormat, "nDCG@" + DEPTH, results, new Metric()
+        {
+            @Override
+            public double get(Result result)
+            {
+                return result.ndcg;
+            }
+        });
+        appendRow(sb, rowFormat, "MRR", results, new Metric()
+        {
+            @Override
+            public double get(Result result)
+            {
+                return result.mrr;
+            }
+        });
+        appendRow(sb, rowFormat, "p50 latency (us)", results, new Metric()
+        {
+            @Override
+            public double get(Result result)
+            {
+                return result.p50Micros;
+            }
+        });
+        appendRow(sb, rowFormat, "p99 latency (us)", results, new Metric()
+        {
+            @Override
+            public double get(Result result)
+            {
+                return result.p99Micros;
+            }
+        });
+        appendRow(sb, rowFormat, "allocation per query (KB)", results, new Metric()
+        {
+            @Override
+            public double get(Result result)
+            {
+                return result.bytesPerQuery / 1024.0;
+            }
+        });
+        sb.append(String.format("%n"));
+        for (final LabeledQuery query : queries) {
+            appendRow(sb, rowFormat, "  " + query.text, results, new Metric()
+            {
+                @Override
+                public double get(Result result)
+                {
+                    return result.ndcgByQuery.get(query.text);
+                }
+            });
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Run the queries against the database given and measure the results.
+     * @param name the name of the configuration
+     * @param db the database, loaded with the corpus
+     * @param cache the search cache, which is cleared before every query so we measure searches
+     * @return the result
+     * @throws IOException if a search fails
+     */
+    private Result measure(String name, DatabaseService db, SearchCache cache) throws IOException
+    {
+        Result result = new Result(name);
+        double ndcgTotal = 0;
+        double mrrTotal = 0;
+        for (LabeledQuery query : queries) {
+            cache.invalidate();
+            List<Phenotype> found = db.searchPhenotypes(query.text);
+            double ndcg = ndcg(query, found);
+            result.ndcgByQuery.put(query.text, ndcg);
+            ndcgTotal += ndcg;
+            mrrTotal += reciprocalRank(query, found);
+        }
+        result.ndcg = ndcgTotal / queries.size();
+        result.mrr = mrrTotal / queries.size();
+
+        long[] latencies = new long[queries.size() * repetitions];
+        long allocated = 0;
+        int i = 0;
+        for (int rep = 0; rep < repetitions; rep++) {
+            for (LabeledQuery query : queries) {
+                cache.invalidate();
+                long allocatedBefore = allocatedBytes();
+                long start = System.nanoTime();
+                db.searchPhenotypes(query.text);
+                latencies[i++] = System.nanoTime() - start;
+                allocated += allocatedBytes() - allocatedBefore;
+            }
+        }
+        Arrays.sort(latencies);
+        result.p50Micros = percentile(latencies, 0.50) / 1000.0;
+        result.p99Micros = percentile(latencies, 0.99) / 1000.0;
+        result.bytesPerQuery = allocatedBytes() < 0 ? -1 : allocated / latencies.length;
+        return result;
+    }
+
+    /**
+     * Compute the normalized discounted cumulative gain of the results for a query.
+     * @param query the query
+     * @param found the results
+     * @return the nDCG, between 0 and 1
+     */
+    static double ndcg(LabeledQuery query, List<Phenotype> found)
+    {
+        double dcg = 0;
+        for (int i = 0; i < Math.min(DEPTH, found.size()); i++) {
+            dcg += gain(query.grade(found.get(i)), i);
+        }
+        List<Integer> ideal = new ArrayList<>(query.grades.values());
+        Collections.sort(ideal, Collections.reverseOrder());
+        double idcg = 0;
+        for (int i = 0; i < Math.min(DEPTH, ideal.size()); i++) {
+            idcg += gain(ideal.get(i), i);
+        }
+        return idcg == 0 ? 0 : dcg / idcg;
+    }
+
+    /**
+     * Compute the reciprocal rank of the first relevant result for a query.
+     * @param query the query
+     * @param found the results
+     * @return the reciprocal rank, or 0 if nothing relevant was found
+     */
+    static double reciprocalRank(LabeledQuery query, List<Phenotype> found)
+    {
+        for (int i = 0; i < Math.min(DEPTH, found.size()); i++) {
+            if (query.grade(found.get(i)) > 0) {
+                return 1.0 / (i + 1);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Get the discounted gain of a result.
+     * @param grade how relevant it is
+     * @param position its zero-based position
+     * @return the gain
+     */
+    private static double gain(int grade, int position)
+    {
+        return (Math.pow(2, grade) - 1) / (Math.log(position + 2) / Math.log(2));
+    }
+
+    /**
+     * Get a percentile of some sorted values.
+     * @param sorted the values, sorted
+     * @param fraction the percentile, as a fraction
+     * @return the value
+     */
+    private static long percentile(long[] sorted, double fraction)
+    {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * Get how many bytes the current thread has allocated so far, if the JVM can tell us.
+     * @return the bytes, or -1 if unknown
+     */
+    private static long allocatedBytes()
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Read the labeled queries from a resource: one per line, the text followed by tab separated
+     * hpo id and grade pairs, as in HP:0001250:2. Lines starting with # are skipped.
+     * @param resource the resource
+     * @return the queries
+     * @throws IOException if it can't be read
+     */
+    private static List<LabeledQuery> readQueries(String resource) throws IOException
+    {
+        List<LabeledQuery> results = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(getResource(resource),
+                        StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] pieces = line.split("\t");
+                LabeledQuery query = new LabeledQuery(pieces[0]);
+                for (int i = 1; i < pieces.length; i++) {
+                    int split = pieces[i].lastIndexOf(':');
+                    query.grades.put(pieces[i].substring(0, split).replace(':', '_'),
+                            Integer.parseInt(pieces[i].substring(split + 1)));
+                }
+                results.add(query);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Read the terms in the corpus given into accepted phenotypes, as if each had been requested
+     * and made it into the HPO.
+     * @param in the corpus, in OBO format
+     * @return a phenotype for every term
+     * @throws IOException if it can't be read
+     */
+    private static List<Phenotype> readCorpus(InputStream in) throws IOException
+    {
+        final List<Phenotype> results = new ArrayList<>();
+        OntologyReader.readOboTerms(in, new OboTerm.Visitor()
+        {
+            @Override
+            public void visit(OboTerm term)
+            {
+                Phenotype pt = new Phenotype(term.getName(), term.getDefinition());
+                pt.setStatus(Phenotype.Status.ACCEPTED);
+                pt.setHpoId(term.getHpoId());
+                pt.setIssueNumber(term.getHpoId().substring(term.getHpoId().indexOf('_') + 1));
+                pt.addAllSynonyms(term.getSynonyms());
+                for (String parent : term.getParentIds()) {
+                    pt.addParentId(parent);
+                }
+                results.add(pt);
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Open a classpath resource.
+     * @param resource the resource
+     * @return the stream
+     * @throws IOException if it doesn't exist
+     */
+    private static InputStream getResource(String resource) throws IOException
+    {
+        InputStream in = SearchEvaluation.class.getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException("No such resource " + resource);
+        }
+        return in;
+    }
+
+    /**
+     * Add a row with a metric for every result.
+     * @param sb the report so far
+     * @param rowFormat the format of a row
+     * @param label the label for the row
+     * @param results the results
+     * @param metric the metric
+     */
+    private static void appendRow(StringBuilder sb, String rowFormat, String label, List<Result> results,
+            Metric metric)
+    {
+        List<Object> row = new ArrayList<>();
+        row.add(label);
+        for (Result result : results) {
+            row.add(String.format("%.3f", metric.get(result)));
+        }
+        sb.append(String.format(rowFormat, row.toArray()));
+    }
+
+    /**
+     * Repeat a string.
+     * @param s the string
+     * @param times how many times
+     * @return the repeated string
+     */
+    private static String repeat(String s, int times)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Something to evaluate: a backend, and system properties to set while it runs.
+     */
+    public static class Configuration
+    {
+        /**
+         * The name, for the report.
+         */
+        private String name;
+
+        /**
+         * The module binding the database service.
+         */
+        private Module module;
+
+        /**
+         * The system properties to set.
+         */
+        private Map<String, String> properties = new LinkedHashMap<>();
+
+        /**
+         * CTOR.
+         * @param name the name, for the report
+         * @param module the module binding the database service
+         */
+        public Configuration(String name, Module module)
+        {
+            this.name = name;
+            this.module = module;
+        }
+
+        /**
+         * Set a system property while this configuration runs.
+         * @param key the property
+         * @param value the value
+         * @return this configuration
+         */
+        public Configuration with(String key, String value)
+        {
+            properties.put(key, value);
+            return this;
+        }
+    }
+
+    /**
+     * A query, and how relevant each hpo id is to it.
+     */
+    public static class LabeledQuery
+    {
+        /**
+         * The text.
+         */
+        private String text;
+
+        /**
+         * The grade of every relevant hpo id. Anything else is irrelevant.
+         */
+        private Map<String, Integer> grades = new HashMap<>();
+
+        /**
+         * CTOR.
+         * @param text the text
+         */
+        LabeledQuery(String text)
+        {
+            this.text = text;
+        }
+
+        /**
+         * Get the text.
+         * @return the text
+         */
+        public String getText()
+        {
+            return text;
+        }
+
+        /**
+         * Get how relevant the result given is.
+         * @param pt the result
+         * @return the grade, 0 if irrelevant
+         */
+        int grade(Phenotype pt)
+        {
+            Integer grade = pt.getHpoId().isPresent() ? grades.get(pt.getHpoId().get()) : null;
+            return grade == null ? 0 : grade;
+        }
+    }
+
+    /**
+     * What came out of evaluating a configuration.
+     */
+    public static class Result
+    {
+        /**
+         * The name of the configuration.
+         */
+        private String name;
+
+        /**
+         * The mean nDCG.
+         */
+        private double ndcg;
+
+        /**
+         * The mean reciprocal rank.
+         */
+        private double mrr;
+
+        /**
+         * The median latency, in microseconds.
+         */
+        private double p50Micros;
+
+        /**
+         * The 99th percentile latency, in microseconds.
+         */
+        private double p99Micros;
+
+        /**
+         * The mean bytes allocated per query, -1 if unknown.
+         */
+        private long bytesPerQuery;
+
+        /**
+         * The nDCG of every query.
+         */
+        private Map<String, Double> ndcgByQuery = new HashMap<>();
+
+        /**
+         * CTOR.
+         * @param name the name of the configuration
+         */
+        Result(String name)
+        {
+            this.name = name;
+        }
+
+        /**
+         * Get the mean nDCG.
+         * @return the nDCG
+         */
+        public double getNdcg()
+        {
+            return ndcg;
+        }
+
+        /**
+         * Get the mean reciprocal rank.
+         * @return the MRR
+         */
+        public double getMrr()
+        {
+            return mrr;
+        }
+
+        /**
+         * Get the median latency.
+         * @return the latency, in microseconds
+         */
+        public double getP50Micros()
+        {
+            return p50Micros;
+        }
+
+        /**
+         * Get the 99th percentile latency.
+         * @return the latency, in microseconds
+         */
+        public double getP99Micros()
+        {
+            return p99Micros;
+        }
+    }
+
+    /**
+     * A number to report for a result.
+     */
+    private interface Metric
+    {
+        /**
+         * Get the number.
+         * @param result the result
+         * @return the number
+         */
+        double get(Result result);
+    }
+}
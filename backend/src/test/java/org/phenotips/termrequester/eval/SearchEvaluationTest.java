@@ -0,0 +1,105 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.eval;
+
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.phenotips.termrequester.db.memory.MemoryModule;
+import org.phenotips.termrequester.db.solr.SolrModule;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Run the search evaluation over the sample corpus and make sure search quality doesn't regress.
+ * The report is written to target/search-evaluation.txt so configurations can be compared by eye.
+ * It's slow, so it's left out of the usual build; it runs with the search-evaluation profile.
+ *
+ * @version $Id$
+ */
+public class SearchEvaluationTest
+{
+    /**
+     * The sample corpus.
+     */
+    private static final String CORPUS = "/org/phenotips/termrequester/eval/hp-sample.obo";
+
+    /**
+     * The labeled queries.
+     */
+    private static final String QUERIES = "/org/phenotips/termrequester/eval/queries.tsv";
+
+    /**
+     * Where the report goes, relative to the module.
+     */
+    private static final Path REPORT = Paths.get("target", "search-evaluation.txt");
+
+    /**
+     * How many times to run every query when measuring latency.
+     */
+    private static final int REPETITIONS = 20;
+
+    /**
+     * The lowest nDCG the default configuration may score before we call it a regression.
+     */
+    private static final double MIN_NDCG = 0.8;
+
+    /**
+     * A temporary folder for the databases.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Compare the default solr configuration against one searching names alone, and against the
+     * in memory database.
+     */
+    @Test
+    public void testEvaluate() throws IOException
+    {
+        SearchEvaluation evaluation = new SearchEvaluation(CORPUS, QUERIES, REPETITIONS);
+        List<SearchEvaluation.Configuration> configs = new ArrayList<>();
+        configs.add(new SearchEvaluation.Configuration("solr", new SolrModule()));
+        configs.add(new SearchEvaluation.Configuration("solr (names)", new SolrModule()).
+            with("termrequester.search.qf", "name^10 nameSpell^18 nameStub^5").
+            with("termrequester.search.pf", "name^20 nameExact^100 namePrefix^30"));
+        configs.add(new SearchEvaluation.Configuration("memory", new MemoryModule()));
+        List<SearchEvaluation.Result> results = new ArrayList<>();
+        for (SearchEvaluation.Configuration config : configs) {
+            SearchEvaluation.Result result = evaluation.evaluate(config, folder.newFolder().toPath());
+            assertTrue(result.getNdcg() >= 0 && result.getNdcg() <= 1);
+            assertTrue(result.getMrr() >= 0 && result.getMrr() <= 1);
+            assertTrue(result.getP50Micros() <= result.getP99Micros());
+            results.add(result);
+        }
+        Files.createDirectories(REPORT.getParent());
+        Files.write(REPORT, evaluation.report(results).getBytes(StandardCharsets.UTF_8));
+        assertTrue(results.get(0).getNdcg() >= MIN_NDCG);
+    }
+}
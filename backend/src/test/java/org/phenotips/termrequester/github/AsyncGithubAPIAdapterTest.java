@@ -0,0 +1,115 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.github;
+
+import java.io.IOException;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.phenotips.termrequester.Phenotype;
+
+import com.google.common.base.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test the AsyncGithubAPIAdapter class.
+ * @version $Id$
+ */
+public class AsyncGithubAPIAdapterTest
+{
+    /**
+     * The blocking github api underneath.
+     */
+    private GithubAPI github;
+
+    /**
+     * Where the calls run.
+     */
+    private ExecutorService executor;
+
+    /**
+     * The adapter under test.
+     */
+    private AsyncGithubAPI client;
+
+    /**
+     * A test phenotype.
+     */
+    private Phenotype pt;
+
+    @Before
+    public void setUp()
+    {
+        github = mock(GithubAPI.class);
+        executor = Executors.newFixedThreadPool(2);
+        client = new AsyncGithubAPIAdapter(github, executor);
+        pt = new Phenotype("name", "description");
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Test that results come back through the futures.
+     */
+    @Test
+    public void testResults() throws Exception
+    {
+        when(github.readPhenotype(pt)).thenReturn(pt);
+        when(github.searchForIssue(pt)).thenReturn(Optional.of("12"));
+        assertTrue(pt == client.readPhenotype(pt).get());
+        assertEquals(Optional.of("12"), client.searchForIssue(pt).get());
+        client.openIssue(pt).get();
+        client.patchIssue(pt).get();
+        verify(github).openIssue(pt);
+        verify(github).patchIssue(pt);
+    }
+
+    /**
+     * Test that failures come back through the futures.
+     */
+    @Test
+    public void testFailure() throws Exception
+    {
+        IOException failure = new IOException("down");
+        doThrow(failure).when(github).openIssue(pt);
+        try {
+            client.openIssue(pt).get();
+            fail("Should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(failure == e.getCause());
+        }
+    }
+}
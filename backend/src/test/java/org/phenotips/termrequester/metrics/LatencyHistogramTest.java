@@ -0,0 +1,67 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the LatencyHistogram class.
+ *
+ * @version $Id$
+ */
+public class LatencyHistogramTest
+{
+    /**
+     * Test that every bucket holds the values it claims to.
+     */
+    @Test
+    public void testBuckets()
+    {
+        for (long value : new long[] { 0, 1, 15, 16, 17, 31, 32, 33, 1000, 123456789, Long.MAX_VALUE }) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(value <= LatencyHistogram.highestIn(bucket));
+            if (bucket > 0) {
+                assertTrue(value > LatencyHistogram.highestIn(bucket - 1));
+            }
+        }
+    }
+
+    /**
+     * Test the percentiles of a histogram.
+     */
+    @Test
+    public void testPercentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(100000, histogram.getMax());
+        assertEquals(100000, histogram.getPercentile(100));
+        /* Off by at most one part in sixteen */
+        long median = histogram.getPercentile(50);
+        assertTrue(median >= 50000 && median <= 50000 * 17 / 16);
+        long p99 = histogram.getPercentile(99);
+        assertTrue(p99 >= 99000 && p99 <= 100000);
+    }
+}
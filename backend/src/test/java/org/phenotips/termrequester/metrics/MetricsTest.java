@@ -0,0 +1,131 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.metrics;
+
+import java.io.IOException;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import org.phenotips.termrequester.tracing.Span;
+import org.phenotips.termrequester.tracing.Tracer;
+import org.phenotips.termrequester.tracing.TracingModule;
+
+import com.google.common.base.Suppliers;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test the Metrics class, and the timing of Timed classes.
+ *
+ * @version $Id$
+ */
+public class MetricsTest
+{
+    /**
+     * Test that the public methods of a Timed class are timed, and their failures counted.
+     */
+    @Test
+    public void testTimed() throws Exception
+    {
+        Injector injector = Guice.createInjector(new MetricsModule(), new TracingModule());
+        Metrics metrics = injector.getInstance(Metrics.class);
+        Sample sample = injector.getInstance(Sample.class);
+        sample.work();
+        sample.work();
+        try {
+            sample.fail();
+            fail("Should have thrown");
+        } catch (IOException e) {
+            /* Expected */
+        }
+        Map<String, Long> values = metrics.getValues();
+        assertEquals(Long.valueOf(2), values.get("sample.work.count"));
+        assertEquals(Long.valueOf(1), values.get("sample.fail.count"));
+        assertEquals(Long.valueOf(1), values.get("sample.fail.errors"));
+        assertFalse(values.containsKey("sample.work.errors"));
+        assertTrue(values.containsKey("sample.work.p99_us"));
+    }
+
+    /**
+     * Test that calls to a Timed class made within a trace are stages of it.
+     */
+    @Test
+    public void testTraced() throws Exception
+    {
+        Injector injector = Guice.createInjector(new MetricsModule(), new TracingModule());
+        Tracer tracer = injector.getInstance(Tracer.class);
+        Sample sample = injector.getInstance(Sample.class);
+        try (Span root = tracer.start("root")) {
+            sample.work();
+            try {
+                sample.fail();
+                fail("Should have thrown");
+            } catch (IOException e) {
+                /* Expected */
+            }
+            assertEquals(2, root.getChildren().size());
+            assertEquals("sample.work", root.getChildren().get(0).getName());
+            assertEquals(IOException.class.getName(), root.getChildren().get(1).getAttributes().get("error"));
+        }
+    }
+
+    /**
+     * Test the text exposition.
+     */
+    @Test
+    public void testWriteText() throws Exception
+    {
+        Metrics metrics = new Metrics();
+        metrics.increment("b.counter");
+        metrics.increment("b.counter");
+        metrics.gauge("a.gauge", Suppliers.ofInstance(7));
+        StringBuilder out = new StringBuilder();
+        metrics.writeText(out);
+        assertEquals("a.gauge 7\nb.counter 2\n", out.toString());
+    }
+
+    /**
+     * A class to time.
+     */
+    @Timed("sample")
+    public static class Sample
+    {
+        /**
+         * Do nothing much.
+         */
+        public void work()
+        {
+        }
+
+        /**
+         * Throw.
+         * @throws IOException always
+         */
+        public void fail() throws IOException
+        {
+            throw new IOException("Failed");
+        }
+    }
+}
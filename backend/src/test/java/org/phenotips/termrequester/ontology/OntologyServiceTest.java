@@ -0,0 +1,190 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.ontology;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.phenotips.termrequester.TermRequesterBackendModule;
+import org.phenotips.termrequester.metrics.Metrics;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the OntologyService implementation.
+ *
+ * @version $Id$
+ */
+public class OntologyServiceTest
+{
+    /**
+     * A temporary folder to act as home.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The service under test.
+     */
+    private OntologyService service;
+
+    /**
+     * The directory releases go in.
+     */
+    private Path directory;
+
+    /**
+     * The metrics the service reports to.
+     */
+    private Metrics metrics;
+
+    /**
+     * Set up the test case.
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        Injector injector = Guice.createInjector(new TermRequesterBackendModule());
+        service = injector.getInstance(OntologyService.class);
+        metrics = injector.getInstance(Metrics.class);
+        service.init(folder.getRoot().toPath());
+        directory = folder.getRoot().toPath().resolve(OntologyServiceImpl.DIRECTORY);
+    }
+
+    /**
+     * Tear down the test case.
+     */
+    @After
+    public void tearDown()
+    {
+        service.shutdown();
+    }
+
+    /**
+     * Test that there's nothing loaded until a release is dropped in, and that it's then loaded once.
+     */
+    @Test
+    public void testReload() throws IOException
+    {
+        assertTrue(Files.isDirectory(directory));
+        assertFalse(service.reload());
+        assertTrue(service.getOntology().isEmpty());
+        dropIn("hp.obo", "hp.obo", 1000);
+        loadFirstRelease();
+        assertFalse(service.reload());
+    }
+
+    /**
+     * Test that a new release replaces the old one, whichever format it comes in.
+     */
+    @Test
+    public void testNewRelease() throws IOException
+    {
+        dropIn("hp.obo", "hp.obo", 1000);
+        loadFirstRelease();
+        Ontology first = service.getOntology();
+        dropIn("hp.json", "hp.json", 2000);
+        assertTrue(service.reload());
+        assertTrue(first != service.getOntology());
+        assertTrue(service.getOntology().getVersion().get().endsWith("hp.json"));
+        /* An older file doesn't win out */
+        dropIn("hp.obo", "hp.obo", 1500);
+        assertFalse(service.reload());
+        dropIn("hp.obo", "hp.obo", 3000);
+        assertTrue(service.reload());
+        assertFalse(service.getOntology().getVersion().get().endsWith("hp.json"));
+    }
+
+    /**
+     * Test that a release that can't be read leaves the old one in place.
+     */
+    @Test
+    public void testBadRelease() throws IOException
+    {
+        dropIn("hp.obo", "hp.obo", 1000);
+        loadFirstRelease();
+        Files.write(directory.resolve("hp.json"), "[".getBytes());
+        Files.setLastModifiedTime(directory.resolve("hp.json"), FileTime.fromMillis(2000));
+        try {
+            service.reload();
+            fail();
+        } catch (IOException e) {
+            /* Expected */
+        }
+        assertTrue(service.getOntology().contains("HP_0001250"));
+        /* The watcher may have tried it too */
+        assertTrue(metrics.getValues().get("ontology.reload.errors") >= 1);
+        assertEquals(1000L, (long) metrics.getGauge("ontology.release.modified").get());
+        assertEquals((long) service.getOntology().size(), (long) metrics.getGauge("ontology.terms").get());
+    }
+
+    /**
+     * Test that shutting down unloads the release.
+     */
+    @Test
+    public void testShutdown() throws IOException
+    {
+        dropIn("hp.obo", "hp.obo", 1000);
+        loadFirstRelease();
+        service.shutdown();
+        assertTrue(service.getOntology().isEmpty());
+        assertFalse(service.reload());
+    }
+
+    /**
+     * Load the first release dropped in. The watcher may beat us to it, since it checks as soon as
+     * the service starts, so this can't go by what reload() returns.
+     */
+    private void loadFirstRelease() throws IOException
+    {
+        service.reload();
+        assertTrue(service.getOntology().contains("HP_0001250"));
+    }
+
+    /**
+     * Copy one of the sample releases into the release directory.
+     * @param resource the sample release
+     * @param name the name to give it
+     * @param modified the modification time to give it
+     */
+    private void dropIn(String resource, String name, long modified) throws IOException
+    {
+        Path file = directory.resolve(name);
+        try (InputStream in = getClass().getResourceAsStream(resource)) {
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified));
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.ontology;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.google.common.base.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the Ontology class, as read by the OntologyReader from either format.
+ *
+ * @version $Id$
+ */
+public class OntologyTest
+{
+    /**
+     * The reader under test.
+     */
+    private OntologyReader reader = new OntologyReader(new ObjectMapper());
+
+    /**
+     * Test reading an obo release.
+     */
+    @Test
+    public void testReadObo() throws IOException
+    {
+        try (InputStream in = getClass().getResourceAsStream("hp.obo")) {
+            Ontology hpo = reader.readObo(in);
+            checkSample(hpo);
+            assertEquals(Optional.of("hp/releases/2017-10-05"), hpo.getVersion());
+        }
+    }
+
+    /**
+     * Test reading an obographs release.
+     */
+    @Test
+    public void testReadJson() throws IOException
+    {
+        try (InputStream in = getClass().getResourceAsStream("hp.json")) {
+            Ontology hpo = reader.readJson(in);
+            checkSample(hpo);
+            assertEquals(Optional.of("http://purl.obolibrary.org/obo/hp/releases/2017-10-05/hp.json"),
+                    hpo.getVersion());
+        }
+    }
+
+    /**
+     * Test looking terms up by id.
+     */
+    @Test
+    public void testLookup() throws IOException
+    {
+        Ontology hpo = readSample();
+        assertTrue(hpo.contains("HP_0001250"));
+        assertTrue(hpo.contains("HP:0001250"));
+        assertFalse(hpo.contains("HP_0001251"));
+        assertFalse(hpo.contains("TEMPHPO_0000001"));
+        assertFalse(hpo.contains("HP_00012500"));
+        assertFalse(hpo.contains(null));
+        assertEquals(Optional.of("Seizure"), hpo.getName("HP_0001250"));
+        assertEquals(Optional.<String>absent(), hpo.getName("HP_0001251"));
+    }
+
+    /**
+     * Test that alternative ids lead to the term they stand for.
+     */
+    @Test
+    public void testAlternativeIds() throws IOException
+    {
+        Ontology hpo = readSample();
+        assertTrue(hpo.contains("HP_0002279"));
+        assertEquals(Optional.of("Seizure"), hpo.getName("HP:0002279"));
+        assertEquals(Optional.of("HP_0001250"), hpo.getPrimaryId("HP_0002279"));
+        assertEquals(Optional.of("HP_0001250"), hpo.getPrimaryId("HP:0001250"));
+    }
+
+    /**
+     * Test ancestor queries, through more than one parent.
+     */
+    @Test
+    public void testAncestors() throws IOException
+    {
+        Ontology hpo = readSample();
+        assertEquals(Arrays.asList("HP_0000252", "HP_0000707", "HP_0000240", "HP_0000118",
+                    "HP_0000234", "HP_0000001", "HP_0000152"), hpo.getAncestors("HP_0011451"));
+        assertEquals(Arrays.asList(), hpo.getAncestors("HP_0000001"));
+        assertEquals(Arrays.asList(), hpo.getAncestors("HP_0001251"));
+        assertTrue(hpo.isAncestor("HP_0000152", "HP_0011451"));
+        assertTrue(hpo.isAncestor("HP_0000707", "HP_0011451"));
+        assertTrue(hpo.isAncestor("HP_0000001", "HP_0002279"));
+        assertFalse(hpo.isAncestor("HP_0011451", "HP_0000152"));
+        assertFalse(hpo.isAncestor("HP_0001250", "HP_0001250"));
+        assertFalse(hpo.isAncestor("HP_0001250", "HP_0011451"));
+    }
+
+    /**
+     * Test finding terms by name and exact synonym, in any case.
+     */
+    @Test
+    public void testFindByName() throws IOException
+    {
+        Ontology hpo = readSample();
+        assertEquals(Optional.of("HP_0001250"), hpo.findByName("Seizure"));
+        assertEquals(Optional.of("HP_0001250"), hpo.findByName("EPILEPTIC seizure"));
+        assertEquals(Optional.of("HP_0000252"), hpo.findByName("small head"));
+        assertEquals(Optional.of("HP_0011451"), hpo.findByName("Congenital Microcephaly"));
+        assertEquals(Optional.<String>absent(), hpo.findByName("Small"));
+        assertEquals(Optional.<String>absent(), hpo.findByName(null));
+    }
+
+    /**
+     * Test that names win over synonyms, and that synonyms shared by several terms are left out.
+     */
+    @Test
+    public void testAmbiguousNames()
+    {
+        Ontology hpo = new Ontology.Builder().
+            addTerm(1, "Head").
+            addTerm(2, "Small head").
+            addTerm(3, "Microcephaly").
+            addSynonym(3, "small head").
+            addSynonym(1, "Noggin").
+            addSynonym(2, "Noggin").
+            addSynonym(3, "Tiny head").
+            addSynonym(3, "Tiny head").
+            build();
+        assertEquals(Optional.of("HP_0000002"), hpo.findByName("Small Head"));
+        assertEquals(Optional.<String>absent(), hpo.findByName("Noggin"));
+        assertEquals(Optional.of("HP_0000003"), hpo.findByName("tiny head"));
+    }
+
+    /**
+     * Test the empty ontology.
+     */
+    @Test
+    public void testEmpty()
+    {
+        assertTrue(Ontology.EMPTY.isEmpty());
+        assertEquals(0, Ontology.EMPTY.size());
+        assertFalse(Ontology.EMPTY.contains("HP_0000001"));
+        assertEquals(Arrays.asList(), Ontology.EMPTY.getAncestors("HP_0000001"));
+    }
+
+    /**
+     * Read the sample release.
+     * @return the ontology
+     */
+    private Ontology readSample() throws IOException
+    {
+        try (InputStream in = getClass().getResourceAsStream("hp.obo")) {
+            return reader.readObo(in);
+        }
+    }
+
+    /**
+     * Check that everything in the sample release was read.
+     * @param hpo the ontology read
+     */
+    private void checkSample(Ontology hpo)
+    {
+        assertEquals(10, hpo.size());
+        assertFalse(hpo.contains("HP_0000003"));
+        assertEquals(Optional.of("Congenital microcephaly"), hpo.getName("HP_0011451"));
+        assertEquals(Arrays.asList("HP_0000252", "HP_0000707"), hpo.getParents("HP_0011451"));
+        assertEquals(Arrays.asList("HP_0000001"), hpo.getParents("HP_0000118"));
+        assertEquals(Optional.of("HP_0001250"), hpo.getPrimaryId("HP_0002279"));
+        assertEquals(Optional.of("HP_0000252"), hpo.findByName("Reduced head circumference"));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.tracing;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the FileTraceExporter.
+ *
+ * @version $Id$
+ */
+public class FileTraceExporterTest
+{
+    /**
+     * A temporary folder.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that traces are appended to the file as OTLP export requests.
+     */
+    @Test
+    public void testExport() throws Exception
+    {
+        ObjectMapper mapper = new ObjectMapper();
+        FileTraceExporter exporter = new FileTraceExporter(mapper);
+        Path home = folder.getRoot().toPath();
+        exporter.init(home);
+        Tracer tracer = new Tracer(exporter, 0, 1);
+        try (Span root = tracer.start("root")) {
+            root.set("name", "Test Phenotype");
+            tracer.stage("child").fail(new IllegalStateException()).close();
+        }
+        tracer.start("another").close();
+        exporter.shutdown();
+        List<String> lines = Files.readAllLines(home.resolve(FileTraceExporter.FILE_NAME), StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        JsonNode resourceSpans = mapper.readTree(lines.get(0)).get("resourceSpans").get(0);
+        assertEquals("service.name", resourceSpans.get("resource").get("attributes").get(0).get("key").asText());
+        JsonNode spans = resourceSpans.get("scopeSpans").get(0).get("spans");
+        assertEquals(2, spans.size());
+        JsonNode root = spans.get(0);
+        JsonNode child = spans.get(1);
+        assertEquals("root", root.get("name").asText());
+        assertFalse(root.has("parentSpanId"));
+        assertEquals("Test Phenotype", root.get("attributes").get(0).get("value").get("stringValue").asText());
+        assertEquals(root.get("traceId"), child.get("traceId"));
+        assertEquals(root.get("spanId"), child.get("parentSpanId"));
+        assertEquals(2, child.get("status").get("code").asInt());
+        long start = Long.parseLong(root.get("startTimeUnixNano").asText());
+        long end = Long.parseLong(root.get("endTimeUnixNano").asText());
+        assertTrue(end >= start);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.tracing;
+
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the Tracer.
+ *
+ * @version $Id$
+ */
+public class TracerTest
+{
+    /**
+     * Test that spans started within a trace nest, and the trace is exported once it's over.
+     */
+    @Test
+    public void testNesting() throws Exception
+    {
+        Collector collector = new Collector();
+        Tracer tracer = new Tracer(collector, 0, Integer.MAX_VALUE);
+        try (Span root = tracer.start("root")) {
+            root.set("key", 1);
+            try (Span child = tracer.stage("child")) {
+                assertSame(child, tracer.current().get());
+                tracer.stage("grandchild").close();
+            }
+            tracer.stage("second").fail(new IllegalStateException()).close();
+            assertSame(root, tracer.current().get());
+            assertTrue(collector.traces.isEmpty());
+        }
+        assertFalse(tracer.current().isPresent());
+        assertEquals(1, collector.traces.size());
+        Span root = collector.traces.get(0);
+        assertEquals("1", root.getAttributes().get("key"));
+        assertEquals(32, root.getTraceId().length());
+        assertEquals(2, root.getChildren().size());
+        Span child = root.getChildren().get(0);
+        assertEquals("child", child.getName());
+        assertEquals(root.getTraceId(), child.getTraceId());
+        assertSame(root, child.getParent().get());
+        assertEquals("grandchild", child.getChildren().get(0).getName());
+        assertEquals(IllegalStateException.class.getName(), root.getChildren().get(1).getAttributes().get("error"));
+        assertTrue(root.getDurationNanos() >= child.getDurationNanos());
+    }
+
+    /**
+     * Test that stages started outside of a trace go nowhere.
+     */
+    @Test
+    public void testStageOutsideTrace() throws Exception
+    {
+        Collector collector = new Collector();
+        Tracer tracer = new Tracer(collector, 0, 1);
+        try (Span stage = tracer.stage("stage")) {
+            assertFalse(stage.isRecorded());
+            assertFalse(tracer.current().isPresent());
+            tracer.stage("inner").close();
+        }
+        assertTrue(collector.traces.isEmpty());
+    }
+
+    /**
+     * Test that only slow or sampled traces are exported.
+     */
+    @Test
+    public void testSampling() throws Exception
+    {
+        Collector collector = new Collector();
+        Tracer never = new Tracer(collector, Long.MAX_VALUE / 2, Integer.MAX_VALUE);
+        never.start("fast").close();
+        assertTrue(collector.traces.isEmpty());
+        Tracer always = new Tracer(collector, Long.MAX_VALUE / 2, 1);
+        always.start("sampled").close();
+        assertEquals(1, collector.traces.size());
+    }
+
+    /**
+     * Test that a span past a parent's limit is counted rather than kept.
+     */
+    @Test
+    public void testDropped() throws Exception
+    {
+        Collector collector = new Collector();
+        Tracer tracer = new Tracer(collector, 0, 1);
+        try (Span root = tracer.start("root")) {
+            for (int i = 0; i <= Span.MAX_CHILDREN; i++) {
+                tracer.stage("child").close();
+            }
+        }
+        Span root = collector.traces.get(0);
+        assertEquals(Span.MAX_CHILDREN, root.getChildren().size());
+        assertEquals(1, root.getDropped());
+    }
+
+    /**
+     * Keeps whatever's exported.
+     */
+    private static final class Collector implements TraceExporter
+    {
+        /**
+         * The traces exported.
+         */
+        private List<Span> traces = new ArrayList<>();
+
+        @Override
+        public void init(Path home)
+        {
+        }
+
+        @Override
+        public void export(Span root)
+        {
+            traces.add(root);
+        }
+
+        @Override
+        public void shutdown()
+        {
+        }
+    }
+}
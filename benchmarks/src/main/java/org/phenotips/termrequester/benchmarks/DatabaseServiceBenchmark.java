@@ -0,0 +1,244 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.benchmarks;
+
+import org.phenotips.termrequester.Phenotype;
+import org.phenotips.termrequester.TermRequesterBackendModule;
+import org.phenotips.termrequester.db.DatabaseService;
+import org.phenotips.termrequester.db.memory.MemoryModule;
+import org.phenotips.termrequester.db.mvstore.MVStoreModule;
+import org.phenotips.termrequester.db.solr.SolrModule;
+
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.inject.Guice;
+import com.google.inject.Module;
+
+/**
+ * Measures the DatabaseService operations the manager leans on, for every backend, over databases
+ * of increasing size.
+ * Pick a subset with the usual jmh options, e.g. {@code -p backend=memory -p size=1000}.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DatabaseServiceBenchmark
+{
+    /**
+     * How many phenotypes to save at a time while filling the database.
+     */
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    /**
+     * How many stored phenotypes to keep around for the update benchmark.
+     */
+    private static final int UPDATE_POOL_SIZE = 1000;
+
+    /**
+     * The backend under test.
+     */
+    @Param({ "memory", "mvstore", "solr" })
+    public String backend;
+
+    /**
+     * How many phenotypes the database holds before measuring.
+     */
+    @Param({ "1000", "100000", "1000000" })
+    public int size;
+
+    /**
+     * The service under test.
+     */
+    private DatabaseService db;
+
+    /**
+     * The home directory for the service.
+     */
+    private Path home;
+
+    /**
+     * The ids of the stored phenotypes, by index.
+     */
+    private List<String> ids;
+
+    /**
+     * Stored phenotypes for the update benchmark to modify.
+     */
+    private List<Phenotype> updatable;
+
+    /**
+     * Counts inserts, to keep the names of inserted phenotypes unique.
+     */
+    private AtomicInteger inserted = new AtomicInteger();
+
+    /**
+     * Start up the backend and fill it with synthetic phenotypes.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        home = Files.createTempDirectory("termrequester-benchmark");
+        db = Guice.createInjector(new TermRequesterBackendModule(getModule())).
+            getInstance(DatabaseService.class);
+        db.init(home);
+        db.setAutocommit(false);
+        ids = new ArrayList<>(size);
+        for (int start = 0; start < size; start += LOAD_BATCH_SIZE) {
+            List<Phenotype> batch = new ArrayList<>(LOAD_BATCH_SIZE);
+            for (int i = start; i < Math.min(size, start + LOAD_BATCH_SIZE); i++) {
+                batch.add(SyntheticPhenotypes.create(i));
+            }
+            for (Phenotype pt : db.savePhenotypes(batch)) {
+                ids.add(pt.getId().get());
+            }
+            db.commit();
+        }
+        updatable = new ArrayList<>(UPDATE_POOL_SIZE);
+        for (int i = 0; i < Math.min(size, UPDATE_POOL_SIZE); i++) {
+            updatable.add(db.getPhenotypeById(ids.get(i)));
+        }
+    }
+
+    /**
+     * Make whatever the last iteration wrote visible, so every iteration starts from the same place.
+     */
+    @TearDown(Level.Iteration)
+    public void commit() throws IOException
+    {
+        db.commit();
+    }
+
+    /**
+     * Shut the backend down and throw its data away.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        db.shutdown();
+        FileUtils.deleteDirectory(home.toFile());
+    }
+
+    /**
+     * Save a phenotype that isn't in the database yet.
+     */
+    @Benchmark
+    public Phenotype savePhenotypeInsert() throws IOException
+    {
+        return db.savePhenotype(new Phenotype("Inserted Phenotype " + inserted.incrementAndGet(), "Inserted"));
+    }
+
+    /**
+     * Save a change to a phenotype that's already in the database.
+     */
+    @Benchmark
+    public Phenotype savePhenotypeUpdate() throws IOException
+    {
+        Phenotype pt = updatable.get(ThreadLocalRandom.current().nextInt(updatable.size()));
+        pt.setDescription("Updated " + inserted.incrementAndGet());
+        return db.savePhenotype(pt);
+    }
+
+    /**
+     * Look a phenotype up by id.
+     */
+    @Benchmark
+    public Phenotype getPhenotypeById() throws IOException
+    {
+        return db.getPhenotypeById(ids.get(ThreadLocalRandom.current().nextInt(size)));
+    }
+
+    /**
+     * Look for a stored phenotype matching a new one, as done before creating every request.
+     */
+    @Benchmark
+    public Phenotype getPhenotype() throws IOException
+    {
+        return db.getPhenotype(new Phenotype(SyntheticPhenotypes.name(ThreadLocalRandom.current().nextInt(size)), ""));
+    }
+
+    /**
+     * Run a free text search.
+     */
+    @Benchmark
+    public List<Phenotype> searchPhenotypes() throws IOException
+    {
+        String[] words = SyntheticPhenotypes.WORDS;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return db.searchPhenotypes(words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)]);
+    }
+
+    /**
+     * Get every phenotype in one status, as each sync does for the statuses it reads. Every backend
+     * hands back all of them, here the one in twenty still unsubmitted, so sizes compare across
+     * backends.
+     */
+    @Benchmark
+    public List<Phenotype> getPhenotypesByStatus() throws IOException
+    {
+        return db.getPhenotypesByStatus(Phenotype.Status.UNSUBMITTED);
+    }
+
+    /**
+     * Get the module binding the backend under test.
+     *
+     * @return the module
+     */
+    private Module getModule()
+    {
+        switch (backend) {
+            case "memory":
+                return new MemoryModule();
+            case "mvstore":
+                return new MVStoreModule();
+            case "solr":
+                return new SolrModule();
+            default:
+                throw new IllegalArgumentException("Unknown backend " + backend);
+        }
+    }
+}
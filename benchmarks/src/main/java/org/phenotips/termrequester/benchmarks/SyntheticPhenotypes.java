@@ -0,0 +1,89 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.benchmarks;
+
+import org.phenotips.termrequester.Phenotype;
+
+/**
+ * Makes up phenotypes to fill a database with.
+ * The same index always gives the same phenotype, so runs are comparable with each other.
+ *
+ * @version $Id$
+ */
+final class SyntheticPhenotypes
+{
+    /**
+     * The words names are made of.
+     */
+    static final String[] WORDS = {
+        "abnormal", "absent", "acute", "aortic", "atrial", "axial", "bilateral", "bone", "brain", "cardiac",
+        "cerebral", "chronic", "cleft", "congenital", "cortical", "cranial", "cyst", "defect", "delayed",
+        "dental", "dermal", "distal", "dysplasia", "ear", "enlarged", "eye", "facial", "femoral", "finger",
+        "hand", "hearing", "heart", "hepatic", "hypoplasia", "increased", "joint", "kidney", "lateral",
+        "limb", "liver", "loss", "lung", "macular", "malformation", "muscle", "nail", "nasal", "neural",
+        "ocular", "palate", "pelvic", "proximal", "pulmonary", "reduced", "renal", "retinal", "short",
+        "skeletal", "skin", "spinal", "stenosis", "tooth", "vascular", "ventricular",
+    };
+
+    /**
+     * CTOR.
+     */
+    private SyntheticPhenotypes()
+    {
+        throw new AssertionError();
+    }
+
+    /**
+     * Get the name of the i-th phenotype.
+     *
+     * @param i the index
+     * @return the name, unique to i
+     */
+    static String name(int i)
+    {
+        int n = WORDS.length;
+        return WORDS[i % n] + " " + WORDS[(i / n) % n] + " " + WORDS[(i / n / n) % n] + " " + i;
+    }
+
+    /**
+     * Make up the i-th phenotype.
+     * Most are accepted or submitted, as they'd be in a database that's been running for a while,
+     * and one in twenty is still unsubmitted.
+     *
+     * @param i the index
+     * @return a new phenotype, without an id
+     */
+    static Phenotype create(int i)
+    {
+        Phenotype pt = new Phenotype(name(i), "The " + name(i) + " phenotype, made up for benchmarking");
+        pt.addSynonym(WORDS[(i + 1) % WORDS.length] + " " + name(i));
+        int bucket = i % 100;
+        if (bucket < 70) {
+            pt.setStatus(Phenotype.Status.ACCEPTED);
+            pt.setIssueNumber(Integer.toString(i + 1));
+            pt.setHpoId(String.format("HP_%07d", i + 1));
+        } else if (bucket < 90) {
+            pt.setStatus(Phenotype.Status.SUBMITTED);
+            pt.setIssueNumber(Integer.toString(i + 1));
+        } else if (bucket < 95) {
+            pt.setStatus(Phenotype.Status.REJECTED);
+            pt.setIssueNumber(Integer.toString(i + 1));
+        }
+        return pt;
+    }
+}
@@ -17,6 +17,7 @@
  */
 package org.phenotips.termrequester.rest;
 
+import org.phenotips.termrequester.BackendLifecycle;
 import org.phenotips.termrequester.PhenotypeManager;
 import org.phenotips.termrequester.TermRequesterBackendException;
 import org.phenotips.termrequester.github.GithubAPI;
@@ -25,54 +26,87 @@
 import org.phenotips.termrequester.rest.resources.annotations.RepositoryName;
 import org.phenotips.termrequester.rest.resources.annotations.RepositoryOwner;
 
+import java.nio.file.Path;
 import java.nio.file.Paths;
 
+import java.util.concurrent.TimeUnit;
+
+import org.quartz.DisallowConcurrentExecution;
 import org.quartz.Job;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
+import org.quartz.SchedulerException;
 
 import com.google.inject.Inject;
 
 /**
  * A quartz job that polls github for any changes to issues.
+ * Never runs twice at once, and has the SyncScheduler set up the next run once it's done.
  *
  * @version $Id$
  */
+@DisallowConcurrentExecution
 public class PollJob implements Job
 {
     /**
-     * The phenotype manager for this poll job.
+     * The backend lifecycle to borrow the phenotype manager from.
+     */
+    private BackendLifecycle lifecycle;
+
+    /**
+     * The github repository.
+     */
+    private GithubAPI.Repository repo;
+
+    /**
+     * The home directory.
      */
-    private PhenotypeManager manager;
+    private Path home;
+
+    /**
+     * Schedules the next run.
+     */
+    private SyncScheduler scheduler;
 
     /**
      * CTOR.
-     * @param manager the phenotype manager
+     * @param lifecycle the backend lifecycle
      * @param token the oauth token
      * @param repoName the repository name
      * @param repoOwner the repository owner
      * @param homeDir the home directory of the app
+     * @param scheduler the sync scheduler
      */
     @Inject
-    public PollJob(PhenotypeManager manager, @OAuthToken String token, @RepositoryName String repoName,
-            @RepositoryOwner String repoOwner, @HomeDir String homeDir)
+    public PollJob(BackendLifecycle lifecycle, @OAuthToken String token, @RepositoryName String repoName,
+            @RepositoryOwner String repoOwner, @HomeDir String homeDir, SyncScheduler scheduler)
     {
-        this.manager = manager;
-        GithubAPI.Repository repo = new GithubAPI.Repository(repoOwner, repoName, token);
-        try {
-            manager.init(repo, Paths.get(homeDir));
-        } catch (TermRequesterBackendException e) {
-            throw new RuntimeException(e);
-        }
+        this.lifecycle = lifecycle;
+        this.scheduler = scheduler;
+        repo = new GithubAPI.Repository(repoOwner, repoName, token);
+        home = Paths.get(homeDir);
     }
 
     @Override
     public void execute(JobExecutionContext ctx) throws JobExecutionException
     {
+        long start = System.nanoTime();
         try {
-            manager.syncPhenotypes();
+            PhenotypeManager manager = lifecycle.borrow(repo, home);
+            try {
+                manager.syncPhenotypes();
+            } finally {
+                lifecycle.giveBack();
+            }
         } catch (TermRequesterBackendException e) {
             throw new JobExecutionException(e);
+        } finally {
+            /* Even after a failure, or there'd be no more runs */
+            try {
+                scheduler.scheduleNext(ctx, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } catch (SchedulerException e) {
+                throw new JobExecutionException(e);
+            }
         }
     }
 }
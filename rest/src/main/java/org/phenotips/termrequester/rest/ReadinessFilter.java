@@ -0,0 +1,69 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.rest;
+
+import org.phenotips.termrequester.PhenotypeManager;
+
+import java.util.Date;
+
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.Status;
+import org.restlet.routing.Filter;
+
+/**
+ * Turns requests away with a 503 until the phenotype manager is ready for them, so that
+ * load balancers don't send traffic to an instance that's still starting up.
+ *
+ * @version $Id$
+ */
+class ReadinessFilter extends Filter
+{
+    /**
+     * How long to tell clients to wait before trying again, in milliseconds.
+     */
+    static final long RETRY_AFTER = 5000;
+
+    /**
+     * The phenotype manager.
+     */
+    private PhenotypeManager manager;
+
+    /**
+     * CTOR.
+     * @param context the context
+     * @param manager the phenotype manager whose readiness we gate on
+     */
+    ReadinessFilter(Context context, PhenotypeManager manager)
+    {
+        super(context);
+        this.manager = manager;
+    }
+
+    @Override
+    protected int beforeHandle(Request request, Response response)
+    {
+        if (manager.isReady()) {
+            return CONTINUE;
+        }
+        response.setStatus(Status.SERVER_ERROR_SERVICE_UNAVAILABLE);
+        response.setRetryAfter(new Date(System.currentTimeMillis() + RETRY_AFTER));
+        return STOP;
+    }
+}
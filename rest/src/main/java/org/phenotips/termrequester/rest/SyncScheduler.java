@@ -0,0 +1,220 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.rest;
+
+import org.phenotips.termrequester.github.GithubAPI;
+import org.phenotips.termrequester.metrics.Metrics;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.Trigger;
+import org.quartz.TriggerKey;
+
+import com.google.common.base.Optional;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import static org.quartz.JobBuilder.newJob;
+import static org.quartz.TriggerBuilder.newTrigger;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Schedules the github poll, one run at a time.
+ * Rather than firing on a fixed interval, each run schedules the next one once it's done, waiting
+ * at least the configured interval, at least DURATION_FACTOR times as long as the run took, and
+ * at least an hour while the github rate limit is below LOW_QUOTA. A run can also be asked for
+ * right away, as long as none is going, the last one ended or was asked for at least
+ * MIN_TRIGGER_GAP ago, and the rate limit isn't below LOW_QUOTA, so asking can't drain the quota.
+ *
+ * @version $Id$
+ */
+@Singleton
+public class SyncScheduler
+{
+    /**
+     * How many times as long as the last run took the next one waits, at least.
+     */
+    public static final long DURATION_FACTOR = 4;
+
+    /**
+     * How little of the github rate limit must be left for the next run to wait for it to refill.
+     */
+    public static final long LOW_QUOTA = 500;
+
+    /**
+     * How long github's rate limit takes to refill, in milliseconds.
+     */
+    public static final long QUOTA_WINDOW = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * The least time, in milliseconds, between the last run and one asked for right away.
+     */
+    public static final long MIN_TRIGGER_GAP = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * The poll job.
+     */
+    private static final JobKey JOB = new JobKey("githubPoll", "termrequester");
+
+    /**
+     * The metrics, to read the github rate limit from.
+     */
+    private Metrics metrics;
+
+    /**
+     * The quartz scheduler, once started.
+     */
+    private Scheduler sched;
+
+    /**
+     * The least time between runs, in milliseconds.
+     */
+    private long interval;
+
+    /**
+     * When, in milliseconds since the epoch, the last run ended or was asked for.
+     */
+    private long lastRun;
+
+    /**
+     * CTOR.
+     * @param metrics the injected metrics
+     */
+    @Inject
+    SyncScheduler(Metrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Start polling, with a first run right away.
+     * @param scheduler the quartz scheduler to run on
+     * @param intervalHours the least time between runs, in hours
+     * @throws SchedulerException on scheduler error
+     */
+    public synchronized void start(Scheduler scheduler, double intervalHours) throws SchedulerException
+    {
+        sched = scheduler;
+        interval = (long) Math.floor(TimeUnit.HOURS.toMillis(1) * intervalHours);
+        /* Durable, so that it stays put between one run's trigger firing and the next's being set */
+        JobDetail job = newJob(PollJob.class).
+            withIdentity(JOB).
+            storeDurably().
+            build();
+        sched.addJob(job, true);
+        replaceTriggers(Optional.<TriggerKey>absent(), new Date());
+    }
+
+    /**
+     * Schedule the run after the one given.
+     * @param ctx the context of the run that's finishing
+     * @param durationMillis how long it took
+     * @throws SchedulerException on scheduler error
+     */
+    public synchronized void scheduleNext(JobExecutionContext ctx, long durationMillis) throws SchedulerException
+    {
+        long delay = nextDelay(interval, durationMillis, metrics.getGauge(GithubAPI.RATE_LIMIT_GAUGE));
+        lastRun = System.currentTimeMillis();
+        replaceTriggers(Optional.of(ctx.getTrigger().getKey()), new Date(System.currentTimeMillis() + delay));
+    }
+
+    /**
+     * Run a sync right away, instead of whenever the next was due, unless one is going already or
+     * it's too soon for another.
+     * @return what came of it
+     * @throws IllegalStateException if polling hasn't started
+     * @throws SchedulerException on scheduler error
+     */
+    public synchronized Triggered triggerNow() throws SchedulerException
+    {
+        checkState(sched != null, "Polling has not started");
+        for (JobExecutionContext running : sched.getCurrentlyExecutingJobs()) {
+            if (JOB.equals(running.getJobDetail().getKey())) {
+                return Triggered.RUNNING;
+            }
+        }
+        long now = System.currentTimeMillis();
+        Optional<Long> quota = metrics.getGauge(GithubAPI.RATE_LIMIT_GAUGE);
+        if (now - lastRun < MIN_TRIGGER_GAP || (quota.isPresent() && quota.get() < LOW_QUOTA)) {
+            return Triggered.REFUSED;
+        }
+        lastRun = now;
+        replaceTriggers(Optional.<TriggerKey>absent(), new Date());
+        return Triggered.STARTED;
+    }
+
+    /**
+     * Work out how long to wait before the next run.
+     * @param interval the least time between runs, in milliseconds
+     * @param durationMillis how long the last run took
+     * @param quota how much of the github rate limit is left, if known
+     * @return the delay, in milliseconds
+     */
+    static long nextDelay(long interval, long durationMillis, Optional<Long> quota)
+    {
+        long delay = Math.max(interval, DURATION_FACTOR * durationMillis);
+        if (quota.isPresent() && quota.get() < LOW_QUOTA) {
+            delay = Math.max(delay, QUOTA_WINDOW);
+        }
+        return delay;
+    }
+
+    /**
+     * Replace whatever run is pending with one at the time given.
+     * @param firing the trigger firing right now, which is left alone, if any
+     * @param when when to run
+     * @throws SchedulerException on scheduler error
+     */
+    private void replaceTriggers(Optional<TriggerKey> firing, Date when) throws SchedulerException
+    {
+        for (Trigger pending : sched.getTriggersOfJob(JOB)) {
+            if (!pending.getKey().equals(firing.orNull())) {
+                sched.unscheduleJob(pending.getKey());
+            }
+        }
+        sched.scheduleJob(newTrigger().
+                    forJob(JOB).
+                    startAt(when).
+                    build());
+    }
+
+    /**
+     * What came of asking for a sync right away.
+     */
+    public enum Triggered {
+        /**
+         * It's on its way.
+         */
+        STARTED,
+        /**
+         * One is already going.
+         */
+        RUNNING,
+        /**
+         * It's too soon after the last one, or too little of the rate limit is left.
+         */
+        REFUSED
+    }
+}
@@ -17,19 +17,23 @@
  */
 package org.phenotips.termrequester.rest;
 
+import org.phenotips.termrequester.BackendLifecycle;
 import org.phenotips.termrequester.PhenotypeManager;
 import org.phenotips.termrequester.TermRequesterBackendException;
 import org.phenotips.termrequester.github.GithubAPI;
+import org.phenotips.termrequester.metrics.Metrics;
+import org.phenotips.termrequester.rest.resources.BatchResource;
+import org.phenotips.termrequester.rest.resources.ExportResource;
+import org.phenotips.termrequester.rest.resources.LookupResource;
+import org.phenotips.termrequester.rest.resources.MetricsResource;
 import org.phenotips.termrequester.rest.resources.PhenotypeResource;
 import org.phenotips.termrequester.rest.resources.PhenotypesResource;
 import org.phenotips.termrequester.rest.resources.RESTResourcesModule;
+import org.phenotips.termrequester.rest.resources.SyncReportsResource;
 
 import java.nio.file.Paths;
 
-import org.quartz.JobDetail;
 import org.quartz.Scheduler;
-import org.quartz.SchedulerException;
-import org.quartz.Trigger;
 import org.quartz.impl.StdSchedulerFactory;
 
 import org.restlet.Application;
@@ -39,10 +43,6 @@
 import org.restlet.ext.guice.RestletGuice;
 import org.restlet.routing.Router;
 
-import static org.quartz.JobBuilder.newJob;
-import static org.quartz.SimpleScheduleBuilder.simpleSchedule;
-import static org.quartz.TriggerBuilder.newTrigger;
-
 import com.google.inject.Injector;
 
 /**
@@ -73,7 +73,8 @@ public class TermRequesterApplication extends Application
     public static final String HOME_DIR_PARAM = "org.phenotips.termrequester.homeDir";
 
     /**
-     * The parameter for how often to sync, in hours.
+     * The parameter for how often to sync, in hours. Syncs can be further apart than this when
+     * they're slow or github's rate limit is running low; see SyncScheduler.
      */
     public static final String SYNC_INTERVAL_PARAM = "org.phenotips.termrequester.syncInterval";
 
@@ -89,6 +90,11 @@ public class TermRequesterApplication extends Application
      */
     private Injector injector;
 
+    /**
+     * The lifecycle of the backend, which this application owns.
+     */
+    private BackendLifecycle lifecycle;
+
     /**
      * The phenotype manager.
      */
@@ -117,8 +123,19 @@ public Restlet createInboundRoot()
         FinderFactory finder = injector.getInstance(FinderFactory.class);
         Router router = new Router(getContext());
         router.attach("/phenotypes", finder.finder(PhenotypesResource.class));
+        /* These must go before /phenotypes/{id}, or they'd be taken for (malformed) ids */
+        router.attach("/phenotypes/export", finder.finder(ExportResource.class));
+        router.attach("/phenotypes/batch", finder.finder(BatchResource.class));
+        router.attach("/phenotypes/lookup", finder.finder(LookupResource.class));
         router.attach("/phenotypes/{id}", finder.finder(PhenotypeResource.class));
-        return router;
+        ReadinessFilter readiness = new ReadinessFilter(getContext(), manager);
+        readiness.setNext(router);
+        /* Metrics and sync reports don't need the backend, and are most interesting while it's slow to get ready */
+        Router root = new Router(getContext());
+        root.attach("/metrics", finder.finder(MetricsResource.class));
+        root.attach("/admin/syncs", finder.finder(SyncReportsResource.class));
+        root.attachDefault(readiness);
+        return root;
     }
 
     @Override
@@ -131,17 +148,20 @@ public void start() throws Exception
         double interval = Double.parseDouble(getContext().getParameters().
                 getFirstValue(SYNC_INTERVAL_PARAM));
         /* The phenotype manager is a singleton, because stateful (or at least transitively stateful,
-         * since the database is for sure stateful), so we're gonna initialize it ourselves and
-         * ensure the server resources don't do anything to it by passing @OwnResources as false
+         * since the database is for sure stateful), so we start it ourselves through its lifecycle
+         * and the server resources and poll job only ever borrow it
          */
         injector = RestletGuice.createInjector(new RESTResourcesModule(repoOwner, repoName,
-                    token, homeDir, false));
+                    token, homeDir));
+        /* The database may carry on loading after this returns; requests are held off by the
+         * ReadinessFilter until it's done */
         startPhenotypeManager(repoOwner, repoName, token, homeDir);
+        injector.getInstance(Metrics.class).register();
         super.start();
         sched = StdSchedulerFactory.getDefaultScheduler();
         sched.setJobFactory(injector.getInstance(PTJobFactory.class));
         sched.start();
-        schedulePoll(interval);
+        injector.getInstance(SyncScheduler.class).start(sched, interval);
     }
 
     @Override
@@ -149,7 +169,9 @@ public void stop() throws Exception
     {
         super.stop();
         sched.shutdown(true);
-        manager.shutdown();
+        /* Waits for any requests still holding on to the manager */
+        lifecycle.stop();
+        injector.getInstance(Metrics.class).unregister();
     }
 
     /**
@@ -163,29 +185,7 @@ private void startPhenotypeManager(String repoOwner, String repoName, String tok
         throws TermRequesterBackendException
     {
         GithubAPI.Repository repo = new GithubAPI.Repository(repoOwner, repoName, token);
-        manager = injector.getInstance(PhenotypeManager.class);
-        manager.init(repo, Paths.get(homeDir));
-    }
-
-    /**
-     * Schedule the poll job.
-     *
-     * @param interval how often to update, in hours
-     * @throws SchedulerException on scheduler error
-     */
-    private void schedulePoll(double interval) throws SchedulerException
-    {
-        String groupName = "termrequester";
-        JobDetail job = newJob(PollJob.class).
-            withIdentity("githubPoll", groupName).
-            build();
-        Trigger trigger = newTrigger().
-            withIdentity("githubPollTrigger", groupName).
-            startNow().
-            withSchedule(simpleSchedule().
-                    withIntervalInSeconds((int) Math.floor(3600 * interval)).
-                    repeatForever()).
-            build();
-        sched.scheduleJob(job, trigger);
+        lifecycle = injector.getInstance(BackendLifecycle.class);
+        manager = lifecycle.start(repo, Paths.get(homeDir));
     }
 }
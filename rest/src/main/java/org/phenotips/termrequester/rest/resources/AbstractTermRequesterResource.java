@@ -17,25 +17,31 @@
  */
 package org.phenotips.termrequester.rest.resources;
 
+import org.phenotips.termrequester.BackendLifecycle;
 import org.phenotips.termrequester.PhenotypeManager;
 import org.phenotips.termrequester.TermRequesterBackendException;
 import org.phenotips.termrequester.github.GithubAPI;
 import org.phenotips.termrequester.rest.resources.annotations.HomeDir;
 import org.phenotips.termrequester.rest.resources.annotations.OAuthToken;
-import org.phenotips.termrequester.rest.resources.annotations.OwnResources;
 import org.phenotips.termrequester.rest.resources.annotations.RepositoryName;
 import org.phenotips.termrequester.rest.resources.annotations.RepositoryOwner;
 
 import java.nio.file.Paths;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.restlet.resource.ResourceException;
 import org.restlet.resource.ServerResource;
 
 import com.google.inject.Inject;
 
+import static com.google.common.base.Preconditions.checkState;
+
 /**
  * An abstract resource, encapsulates backend stuff and provides common initialization and
  * shutdown routines.
+ * The phenotype manager is borrowed from the application's backend lifecycle for the duration
+ * of the request, so a request never starts or stops the backend itself.
  *
  * @version $Id$
  */
@@ -46,6 +52,11 @@ public abstract class AbstractTermRequesterResource extends ServerResource
      */
     protected PhenotypeManager ptManager;
 
+    /**
+     * The backend lifecycle we borrow the phenotype manager from.
+     */
+    private BackendLifecycle lifecycle;
+
     /**
      * The home directory of this resource.
      */
@@ -57,52 +68,68 @@ public abstract class AbstractTermRequesterResource extends ServerResource
     private GithubAPI.Repository repo;
 
     /**
-     * Whether we own the resources we use.
+     * Whether we've borrowed the phenotype manager and have yet to give it back.
      */
-    private boolean owned;
+    private boolean borrowed;
 
     /**
      * CTOR.
      *
-     * @param ptManager the injected phenotype manager.
+     * @param lifecycle the injected backend lifecycle, to borrow the phenotype manager from
      * @param homeDir the directory to store files in
      * @param token the oauth token
      * @param repoName the name of the repo
      * @param repoOwner the owner of the repo
-     * @param owned whether we are responsible for creating/destroying resources
      */
     @Inject
-    public AbstractTermRequesterResource(PhenotypeManager ptManager, @HomeDir String homeDir,
+    public AbstractTermRequesterResource(BackendLifecycle lifecycle, @HomeDir String homeDir,
             @OAuthToken String token, @RepositoryName String repoName,
-            @RepositoryOwner String repoOwner, @OwnResources Boolean owned)
+            @RepositoryOwner String repoOwner)
     {
-        this.ptManager = ptManager;
+        this.lifecycle = lifecycle;
         this.homeDir = homeDir;
         repo = new GithubAPI.Repository(repoOwner, repoName, token);
-        this.owned = owned;
     }
 
     @Override
     protected void doInit()
     {
-        if (owned) {
-            try {
-                ptManager.init(repo, Paths.get(homeDir));
-            } catch (TermRequesterBackendException e) {
-                throw new ResourceException(e);
-            }
+        try {
+            ptManager = lifecycle.borrow(repo, Paths.get(homeDir));
+            borrowed = true;
+        } catch (TermRequesterBackendException e) {
+            throw new ResourceException(e);
         }
     }
 
+    /**
+     * Keep the phenotype manager borrowed after this resource is released, for an entity that
+     * still needs it while it's written out, which happens after the release.
+     * The runnable returned gives it back; only its first run does anything.
+     * @return the runnable to give the phenotype manager back with
+     */
+    protected Runnable keepBorrowed()
+    {
+        checkState(borrowed, "The phenotype manager is not borrowed");
+        borrowed = false;
+        final AtomicBoolean givenBack = new AtomicBoolean();
+        return new Runnable() {
+            @Override
+            public void run()
+            {
+                if (givenBack.compareAndSet(false, true)) {
+                    lifecycle.giveBack();
+                }
+            }
+        };
+    }
+
     @Override
     protected void doRelease()
     {
-        if (owned) {
-            try {
-                ptManager.shutdown();
-            } catch (TermRequesterBackendException e) {
-                throw new ResourceException(e);
-            }
+        if (borrowed) {
+            borrowed = false;
+            lifecycle.giveBack();
         }
     }
 }
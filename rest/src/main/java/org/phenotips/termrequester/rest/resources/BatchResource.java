@@ -0,0 +1,41 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.rest.resources;
+
+import org.restlet.representation.Representation;
+import org.restlet.resource.Post;
+
+/**
+ * Requests many phenotypes at once, for clients that collect them offline.
+ *
+ * @version $Id$
+ */
+public interface BatchResource
+{
+    /**
+     * Request every phenotype in the body, which is either a JSON array of phenotypes or
+     * newline-delimited JSON with one phenotype per line.
+     * Returns a JSON array with one {phenotype, isNew} pair per phenotype given, in the same order.
+     * Will return an empty 400 if the body can't be read as phenotypes.
+     *
+     * @param entity the body of the request
+     * @return the results
+     */
+    @Post
+    Representation create(Representation entity);
+}
@@ -0,0 +1,108 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.rest.resources;
+
+import org.phenotips.termrequester.BackendLifecycle;
+import org.phenotips.termrequester.Phenotype;
+import org.phenotips.termrequester.PhenotypeManager;
+import org.phenotips.termrequester.TermRequesterBackendException;
+import org.phenotips.termrequester.metrics.Timed;
+import org.phenotips.termrequester.rest.resources.annotations.HomeDir;
+import org.phenotips.termrequester.rest.resources.annotations.OAuthToken;
+import org.phenotips.termrequester.rest.resources.annotations.RepositoryName;
+import org.phenotips.termrequester.rest.resources.annotations.RepositoryOwner;
+
+import java.io.IOException;
+
+import java.util.List;
+
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.Post;
+import org.restlet.resource.ResourceException;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.google.inject.Inject;
+
+/**
+ * Implements the batch resource, handing whole batches of phenotypes to the backend.
+ *
+ * @version $Id$
+ */
+@Timed("rest.batch")
+public class BatchResourceImpl extends AbstractTermRequesterResource
+    implements BatchResource
+{
+    /**
+     * The object mapper to read and write phenotypes with.
+     */
+    private ObjectMapper mapper;
+
+    /**
+     * CTOR.
+     *
+     * @param lifecycle the injected backend lifecycle, to borrow the phenotype manager from
+     * @param mapper the object mapper
+     * @param homeDir the directory to store files in
+     * @param token the oauth token
+     * @param repoName the name of the repo
+     * @param repoOwner the owner of the repo
+     */
+    @Inject
+    BatchResourceImpl(BackendLifecycle lifecycle, ObjectMapper mapper, @HomeDir String homeDir,
+            @OAuthToken String token, @RepositoryName String repoName,
+            @RepositoryOwner String repoOwner)
+    {
+        super(lifecycle, homeDir, token, repoName, repoOwner);
+        this.mapper = mapper;
+    }
+
+    @Override
+    @Post
+    public Representation create(Representation entity)
+    {
+        List<Phenotype> phenotypes;
+        if (entity == null || entity.isEmpty()) {
+            getResponse().setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
+            return null;
+        }
+        /* Jackson unwraps a top-level array for us, and otherwise just reads one value after
+         * another, so this handles both arrays and newline-delimited json */
+        try (MappingIterator<Phenotype> it = mapper.readerFor(Phenotype.class).readValues(entity.getStream())) {
+            phenotypes = it.readAll();
+        } catch (IOException e) {
+            getResponse().setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
+            return null;
+        }
+        try {
+            List<PhenotypeManager.PhenotypeCreation> results = ptManager.createRequests(phenotypes);
+            getResponse().setStatus(Status.SUCCESS_OK);
+            return new StringRepresentation(mapper.writeValueAsString(results), MediaType.APPLICATION_JSON);
+        } catch (IllegalArgumentException e) {
+            /* Something in there names parents that don't exist */
+            getResponse().setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
+            return null;
+        } catch (TermRequesterBackendException | IOException e) {
+            throw new ResourceException(e);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.rest.resources;
+
+import org.restlet.representation.Representation;
+import org.restlet.resource.Get;
+
+/**
+ * Dumps the sum total of phenotypes in one go, for consumption by other tools.
+ *
+ * @version $Id$
+ */
+public interface ExportResource
+{
+    /**
+     * Stream every phenotype out as newline-delimited JSON, one phenotype per line.
+     * Takes an optional status GET param to only export phenotypes in that status, and an optional
+     * since GET param (an ISO-8601 date or date-time) to only export phenotypes modified since then.
+     * Will return an empty 400 if either of those is malformed.
+     *
+     * @return the phenotypes
+     */
+    @Get
+    Representation export();
+}
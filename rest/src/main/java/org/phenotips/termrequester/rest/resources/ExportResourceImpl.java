@@ -0,0 +1,183 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.rest.resources;
+
+import org.phenotips.termrequester.BackendLifecycle;
+import org.phenotips.termrequester.Phenotype;
+import org.phenotips.termrequester.PhenotypeVisitor;
+import org.phenotips.termrequester.TermRequesterBackendException;
+import org.phenotips.termrequester.metrics.Timed;
+import org.phenotips.termrequester.rest.resources.annotations.HomeDir;
+import org.phenotips.termrequester.rest.resources.annotations.OAuthToken;
+import org.phenotips.termrequester.rest.resources.annotations.RepositoryName;
+import org.phenotips.termrequester.rest.resources.annotations.RepositoryOwner;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.text.ParseException;
+
+import java.util.Date;
+
+import org.apache.commons.lang3.time.DateUtils;
+
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.OutputRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.resource.Get;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.google.common.base.Optional;
+import com.google.inject.Inject;
+
+/**
+ * Implements the export resource, streaming phenotypes straight out of the backend.
+ *
+ * @version $Id$
+ */
+@Timed("rest.export")
+public class ExportResourceImpl extends AbstractTermRequesterResource
+    implements ExportResource
+{
+    /**
+     * The newline-delimited JSON media type.
+     */
+    public static final MediaType APPLICATION_NDJSON = MediaType.valueOf("application/x-ndjson");
+
+    /**
+     * The parameter for the status filter.
+     */
+    private static final String STATUS_PARAM = "status";
+
+    /**
+     * The parameter for the modification time filter.
+     */
+    private static final String SINCE_PARAM = "since";
+
+    /**
+     * The date formats accepted for the since parameter.
+     */
+    private static final String[] SINCE_FORMATS = {
+        "yyyy-MM-dd'T'HH:mm:ss.SSSXXX", "yyyy-MM-dd'T'HH:mm:ssXXX", "yyyy-MM-dd",
+    };
+
+    /**
+     * The object mapper to serialize phenotypes with.
+     */
+    private ObjectMapper mapper;
+
+    /**
+     * CTOR.
+     *
+     * @param lifecycle the injected backend lifecycle, to borrow the phenotype manager from
+     * @param mapper the object mapper
+     * @param homeDir the directory to store files in
+     * @param token the oauth token
+     * @param repoName the name of the repo
+     * @param repoOwner the owner of the repo
+     */
+    @Inject
+    ExportResourceImpl(BackendLifecycle lifecycle, ObjectMapper mapper, @HomeDir String homeDir,
+            @OAuthToken String token, @RepositoryName String repoName,
+            @RepositoryOwner String repoOwner)
+    {
+        super(lifecycle, homeDir, token, repoName, repoOwner);
+        this.mapper = mapper;
+    }
+
+    @Override
+    @Get
+    public Representation export()
+    {
+        final Optional<Phenotype.Status> status;
+        final Optional<Date> since;
+        try {
+            status = parseStatus(getQuery().getFirstValue(STATUS_PARAM));
+            since = parseSince(getQuery().getFirstValue(SINCE_PARAM));
+        } catch (IllegalArgumentException | ParseException e) {
+            getResponse().setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
+            return null;
+        }
+        getResponse().setStatus(Status.SUCCESS_OK);
+        /* The entity is written after this resource is released, so it holds on to the manager
+         * until it's done with it, or until it's released without ever being written */
+        final Runnable giveBack = keepBorrowed();
+        return new OutputRepresentation(APPLICATION_NDJSON) {
+            @Override
+            public void write(OutputStream os) throws IOException
+            {
+                final OutputStream out = new BufferedOutputStream(os);
+                try {
+                    ptManager.exportPhenotypes(status, since, new PhenotypeVisitor() {
+                        @Override
+                        public void visit(Phenotype pt) throws IOException
+                        {
+                            out.write(mapper.writeValueAsBytes(pt));
+                            out.write('\n');
+                        }
+                    });
+                    out.flush();
+                } catch (TermRequesterBackendException e) {
+                    throw new IOException(e);
+                } finally {
+                    giveBack.run();
+                }
+            }
+
+            @Override
+            public void release()
+            {
+                giveBack.run();
+                super.release();
+            }
+        };
+    }
+
+    /**
+     * Parse the status parameter given.
+     *
+     * @param value the value of the parameter, may be null
+     * @return the status, if one was given
+     * @throws IllegalArgumentException if it's not a valid status
+     */
+    private Optional<Phenotype.Status> parseStatus(String value)
+    {
+        if (value == null) {
+            return Optional.<Phenotype.Status>absent();
+        }
+        return Optional.of(Phenotype.Status.valueOf(value.toUpperCase()));
+    }
+
+    /**
+     * Parse the since parameter given.
+     *
+     * @param value the value of the parameter, may be null
+     * @return the date, if one was given
+     * @throws ParseException if it's not a valid date
+     */
+    private Optional<Date> parseSince(String value) throws ParseException
+    {
+        if (value == null) {
+            return Optional.<Date>absent();
+        }
+        return Optional.of(DateUtils.parseDateStrictly(value, SINCE_FORMATS));
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.rest.resources;
+
+import org.phenotips.termrequester.Phenotype;
+
+import java.util.Map;
+
+import org.restlet.resource.Get;
+
+/**
+ * Looks many phenotypes up by id at once.
+ *
+ * @version $Id$
+ */
+public interface LookupResource
+{
+    /**
+     * Look up all the phenotypes with the ids given (the ids GET param, a comma separated list of
+     * ids, or the param repeated).
+     * Ids that match nothing are left out, and a malformed id gets an empty 400.
+     *
+     * @return the phenotypes, keyed by id
+     */
+    @Get("json")
+    Map<String, Phenotype> getByIds();
+}
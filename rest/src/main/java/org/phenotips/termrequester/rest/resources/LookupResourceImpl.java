@@ -0,0 +1,104 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.rest.resources;
+
+import org.phenotips.termrequester.BackendLifecycle;
+import org.phenotips.termrequester.Phenotype;
+import org.phenotips.termrequester.TermRequesterBackendException;
+import org.phenotips.termrequester.metrics.Timed;
+import org.phenotips.termrequester.rest.resources.annotations.HomeDir;
+import org.phenotips.termrequester.rest.resources.annotations.OAuthToken;
+import org.phenotips.termrequester.rest.resources.annotations.RepositoryName;
+import org.phenotips.termrequester.rest.resources.annotations.RepositoryOwner;
+import org.phenotips.termrequester.utils.IdUtils;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.restlet.data.Status;
+import org.restlet.resource.Get;
+import org.restlet.resource.ResourceException;
+
+import com.google.common.base.Splitter;
+import com.google.inject.Inject;
+
+/**
+ * Implements the resource for looking many phenotypes up by id.
+ *
+ * @version $Id$
+ */
+@Timed("rest.lookup")
+public class LookupResourceImpl extends AbstractTermRequesterResource
+    implements LookupResource
+{
+    /**
+     * The parameter for the ids to look up.
+     */
+    private static final String IDS_PARAM = "ids";
+
+    /**
+     * Splits up the values of the ids parameter.
+     */
+    private static final Splitter IDS_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    /**
+     * CTOR.
+     *
+     * @param lifecycle the injected backend lifecycle, to borrow the phenotype manager from
+     * @param homeDir the directory to store files in
+     * @param token the oauth token
+     * @param repoName the name of the repo
+     * @param repoOwner the owner of the repo
+     */
+    @Inject
+    LookupResourceImpl(BackendLifecycle lifecycle, @HomeDir String homeDir,
+            @OAuthToken String token, @RepositoryName String repoName,
+            @RepositoryOwner String repoOwner)
+    {
+        super(lifecycle, homeDir, token, repoName, repoOwner);
+    }
+
+    @Override
+    @Get("json")
+    public Map<String, Phenotype> getByIds()
+    {
+        Set<String> ids = new LinkedHashSet<>();
+        for (String value : getQuery().getValuesArray(IDS_PARAM)) {
+            for (String id : IDS_SPLITTER.split(value)) {
+                if (!(IdUtils.isId(id) || IdUtils.isHpoId(id))) {
+                    getResponse().setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
+                    return null;
+                }
+                ids.add(id);
+            }
+        }
+        try {
+            Map<String, Phenotype> results = ptManager.getPhenotypesById(ids);
+            for (Map.Entry<String, Phenotype> entry : results.entrySet()) {
+                if (entry.getValue().getStatus().equals(Phenotype.Status.PUBLISHED)) {
+                    entry.setValue(PublishedPhenotype.from(entry.getValue()));
+                }
+            }
+            getResponse().setStatus(Status.SUCCESS_OK);
+            return results;
+        } catch (TermRequesterBackendException e) {
+            throw new ResourceException(e);
+        }
+    }
+}
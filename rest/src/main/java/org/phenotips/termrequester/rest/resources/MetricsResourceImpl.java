@@ -0,0 +1,65 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.rest.resources;
+
+import org.phenotips.termrequester.metrics.Metrics;
+
+import java.io.IOException;
+
+import org.restlet.data.MediaType;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.ServerResource;
+
+import com.google.inject.Inject;
+
+/**
+ * Implements the metrics resource. Doesn't need the backend, so works even while it's loading.
+ *
+ * @version $Id$
+ */
+public class MetricsResourceImpl extends ServerResource implements MetricsResource
+{
+    /**
+     * The metrics.
+     */
+    private Metrics metrics;
+
+    /**
+     * CTOR.
+     * @param metrics the injected metrics
+     */
+    @Inject
+    MetricsResourceImpl(Metrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Representation getMetrics()
+    {
+        StringBuilder text = new StringBuilder();
+        try {
+            metrics.writeText(text);
+        } catch (IOException e) {
+            /* A StringBuilder won't throw */
+            throw new IllegalStateException(e);
+        }
+        return new StringRepresentation(text, MediaType.TEXT_PLAIN);
+    }
+}
@@ -17,12 +17,12 @@
  */
 package org.phenotips.termrequester.rest.resources;
 
+import org.phenotips.termrequester.BackendLifecycle;
 import org.phenotips.termrequester.Phenotype;
-import org.phenotips.termrequester.PhenotypeManager;
 import org.phenotips.termrequester.TermRequesterBackendException;
+import org.phenotips.termrequester.metrics.Timed;
 import org.phenotips.termrequester.rest.resources.annotations.HomeDir;
 import org.phenotips.termrequester.rest.resources.annotations.OAuthToken;
-import org.phenotips.termrequester.rest.resources.annotations.OwnResources;
 import org.phenotips.termrequester.rest.resources.annotations.RepositoryName;
 import org.phenotips.termrequester.rest.resources.annotations.RepositoryOwner;
 import org.phenotips.termrequester.utils.IdUtils;
@@ -39,6 +39,7 @@
  *
  * @version $Id$
  */
+@Timed("rest.phenotype")
 public class PhenotypeResourceImpl extends AbstractTermRequesterResource
     implements PhenotypeResource
 {
@@ -50,19 +51,18 @@ public class PhenotypeResourceImpl extends AbstractTermRequesterResource
     /**
      * CTOR.
      *
-     * @param ptManager the injected phenotype manager.
+     * @param lifecycle the injected backend lifecycle, to borrow the phenotype manager from
      * @param homeDir the directory to store files in
      * @param token the oauth token
      * @param repoName the name of the repo
      * @param repoOwner the owner of the repo
-     * @param owned whether we should own the resources needed
      */
     @Inject
-    PhenotypeResourceImpl(PhenotypeManager ptManager, @HomeDir String homeDir,
+    PhenotypeResourceImpl(BackendLifecycle lifecycle, @HomeDir String homeDir,
             @OAuthToken String token, @RepositoryName String repoName,
-            @RepositoryOwner String repoOwner, @OwnResources Boolean owned)
+            @RepositoryOwner String repoOwner)
     {
-        super(ptManager, homeDir, token, repoName, repoOwner, owned);
+        super(lifecycle, homeDir, token, repoName, repoOwner);
     }
 
     @Override
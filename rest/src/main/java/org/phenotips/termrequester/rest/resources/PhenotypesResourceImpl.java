@@ -17,12 +17,13 @@
  */
 package org.phenotips.termrequester.rest.resources;
 
+import org.phenotips.termrequester.BackendLifecycle;
 import org.phenotips.termrequester.Phenotype;
 import org.phenotips.termrequester.PhenotypeManager;
 import org.phenotips.termrequester.TermRequesterBackendException;
+import org.phenotips.termrequester.metrics.Timed;
 import org.phenotips.termrequester.rest.resources.annotations.HomeDir;
 import org.phenotips.termrequester.rest.resources.annotations.OAuthToken;
-import org.phenotips.termrequester.rest.resources.annotations.OwnResources;
 import org.phenotips.termrequester.rest.resources.annotations.RepositoryName;
 import org.phenotips.termrequester.rest.resources.annotations.RepositoryOwner;
 
@@ -41,6 +42,7 @@
  *
  * @version $Id$
  */
+@Timed("rest.phenotypes")
 public class PhenotypesResourceImpl extends AbstractTermRequesterResource
     implements PhenotypesResource
 {
@@ -52,19 +54,18 @@ public class PhenotypesResourceImpl extends AbstractTermRequesterResource
     /**
      * CTOR.
      *
-     * @param ptManager the injected phenotype manager.
+     * @param lifecycle the injected backend lifecycle, to borrow the phenotype manager from
      * @param homeDir the directory to store files in
      * @param token the oauth token
      * @param repoName the name of the repo
      * @param repoOwner the owner of the repo
-     * @param owned whether we should own the resources needed
      */
     @Inject
-    PhenotypesResourceImpl(PhenotypeManager ptManager, @HomeDir String homeDir,
+    PhenotypesResourceImpl(BackendLifecycle lifecycle, @HomeDir String homeDir,
             @OAuthToken String token, @RepositoryName String repoName,
-            @RepositoryOwner String repoOwner, @OwnResources Boolean owned)
+            @RepositoryOwner String repoOwner)
     {
-        super(ptManager, homeDir, token, repoName, repoOwner, owned);
+        super(lifecycle, homeDir, token, repoName, repoOwner);
     }
 
     @Override
@@ -78,7 +79,14 @@ public Phenotype create(Phenotype request)
             } else {
                 getResponse().setStatus(Status.CLIENT_ERROR_CONFLICT);
             }
+            if (creation.phenotype.getStatus().equals(Phenotype.Status.PUBLISHED)) {
+                return PublishedPhenotype.from(creation.phenotype);
+            }
             return creation.phenotype;
+        } catch (IllegalArgumentException e) {
+            /* It names parents that don't exist */
+            getResponse().setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
+            return null;
         } catch (TermRequesterBackendException e) {
             throw new ResourceException(e);
         }
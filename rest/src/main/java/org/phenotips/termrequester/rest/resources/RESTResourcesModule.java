@@ -20,7 +20,6 @@
 import org.phenotips.termrequester.TermRequesterBackendModule;
 import org.phenotips.termrequester.rest.resources.annotations.HomeDir;
 import org.phenotips.termrequester.rest.resources.annotations.OAuthToken;
-import org.phenotips.termrequester.rest.resources.annotations.OwnResources;
 import org.phenotips.termrequester.rest.resources.annotations.RepositoryName;
 import org.phenotips.termrequester.rest.resources.annotations.RepositoryOwner;
 
@@ -53,41 +52,20 @@ public class RESTResourcesModule extends AbstractModule
      */
     private String homeDir;
 
-    /**
-     * Whether individual Resource instances own their own resources,
-     * such as databases, etc.
-     */
-    private Boolean ownResources;
-
     /**
      * CTOR.
      * @param repositoryOwner the onwer of the repository we'll post to
      * @param repositoryName the name of the repository we'll post to
      * @param oauthToken the oauth token we'll use to access github
      * @param homeDir the directory for permanent files
-     * @param ownResources whether ServerResources own their own resources
      */
     public RESTResourcesModule(String repositoryOwner, String repositoryName,
-            String oauthToken, String homeDir, boolean ownResources)
+            String oauthToken, String homeDir)
     {
         this.repositoryOwner = repositoryOwner;
         this.repositoryName = repositoryName;
         this.oauthToken = oauthToken;
         this.homeDir = homeDir;
-        this.ownResources = ownResources;
-    }
-
-    /**
-     * CTOR.
-     * @param repositoryOwner the onwer of the repository we'll post to
-     * @param repositoryName the name of the repository we'll post to
-     * @param oauthToken the oauth token we'll use to access github
-     * @param homeDir the directory for permanent files
-     */
-    public RESTResourcesModule(String repositoryOwner, String repositoryName,
-            String oauthToken, String homeDir)
-    {
-        this(repositoryOwner, repositoryName, oauthToken, homeDir, true);
     }
 
     @Override
@@ -96,10 +74,14 @@ public void configure()
         install(new TermRequesterBackendModule());
         bind(PhenotypeResource.class).to(PhenotypeResourceImpl.class);
         bind(PhenotypesResource.class).to(PhenotypesResourceImpl.class);
+        bind(ExportResource.class).to(ExportResourceImpl.class);
+        bind(BatchResource.class).to(BatchResourceImpl.class);
+        bind(LookupResource.class).to(LookupResourceImpl.class);
+        bind(MetricsResource.class).to(MetricsResourceImpl.class);
+        bind(SyncReportsResource.class).to(SyncReportsResourceImpl.class);
         bindConstant().annotatedWith(HomeDir.class).to(homeDir);
         bindConstant().annotatedWith(OAuthToken.class).to(oauthToken);
         bindConstant().annotatedWith(RepositoryName.class).to(repositoryName);
         bindConstant().annotatedWith(RepositoryOwner.class).to(repositoryOwner);
-        bindConstant().annotatedWith(OwnResources.class).to(ownResources);
     }
 }
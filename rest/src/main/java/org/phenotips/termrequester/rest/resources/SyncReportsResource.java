@@ -0,0 +1,51 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.rest.resources;
+
+import org.phenotips.termrequester.SyncReport;
+
+import java.util.List;
+
+import org.restlet.resource.Get;
+import org.restlet.resource.Post;
+
+/**
+ * Shows what the last few github syncs did, so the poll interval can be sized from real runs,
+ * and starts a sync on demand.
+ *
+ * @version $Id$
+ */
+public interface SyncReportsResource
+{
+    /**
+     * Get the reports of the last few syncs, newest first. A sync that's still going shows up
+     * as running, with its counts so far.
+     *
+     * @return the reports
+     */
+    @Get("json")
+    List<SyncReport> getReports();
+
+    /**
+     * Start a sync right away, rather than waiting for the next one. Answers 202 once it's on its
+     * way, 409 if a sync is already going, or 503 if syncs aren't being scheduled at all; also 503,
+     * with a Retry-After, if the last sync was too recent or the github rate limit is running low.
+     */
+    @Post
+    void triggerSync();
+}
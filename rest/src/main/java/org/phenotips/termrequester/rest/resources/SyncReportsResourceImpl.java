@@ -0,0 +1,96 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.rest.resources;
+
+import org.phenotips.termrequester.SyncHistory;
+import org.phenotips.termrequester.SyncReport;
+import org.phenotips.termrequester.rest.SyncScheduler;
+
+import java.util.Date;
+import java.util.List;
+
+import org.quartz.SchedulerException;
+
+import org.restlet.data.Status;
+import org.restlet.resource.ResourceException;
+import org.restlet.resource.ServerResource;
+
+import com.google.inject.Inject;
+
+/**
+ * Implements the sync reports resource. Doesn't need the backend, so works even while it's loading;
+ * a sync triggered then will wait for it like any other.
+ * Authentication is left to the servlet container: the packaged web.xml only lets accounts with
+ * the termrequester-admin role through to /admin.
+ *
+ * @version $Id$
+ */
+public class SyncReportsResourceImpl extends ServerResource implements SyncReportsResource
+{
+    /**
+     * The history of syncs.
+     */
+    private SyncHistory history;
+
+    /**
+     * The sync scheduler.
+     */
+    private SyncScheduler scheduler;
+
+    /**
+     * CTOR.
+     * @param history the injected history of syncs
+     * @param scheduler the injected sync scheduler
+     */
+    @Inject
+    SyncReportsResourceImpl(SyncHistory history, SyncScheduler scheduler)
+    {
+        this.history = history;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public List<SyncReport> getReports()
+    {
+        return history.getReports();
+    }
+
+    @Override
+    public void triggerSync()
+    {
+        try {
+            switch (scheduler.triggerNow()) {
+                case STARTED:
+                    getResponse().setStatus(Status.SUCCESS_ACCEPTED);
+                    break;
+                case RUNNING:
+                    getResponse().setStatus(Status.CLIENT_ERROR_CONFLICT);
+                    break;
+                default:
+                    getResponse().setStatus(Status.SERVER_ERROR_SERVICE_UNAVAILABLE);
+                    getResponse().setRetryAfter(new Date(System.currentTimeMillis()
+                                + SyncScheduler.MIN_TRIGGER_GAP));
+                    break;
+            }
+        } catch (IllegalStateException e) {
+            getResponse().setStatus(Status.SERVER_ERROR_SERVICE_UNAVAILABLE);
+        } catch (SchedulerException e) {
+            throw new ResourceException(e);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.rest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.phenotips.termrequester.PhenotypeManager;
+
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.Method;
+import org.restlet.data.Status;
+import org.restlet.routing.Filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test the ReadinessFilter class.
+ *
+ * @version $Id$
+ */
+public class ReadinessFilterTest
+{
+    /**
+     * The phenotype manager.
+     */
+    private PhenotypeManager manager;
+
+    /**
+     * The filter under test.
+     */
+    private ReadinessFilter filter;
+
+    /**
+     * Set up the test.
+     */
+    @Before
+    public void setUp()
+    {
+        manager = mock(PhenotypeManager.class);
+        filter = new ReadinessFilter(new Context(), manager);
+    }
+
+    /**
+     * Test that requests are turned away while the manager isn't ready.
+     */
+    @Test
+    public void testNotReady()
+    {
+        when(manager.isReady()).thenReturn(false);
+        Response response = new Response(new Request(Method.GET, "/phenotypes"));
+        assertEquals(Filter.STOP, filter.beforeHandle(response.getRequest(), response));
+        assertEquals(Status.SERVER_ERROR_SERVICE_UNAVAILABLE, response.getStatus());
+        assertNotNull(response.getRetryAfter());
+    }
+
+    /**
+     * Test that requests go through once the manager is ready.
+     */
+    @Test
+    public void testReady()
+    {
+        when(manager.isReady()).thenReturn(true);
+        Response response = new Response(new Request(Method.GET, "/phenotypes"));
+        assertEquals(Filter.CONTINUE, filter.beforeHandle(response.getRequest(), response));
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.rest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.phenotips.termrequester.github.GithubAPI;
+import org.phenotips.termrequester.metrics.Metrics;
+
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.Trigger;
+import org.quartz.TriggerKey;
+
+import org.mockito.ArgumentCaptor;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Suppliers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test the SyncScheduler class.
+ *
+ * @version $Id$
+ */
+public class SyncSchedulerTest
+{
+    /**
+     * An hour, in milliseconds.
+     */
+    private static final long HOUR = 3600 * 1000;
+
+    /**
+     * The mocked quartz scheduler.
+     */
+    private Scheduler sched;
+
+    /**
+     * The component under test.
+     */
+    private SyncScheduler scheduler;
+
+    /**
+     * Set up the test.
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        sched = mock(Scheduler.class);
+        when(sched.getCurrentlyExecutingJobs()).thenReturn(Collections.<JobExecutionContext>emptyList());
+        scheduler = new SyncScheduler(new Metrics());
+    }
+
+    /**
+     * Test that the delay stretches with slow runs and a low rate limit.
+     */
+    @Test
+    public void testNextDelay()
+    {
+        assertEquals(HOUR, SyncScheduler.nextDelay(HOUR, 1000, Optional.<Long>absent()));
+        assertEquals(4 * HOUR, SyncScheduler.nextDelay(HOUR, HOUR, Optional.of(5000L)));
+        assertEquals(HOUR, SyncScheduler.nextDelay(1000, 1000, Optional.of(10L)));
+        assertEquals(60000, SyncScheduler.nextDelay(60000, 1000, Optional.of(SyncScheduler.LOW_QUOTA)));
+    }
+
+    /**
+     * Test that starting adds the job and runs it right away.
+     */
+    @Test
+    public void testStart() throws Exception
+    {
+        long now = System.currentTimeMillis();
+        scheduler.start(sched, 1);
+        verify(sched).addJob(any(JobDetail.class), eq(true));
+        ArgumentCaptor<Trigger> trigger = ArgumentCaptor.forClass(Trigger.class);
+        verify(sched).scheduleJob(trigger.capture());
+        assertTrue(trigger.getValue().getStartTime().getTime() - now < 1000);
+    }
+
+    /**
+     * Test that a run replaces any other pending run with one an interval later, leaving its own be.
+     */
+    @Test
+    public void testScheduleNext() throws Exception
+    {
+        scheduler.start(sched, 1);
+        Trigger firing = mock(Trigger.class);
+        Trigger manual = mock(Trigger.class);
+        TriggerKey firingKey = new TriggerKey("firing");
+        TriggerKey manualKey = new TriggerKey("manual");
+        when(firing.getKey()).thenReturn(firingKey);
+        when(manual.getKey()).thenReturn(manualKey);
+        doReturn(Arrays.asList(firing, manual)).when(sched).getTriggersOfJob(any(JobKey.class));
+        JobExecutionContext ctx = mock(JobExecutionContext.class);
+        when(ctx.getTrigger()).thenReturn(firing);
+        long now = System.currentTimeMillis();
+        scheduler.scheduleNext(ctx, 1000);
+        verify(sched, never()).unscheduleJob(firingKey);
+        verify(sched).unscheduleJob(manualKey);
+        ArgumentCaptor<Trigger> trigger = ArgumentCaptor.forClass(Trigger.class);
+        verify(sched, times(2)).scheduleJob(trigger.capture());
+        Date next = trigger.getValue().getStartTime();
+        assertTrue(next.getTime() >= now + HOUR);
+    }
+
+    /**
+     * Test that a run can't be triggered while one's going, or before polling starts.
+     */
+    @Test
+    public void testTriggerNow() throws Exception
+    {
+        try {
+            scheduler.triggerNow();
+            fail("Should have thrown");
+        } catch (IllegalStateException e) {
+            /* Expected */
+        }
+        scheduler.start(sched, 1);
+        assertEquals(SyncScheduler.Triggered.STARTED, scheduler.triggerNow());
+        JobExecutionContext running = mock(JobExecutionContext.class);
+        JobDetail job = mock(JobDetail.class);
+        when(running.getJobDetail()).thenReturn(job);
+        when(job.getKey()).thenReturn(new JobKey("githubPoll", "termrequester"));
+        doReturn(Arrays.asList(running)).when(sched).getCurrentlyExecutingJobs();
+        assertEquals(SyncScheduler.Triggered.RUNNING, scheduler.triggerNow());
+    }
+
+    /**
+     * Test that asking for runs right away can't bring them closer together than the gap, nor
+     * run down a low rate limit.
+     */
+    @Test
+    public void testTriggerRefused() throws Exception
+    {
+        scheduler.start(sched, 1);
+        assertEquals(SyncScheduler.Triggered.STARTED, scheduler.triggerNow());
+        assertEquals(SyncScheduler.Triggered.REFUSED, scheduler.triggerNow());
+        JobExecutionContext ctx = mock(JobExecutionContext.class);
+        Trigger firing = mock(Trigger.class);
+        when(firing.getKey()).thenReturn(new TriggerKey("firing"));
+        when(ctx.getTrigger()).thenReturn(firing);
+        scheduler.scheduleNext(ctx, 1000);
+        assertEquals(SyncScheduler.Triggered.REFUSED, scheduler.triggerNow());
+        Metrics metrics = new Metrics();
+        metrics.gauge(GithubAPI.RATE_LIMIT_GAUGE, Suppliers.ofInstance(SyncScheduler.LOW_QUOTA - 1));
+        scheduler = new SyncScheduler(metrics);
+        scheduler.start(sched, 1);
+        assertEquals(SyncScheduler.Triggered.REFUSED, scheduler.triggerNow());
+        metrics.gauge(GithubAPI.RATE_LIMIT_GAUGE, Suppliers.ofInstance(SyncScheduler.LOW_QUOTA));
+        assertEquals(SyncScheduler.Triggered.STARTED, scheduler.triggerNow());
+    }
+}
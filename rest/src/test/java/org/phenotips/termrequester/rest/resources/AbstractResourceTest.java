@@ -19,14 +19,17 @@
 
 import java.util.List;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import org.phenotips.termrequester.BackendLifecycle;
 import org.phenotips.termrequester.Phenotype;
 import org.phenotips.termrequester.PhenotypeManager;
 import org.phenotips.termrequester.db.DatabaseService;
+import org.phenotips.termrequester.db.memory.MemoryModule;
 import org.phenotips.termrequester.github.GithubAPI;
 import org.phenotips.termrequester.rest.resources.RESTResourcesModule;
 import org.phenotips.termrequester.testutils.TestModule;
@@ -145,7 +148,7 @@ public void setUp() throws Exception
         githubApi = mock(GithubAPI.class);
         injector = RestletGuice.createInjector(Modules.override(
                     new RESTResourcesModule("", "", "", folder.getRoot().toString())).
-                with(new TestModule(null, githubApi)));
+                with(new TestModule(null, githubApi), new MemoryModule()));
         finder = injector.getInstance(FinderFactory.class);
         router = new Router();
         pt = new Phenotype(PT_NAME, PT_DESC);
@@ -156,14 +159,25 @@ public void setUp() throws Exception
         doSetUp();
     }
 
+    /**
+     * Make sure every request gave the phenotype manager back, and stop the backend.
+     */
+    @After
+    public void tearDown() throws Exception
+    {
+        BackendLifecycle lifecycle = injector.getInstance(BackendLifecycle.class);
+        assertEquals(0, lifecycle.getBorrowed());
+        lifecycle.stop();
+    }
+
     /**
      * Store the phenotype given into the db as part of set up.
      * @param pt the phenotype
      */
     protected void saveAndInit(Phenotype pt) throws Exception
     {
-        manager = injector.getInstance(PhenotypeManager.class);
-        manager.init(new GithubAPI.Repository("", "", ""), folder.getRoot().toPath());
+        manager = injector.getInstance(BackendLifecycle.class).
+            start(new GithubAPI.Repository("", "", ""), folder.getRoot().toPath());
         manager.createRequest(pt);
     }
 }
@@ -0,0 +1,115 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.rest.resources;
+
+import org.junit.Test;
+
+import org.phenotips.termrequester.Phenotype;
+
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.MediaType;
+import org.restlet.data.Method;
+import org.restlet.representation.StringRepresentation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the BatchResource server resource.
+ *
+ * @version $Id$
+ */
+public class BatchResourceTest extends AbstractResourceTest
+{
+    @Override
+    public void doSetUp() throws Exception
+    {
+        router.attach("/phenotypes/batch", finder.finder(BatchResource.class));
+    }
+
+    /**
+     * Test sending a batch as a json array.
+     */
+    @Test
+    public void testArray() throws Exception
+    {
+        saveAndInit(pt);
+        String body = String.format("[{ \"name\": \"%s\", \"description\": \"%s\" }, "
+                + "{ \"name\": \"Brahms\", \"description\": \"Violin concerto\" }, "
+                + "{ \"name\": \"brahms\", \"description\": \"Again\" }]", PT_NAME, PT_DESC);
+        JsonNode results = post(new StringRepresentation(body, MediaType.APPLICATION_JSON));
+        assertEquals(3, results.size());
+        /* The first one was already there */
+        assertFalse(results.get(0).get("isNew").asBoolean());
+        assertEquals(pt.getId().get(), results.get(0).get("phenotype").get("id").asText());
+        assertTrue(results.get(1).get("isNew").asBoolean());
+        /* And the last one was a duplicate of the second */
+        assertFalse(results.get(2).get("isNew").asBoolean());
+        assertEquals(results.get(1).get("phenotype").get("id"), results.get(2).get("phenotype").get("id"));
+    }
+
+    /**
+     * Test sending a batch as newline-delimited json.
+     */
+    @Test
+    public void testNdjson() throws Exception
+    {
+        String body = "{ \"name\": \"Bach\", \"description\": \"Cantata\" }\n"
+            + "{ \"name\": \"Handel\", \"description\": \"Oratorio\" }\n";
+        JsonNode results = post(new StringRepresentation(body, ExportResourceImpl.APPLICATION_NDJSON));
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).get("isNew").asBoolean());
+        assertTrue(results.get(1).get("isNew").asBoolean());
+        Phenotype bach = mapper.treeToValue(results.get(0).get("phenotype"), Phenotype.class);
+        assertEquals("Bach", bach.getName());
+        assertTrue(bach.getId().isPresent());
+    }
+
+    /**
+     * Test that a malformed body gives a 400.
+     */
+    @Test
+    public void testMalformed() throws Exception
+    {
+        Request request = new Request(Method.POST, "/phenotypes/batch",
+                new StringRepresentation("[{ \"name\": ", MediaType.APPLICATION_JSON));
+        Response response = new Response(request);
+        router.handle(request, response);
+        assertEquals(400, response.getStatus().getCode());
+    }
+
+    /**
+     * Post the entity given to the batch resource and return the parsed results.
+     * @param entity the entity
+     * @return the results
+     */
+    private JsonNode post(StringRepresentation entity) throws Exception
+    {
+        Request request = new Request(Method.POST, "/phenotypes/batch", entity);
+        Response response = new Response(request);
+        router.handle(request, response);
+        assertEquals(200, response.getStatus().getCode());
+        assertTrue(response.isEntityAvailable());
+        assertEquals(MediaType.APPLICATION_JSON, response.getEntity().getMediaType());
+        return mapper.readTree(response.getEntity().getStream());
+    }
+}
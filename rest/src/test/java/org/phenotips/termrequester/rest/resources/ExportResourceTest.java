@@ -0,0 +1,150 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.rest.resources;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.phenotips.termrequester.BackendLifecycle;
+import org.phenotips.termrequester.Phenotype;
+
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.Method;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the ExportResource server resource.
+ *
+ * @version $Id$
+ */
+public class ExportResourceTest extends AbstractResourceTest
+{
+    @Override
+    public void doSetUp() throws Exception
+    {
+        router.attach("/phenotypes/export", finder.finder(ExportResource.class));
+    }
+
+    /**
+     * Test exporting everything.
+     */
+    @Test
+    public void testExport() throws Exception
+    {
+        saveAndInit(pt);
+        Phenotype pt2 = new Phenotype("Brahms", "Violin concerto");
+        manager.createRequest(pt2);
+        databaseService.commit();
+        List<Phenotype> results = export("/phenotypes/export");
+        assertEquals(2, results.size());
+        assertEquals(pt, results.get(0));
+        assertEquals(pt2, results.get(1));
+    }
+
+    /**
+     * Test exporting phenotypes with a given status.
+     */
+    @Test
+    public void testExportByStatus() throws Exception
+    {
+        saveAndInit(pt);
+        databaseService.commit();
+        assertEquals(1, export("/phenotypes/export?status=submitted").size());
+        assertEquals(0, export("/phenotypes/export?status=rejected").size());
+    }
+
+    /**
+     * Test exporting phenotypes modified since a given date.
+     */
+    @Test
+    public void testExportSince() throws Exception
+    {
+        saveAndInit(pt);
+        databaseService.commit();
+        assertEquals(1, export("/phenotypes/export?since=2000-01-01").size());
+        assertEquals(0, export("/phenotypes/export?since=2999-01-01T00:00:00Z").size());
+    }
+
+    /**
+     * Test that the backend stays borrowed until the export has been written out.
+     */
+    @Test
+    public void testExportKeepsBackend() throws Exception
+    {
+        saveAndInit(pt);
+        databaseService.commit();
+        BackendLifecycle lifecycle = injector.getInstance(BackendLifecycle.class);
+        Request request = new Request(Method.GET, "/phenotypes/export");
+        Response response = new Response(request);
+        router.handle(request, response);
+        assertEquals(1, lifecycle.getBorrowed());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getEntity().write(out);
+        assertEquals(0, lifecycle.getBorrowed());
+        assertEquals(pt, mapper.readValue(out.toString().trim(), Phenotype.class));
+        response.getEntity().release();
+        assertEquals(0, lifecycle.getBorrowed());
+    }
+
+    /**
+     * Test that bad parameters give a 400.
+     */
+    @Test
+    public void testBadParams() throws Exception
+    {
+        for (String uri : new String[] {"/phenotypes/export?status=yes", "/phenotypes/export?since=soon"}) {
+            Request request = new Request(Method.GET, uri);
+            Response response = new Response(request);
+            router.handle(request, response);
+            assertEquals(400, response.getStatus().getCode());
+            assertFalse(response.isEntityAvailable());
+        }
+    }
+
+    /**
+     * Run an export and read back the phenotypes it returned.
+     * @param uri the uri to hit
+     * @return the phenotypes
+     */
+    private List<Phenotype> export(String uri) throws Exception
+    {
+        Request request = new Request(Method.GET, uri);
+        Response response = new Response(request);
+        router.handle(request, response);
+        assertEquals(200, response.getStatus().getCode());
+        assertTrue(response.isEntityAvailable());
+        assertEquals(ExportResourceImpl.APPLICATION_NDJSON, response.getEntity().getMediaType());
+        List<Phenotype> results = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(response.getEntity().getStream()));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            results.add(mapper.readValue(line, Phenotype.class));
+        }
+        return results;
+    }
+}
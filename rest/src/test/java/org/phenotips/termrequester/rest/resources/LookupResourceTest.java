@@ -0,0 +1,77 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.rest.resources;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import org.phenotips.termrequester.Phenotype;
+
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.Method;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the LookupResource server resource.
+ *
+ * @version $Id$
+ */
+public class LookupResourceTest extends AbstractResourceTest
+{
+    @Override
+    public void doSetUp() throws Exception
+    {
+        router.attach("/phenotypes/lookup", finder.finder(LookupResource.class));
+    }
+
+    @Test
+    public void testGetByIds() throws Exception
+    {
+        saveAndInit(pt);
+        Phenotype pt2 = new Phenotype("Brahms", "Violin concerto");
+        manager.createRequest(pt2);
+        String missing = "TEMPHPO_0000999";
+        String uri = String.format("/phenotypes/lookup?ids=%s,%s&ids=%s", pt.getId().get(), missing,
+                pt2.getId().get());
+        Request request = new Request(Method.GET, uri);
+        Response response = new Response(request);
+        router.handle(request, response);
+        assertEquals(200, response.getStatus().getCode());
+        assertTrue(response.isEntityAvailable());
+        Map<String, Phenotype> results = mapper.readValue(response.getEntity().getStream(),
+                new TypeReference<Map<String, Phenotype>>() { });
+        assertEquals(2, results.size());
+        assertEquals(pt, results.get(pt.getId().get()));
+        assertEquals(pt2, results.get(pt2.getId().get()));
+    }
+
+    @Test
+    public void testGetByMalformedIds() throws Exception
+    {
+        Request request = new Request(Method.GET, "/phenotypes/lookup?ids=TEMPHPO_0000001,Liszt");
+        Response response = new Response(request);
+        router.handle(request, response);
+        assertEquals(400, response.getStatus().getCode());
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.rest.resources;
+
+import org.junit.Test;
+
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.Method;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the MetricsResource server resource.
+ *
+ * @version $Id$
+ */
+public class MetricsResourceTest extends AbstractResourceTest
+{
+    @Override
+    public void doSetUp() throws Exception
+    {
+        router.attach("/metrics", finder.finder(MetricsResource.class));
+        router.attach("/phenotypes/{id}", finder.finder(PhenotypeResource.class));
+    }
+
+    /**
+     * Test that a request shows up in the metrics of every layer it went through.
+     */
+    @Test
+    public void testMetrics() throws Exception
+    {
+        saveAndInit(pt);
+        Request request = new Request(Method.GET, "/phenotypes/" + pt.getId().get());
+        router.handle(request, new Response(request));
+        request = new Request(Method.GET, "/metrics");
+        Response response = new Response(request);
+        router.handle(request, response);
+        assertEquals(200, response.getStatus().getCode());
+        String text = response.getEntity().getText();
+        assertTrue(text.contains("rest.phenotype.getById.count 1\n"));
+        assertTrue(text.contains("manager.getPhenotypeById.count 1\n"));
+        assertTrue(text.contains("memory.getPhenotypeById.count "));
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.termrequester.rest.resources;
+
+import org.junit.Test;
+
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.Method;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Test the SyncReportsResource server resource.
+ *
+ * @version $Id$
+ */
+public class SyncReportsResourceTest extends AbstractResourceTest
+{
+    @Override
+    public void doSetUp() throws Exception
+    {
+        router.attach("/admin/syncs", finder.finder(SyncReportsResource.class));
+    }
+
+    /**
+     * Test that a sync's report shows up.
+     */
+    @Test
+    public void testReports() throws Exception
+    {
+        saveAndInit(pt);
+        manager.syncPhenotypes();
+        Request request = new Request(Method.GET, "/admin/syncs");
+        Response response = new Response(request);
+        router.handle(request, response);
+        assertEquals(200, response.getStatus().getCode());
+        JsonNode reports = mapper.readTree(response.getEntity().getText());
+        assertEquals(1, reports.size());
+        JsonNode report = reports.get(0);
+        assertFalse(report.get("running").asBoolean());
+        assertEquals(1, report.get("pushed").asInt());
+        assertEquals(0, report.get("errors").asInt());
+    }
+
+    /**
+     * Test that a sync can't be triggered while syncs aren't being scheduled.
+     */
+    @Test
+    public void testTriggerUnscheduled() throws Exception
+    {
+        Request request = new Request(Method.POST, "/admin/syncs");
+        Response response = new Response(request);
+        router.handle(request, response);
+        assertEquals(503, response.getStatus().getCode());
+    }
+}